@@ -0,0 +1,71 @@
+package com.itranswarp.exchange.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.assets.Transfer;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.UserType;
+
+/**
+ * AssetService.tryTransfer()在随机用户之间转账
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetServiceBenchmark {
+
+    static final int MASK = 4095;
+    static final BigDecimal AMOUNT = new BigDecimal("1.23");
+
+    @Param({ "1000", "100000" })
+    int users;
+
+    AssetService assetService;
+    Long[] from; // 随机转出用户
+    Long[] to; // 随机转入用户
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.assetService = new AssetService();
+        Long debt = UserType.DEBT.getInternalUserId();
+        BigDecimal funds = new BigDecimal("1000000000000");
+        for (int i = 0; i < this.users; i++) {
+            this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, debt, 1000L + i, AssetEnum.USD, funds,
+                    false);
+        }
+        var random = new Random(20240101);
+        this.from = new Long[MASK + 1];
+        this.to = new Long[MASK + 1];
+        for (int i = 0; i <= MASK; i++) {
+            this.from[i] = 1000L + random.nextInt(this.users);
+            this.to[i] = 1000L + random.nextInt(this.users);
+        }
+    }
+
+    @Benchmark
+    public boolean tryTransfer() {
+        int n = this.next++ & MASK;
+        return this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, this.from[n], this.to[n], AssetEnum.USD,
+                AMOUNT, true);
+    }
+}
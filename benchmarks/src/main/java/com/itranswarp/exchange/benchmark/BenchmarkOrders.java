@@ -0,0 +1,39 @@
+package com.itranswarp.exchange.benchmark;
+
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.match.MarketScale;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+/**
+ * 构造基准测试用的订单（价格、数量均为定点数）
+ */
+final class BenchmarkOrders {
+
+    static final MarketScale SCALE = MarketScale.DEFAULT;
+    static final long BASE_PRICE = 10000_00; // 卖盘最优价 10000.00
+    static final long QUANTITY = 100; // 每笔挂单 1.00
+
+    private long sequenceId;
+
+    OrderEntity create(SymbolEnum symbol, OrderType type, Direction direction, long userId, long priceUnits,
+            long quantityUnits) {
+        this.sequenceId++;
+        var order = new OrderEntity();
+        order.id = this.sequenceId * 10000 + 101;
+        order.sequenceId = this.sequenceId;
+        order.userId = userId;
+        order.symbol = symbol;
+        order.type = type;
+        order.direction = direction;
+        order.price = SCALE.toPrice(priceUnits);
+        order.priceUnits = priceUnits;
+        order.quantity = order.unfilledQuantity = SCALE.toQuantity(quantityUnits);
+        order.quantityUnits = order.unfilledUnits = quantityUnits;
+        order.status = OrderStatus.PENDING;
+        order.createdAt = order.updatedAt = 1700000000000L + this.sequenceId;
+        return order;
+    }
+}
@@ -0,0 +1,93 @@
+package com.itranswarp.exchange.benchmark;
+
+import static com.itranswarp.exchange.benchmark.BenchmarkOrders.BASE_PRICE;
+import static com.itranswarp.exchange.benchmark.BenchmarkOrders.QUANTITY;
+import static com.itranswarp.exchange.benchmark.BenchmarkOrders.SCALE;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.assets.Transfer;
+import com.itranswarp.exchange.clearing.ClearingService;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.enums.UserType;
+import com.itranswarp.exchange.match.MatchResult;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderArena;
+import com.itranswarp.exchange.order.OrderRecord;
+import com.itranswarp.exchange.order.OrderService;
+
+/**
+ * ClearingService.clearMatchResult()清算一个taker对多个maker的撮合结果
+ * maker均为部分成交（不删除订单），taker为IOC（未登记在OrderService），因此同一个MatchResult可反复清算，
+ * 每次只在冻结和可用余额之间转账。冻结余额预先充足，测试期间不会耗尽
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClearingBenchmark {
+
+    static final Long TAKER_USER = 2000L;
+
+    @Param({ "1", "10" })
+    int makers;
+
+    ClearingService clearingService;
+    MatchResult result;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var orders = new BenchmarkOrders();
+        var assetService = new AssetService();
+        var arena = new OrderArena();
+        this.clearingService = new ClearingService(assetService, new OrderService(assetService, arena));
+        Long debt = UserType.DEBT.getInternalUserId();
+        BigDecimal funds = new BigDecimal("1000000000000000");
+        long takerPrice = BASE_PRICE + this.makers - 1;
+        OrderEntity taker = orders.create(SymbolEnum.BTC_USD, OrderType.IOC, Direction.BUY, TAKER_USER, takerPrice,
+                QUANTITY * this.makers);
+        taker.updateOrder(0, BigDecimal.ZERO, OrderStatus.FULLY_FILLED, taker.createdAt);
+        assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, debt, TAKER_USER, AssetEnum.USD, funds, false);
+        assetService.tryFreeze(TAKER_USER, AssetEnum.USD, funds);
+        this.result = new MatchResult(taker, SCALE);
+        for (int i = 0; i < this.makers; i++) {
+            Long makerUser = 1000L + i;
+            OrderEntity maker = orders.create(SymbolEnum.BTC_USD, OrderType.LIMIT, Direction.SELL, makerUser,
+                    BASE_PRICE + i, QUANTITY * 2);
+            maker.updateOrder(QUANTITY, SCALE.toQuantity(QUANTITY), OrderStatus.PARTIAL_FILLED, taker.createdAt);
+            assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, debt, makerUser, AssetEnum.BTC, funds, false);
+            assetService.tryFreeze(makerUser, AssetEnum.BTC, funds);
+            // maker快照与撮合时一样从OrderArena读取:
+            var record = new OrderRecord();
+            arena.load(arena.allocate(maker, SCALE), record);
+            this.result.add(maker.priceUnits, QUANTITY, record);
+        }
+    }
+
+    @Benchmark
+    public MatchResult clearMatchResult() {
+        this.clearingService.clearMatchResult(this.result);
+        return this.result;
+    }
+}
@@ -0,0 +1,149 @@
+package com.itranswarp.exchange.benchmark;
+
+import static com.itranswarp.exchange.benchmark.BenchmarkOrders.BASE_PRICE;
+import static com.itranswarp.exchange.benchmark.BenchmarkOrders.QUANTITY;
+import static com.itranswarp.exchange.benchmark.BenchmarkOrders.SCALE;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.match.MatchDetailRecord;
+import com.itranswarp.exchange.match.MatchEngine;
+import com.itranswarp.exchange.match.MatchResult;
+import com.itranswarp.exchange.match.OrderBook;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderArena;
+
+/**
+ * MatchEngine.processOrder()在不同订单簿形状下的撮合耗时
+ * 卖盘预先填充levels个档位，每档ordersPerLevel个挂单；买单以IOC吃单，成交后在原价格补回挂单，保持订单簿形状不变。
+ * 与定序线程一致：MatchResult复用，完全成交的maker释放槽位后立即回收
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchEngineBenchmark {
+
+    static final long MAKER_USER = 1000;
+    static final long TAKER_USER = 2000;
+    static final int MASK = 4095;
+
+    @Param({ "100", "10000" })
+    int levels;
+
+    @Param({ "10" })
+    int ordersPerLevel;
+
+    @Param({ "10" })
+    int sweepLevels;
+
+    @Param({ "9" })
+    int cancelsPerMatch;
+
+    MatchEngine engine;
+    OrderArena arena;
+    BenchmarkOrders orders;
+    long[] prices; // 随机分布在已有档位上的价格
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (this.sweepLevels > this.levels) {
+            throw new IllegalArgumentException("sweepLevels must not exceed levels.");
+        }
+        this.orders = new BenchmarkOrders();
+        this.arena = new OrderArena();
+        this.engine = new MatchEngine(SymbolEnum.BTC_USD, this.arena, SCALE, OrderBook.DEFAULT_DEPTH, true);
+        for (int i = 0; i < this.levels; i++) {
+            for (int j = 0; j < this.ordersPerLevel; j++) {
+                post(BASE_PRICE + i);
+            }
+        }
+        var random = new Random(20240101);
+        this.prices = new long[MASK + 1];
+        for (int i = 0; i <= MASK; i++) {
+            this.prices[i] = BASE_PRICE + random.nextInt(this.levels);
+        }
+    }
+
+    /**
+     * 吃掉最优档位的第一个挂单，再补回一个挂单
+     */
+    @Benchmark
+    public OrderEntity matchTopOfBook() {
+        OrderEntity taker = this.orders.create(SymbolEnum.BTC_USD, OrderType.IOC, Direction.BUY, TAKER_USER,
+                BASE_PRICE, QUANTITY);
+        release(this.engine.processOrder(taker.sequenceId, taker));
+        post(BASE_PRICE);
+        return taker;
+    }
+
+    /**
+     * 一次吃掉最优的sweepLevels个档位，再补回全部挂单
+     */
+    @Benchmark
+    public OrderEntity sweep() {
+        OrderEntity taker = this.orders.create(SymbolEnum.BTC_USD, OrderType.IOC, Direction.BUY, TAKER_USER,
+                BASE_PRICE + this.sweepLevels - 1, QUANTITY * this.ordersPerLevel * this.sweepLevels);
+        release(this.engine.processOrder(taker.sequenceId, taker));
+        for (int i = 0; i < this.sweepLevels; i++) {
+            for (int j = 0; j < this.ordersPerLevel; j++) {
+                post(BASE_PRICE + i);
+            }
+        }
+        return taker;
+    }
+
+    /**
+     * 高撤单比例：cancelsPerMatch次挂单后撤单，加1次吃单
+     */
+    @Benchmark
+    public OrderEntity cancelHeavy() {
+        for (int i = 0; i < this.cancelsPerMatch; i++) {
+            OrderEntity order = post(this.prices[this.next++ & MASK]);
+            this.engine.cancel(order.createdAt, order);
+            this.arena.free(order.handle);
+        }
+        return matchTopOfBook();
+    }
+
+    OrderEntity post(long priceUnits) {
+        OrderEntity order = this.orders.create(SymbolEnum.BTC_USD, OrderType.LIMIT, Direction.SELL, MAKER_USER,
+                priceUnits, QUANTITY);
+        this.arena.allocate(order, SCALE);
+        this.engine.processOrder(order.sequenceId, order);
+        return order;
+    }
+
+    /**
+     * 释放完全成交的maker槽位（清算时由OrderService完成）
+     */
+    void release(MatchResult result) {
+        for (int i = 0; i < result.size(); i++) {
+            MatchDetailRecord detail = result.get(i);
+            if (detail.makerOrder().unfilledUnits == 0) {
+                this.arena.free(detail.makerOrder().handle);
+            }
+        }
+        this.arena.reclaim();
+    }
+}
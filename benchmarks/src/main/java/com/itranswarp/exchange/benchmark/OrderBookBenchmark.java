@@ -0,0 +1,106 @@
+package com.itranswarp.exchange.benchmark;
+
+import static com.itranswarp.exchange.benchmark.BenchmarkOrders.BASE_PRICE;
+import static com.itranswarp.exchange.benchmark.BenchmarkOrders.QUANTITY;
+import static com.itranswarp.exchange.benchmark.BenchmarkOrders.SCALE;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.match.OrderBook;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+/**
+ * OrderBook挂单、删除和取最优挂单
+ * 订单簿预先填充levels个档位，每档ordersPerLevel个挂单，测试过程中订单簿形状保持不变
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+
+    static final int MASK = 4095;
+
+    @Param({ "10", "1000", "10000" })
+    int levels;
+
+    @Param({ "10" })
+    int ordersPerLevel;
+
+    OrderBook book;
+    OrderEntity[] resting; // 订单簿中的挂单
+    OrderEntity[] spare; // 已分配槽位但不在订单簿中的挂单，价格随机分布在已有档位上
+    int[] indexes; // 随机访问resting的下标
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var orders = new BenchmarkOrders();
+        var random = new Random(20240101);
+        this.book = new OrderBook(Direction.SELL, SCALE, OrderBook.DEFAULT_DEPTH);
+        this.resting = new OrderEntity[this.levels * this.ordersPerLevel];
+        int n = 0;
+        for (int i = 0; i < this.levels; i++) {
+            for (int j = 0; j < this.ordersPerLevel; j++) {
+                OrderEntity order = orders.create(SymbolEnum.BTC_USD, OrderType.LIMIT, Direction.SELL, 1000 + j,
+                        BASE_PRICE + i, QUANTITY);
+                this.book.arena.allocate(order, SCALE);
+                this.book.add(order);
+                this.resting[n++] = order;
+            }
+        }
+        this.spare = new OrderEntity[MASK + 1];
+        this.indexes = new int[MASK + 1];
+        for (int i = 0; i <= MASK; i++) {
+            OrderEntity order = orders.create(SymbolEnum.BTC_USD, OrderType.LIMIT, Direction.SELL, 2000,
+                    BASE_PRICE + random.nextInt(this.levels), QUANTITY);
+            this.book.arena.allocate(order, SCALE);
+            this.spare[i] = order;
+            this.indexes[i] = random.nextInt(this.resting.length);
+        }
+    }
+
+    /**
+     * 挂单到已有档位队尾，再按句柄删除
+     */
+    @Benchmark
+    public boolean addRemove() {
+        OrderEntity order = this.spare[this.next++ & MASK];
+        this.book.add(order);
+        return this.book.remove(order.handle);
+    }
+
+    /**
+     * 从档位中间删除随机挂单，再挂回队尾（模拟撤单后重新报价）
+     */
+    @Benchmark
+    public boolean removeAdd() {
+        OrderEntity order = this.resting[this.indexes[this.next++ & MASK]];
+        this.book.remove(order.handle);
+        return this.book.add(order);
+    }
+
+    @Benchmark
+    public int getFirst() {
+        return this.book.getFirst();
+    }
+}
@@ -15,6 +15,20 @@ CREATE TABLE api_key_auths (
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
 
+CREATE TABLE balances (
+  id BIGINT NOT NULL AUTO_INCREMENT,
+  asset VARCHAR(32) NOT NULL,
+  available DECIMAL(36,18) NOT NULL,
+  frozen DECIMAL(36,18) NOT NULL,
+  sequenceId BIGINT NOT NULL,
+  updatedAt BIGINT NOT NULL,
+  userId BIGINT NOT NULL,
+  CONSTRAINT UNI_UID_ASSET UNIQUE (userId, asset),
+  INDEX IDX_SEQ (sequenceId),
+  PRIMARY KEY(id)
+) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
+
+
 CREATE TABLE clearings (
   id BIGINT NOT NULL AUTO_INCREMENT,
   counterOrderId BIGINT NOT NULL,
@@ -35,20 +49,23 @@ CREATE TABLE clearings (
 
 
 CREATE TABLE day_bars (
-  startTime BIGINT NOT NULL,
+  id BIGINT NOT NULL AUTO_INCREMENT,
   closePrice DECIMAL(36,18) NOT NULL,
   highPrice DECIMAL(36,18) NOT NULL,
   lowPrice DECIMAL(36,18) NOT NULL,
   openPrice DECIMAL(36,18) NOT NULL,
   quantity DECIMAL(36,18) NOT NULL,
-  PRIMARY KEY(startTime)
+  startTime BIGINT NOT NULL,
+  symbol VARCHAR(32) NOT NULL,
+  CONSTRAINT UNI_S_ST UNIQUE (symbol, startTime),
+  PRIMARY KEY(id)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
 
 CREATE TABLE events (
   sequenceId BIGINT NOT NULL,
   createdAt BIGINT NOT NULL,
-  data VARCHAR(10000) NOT NULL,
+  data MEDIUMTEXT NOT NULL,
   previousId BIGINT NOT NULL,
   CONSTRAINT UNI_PREV_ID UNIQUE (previousId),
   PRIMARY KEY(sequenceId)
@@ -56,13 +73,16 @@ CREATE TABLE events (
 
 
 CREATE TABLE hour_bars (
-  startTime BIGINT NOT NULL,
+  id BIGINT NOT NULL AUTO_INCREMENT,
   closePrice DECIMAL(36,18) NOT NULL,
   highPrice DECIMAL(36,18) NOT NULL,
   lowPrice DECIMAL(36,18) NOT NULL,
   openPrice DECIMAL(36,18) NOT NULL,
   quantity DECIMAL(36,18) NOT NULL,
-  PRIMARY KEY(startTime)
+  startTime BIGINT NOT NULL,
+  symbol VARCHAR(32) NOT NULL,
+  CONSTRAINT UNI_S_ST UNIQUE (symbol, startTime),
+  PRIMARY KEY(id)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
 
@@ -85,13 +105,16 @@ CREATE TABLE match_details (
 
 
 CREATE TABLE min_bars (
-  startTime BIGINT NOT NULL,
+  id BIGINT NOT NULL AUTO_INCREMENT,
   closePrice DECIMAL(36,18) NOT NULL,
   highPrice DECIMAL(36,18) NOT NULL,
   lowPrice DECIMAL(36,18) NOT NULL,
   openPrice DECIMAL(36,18) NOT NULL,
   quantity DECIMAL(36,18) NOT NULL,
-  PRIMARY KEY(startTime)
+  startTime BIGINT NOT NULL,
+  symbol VARCHAR(32) NOT NULL,
+  CONSTRAINT UNI_S_ST UNIQUE (symbol, startTime),
+  PRIMARY KEY(id)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
 
@@ -103,6 +126,8 @@ CREATE TABLE orders (
   quantity DECIMAL(36,18) NOT NULL,
   sequenceId BIGINT NOT NULL,
   status VARCHAR(32) NOT NULL,
+  symbol VARCHAR(32) NOT NULL,
+  type VARCHAR(32) NOT NULL,
   unfilledQuantity DECIMAL(36,18) NOT NULL,
   updatedAt BIGINT NOT NULL,
   userId BIGINT NOT NULL,
@@ -119,13 +144,16 @@ CREATE TABLE password_auths (
 
 
 CREATE TABLE sec_bars (
-  startTime BIGINT NOT NULL,
+  id BIGINT NOT NULL AUTO_INCREMENT,
   closePrice DECIMAL(36,18) NOT NULL,
   highPrice DECIMAL(36,18) NOT NULL,
   lowPrice DECIMAL(36,18) NOT NULL,
   openPrice DECIMAL(36,18) NOT NULL,
   quantity DECIMAL(36,18) NOT NULL,
-  PRIMARY KEY(startTime)
+  startTime BIGINT NOT NULL,
+  symbol VARCHAR(32) NOT NULL,
+  CONSTRAINT UNI_S_ST UNIQUE (symbol, startTime),
+  PRIMARY KEY(id)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
 
@@ -136,10 +164,11 @@ CREATE TABLE ticks (
   price DECIMAL(36,18) NOT NULL,
   quantity DECIMAL(36,18) NOT NULL,
   sequenceId BIGINT NOT NULL,
+  symbol VARCHAR(32) NOT NULL,
   takerDirection BIT NOT NULL,
   takerOrderId BIGINT NOT NULL,
   CONSTRAINT UNI_T_M UNIQUE (takerOrderId, makerOrderId),
-  INDEX IDX_CAT (createdAt),
+  INDEX IDX_S_CAT (symbol,createdAt),
   PRIMARY KEY(id)
 ) CHARACTER SET utf8 COLLATE utf8_general_ci AUTO_INCREMENT = 1000;
 
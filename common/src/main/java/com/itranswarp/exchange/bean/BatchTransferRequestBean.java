@@ -0,0 +1,41 @@
+package com.itranswarp.exchange.bean;
+
+import java.util.List;
+
+import com.itranswarp.exchange.ApiError;
+import com.itranswarp.exchange.ApiException;
+import com.itranswarp.exchange.util.IdUtil;
+
+/**
+ * Batch transfer request, applied all or nothing.
+ */
+public class BatchTransferRequestBean implements ValidatableBean {
+
+    /**
+     * Max transfers in one batch (the sequenced event must fit in one message).
+     */
+    public static final int MAX_TRANSFERS = 1000;
+
+    public String batchId;
+
+    public List<TransferRequestBean> transfers;
+
+    @Override
+    public void validate() {
+        if (!IdUtil.isValidStringId(batchId)) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "batchId", "Must specify a unique batchId.");
+        }
+        if (transfers == null || transfers.isEmpty()) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "transfers", "Must specify transfers.");
+        }
+        if (transfers.size() > MAX_TRANSFERS) {
+            throw new ApiException(ApiError.PARAMETER_INVALID, "transfers", "Too many transfers.");
+        }
+        for (TransferRequestBean transfer : transfers) {
+            if (transfer == null) {
+                throw new ApiException(ApiError.PARAMETER_INVALID, "transfers", "Must not contain null.");
+            }
+            transfer.validate();
+        }
+    }
+}
@@ -3,14 +3,17 @@ package com.itranswarp.exchange.bean;
 import java.math.BigDecimal;
 import java.util.List;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.itranswarp.exchange.enums.SymbolEnum;
 import com.itranswarp.exchange.util.JsonUtil;
 
 public class OrderBookBean {
 
-    public static final String EMPTY = JsonUtil.writeJson(new OrderBookBean(0, BigDecimal.ZERO, List.of(), List.of()));
+    public static final String EMPTY = JsonUtil
+            .writeJson(new OrderBookBean(null, 0, BigDecimal.ZERO, List.of(), List.of()));
 
-    @JsonIgnore
+    public SymbolEnum symbol;
+
+    // 客户端据此丢弃快照之前的增量:
     public long sequenceId;
 
     public BigDecimal price;
@@ -19,7 +22,9 @@ public class OrderBookBean {
 
     public List<OrderBookItemBean> sell;
 
-    public OrderBookBean(long sequenceId, BigDecimal price, List<OrderBookItemBean> buy, List<OrderBookItemBean> sell) {
+    public OrderBookBean(SymbolEnum symbol, long sequenceId, BigDecimal price, List<OrderBookItemBean> buy,
+            List<OrderBookItemBean> sell) {
+        this.symbol = symbol;
         this.sequenceId = sequenceId;
         this.price = price;
         this.buy = buy;
@@ -0,0 +1,39 @@
+package com.itranswarp.exchange.bean;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import com.itranswarp.exchange.enums.SymbolEnum;
+
+/**
+ * OrderBook增量：自previousId之后有变化的档位及其最新总数量，数量为0表示档位已删除或移出深度范围。
+ * 客户端从OrderBookBean全量快照开始，依次应用sequenceId更大的增量，previousId大于本地sequenceId时说明有遗漏，需重新获取全量快照；
+ * snapshot为true时buy/sell为完整深度，直接替换本地订单簿。
+ */
+public class OrderBookDeltaBean {
+
+    public SymbolEnum symbol;
+
+    public long sequenceId;
+
+    public long previousId;
+
+    public boolean snapshot;
+
+    public BigDecimal price;
+
+    public List<OrderBookItemBean> buy;
+
+    public List<OrderBookItemBean> sell;
+
+    public OrderBookDeltaBean(SymbolEnum symbol, long sequenceId, long previousId, boolean snapshot, BigDecimal price,
+            List<OrderBookItemBean> buy, List<OrderBookItemBean> sell) {
+        this.symbol = symbol;
+        this.sequenceId = sequenceId;
+        this.previousId = previousId;
+        this.snapshot = snapshot;
+        this.price = price;
+        this.buy = buy;
+        this.sell = sell;
+    }
+}
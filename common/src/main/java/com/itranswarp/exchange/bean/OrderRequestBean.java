@@ -6,9 +6,15 @@ import java.math.RoundingMode;
 import com.itranswarp.exchange.ApiError;
 import com.itranswarp.exchange.ApiException;
 import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
 
 public class OrderRequestBean implements ValidatableBean {
 
+    public SymbolEnum symbol;
+
+    public OrderType type;
+
     public Direction direction;
 
     public BigDecimal price;
@@ -17,15 +23,28 @@ public class OrderRequestBean implements ValidatableBean {
 
     @Override
     public void validate() {
+        // 未指定交易对时默认BTC_USD:
+        if (this.symbol == null) {
+            this.symbol = SymbolEnum.BTC_USD;
+        }
+        // 未指定类型时默认限价单:
+        if (this.type == null) {
+            this.type = OrderType.LIMIT;
+        }
         if (this.direction == null) {
             throw new ApiException(ApiError.PARAMETER_INVALID, "direction", "direction is required.");
         }
+        // 市价卖单可不指定价格（price = 0表示不限成交价）:
+        boolean marketSell = this.type == OrderType.MARKET && this.direction == Direction.SELL;
         // price:
         if (this.price == null) {
-            throw new ApiException(ApiError.PARAMETER_INVALID, "price", "price is required.");
+            if (!marketSell) {
+                throw new ApiException(ApiError.PARAMETER_INVALID, "price", "price is required.");
+            }
+            this.price = BigDecimal.ZERO;
         }
         this.price = this.price.setScale(2, RoundingMode.DOWN);
-        if (this.price.signum() <= 0) {
+        if (this.price.signum() < 0 || (this.price.signum() == 0 && !marketSell)) {
             throw new ApiException(ApiError.PARAMETER_INVALID, "price", "price must be positive.");
         }
         // quantity:
@@ -7,12 +7,35 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.itranswarp.exchange.ring.WaitStrategy;
+
 @Configuration
 @ConfigurationProperties(prefix = "exchange.config")
 public class ExchangeConfiguration {
 
     private int orderBookDepth = 50;
+    private Duration orderBookSnapshotInterval = Duration.ofSeconds(1);
     private boolean debugMode = false;
+    private int priceScale = 2;
+    private int quantityScale = 2;
+    private boolean reuseMatchResult = true;
+    private boolean parallelMatching = false;
+    private boolean offHeapOrders = false;
+    private int outputBufferSize = 4096;
+    private WaitStrategy outputWaitStrategy = WaitStrategy.PARK;
+    private String snapshotDir = "";
+    private long snapshotIntervalEvents = 100000;
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+    private String journalDir = "";
+    private int journalSegmentSize = 64 * 1024 * 1024;
+    private int journalMaxSegments = 16;
+    private String engineLockFile = "";
+    private Duration standbyCheckInterval = Duration.ofSeconds(1);
+    private int standbyBufferSize = 65536;
+    private boolean invariantCheck = false;
+    private Duration invariantSweepInterval = Duration.ofMinutes(1);
+    private Duration metricsInterval = Duration.ofSeconds(10);
+    private Duration balanceCheckpointInterval = Duration.ofSeconds(1);
     private String timeZone = ZoneId.systemDefault().getId();
     private String hmacKey;
     private Duration sessionTimeout;
@@ -31,6 +54,14 @@ public class ExchangeConfiguration {
         this.orderBookDepth = orderBookDepth;
     }
 
+    public Duration getOrderBookSnapshotInterval() {
+        return orderBookSnapshotInterval;
+    }
+
+    public void setOrderBookSnapshotInterval(Duration orderBookSnapshotInterval) {
+        this.orderBookSnapshotInterval = orderBookSnapshotInterval;
+    }
+
     public boolean isDebugMode() {
         return debugMode;
     }
@@ -39,6 +70,166 @@ public class ExchangeConfiguration {
         this.debugMode = debugMode;
     }
 
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    public void setPriceScale(int priceScale) {
+        this.priceScale = priceScale;
+    }
+
+    public int getQuantityScale() {
+        return quantityScale;
+    }
+
+    public void setQuantityScale(int quantityScale) {
+        this.quantityScale = quantityScale;
+    }
+
+    public boolean isReuseMatchResult() {
+        return reuseMatchResult;
+    }
+
+    public void setReuseMatchResult(boolean reuseMatchResult) {
+        this.reuseMatchResult = reuseMatchResult;
+    }
+
+    public boolean isParallelMatching() {
+        return parallelMatching;
+    }
+
+    public void setParallelMatching(boolean parallelMatching) {
+        this.parallelMatching = parallelMatching;
+    }
+
+    public boolean isOffHeapOrders() {
+        return offHeapOrders;
+    }
+
+    public void setOffHeapOrders(boolean offHeapOrders) {
+        this.offHeapOrders = offHeapOrders;
+    }
+
+    public int getOutputBufferSize() {
+        return outputBufferSize;
+    }
+
+    public void setOutputBufferSize(int outputBufferSize) {
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    public WaitStrategy getOutputWaitStrategy() {
+        return outputWaitStrategy;
+    }
+
+    public void setOutputWaitStrategy(WaitStrategy outputWaitStrategy) {
+        this.outputWaitStrategy = outputWaitStrategy;
+    }
+
+    public String getSnapshotDir() {
+        return snapshotDir;
+    }
+
+    public void setSnapshotDir(String snapshotDir) {
+        this.snapshotDir = snapshotDir;
+    }
+
+    public long getSnapshotIntervalEvents() {
+        return snapshotIntervalEvents;
+    }
+
+    public void setSnapshotIntervalEvents(long snapshotIntervalEvents) {
+        this.snapshotIntervalEvents = snapshotIntervalEvents;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(Duration snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public int getJournalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    public void setJournalSegmentSize(int journalSegmentSize) {
+        this.journalSegmentSize = journalSegmentSize;
+    }
+
+    public int getJournalMaxSegments() {
+        return journalMaxSegments;
+    }
+
+    public void setJournalMaxSegments(int journalMaxSegments) {
+        this.journalMaxSegments = journalMaxSegments;
+    }
+
+    public String getEngineLockFile() {
+        return engineLockFile;
+    }
+
+    public void setEngineLockFile(String engineLockFile) {
+        this.engineLockFile = engineLockFile;
+    }
+
+    public Duration getStandbyCheckInterval() {
+        return standbyCheckInterval;
+    }
+
+    public void setStandbyCheckInterval(Duration standbyCheckInterval) {
+        this.standbyCheckInterval = standbyCheckInterval;
+    }
+
+    public int getStandbyBufferSize() {
+        return standbyBufferSize;
+    }
+
+    public void setStandbyBufferSize(int standbyBufferSize) {
+        this.standbyBufferSize = standbyBufferSize;
+    }
+
+    public boolean isInvariantCheck() {
+        return invariantCheck;
+    }
+
+    public void setInvariantCheck(boolean invariantCheck) {
+        this.invariantCheck = invariantCheck;
+    }
+
+    public Duration getInvariantSweepInterval() {
+        return invariantSweepInterval;
+    }
+
+    public void setInvariantSweepInterval(Duration invariantSweepInterval) {
+        this.invariantSweepInterval = invariantSweepInterval;
+    }
+
+    public Duration getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    public void setMetricsInterval(Duration metricsInterval) {
+        this.metricsInterval = metricsInterval;
+    }
+
+    public Duration getBalanceCheckpointInterval() {
+        return balanceCheckpointInterval;
+    }
+
+    public void setBalanceCheckpointInterval(Duration balanceCheckpointInterval) {
+        this.balanceCheckpointInterval = balanceCheckpointInterval;
+    }
+
     public String getTimeZone() {
         return timeZone;
     }
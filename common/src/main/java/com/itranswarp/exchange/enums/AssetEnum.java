@@ -4,7 +4,12 @@ public enum AssetEnum {
 
     BTC,
 
+    ETH,
+
     USD;
 
     public static final int SCALE = 2;
+
+    // 交易引擎内资产余额的定点数小数位数，不小于价格和数量小数位数之和:
+    public static final int BALANCE_SCALE = 8;
 }
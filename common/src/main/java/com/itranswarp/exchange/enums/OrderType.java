@@ -0,0 +1,36 @@
+package com.itranswarp.exchange.enums;
+
+/**
+ * 订单类型
+ */
+public enum OrderType {
+
+    /**
+     * 限价单，未成交部分挂单
+     */
+    LIMIT(true),
+
+    /**
+     * 市价单，不挂单；卖单可不指定价格，买单的价格为最差成交价（用于冻结）
+     */
+    MARKET(false),
+
+    /**
+     * 立即成交剩余取消（Immediate Or Cancel）
+     */
+    IOC(false),
+
+    /**
+     * 全部成交或全部取消（Fill Or Kill）
+     */
+    FOK(false);
+
+    /**
+     * 未成交部分是否进入订单簿
+     */
+    public final boolean rest;
+
+    OrderType(boolean rest) {
+        this.rest = rest;
+    }
+}
@@ -0,0 +1,27 @@
+package com.itranswarp.exchange.enums;
+
+/**
+ * 交易对
+ * 每个交易对由独立的撮合引擎处理
+ */
+public enum SymbolEnum {
+
+    BTC_USD(AssetEnum.BTC, AssetEnum.USD),
+
+    ETH_USD(AssetEnum.ETH, AssetEnum.USD);
+
+    /**
+     * 基础资产（买卖的标的，卖单冻结）
+     */
+    public final AssetEnum base;
+
+    /**
+     * 计价资产（买单冻结）
+     */
+    public final AssetEnum quote;
+
+    SymbolEnum(AssetEnum base, AssetEnum quote) {
+        this.base = base;
+        this.quote = quote;
+    }
+}
@@ -1,5 +1,7 @@
 package com.itranswarp.exchange.message;
 
+import java.util.List;
+
 import com.itranswarp.exchange.ApiError;
 import com.itranswarp.exchange.ApiErrorResponse;
 import com.itranswarp.exchange.model.trade.OrderEntity;
@@ -42,4 +44,12 @@ public class ApiResultMessage extends AbstractMessage {
         msg.createdAt = ts;
         return msg;
     }
+
+    public static ApiResultMessage ordersSuccess(String refId, List<OrderEntity> orders, long ts) {
+        ApiResultMessage msg = new ApiResultMessage();
+        msg.result = orders;
+        msg.refId = refId;
+        msg.createdAt = ts;
+        return msg;
+    }
 }
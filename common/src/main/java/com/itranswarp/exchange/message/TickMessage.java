@@ -2,12 +2,18 @@ package com.itranswarp.exchange.message;
 
 import java.util.List;
 
+import com.itranswarp.exchange.enums.SymbolEnum;
 import com.itranswarp.exchange.model.quotation.TickEntity;
 
 public class TickMessage extends AbstractMessage {
 
     public long sequenceId;
 
+    /**
+     * 交易对，不含该字段的历史消息按BTC_USD处理
+     */
+    public SymbolEnum symbol = SymbolEnum.BTC_USD;
+
     public List<TickEntity> ticks;
 
 }
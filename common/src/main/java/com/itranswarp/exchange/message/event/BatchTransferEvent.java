@@ -0,0 +1,39 @@
+package com.itranswarp.exchange.message.event;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import com.itranswarp.exchange.enums.AssetEnum;
+
+/**
+ * 一批转账，全部成功或全部失败，只定序一次
+ */
+public class BatchTransferEvent extends AbstractEvent {
+
+    public List<Leg> legs;
+
+    /**
+     * 一笔转账，字段与TransferEvent相同
+     */
+    public static class Leg {
+
+        public Long fromUserId;
+        public Long toUserId;
+        public AssetEnum asset;
+        public BigDecimal amount;
+        public boolean sufficient;
+
+        @Override
+        public String toString() {
+            return "Leg [fromUserId=" + fromUserId + ", toUserId=" + toUserId + ", asset=" + asset + ", amount="
+                    + amount + ", sufficient=" + sufficient + "]";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BatchTransferEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId="
+                + uniqueId + ", refId=" + refId + ", createdAt=" + createdAt + ", legs="
+                + (legs == null ? 0 : legs.size()) + "]";
+    }
+}
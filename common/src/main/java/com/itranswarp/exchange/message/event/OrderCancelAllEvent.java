@@ -0,0 +1,20 @@
+package com.itranswarp.exchange.message.event;
+
+import com.itranswarp.exchange.enums.SymbolEnum;
+
+/**
+ * 撤销用户的全部挂单，symbol为null时撤销所有交易对的挂单
+ */
+public class OrderCancelAllEvent extends AbstractEvent {
+
+    public Long userId;
+
+    public SymbolEnum symbol;
+
+    @Override
+    public String toString() {
+        return "OrderCancelAllEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId="
+                + uniqueId + ", refId=" + refId + ", createdAt=" + createdAt + ", userId=" + userId + ", symbol="
+                + symbol + "]";
+    }
+}
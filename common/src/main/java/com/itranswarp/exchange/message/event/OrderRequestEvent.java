@@ -3,9 +3,21 @@ package com.itranswarp.exchange.message.event;
 import java.math.BigDecimal;
 
 import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
 
 public class OrderRequestEvent extends AbstractEvent {
 
+    /**
+     * 交易对，不含该字段的历史事件按BTC_USD处理
+     */
+    public SymbolEnum symbol = SymbolEnum.BTC_USD;
+
+    /**
+     * 订单类型，不含该字段的历史事件按LIMIT处理
+     */
+    public OrderType type = OrderType.LIMIT;
+
     public Long userId;
 
     public Direction direction;
@@ -17,7 +29,7 @@ public class OrderRequestEvent extends AbstractEvent {
     @Override
     public String toString() {
         return "OrderRequestEvent [sequenceId=" + sequenceId + ", previousId=" + previousId + ", uniqueId=" + uniqueId
-                + ", refId=" + refId + ", createdAt=" + createdAt + ", userId=" + userId + ", direction=" + direction
+                + ", refId=" + refId + ", createdAt=" + createdAt + ", symbol=" + symbol + ", type=" + type + ", userId=" + userId + ", direction=" + direction
                 + ", price=" + price + ", quantity=" + quantity + "]";
     }
 }
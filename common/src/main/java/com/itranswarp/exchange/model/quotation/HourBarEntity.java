@@ -2,13 +2,15 @@ package com.itranswarp.exchange.model.quotation;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import com.itranswarp.exchange.model.support.AbstractBarEntity;
 
 /**
  * Store bars of hour.
  */
 @Entity
-@Table(name = "hour_bars")
+@Table(name = "hour_bars", uniqueConstraints = @UniqueConstraint(name = "UNI_S_ST", columnNames = { "symbol",
+        "startTime" }))
 public class HourBarEntity extends AbstractBarEntity {
 
 }
@@ -2,6 +2,7 @@ package com.itranswarp.exchange.model.quotation;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 
 import com.itranswarp.exchange.model.support.AbstractBarEntity;
 
@@ -9,7 +10,8 @@ import com.itranswarp.exchange.model.support.AbstractBarEntity;
  * Store bars of second.
  */
 @Entity
-@Table(name = "sec_bars")
+@Table(name = "sec_bars", uniqueConstraints = @UniqueConstraint(name = "UNI_S_ST", columnNames = { "symbol",
+        "startTime" }))
 public class SecBarEntity extends AbstractBarEntity {
 
 }
@@ -11,11 +11,12 @@ import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 
+import com.itranswarp.exchange.enums.SymbolEnum;
 import com.itranswarp.exchange.model.support.EntitySupport;
 
 @Entity
 @Table(name = "ticks", uniqueConstraints = @UniqueConstraint(name = "UNI_T_M", columnNames = { "takerOrderId",
-        "makerOrderId" }), indexes = @Index(name = "IDX_CAT", columnList = "createdAt"))
+        "makerOrderId" }), indexes = @Index(name = "IDX_S_CAT", columnList = "symbol,createdAt"))
 public class TickEntity implements EntitySupport {
 
     @Id
@@ -26,6 +27,9 @@ public class TickEntity implements EntitySupport {
     @Column(nullable = false, updatable = false)
     public long sequenceId;
 
+    @Column(nullable = false, updatable = false, length = VAR_ENUM)
+    public SymbolEnum symbol;
+
     @Column(nullable = false, updatable = false)
     public Long takerOrderId;
 
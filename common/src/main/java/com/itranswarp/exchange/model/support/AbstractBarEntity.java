@@ -9,20 +9,31 @@ import java.util.Locale;
 import java.util.Map;
 
 import jakarta.persistence.Column;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.MappedSuperclass;
 import jakarta.persistence.Transient;
 
+import com.itranswarp.exchange.enums.SymbolEnum;
+
 /**
  * Store bars of second, minute, hour and day.
  */
 @MappedSuperclass
 public class AbstractBarEntity implements EntitySupport {
 
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(nullable = false, updatable = false)
+    public long id;
+
+    @Column(nullable = false, updatable = false, length = VAR_ENUM)
+    public SymbolEnum symbol;
+
     /**
-     * start timestamp in millisecond (included).
+     * start timestamp in millisecond (included). Unique with symbol.
      */
-    @Id
     @Column(nullable = false, updatable = false)
     public long startTime;
 
@@ -55,8 +66,8 @@ public class AbstractBarEntity implements EntitySupport {
     public String toString(ZoneId zoneId) {
         ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.ofEpochMilli(this.startTime), zoneId);
         String time = FORMATTERS.get(getClass().getSimpleName()).format(zdt);
-        return String.format("{%s: startTime=%s, O=%s, H=%s, L=%s, C=%s, qty=%s}", this.getClass().getSimpleName(),
-                time, this.openPrice, this.highPrice, this.lowPrice, this.closePrice, this.quantity);
+        return String.format("{%s: symbol=%s, startTime=%s, O=%s, H=%s, L=%s, C=%s, qty=%s}", this.getClass().getSimpleName(),
+                this.symbol, time, this.openPrice, this.highPrice, this.lowPrice, this.closePrice, this.quantity);
     }
 
     @Override
@@ -0,0 +1,59 @@
+package com.itranswarp.exchange.model.trade;
+
+import java.math.BigDecimal;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.model.support.EntitySupport;
+
+/**
+ * Latest balance of each user asset, checkpointed by trading engine.
+ *
+ * Each checkpoint upserts the changed rows in one transaction, so the table reflects the balances at
+ * MAX(sequenceId).
+ */
+@Entity
+@Table(name = "balances", uniqueConstraints = @UniqueConstraint(name = "UNI_UID_ASSET", columnNames = { "userId",
+        "asset" }), indexes = @Index(name = "IDX_SEQ", columnList = "sequenceId"))
+public class BalanceEntity implements EntitySupport {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(nullable = false, updatable = false)
+    public Long id;
+
+    @Column(nullable = false, updatable = false)
+    public Long userId;
+
+    @Column(nullable = false, updatable = false, length = VAR_ENUM)
+    public AssetEnum asset;
+
+    @Column(nullable = false, precision = PRECISION, scale = SCALE)
+    public BigDecimal available;
+
+    @Column(nullable = false, precision = PRECISION, scale = SCALE)
+    public BigDecimal frozen;
+
+    /**
+     * SequenceId of the last event processed when the balance was checkpointed.
+     */
+    @Column(nullable = false)
+    public long sequenceId;
+
+    @Column(nullable = false)
+    public long updatedAt;
+
+    @Override
+    public String toString() {
+        return "BalanceEntity [userId=" + userId + ", asset=" + asset + ", available=" + available + ", frozen="
+                + frozen + ", sequenceId=" + sequenceId + ", updatedAt=" + updatedAt + "]";
+    }
+}
@@ -29,9 +29,9 @@ public class EventEntity implements EntitySupport {
     public long previousId;
 
     /**
-     * JSON-encoded event data.
+     * JSON-encoded event data (a batch transfer may exceed VARCHAR limit).
      */
-    @Column(nullable = false, updatable = false, length = VAR_CHAR_10000)
+    @Column(nullable = false, updatable = false, columnDefinition = "MEDIUMTEXT")
     public String data;
 
     @Column(nullable = false, updatable = false)
@@ -13,6 +13,8 @@ import org.springframework.lang.Nullable;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.itranswarp.exchange.enums.Direction;
 import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
 import com.itranswarp.exchange.model.support.EntitySupport;
 
 /**
@@ -36,6 +38,20 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     @Column(nullable = false, updatable = false)
     public long sequenceId;
 
+    /**
+     * Trading symbol of this order.
+     * 交易对
+     */
+    @Column(nullable = false, updatable = false, length = VAR_ENUM)
+    public SymbolEnum symbol;
+
+    /**
+     * Order type.
+     * 限价/市价/IOC/FOK
+     */
+    @Column(nullable = false, updatable = false, length = VAR_ENUM)
+    public OrderType type;
+
     /**
      * Order direction.
      * 买/卖
@@ -55,8 +71,9 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     @Column(nullable = false, updatable = false, length = VAR_ENUM)
     public OrderStatus status;
 
-    public void updateOrder(BigDecimal unfilledQuantity, OrderStatus status, long updatedAt) {
+    public void updateOrder(long unfilledUnits, BigDecimal unfilledQuantity, OrderStatus status, long updatedAt) {
         this.version++;
+        this.unfilledUnits = unfilledUnits;
         this.unfilledQuantity = unfilledQuantity;
         this.status = status;
         this.updatedAt = updatedAt;
@@ -103,12 +120,41 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
     @Column(nullable = false, updatable = false, precision = PRECISION, scale = SCALE)
     public BigDecimal unfilledQuantity;
 
+    /**
+     * Scaled price (price x 10^priceScale) used by match engine only.
+     */
+    @Transient
+    @JsonIgnore
+    public long priceUnits;
+
+    /**
+     * Scaled quantity (quantity x 10^quantityScale) used by match engine only.
+     */
+    @Transient
+    @JsonIgnore
+    public long quantityUnits;
+
+    /**
+     * Scaled unfilled quantity used by match engine only.
+     */
+    @Transient
+    @JsonIgnore
+    public long unfilledUnits;
+
+    /**
+     * Handle of the slot in order arena which stores this order while resting, or -1 if not allocated.
+     */
+    @Transient
+    @JsonIgnore
+    public int handle = -1;
+
     @Nullable
     public OrderEntity copy() {
         OrderEntity entity = new OrderEntity();
         int ver = this.version;
         entity.status = this.status;
         entity.unfilledQuantity = this.unfilledQuantity;
+        entity.unfilledUnits = this.unfilledUnits;
         entity.updatedAt = this.updatedAt;
         if (ver != this.version) {
             return null;
@@ -116,11 +162,16 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
 
         entity.createdAt = this.createdAt;
         entity.direction = this.direction;
+        entity.symbol = this.symbol;
+        entity.type = this.type;
         entity.id = this.id;
         entity.price = this.price;
+        entity.priceUnits = this.priceUnits;
         entity.quantity = this.quantity;
+        entity.quantityUnits = this.quantityUnits;
         entity.sequenceId = this.sequenceId;
         entity.userId = this.userId;
+        entity.handle = this.handle;
         return entity;
     }
 
@@ -143,7 +194,7 @@ public class OrderEntity implements EntitySupport, Comparable<OrderEntity> {
 
     @Override
     public String toString() {
-        return "OrderEntity [id=" + id + ", sequenceId=" + sequenceId + ", direction=" + direction + ", userId="
+        return "OrderEntity [id=" + id + ", sequenceId=" + sequenceId + ", symbol=" + symbol + ", type=" + type + ", direction=" + direction + ", userId="
                 + userId + ", status=" + status + ", price=" + price + ", createdAt=" + createdAt + ", updatedAt="
                 + updatedAt + ", version=" + version + ", quantity=" + quantity + ", unfilledQuantity="
                 + unfilledQuantity + "]";
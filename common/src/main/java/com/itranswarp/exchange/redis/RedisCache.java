@@ -1,5 +1,7 @@
 package com.itranswarp.exchange.redis;
 
+import com.itranswarp.exchange.enums.SymbolEnum;
+
 public interface RedisCache {
 
     public interface Topic {
@@ -10,12 +12,19 @@ public interface RedisCache {
 
     }
 
+    /**
+     * 行情相关的key均按交易对区分，使用Key.of(key, symbol)获取实际的key
+     */
     public interface Key {
 
         String ORDER_BOOK = "_orderbook_";
 
+        String ORDER_BOOK_SEQ = "_OBLastSeqId_";
+
         String RECENT_TICKS = "_ticks_";
 
+        String RECENT_TICKS_SEQ = "_TickSeq_";
+
         String DAY_BARS = "_day_bars_";
 
         String HOUR_BARS = "_hour_bars_";
@@ -23,5 +32,11 @@ public interface RedisCache {
         String MIN_BARS = "_min_bars_";
 
         String SEC_BARS = "_sec_bars_";
+
+        String BARS_SEQ = "_BarSeq_";
+
+        static String of(String key, SymbolEnum symbol) {
+            return key + symbol.name();
+        }
     }
 }
@@ -7,11 +7,15 @@ import java.util.function.Consumer;
 
 import jakarta.annotation.PreDestroy;
 
+import io.lettuce.core.LettuceFutures;
 import io.lettuce.core.Range;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisFuture;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 import io.lettuce.core.pubsub.RedisPubSubAdapter;
 import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
@@ -122,6 +126,35 @@ public class RedisService {
         });
     }
 
+    /**
+     * 以管道方式批量发布消息：关闭自动flush，写入全部PUBLISH命令后flush一次，再一起等待全部结果
+     */
+    public void publishAll(String topic, List<String> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try (StatefulRedisConnection<String, String> connection = redisConnectionPool.borrowObject()) {
+            connection.setAutoFlushCommands(false);
+            try {
+                RedisAsyncCommands<String, String> commands = connection.async();
+                RedisFuture<?>[] futures = new RedisFuture<?>[messages.size()];
+                for (int i = 0; i < futures.length; i++) {
+                    futures[i] = commands.publish(topic, messages.get(i));
+                }
+                connection.flushCommands();
+                if (!LettuceFutures.awaitAll(connection.getTimeout(), futures)) {
+                    throw new RedisCommandTimeoutException("Publish " + futures.length + " messages timeout.");
+                }
+            } finally {
+                // 连接归还连接池前恢复自动flush:
+                connection.setAutoFlushCommands(true);
+            }
+        } catch (Exception e) {
+            logger.warn("publish redis failed.", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     public List<String> lrange(String key, long start, long end) {
         return executeSync((commands) -> {
             return commands.lrange(key, start, end);
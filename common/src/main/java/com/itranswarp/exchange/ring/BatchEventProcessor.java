@@ -0,0 +1,81 @@
+package com.itranswarp.exchange.ring;
+
+import java.util.function.Consumer;
+
+import com.itranswarp.exchange.support.LoggerSupport;
+
+/**
+ * 在独立线程上按顺序消费RingBuffer中的事件，每次处理所有已发布的事件后再更新消费序号。
+ *
+ * 处理失败的事件不会被跳过：需要重试的消费者在handler内部重试；handler抛出异常时消费序号停在失败的事件之前，
+ * 消费线程停止并保留门控序号（生产者不会覆盖未处理的事件），由onError决定如何处理（如交易引擎panic）。
+ */
+public final class BatchEventProcessor<E> extends LoggerSupport implements Runnable {
+
+    public final Sequence sequence = new Sequence(RingBuffer.INITIAL_SEQUENCE);
+    private final RingBuffer<E> ringBuffer;
+    private final SequenceBarrier barrier;
+    private final EventHandler<? super E> handler;
+    private final Consumer<Exception> onError;
+    private volatile boolean failed = false;
+
+    public BatchEventProcessor(RingBuffer<E> ringBuffer, EventHandler<? super E> handler) {
+        this(ringBuffer, handler, null);
+    }
+
+    /**
+     * @param onError handler抛出异常时在消费线程上调用，为null时只记录日志
+     */
+    public BatchEventProcessor(RingBuffer<E> ringBuffer, EventHandler<? super E> handler,
+            Consumer<Exception> onError) {
+        this.ringBuffer = ringBuffer;
+        this.barrier = ringBuffer.newBarrier();
+        this.handler = handler;
+        this.onError = onError;
+        ringBuffer.addGatingSequence(this.sequence);
+    }
+
+    /**
+     * 是否因handler抛出异常而停止
+     */
+    public boolean isFailed() {
+        return this.failed;
+    }
+
+    @Override
+    public void run() {
+        long next = this.sequence.get() + 1;
+        for (;;) {
+            long available = this.barrier.waitFor(next);
+            if (available < next) {
+                // 已停止且没有未处理的事件:
+                break;
+            }
+            for (long seq = next; seq <= available; seq++) {
+                try {
+                    this.handler.onEvent(this.ringBuffer.get(seq), seq, seq == available);
+                } catch (Exception e) {
+                    // 已处理的事件仍然提交，失败的事件保留:
+                    this.sequence.set(seq - 1);
+                    this.failed = true;
+                    logger.error(Thread.currentThread().getName() + " failed at sequence " + seq + ", stopped.", e);
+                    if (this.onError != null) {
+                        this.onError.accept(e);
+                    }
+                    return;
+                }
+            }
+            this.sequence.set(available);
+            next = available + 1;
+        }
+        this.ringBuffer.removeGatingSequence(this.sequence);
+        logger.info("{} stopped at sequence {}.", Thread.currentThread().getName(), this.sequence.get());
+    }
+
+    /**
+     * 停止消费，处理完已发布的事件后run()返回
+     */
+    public void halt() {
+        this.barrier.alert();
+    }
+}
@@ -0,0 +1,13 @@
+package com.itranswarp.exchange.ring;
+
+@FunctionalInterface
+public interface EventHandler<E> {
+
+    /**
+     * 处理一个事件，事件槽位在返回后可能被生产者覆盖，需要保留的数据必须在返回前取出
+     * @param event      事件槽位
+     * @param sequence   序号
+     * @param endOfBatch 是否为本批次可用事件的最后一个，消费者可在此时批量提交
+     */
+    void onEvent(E event, long sequence, boolean endOfBatch) throws Exception;
+}
@@ -0,0 +1,114 @@
+package com.itranswarp.exchange.ring;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 单生产者、多消费者的环形队列，事件槽位预先分配并反复使用。
+ *
+ * 生产者调用next()申请序号，写入get(sequence)返回的槽位后调用publish()发布；
+ * 每个消费者（BatchEventProcessor）按自己的速度读取，环形队列满时生产者等待最慢的消费者。
+ * 没有消费者时生产者直接覆盖旧的槽位。
+ */
+public final class RingBuffer<E> {
+
+    public static final long INITIAL_SEQUENCE = -1;
+
+    public final int bufferSize;
+    private final int mask;
+    private final Object[] entries;
+    private final WaitStrategy waitStrategy;
+    private final Sequence cursor = new Sequence(INITIAL_SEQUENCE); // 已发布的最大序号
+    private volatile Sequence[] gatingSequences = new Sequence[0]; // 消费者序号
+
+    // 仅生产者线程访问:
+    private long nextSequence = INITIAL_SEQUENCE;
+    private long cachedGatingSequence = INITIAL_SEQUENCE;
+
+    public RingBuffer(int bufferSize, Supplier<E> factory, WaitStrategy waitStrategy) {
+        if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of 2: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.mask = bufferSize - 1;
+        this.entries = new Object[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            this.entries[i] = factory.get();
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) this.entries[(int) sequence & this.mask];
+    }
+
+    /**
+     * 申请下一个序号（仅生产者线程），槽位仍被未消费完的事件占用时等待
+     */
+    public long next() {
+        long next = this.nextSequence + 1;
+        long wrapPoint = next - this.bufferSize;
+        if (wrapPoint > this.cachedGatingSequence) {
+            long minSequence;
+            while (wrapPoint > (minSequence = minimumGatingSequence(next - 1))) {
+                LockSupport.parkNanos(1);
+            }
+            this.cachedGatingSequence = minSequence;
+        }
+        this.nextSequence = next;
+        return next;
+    }
+
+    /**
+     * 发布已写入的槽位（仅生产者线程，按next()返回的顺序）
+     */
+    public void publish(long sequence) {
+        this.cursor.set(sequence);
+    }
+
+    public long getCursor() {
+        return this.cursor.get();
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return this.waitStrategy;
+    }
+
+    public SequenceBarrier newBarrier() {
+        return new SequenceBarrier(this.cursor, this.waitStrategy);
+    }
+
+    /**
+     * 登记消费者序号，从当前已发布的位置开始消费
+     */
+    public synchronized void addGatingSequence(Sequence sequence) {
+        sequence.set(this.cursor.get());
+        Sequence[] sequences = Arrays.copyOf(this.gatingSequences, this.gatingSequences.length + 1);
+        sequences[sequences.length - 1] = sequence;
+        this.gatingSequences = sequences;
+    }
+
+    public synchronized boolean removeGatingSequence(Sequence sequence) {
+        Sequence[] sequences = this.gatingSequences;
+        for (int i = 0; i < sequences.length; i++) {
+            if (sequences[i] == sequence) {
+                Sequence[] copy = new Sequence[sequences.length - 1];
+                System.arraycopy(sequences, 0, copy, 0, i);
+                System.arraycopy(sequences, i + 1, copy, i, copy.length - i);
+                this.gatingSequences = copy;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long minimumGatingSequence(long defaultValue) {
+        long min = defaultValue;
+        for (Sequence sequence : this.gatingSequences) {
+            min = Math.min(min, sequence.get());
+        }
+        return min;
+    }
+}
@@ -0,0 +1,50 @@
+package com.itranswarp.exchange.ring;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 生产者或消费者的序号。前后填充各一个缓存行，避免与相邻对象的字段伪共享
+ */
+public final class Sequence extends SequenceValue {
+
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public Sequence(long initialValue) {
+        VALUE.setRelease(this, initialValue);
+    }
+
+    public long get() {
+        return (long) VALUE.getAcquire(this);
+    }
+
+    /**
+     * 发布序号，此前对事件槽位的写入对读到该序号的线程可见
+     */
+    public void set(long value) {
+        VALUE.setRelease(this, value);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
+
+abstract class SequencePadding {
+    long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class SequenceValue extends SequencePadding {
+    long value;
+}
@@ -0,0 +1,40 @@
+package com.itranswarp.exchange.ring;
+
+/**
+ * 消费者等待生产者发布的屏障
+ */
+public final class SequenceBarrier {
+
+    private final Sequence cursor;
+    private final WaitStrategy waitStrategy;
+    private volatile boolean alerted = false;
+
+    SequenceBarrier(Sequence cursor, WaitStrategy waitStrategy) {
+        this.cursor = cursor;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * 等待sequence被发布，返回已发布的最大序号（可能大于sequence，消费者可一次处理一批）；
+     * 被alert()后不再等待，此时返回值可能小于sequence
+     */
+    public long waitFor(long sequence) {
+        int counter = 0;
+        long available;
+        while ((available = this.cursor.get()) < sequence) {
+            if (this.alerted) {
+                break;
+            }
+            counter = this.waitStrategy.idle(counter);
+        }
+        return available;
+    }
+
+    public void alert() {
+        this.alerted = true;
+    }
+
+    public boolean isAlerted() {
+        return this.alerted;
+    }
+}
@@ -0,0 +1,63 @@
+package com.itranswarp.exchange.ring;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 消费者等待新事件的方式
+ */
+public enum WaitStrategy {
+
+    /**
+     * 忙等，延迟最低，但始终占满一个CPU核
+     */
+    BUSY_SPIN {
+        @Override
+        int idle(int counter) {
+            Thread.onSpinWait();
+            return counter;
+        }
+    },
+
+    /**
+     * 自旋一段时间后让出CPU，延迟较低，空闲时仍占用CPU
+     */
+    YIELDING {
+        @Override
+        int idle(int counter) {
+            if (counter < SPIN_TRIES) {
+                Thread.onSpinWait();
+                return counter + 1;
+            }
+            Thread.yield();
+            return counter;
+        }
+    },
+
+    /**
+     * 自旋、让出CPU后短暂休眠，空闲时几乎不占用CPU
+     */
+    PARK {
+        @Override
+        int idle(int counter) {
+            if (counter < SPIN_TRIES) {
+                Thread.onSpinWait();
+                return counter + 1;
+            }
+            if (counter < SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+                return counter + 1;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+            return counter;
+        }
+    };
+
+    static final int SPIN_TRIES = 100;
+    static final int YIELD_TRIES = 100;
+    static final long PARK_NANOS = 1000;
+
+    /**
+     * 等待一次，counter为本次等待已空转的次数，返回新的计数
+     */
+    abstract int idle(int counter);
+}
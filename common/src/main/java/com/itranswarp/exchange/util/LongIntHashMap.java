@@ -0,0 +1,204 @@
+package com.itranswarp.exchange.util;
+
+import java.util.Arrays;
+
+/**
+ * long => int的开放寻址哈希表，key和value均不装箱。
+ *
+ * 只允许一个线程写入。其他线程可以并发读取，但可能读到过期的value，调用方需自行校验读到的结果；
+ * 删除使用墓碑标记，并发读取时不会因为删除而漏掉仍然存在的key。
+ */
+public final class LongIntHashMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long DELETED = Long.MIN_VALUE + 1;
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final int[] values;
+        final int mask;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(this.keys, EMPTY);
+        }
+    }
+
+    private volatile Table table;
+    private int size; // 有效key数量
+    private int used; // 有效key + 墓碑数量
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int initialCapacity) {
+        this.table = new Table(tableSizeFor(initialCapacity * 2));
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * 查找key，不存在时返回missingValue
+     */
+    public int get(long key, int missingValue) {
+        Table t = this.table;
+        long[] keys = t.keys;
+        int index = hash(key) & t.mask;
+        for (int n = 0; n <= t.mask; n++) {
+            long k = keys[index];
+            if (k == key) {
+                return t.values[index];
+            }
+            if (k == EMPTY) {
+                break;
+            }
+            index = (index + 1) & t.mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        Table t = this.table;
+        int index = hash(key) & t.mask;
+        for (int n = 0; n <= t.mask; n++) {
+            long k = t.keys[index];
+            if (k == key) {
+                return true;
+            }
+            if (k == EMPTY) {
+                break;
+            }
+            index = (index + 1) & t.mask;
+        }
+        return false;
+    }
+
+    /**
+     * 写入key，返回旧值，不存在时返回missingValue
+     */
+    public int put(long key, int value, int missingValue) {
+        checkKey(key);
+        Table t = this.table;
+        int index = hash(key) & t.mask;
+        int tombstone = -1;
+        for (;;) {
+            long k = t.keys[index];
+            if (k == key) {
+                int old = t.values[index];
+                t.values[index] = value;
+                return old;
+            }
+            if (k == EMPTY) {
+                break;
+            }
+            if (k == DELETED && tombstone < 0) {
+                tombstone = index;
+            }
+            index = (index + 1) & t.mask;
+        }
+        if (tombstone >= 0) {
+            // 复用墓碑位置:
+            t.values[tombstone] = value;
+            t.keys[tombstone] = key;
+        } else {
+            t.values[index] = value;
+            t.keys[index] = key;
+            this.used++;
+        }
+        this.size++;
+        if (this.used * 4 >= t.keys.length * 3) {
+            // 墓碑较多时原容量重建，否则扩容:
+            rehash(this.size * 2 >= t.keys.length ? t.keys.length * 2 : t.keys.length);
+        }
+        return missingValue;
+    }
+
+    /**
+     * 删除key，返回旧值，不存在时返回missingValue
+     */
+    public int remove(long key, int missingValue) {
+        Table t = this.table;
+        int index = hash(key) & t.mask;
+        for (int n = 0; n <= t.mask; n++) {
+            long k = t.keys[index];
+            if (k == key) {
+                t.keys[index] = DELETED;
+                this.size--;
+                return t.values[index];
+            }
+            if (k == EMPTY) {
+                break;
+            }
+            index = (index + 1) & t.mask;
+        }
+        return missingValue;
+    }
+
+    public void clear() {
+        this.table = new Table(this.table.keys.length);
+        this.size = 0;
+        this.used = 0;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        Table t = this.table;
+        for (int i = 0; i < t.keys.length; i++) {
+            long k = t.keys[i];
+            if (k != EMPTY && k != DELETED) {
+                consumer.accept(k, t.values[i]);
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        Table old = this.table;
+        Table t = new Table(capacity);
+        for (int i = 0; i < old.keys.length; i++) {
+            long k = old.keys[i];
+            if (k != EMPTY && k != DELETED) {
+                int index = hash(k) & t.mask;
+                while (t.keys[index] != EMPTY) {
+                    index = (index + 1) & t.mask;
+                }
+                t.keys[index] = k;
+                t.values[index] = old.values[i];
+            }
+        }
+        this.used = this.size;
+        // 新表填充完成后再发布给读线程:
+        this.table = t;
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY || key == DELETED) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int n) {
+        int capacity = 16;
+        while (capacity < n) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
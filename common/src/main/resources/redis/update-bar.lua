@@ -7,6 +7,7 @@
     2. min-bar的key
     3. hour-bar的key
     4. day-bar的key
+    5. 存储上次更新的SequenceId的key
   ARGV:
     1. sequenceId
     2. secTimestamp
@@ -18,14 +19,15 @@
     8. lowPrice
     9. closePrice
     10. quantity
+    11. symbol
 
   Redis存储的Bar数据结构：[timestamp, open, high, low, close, quantity, volume]
-  ZScoredSet:
-    key: '_day_bars_'
-    key: '_hour_bars_'
-    key: '_min_bars_'
-    key: '_sec_bars_'
-  Key: _BarSeq_ 存储上次更新的SequenceId
+  ZScoredSet（均以交易对为后缀）:
+    key: '_day_bars_BTC_USD'
+    key: '_hour_bars_BTC_USD'
+    key: '_min_bars_BTC_USD'
+    key: '_sec_bars_BTC_USD'
+  Key: _BarSeq_BTC_USD 存储上次更新的SequenceId
 --]]
 
 local function merge(existBar, newBar)
@@ -35,7 +37,7 @@ local function merge(existBar, newBar)
     existBar[6] = existBar[6] + newBar[6] -- 更新quantity
 end
 
-local function tryMergeLast(barType, seqId, zsetBars, timestamp, newBar)
+local function tryMergeLast(symbol, barType, seqId, zsetBars, timestamp, newBar)
     local topic = 'notification'
     local popedScore, popedBar
     -- 查找最后一个Bar:
@@ -43,7 +45,7 @@ local function tryMergeLast(barType, seqId, zsetBars, timestamp, newBar)
     if #poped == 0 then
         -- ZScoredSet无任何bar, 直接添加:
         redis.call('ZADD', zsetBars, timestamp, cjson.encode(newBar))
-        redis.call('PUBLISH', topic, '{"type":"bar","resolution":"' .. barType .. '","sequenceId":' .. seqId .. ',"data":' .. cjson.encode(newBar) .. '}')
+        redis.call('PUBLISH', topic, '{"type":"bar","symbol":"' .. symbol .. '","resolution":"' .. barType .. '","sequenceId":' .. seqId .. ',"data":' .. cjson.encode(newBar) .. '}')
     else
         popedBar = cjson.decode(poped[1])
         popedScore = tonumber(poped[2])
@@ -51,12 +53,12 @@ local function tryMergeLast(barType, seqId, zsetBars, timestamp, newBar)
             -- 合并Bar并发送通知:
             merge(popedBar, newBar)
             redis.call('ZADD', zsetBars, popedScore, cjson.encode(popedBar))
-            redis.call('PUBLISH', topic, '{"type":"bar","resolution":"' .. barType .. '","sequenceId":' .. seqId .. ',"data":' .. cjson.encode(popedBar) .. '}')
+            redis.call('PUBLISH', topic, '{"type":"bar","symbol":"' .. symbol .. '","resolution":"' .. barType .. '","sequenceId":' .. seqId .. ',"data":' .. cjson.encode(popedBar) .. '}')
         else
             -- 可持久化最后一个Bar，生成新的Bar:
             if popedScore < timestamp then
                 redis.call('ZADD', zsetBars, popedScore, cjson.encode(popedBar), timestamp, cjson.encode(newBar))
-                redis.call('PUBLISH', topic, '{"type":"bar","resolution":"' .. barType .. '","sequenceId":' .. seqId .. ',"data":' .. cjson.encode(newBar) .. '}')
+                redis.call('PUBLISH', topic, '{"type":"bar","symbol":"' .. symbol .. '","resolution":"' .. barType .. '","sequenceId":' .. seqId .. ',"data":' .. cjson.encode(newBar) .. '}')
                 return popedBar
             end
         end
@@ -65,7 +67,8 @@ local function tryMergeLast(barType, seqId, zsetBars, timestamp, newBar)
 end
 
 local seqId = ARGV[1]
-local KEY_BAR_SEQ = '_BarSeq_'
+local symbol = ARGV[11]
+local KEY_BAR_SEQ = KEYS[5]
 
 local zsetBars, topics, barTypeStartTimes
 local openPrice, highPrice, lowPrice, closePrice, quantity
@@ -86,7 +89,7 @@ if not seq or tonumber(seqId) > tonumber(seq) then
     local names = { 'SEC', 'MIN', 'HOUR', 'DAY' }
     -- 检查是否可以merge:
     for i = 1, 4 do
-        bar = tryMergeLast(names[i], seqId, zsetBars[i], barTypeStartTimes[i], { barTypeStartTimes[i], openPrice, highPrice, lowPrice, closePrice, quantity })
+        bar = tryMergeLast(symbol, names[i], seqId, zsetBars[i], barTypeStartTimes[i], { barTypeStartTimes[i], openPrice, highPrice, lowPrice, closePrice, quantity })
         if bar then
             persistBars[names[i]] = bar
         end
@@ -1,8 +1,9 @@
 --[[
-刷新OrderBook快照:
+刷新OrderBook快照（仅保存，变化通过orderbook_delta增量推送）:
 
 KEYS:
   1: key: OrderBook快照的key
+  2: 上次更新的SequenceId的key
 
 ARGV:
   1: seqId: 本次的SequenceId
@@ -10,7 +11,7 @@ ARGV:
 
 ]]--
 
-local KEY_LAST_SEQ = '_OBLastSeqId_'
+local KEY_LAST_SEQ = KEYS[2]
 local key = KEYS[1]
 local seqId = ARGV[1]
 local data = ARGV[2]
@@ -24,8 +25,6 @@ if not lastSeqId or tonumber(seqId) > tonumber(lastSeqId) then
     redis.call('SET', KEY_LAST_SEQ, seqId)
     -- 保存OrderBook的JSON:
     redis.call('SET', key, data)
-    -- 发送通知:
-    redis.call('PUBLISH', 'notification', '{"type":"orderbook","data":' .. data .. '}')
     return true
 end
 
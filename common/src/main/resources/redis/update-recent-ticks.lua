@@ -4,19 +4,22 @@
 
 KEYS:
   1: 最新Ticks的Key
+  2: 上次更新的SequenceID的Key
 
 ARGV:
   1: sequenceId
   2: JSON字符串表示的tick数组："[{...},{...},...]"
   3: JSON字符串表示的tick数组："["{...}","{...}",...]"
+  4: 交易对
 --]]
 
-local KEY_LAST_SEQ = '_TickSeq_' -- 上次更新的SequenceID
+local KEY_LAST_SEQ = KEYS[2] -- 上次更新的SequenceID
 local LIST_RECENT_TICKS = KEYS[1] -- 最新Ticks的Key
 
 local seqId = ARGV[1] -- 输入的SequenceID
 local jsonData = ARGV[2] -- 输入的JSON字符串表示的tick数组："[{...},{...},...]"
 local strData = ARGV[3] -- 输入的JSON字符串表示的tick数组："["{...}","{...}",...]"
+local symbol = ARGV[4] -- 交易对
 
 -- 获取上次更新的sequenceId:
 local lastSeqId = redis.call('GET', KEY_LAST_SEQ)
@@ -24,7 +27,7 @@ local ticks, len;
 
 if not lastSeqId or tonumber(seqId) > tonumber(lastSeqId) then
     -- 广播:
-    redis.call('PUBLISH', 'notification', '{"type":"tick","sequenceId":' .. seqId .. ',"data":' .. jsonData .. '}')
+    redis.call('PUBLISH', 'notification', '{"type":"tick","symbol":"' .. symbol .. '","sequenceId":' .. seqId .. ',"data":' .. jsonData .. '}')
     -- 保存当前sequence id:
     redis.call('SET', KEY_LAST_SEQ, seqId)
     -- 更新最新tick列表:
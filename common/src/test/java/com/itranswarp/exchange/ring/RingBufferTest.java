@@ -0,0 +1,98 @@
+package com.itranswarp.exchange.ring;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class RingBufferTest {
+
+    static class LongEvent {
+        long value;
+    }
+
+    @Test
+    void consumersSeeAllEventsInOrder() throws InterruptedException {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            var ring = new RingBuffer<>(16, LongEvent::new, waitStrategy);
+            List<Long> fast = new ArrayList<>();
+            List<Long> slow = new ArrayList<>();
+            long[] batches = new long[1];
+            var p1 = new BatchEventProcessor<LongEvent>(ring, (event, sequence, endOfBatch) -> {
+                fast.add(event.value);
+                if (endOfBatch) {
+                    batches[0]++;
+                }
+            });
+            var p2 = new BatchEventProcessor<LongEvent>(ring, (event, sequence, endOfBatch) -> {
+                if (sequence % 100 == 0) {
+                    Thread.sleep(1);
+                }
+                slow.add(event.value);
+            });
+            var t1 = new Thread(p1);
+            var t2 = new Thread(p2);
+            t1.start();
+            t2.start();
+            // 远超容量，生产者必须等待较慢的消费者:
+            int count = 10000;
+            for (int i = 0; i < count; i++) {
+                long seq = ring.next();
+                ring.get(seq).value = i * 10L;
+                ring.publish(seq);
+            }
+            // 停止后仍处理完已发布的事件:
+            p1.halt();
+            p2.halt();
+            t1.join();
+            t2.join();
+            assertEquals(count, fast.size());
+            assertEquals(count, slow.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(i * 10L, fast.get(i));
+                assertEquals(i * 10L, slow.get(i));
+            }
+            assertTrue(batches[0] > 0 && batches[0] <= count);
+            assertEquals(count - 1, p1.sequence.get());
+            // 消费者退出后生产者不再等待:
+            for (int i = 0; i < 100; i++) {
+                ring.publish(ring.next());
+            }
+        }
+    }
+
+    @Test
+    void failedEventIsNotSkipped() throws InterruptedException {
+        var ring = new RingBuffer<>(16, LongEvent::new, WaitStrategy.PARK);
+        List<Long> processed = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+        var processor = new BatchEventProcessor<LongEvent>(ring, (event, sequence, endOfBatch) -> {
+            if (event.value == 5) {
+                throw new IllegalStateException("write failed");
+            }
+            processed.add(event.value);
+        }, errors::add);
+        for (int i = 0; i < 10; i++) {
+            long seq = ring.next();
+            ring.get(seq).value = i;
+            ring.publish(seq);
+        }
+        var thread = new Thread(processor);
+        thread.start();
+        thread.join();
+        // 失败的事件及之后的事件都未处理，消费序号停在失败之前:
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L), processed);
+        assertEquals(1, errors.size());
+        assertTrue(processor.isFailed());
+        assertEquals(4, processor.sequence.get());
+        // 门控序号保留，生产者不能覆盖未处理的事件:
+        assertTrue(ring.removeGatingSequence(processor.sequence));
+    }
+
+    @Test
+    void invalidBufferSize() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(1000, LongEvent::new, WaitStrategy.PARK));
+    }
+}
@@ -16,6 +16,7 @@ import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.itranswarp.exchange.enums.BarType;
+import com.itranswarp.exchange.enums.SymbolEnum;
 import com.itranswarp.exchange.message.AbstractMessage;
 import com.itranswarp.exchange.message.TickMessage;
 import com.itranswarp.exchange.messaging.MessageConsumer;
@@ -85,8 +86,8 @@ public class QuotationService extends LoggerSupport {
 
     // 处理一个Tick消息:
     void processMessage(TickMessage message) {
-        // 忽略重复的消息:
-        if (message.sequenceId < this.sequenceId) {
+        // 忽略重复的消息（每个事件只有一个Tick消息，备用引擎接管时可能重发）:
+        if (message.sequenceId <= this.sequenceId) {
             return;
         }
         if (logger.isDebugEnabled()) {
@@ -95,6 +96,7 @@ public class QuotationService extends LoggerSupport {
         // 对一个Tick消息中的多个Tick先进行合并。
         // 生成[tick, tick...]列表以及合并为一个Bar（k线）:
         this.sequenceId = message.sequenceId;
+        final SymbolEnum symbol = message.symbol;
         final long createdAt = message.createdAt;
         StringJoiner ticksStrJoiner = new StringJoiner(",", "[", "]");
         StringJoiner ticksJoiner = new StringJoiner(",", "[", "]");
@@ -130,14 +132,15 @@ public class QuotationService extends LoggerSupport {
         long dayStartTime = Instant.ofEpochMilli(hourStartTime).atZone(zoneId).withHour(0).toEpochSecond() * 1000; // 日K的开始时间，与TimeZone相关
 
         // ******************** k线数据准备完毕 ***************************
-        // 1、更新Redis最近的Ticks缓存:
+        // 1、更新Redis最近的Ticks缓存（按交易对区分）:
         String ticksData = ticksJoiner.toString();
         if (logger.isDebugEnabled()) {
             logger.debug("generated ticks data: {}", ticksData);
         }
         Boolean tickOk = redisService.executeScriptReturnBoolean(this.shaUpdateRecentTicksLua,
-                new String[] { RedisCache.Key.RECENT_TICKS },
-                new String[] { String.valueOf(this.sequenceId), ticksData, ticksStrJoiner.toString() });
+                new String[] { RedisCache.Key.of(RedisCache.Key.RECENT_TICKS, symbol),
+                        RedisCache.Key.of(RedisCache.Key.RECENT_TICKS_SEQ, symbol) },
+                new String[] { String.valueOf(this.sequenceId), ticksData, ticksStrJoiner.toString(), symbol.name() });
         if (!tickOk.booleanValue()) {
             logger.warn("ticks are ignored by Redis.");
             return;
@@ -147,8 +150,11 @@ public class QuotationService extends LoggerSupport {
 
         // 3、更新redis各种类型的K线:
         String strCreatedBars = redisService.executeScriptReturnString(this.shaUpdateBarLua,
-                new String[] { RedisCache.Key.SEC_BARS, RedisCache.Key.MIN_BARS, RedisCache.Key.HOUR_BARS,
-                        RedisCache.Key.DAY_BARS },
+                new String[] { RedisCache.Key.of(RedisCache.Key.SEC_BARS, symbol),
+                        RedisCache.Key.of(RedisCache.Key.MIN_BARS, symbol),
+                        RedisCache.Key.of(RedisCache.Key.HOUR_BARS, symbol),
+                        RedisCache.Key.of(RedisCache.Key.DAY_BARS, symbol),
+                        RedisCache.Key.of(RedisCache.Key.BARS_SEQ, symbol) },
                 new String[] { // ARGV
                         String.valueOf(this.sequenceId), // sequence id
                         String.valueOf(secStartTime), // sec-start-time
@@ -159,25 +165,27 @@ public class QuotationService extends LoggerSupport {
                         String.valueOf(highPrice), // high
                         String.valueOf(lowPrice), // low
                         String.valueOf(closePrice), // close
-                        String.valueOf(quantity) // quantity
+                        String.valueOf(quantity), // quantity
+                        symbol.name() // symbol
                 });
         logger.info("returned created bars: " + strCreatedBars);
         // 将Redis返回的K线保存至数据库:
         Map<BarType, BigDecimal[]> barMap = JsonUtil.readJson(strCreatedBars, TYPE_BARS);
         if (!barMap.isEmpty()) {
-            SecBarEntity secBar = createBar(SecBarEntity::new, barMap.get(BarType.SEC));
-            MinBarEntity minBar = createBar(MinBarEntity::new, barMap.get(BarType.MIN));
-            HourBarEntity hourBar = createBar(HourBarEntity::new, barMap.get(BarType.HOUR));
-            DayBarEntity dayBar = createBar(DayBarEntity::new, barMap.get(BarType.DAY));
+            SecBarEntity secBar = createBar(SecBarEntity::new, symbol, barMap.get(BarType.SEC));
+            MinBarEntity minBar = createBar(MinBarEntity::new, symbol, barMap.get(BarType.MIN));
+            HourBarEntity hourBar = createBar(HourBarEntity::new, symbol, barMap.get(BarType.HOUR));
+            DayBarEntity dayBar = createBar(DayBarEntity::new, symbol, barMap.get(BarType.DAY));
             this.quotationDbService.saveBars(secBar, minBar, hourBar, dayBar);
         }
     }
 
-    static <T extends AbstractBarEntity> T createBar(Supplier<T> fn, BigDecimal[] data) {
+    static <T extends AbstractBarEntity> T createBar(Supplier<T> fn, SymbolEnum symbol, BigDecimal[] data) {
         if (data == null) {
             return null;
         }
         T t = fn.get();
+        t.symbol = symbol;
         t.startTime = data[0].longValue();
         t.openPrice = data[1];
         t.highPrice = data[2];
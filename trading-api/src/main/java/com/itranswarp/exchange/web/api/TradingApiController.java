@@ -29,7 +29,9 @@ import com.itranswarp.exchange.bean.OrderBookBean;
 import com.itranswarp.exchange.bean.OrderRequestBean;
 import com.itranswarp.exchange.bean.SimpleMatchDetailRecord;
 import com.itranswarp.exchange.ctx.UserContext;
+import com.itranswarp.exchange.enums.SymbolEnum;
 import com.itranswarp.exchange.message.ApiResultMessage;
+import com.itranswarp.exchange.message.event.OrderCancelAllEvent;
 import com.itranswarp.exchange.message.event.OrderCancelEvent;
 import com.itranswarp.exchange.message.event.OrderRequestEvent;
 import com.itranswarp.exchange.model.trade.OrderEntity;
@@ -109,8 +111,8 @@ public class TradingApiController extends AbstractApiController {
 
     @ResponseBody
     @GetMapping(value = "/orderBook", produces = "application/json")
-    public String getOrderBook() {
-        String data = redisService.get(RedisCache.Key.ORDER_BOOK);
+    public String getOrderBook(@RequestParam(value = "symbol", defaultValue = "BTC_USD") SymbolEnum symbol) {
+        String data = redisService.get(RedisCache.Key.of(RedisCache.Key.ORDER_BOOK, symbol));
         return data == null ? OrderBookBean.EMPTY : data;
     }
 
@@ -120,8 +122,8 @@ public class TradingApiController extends AbstractApiController {
      */
     @ResponseBody
     @GetMapping(value = "/ticks", produces = "application/json")
-    public String getRecentTicks() {
-        List<String> data = redisService.lrange(RedisCache.Key.RECENT_TICKS, 0, -1);
+    public String getRecentTicks(@RequestParam(value = "symbol", defaultValue = "BTC_USD") SymbolEnum symbol) {
+        List<String> data = redisService.lrange(RedisCache.Key.of(RedisCache.Key.RECENT_TICKS, symbol), 0, -1);
         if (data == null || data.isEmpty()) {
             return "[]";
         }
@@ -138,18 +140,18 @@ public class TradingApiController extends AbstractApiController {
      */
     @ResponseBody
     @GetMapping(value = "/bars/day", produces = "application/json")
-    public String getDayBars() {
+    public String getDayBars(@RequestParam(value = "symbol", defaultValue = "BTC_USD") SymbolEnum symbol) {
         long end = System.currentTimeMillis();
         long start = end - 366 * 86400_000;
-        return getBars(RedisCache.Key.HOUR_BARS, start, end);
+        return getBars(RedisCache.Key.of(RedisCache.Key.HOUR_BARS, symbol), start, end);
     }
 
     @ResponseBody
     @GetMapping(value = "/bars/hour", produces = "application/json")
-    public String getHourBars() {
+    public String getHourBars(@RequestParam(value = "symbol", defaultValue = "BTC_USD") SymbolEnum symbol) {
         long end = System.currentTimeMillis();
         long start = end - 720 * 3600_000;
-        return getBars(RedisCache.Key.HOUR_BARS, start, end);
+        return getBars(RedisCache.Key.of(RedisCache.Key.HOUR_BARS, symbol), start, end);
     }
 
     /**
@@ -158,18 +160,18 @@ public class TradingApiController extends AbstractApiController {
      */
     @ResponseBody
     @GetMapping(value = "/bars/min", produces = "application/json")
-    public String getMinBars() {
+    public String getMinBars(@RequestParam(value = "symbol", defaultValue = "BTC_USD") SymbolEnum symbol) {
         long end = System.currentTimeMillis();
         long start = end - 1440 * 60_000;
-        return getBars(RedisCache.Key.MIN_BARS, start, end);
+        return getBars(RedisCache.Key.of(RedisCache.Key.MIN_BARS, symbol), start, end);
     }
 
     @ResponseBody
     @GetMapping(value = "/bars/sec", produces = "application/json")
-    public String getSecBars() {
+    public String getSecBars(@RequestParam(value = "symbol", defaultValue = "BTC_USD") SymbolEnum symbol) {
         long end = System.currentTimeMillis();
         long start = end - 3600 * 1_000;
-        return getBars(RedisCache.Key.SEC_BARS, start, end);
+        return getBars(RedisCache.Key.of(RedisCache.Key.SEC_BARS, symbol), start, end);
     }
 
     /**
@@ -249,6 +251,35 @@ public class TradingApiController extends AbstractApiController {
         return deferred;
     }
 
+    /**
+     * Cancel all active orders of current user.
+     *
+     * @param symbol Only cancel orders of this symbol, or all symbols if absent.
+     */
+    @PostMapping(value = "/orders/cancel-all", produces = "application/json")
+    @ResponseBody
+    public DeferredResult<ResponseEntity<String>> cancelAllOrders(
+            @RequestParam(value = "symbol", required = false) SymbolEnum symbol) throws IOException {
+        final Long userId = UserContext.getRequiredUserId();
+        final String refId = IdUtil.generateUniqueId();
+        var message = new OrderCancelAllEvent();
+        message.refId = refId;
+        message.userId = userId;
+        message.symbol = symbol;
+        message.createdAt = System.currentTimeMillis();
+        ResponseEntity<String> timeout = new ResponseEntity<>(getTimeoutJson(), HttpStatus.BAD_REQUEST);
+        DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>(this.asyncTimeout, timeout);
+        deferred.onTimeout(() -> {
+            logger.warn("deferred cancel all request refId={} timeout.", refId);
+            this.deferredResultMap.remove(refId);
+        });
+        // track deferred:
+        this.deferredResultMap.put(refId, deferred);
+        logger.info("cancel all orders message created: {}", message);
+        this.sendEventService.sendMessage(message);
+        return deferred;
+    }
+
     /**
      * Create a new order.
      * 外部创建订单api
@@ -265,6 +296,8 @@ public class TradingApiController extends AbstractApiController {
         var event = new OrderRequestEvent();
         event.refId = refId;
         event.userId = userId;
+        event.symbol = orderRequest.symbol;
+        event.type = orderRequest.type;
         event.direction = orderRequest.direction;
         event.price = orderRequest.price;
         event.quantity = orderRequest.quantity;
@@ -1,5 +1,6 @@
 package com.itranswarp.exchange.web.api;
 
+import java.util.ArrayList;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,8 +9,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.itranswarp.exchange.bean.BatchTransferRequestBean;
 import com.itranswarp.exchange.bean.TransferRequestBean;
 import com.itranswarp.exchange.enums.UserType;
+import com.itranswarp.exchange.message.event.BatchTransferEvent;
 import com.itranswarp.exchange.message.event.TransferEvent;
 import com.itranswarp.exchange.service.SendEventService;
 import com.itranswarp.exchange.support.AbstractApiController;
@@ -43,4 +46,31 @@ public class TradingInternalApiController extends AbstractApiController {
         logger.info("transfer event sent: {}", message);
         return Map.of("result", Boolean.TRUE);
     }
+
+    /**
+     * 处理一批转账请求，全部成功或全部失败，根据batchId去重，整批只定序一次。
+     */
+    @PostMapping("/transfers")
+    public Map<String, Boolean> batchTransfer(@RequestBody BatchTransferRequestBean batchRequest) {
+        batchRequest.validate();
+        logger.info("batch transfer request: batchId={}, transfers={}", batchRequest.batchId,
+                batchRequest.transfers.size());
+
+        var message = new BatchTransferEvent();
+        // IMPORTANT: set uniqueId to make sure the message will be sequenced only once:
+        message.uniqueId = batchRequest.batchId;
+        message.legs = new ArrayList<>(batchRequest.transfers.size());
+        for (TransferRequestBean transfer : batchRequest.transfers) {
+            var leg = new BatchTransferEvent.Leg();
+            leg.fromUserId = transfer.fromUserId;
+            leg.toUserId = transfer.toUserId;
+            leg.asset = transfer.asset;
+            leg.amount = transfer.amount;
+            leg.sufficient = transfer.fromUserId.longValue() != UserType.DEBT.getInternalUserId();
+            message.legs.add(leg);
+        }
+        this.sendEventService.sendMessage(message);
+        logger.info("batch transfer event sent: {}", message);
+        return Map.of("result", Boolean.TRUE);
+    }
 }
@@ -0,0 +1,174 @@
+package com.itranswarp.exchange;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.itranswarp.exchange.bean.OrderBookBean;
+import com.itranswarp.exchange.bean.OrderBookDeltaBean;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.MatchType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.message.ApiResultMessage;
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.message.NotificationMessage;
+import com.itranswarp.exchange.model.quotation.TickEntity;
+import com.itranswarp.exchange.model.trade.BalanceEntity;
+import com.itranswarp.exchange.model.trade.MatchDetailEntity;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderRecord;
+
+/**
+ * 交易引擎处理一个事件（或一个批次结束时）的全部输出，作为RingBuffer的槽位反复使用
+ */
+public class EngineOutput {
+
+    public final List<OrderEntity> orders = new ArrayList<>(); // 已结束的taker订单（落库，已结束的maker见成交记录）
+    public final List<MatchDetailEntity> matchDetails = new ArrayList<>(); // 成交明细（落库）
+    public final List<ApiResultMessage> apiResults = new ArrayList<>(); // API结果（Redis）
+    public final List<NotificationMessage> notifications = new ArrayList<>(); // 通知（Redis）
+    public final List<OrderBookBean> orderBooks = new ArrayList<>(); // OrderBook快照（Redis）
+    public final List<OrderBookDeltaBean> orderBookDeltas = new ArrayList<>(); // OrderBook增量（Redis推送）
+    public final List<AbstractEvent> events = new ArrayList<>(); // 已处理的事件（本地日志）
+    public final List<BalanceEntity> balances = new ArrayList<>(); // 余额有变化的用户资产（落库）
+    public boolean batchEnd; // 是否为定序批次（一批Kafka消息）的最后一个输出
+    private Fill[] fills = new Fill[16]; // 成交记录池（槽位复用时一并复用）
+    private int fillCount;
+
+    /**
+     * 消息总数
+     */
+    public int size() {
+        return this.orders.size() + this.matchDetails.size() + this.apiResults.size()
+                + this.notifications.size() + this.orderBooks.size() + this.orderBookDeltas.size() + this.events.size()
+                + this.balances.size() + this.fillCount;
+    }
+
+    /**
+     * 追加一条成交记录，返回池中复用的对象，由调用方写入全部字段
+     */
+    Fill addFill() {
+        if (this.fillCount == this.fills.length) {
+            this.fills = Arrays.copyOf(this.fills, this.fillCount * 2);
+        }
+        Fill fill = this.fills[this.fillCount];
+        if (fill == null) {
+            fill = this.fills[this.fillCount] = new Fill();
+        }
+        this.fillCount++;
+        return fill;
+    }
+
+    /**
+     * 成交记录数
+     */
+    public int fillCount() {
+        return this.fillCount;
+    }
+
+    public Fill fill(int index) {
+        if (index >= this.fillCount) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return this.fills[index];
+    }
+
+    /**
+     * 复制全部输出（列表中的对象发布后不再修改，成交记录逐个复制），用于在槽位复用后继续持有
+     */
+    EngineOutput copy() {
+        EngineOutput copy = new EngineOutput();
+        copy.orders.addAll(this.orders);
+        copy.matchDetails.addAll(this.matchDetails);
+        copy.apiResults.addAll(this.apiResults);
+        copy.notifications.addAll(this.notifications);
+        copy.orderBooks.addAll(this.orderBooks);
+        copy.orderBookDeltas.addAll(this.orderBookDeltas);
+        copy.events.addAll(this.events);
+        copy.balances.addAll(this.balances);
+        copy.batchEnd = this.batchEnd;
+        for (int i = 0; i < this.fillCount; i++) {
+            copy.addFill().copyFrom(this.fills[i]);
+        }
+        return copy;
+    }
+
+    void clear() {
+        this.orders.clear();
+        this.matchDetails.clear();
+        this.apiResults.clear();
+        this.notifications.clear();
+        this.orderBooks.clear();
+        this.orderBookDeltas.clear();
+        this.events.clear();
+        this.balances.clear();
+        this.batchEnd = false;
+        this.fillCount = 0;
+    }
+
+    /**
+     * 一次成交（taker与一个maker）的定点数记录：定序线程只写入基本类型字段，
+     * 成交明细、Tick、maker通知和已结束的maker订单由各输出线程按需转换生成
+     */
+    public static final class Fill {
+
+        public long sequenceId;
+        public long createdAt;
+        public SymbolEnum symbol;
+        public long takerOrderId;
+        public long takerUserId;
+        public Direction takerDirection;
+        public long quantityUnits; // 成交数量，成交价即maker价格
+        public final OrderRecord maker = new OrderRecord(); // 成交后的maker快照
+        public int notificationIndex; // maker通知在notifications中的位置（之前的通知先推送）
+
+        void copyFrom(Fill f) {
+            this.sequenceId = f.sequenceId;
+            this.createdAt = f.createdAt;
+            this.symbol = f.symbol;
+            this.takerOrderId = f.takerOrderId;
+            this.takerUserId = f.takerUserId;
+            this.takerDirection = f.takerDirection;
+            this.quantityUnits = f.quantityUnits;
+            this.maker.copyFrom(f.maker);
+            this.notificationIndex = f.notificationIndex;
+        }
+
+        public BigDecimal price() {
+            return this.maker.price();
+        }
+
+        public BigDecimal quantity() {
+            return this.maker.toQuantity(this.quantityUnits);
+        }
+
+        public TickEntity toTick() {
+            TickEntity tick = new TickEntity();
+            tick.sequenceId = this.sequenceId;
+            tick.symbol = this.symbol;
+            tick.takerOrderId = this.takerOrderId;
+            tick.makerOrderId = this.maker.id;
+            tick.price = price();
+            tick.quantity = quantity();
+            tick.takerDirection = this.takerDirection == Direction.BUY;
+            tick.createdAt = this.createdAt;
+            return tick;
+        }
+
+        public MatchDetailEntity toMatchDetail(boolean forTaker) {
+            MatchDetailEntity d = new MatchDetailEntity();
+            d.sequenceId = this.sequenceId;
+            d.orderId = forTaker ? this.takerOrderId : this.maker.id;
+            d.counterOrderId = forTaker ? this.maker.id : this.takerOrderId;
+            d.direction = forTaker ? this.takerDirection : this.maker.direction;
+            d.price = price();
+            d.quantity = quantity();
+            d.type = forTaker ? MatchType.TAKER : MatchType.MAKER;
+            d.userId = forTaker ? this.takerUserId : this.maker.userId;
+            d.counterUserId = forTaker ? this.maker.userId : this.takerUserId;
+            d.createdAt = this.createdAt;
+            return d;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.itranswarp.exchange;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.clearing.ClearingService;
+import com.itranswarp.exchange.db.DbTemplate;
+import com.itranswarp.exchange.match.MarketScale;
+import com.itranswarp.exchange.match.MatchEngineRegistry;
+import com.itranswarp.exchange.match.OrderBook;
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.messaging.MessageTypes;
+import com.itranswarp.exchange.model.trade.EventEntity;
+import com.itranswarp.exchange.order.OrderArena;
+import com.itranswarp.exchange.order.OrderService;
+import com.itranswarp.exchange.ring.WaitStrategy;
+import com.itranswarp.exchange.util.JsonUtil;
+
+/**
+ * 离线回放已定序的事件，测量交易引擎的吞吐、单个事件的延迟分布和堆内存增长。
+ *
+ * 事件来源为events表，或导出的JSON Lines文件（每行一个EventEntity）。
+ * Kafka、Redis和数据库的输出线程替换为一个只计数的输出线程。
+ * 每次回放都使用全新的引擎，前几次可作为预热。
+ *
+ * <pre>
+ * java -cp trading-engine/target/classes:... com.itranswarp.exchange.EventReplayBenchmark events.jsonl
+ * java -cp ... com.itranswarp.exchange.EventReplayBenchmark --jdbc jdbc:mysql://localhost/exchange root password --export events.jsonl
+ * </pre>
+ */
+public class EventReplayBenchmark {
+
+    static final String USAGE = """
+            Usage: EventReplayBenchmark [options] <events.jsonl>
+                   EventReplayBenchmark [options] --jdbc <url> <user> <password>
+            Options:
+              --runs <n>       replay n times with a fresh engine each time, default 3
+              --batch <n>      events per batch (like a Kafka poll), default 100
+              --limit <n>      load at most n events
+              --parallel       match symbols on parallel lanes
+              --off-heap       store resting orders off heap
+              --wait <s>       output wait strategy: busy-spin, yielding or park, default park
+              --export <file>  write loaded events as JSON Lines (e.g. export from db once, replay anywhere)
+            """;
+
+    int runs = 3;
+    int batch = 100;
+    long limit = Long.MAX_VALUE;
+    boolean parallel = false;
+    boolean offHeap = false;
+    WaitStrategy waitStrategy = WaitStrategy.PARK;
+    Path file;
+    String[] jdbc;
+    Path export;
+
+    public static void main(String[] args) throws IOException {
+        var benchmark = new EventReplayBenchmark();
+        try {
+            benchmark.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(1);
+        }
+        // 不经过Spring启动时logback默认输出DEBUG日志，回放只保留WARN以上:
+        if (LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME) instanceof ch.qos.logback.classic.Logger root) {
+            root.setLevel(ch.qos.logback.classic.Level.WARN);
+        }
+        List<EventEntity> entities = benchmark.jdbc != null ? benchmark.loadFromDb() : benchmark.loadFromFile();
+        if (benchmark.export != null) {
+            writeFile(benchmark.export, entities);
+            System.out.printf("exported %d events to %s%n", entities.size(), benchmark.export);
+        }
+        List<AbstractEvent> events = toEvents(entities);
+        entities = null;
+        for (int run = 1; run <= benchmark.runs; run++) {
+            System.out.println(benchmark.replay(events).format(run));
+        }
+    }
+
+    void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+            case "--runs" -> this.runs = Integer.parseInt(value(args, ++i, arg));
+            case "--batch" -> this.batch = Integer.parseInt(value(args, ++i, arg));
+            case "--limit" -> this.limit = Long.parseLong(value(args, ++i, arg));
+            case "--parallel" -> this.parallel = true;
+            case "--off-heap" -> this.offHeap = true;
+            case "--export" -> this.export = Path.of(value(args, ++i, arg));
+            case "--wait" -> this.waitStrategy = WaitStrategy
+                    .valueOf(value(args, ++i, arg).toUpperCase().replace('-', '_'));
+            case "--jdbc" -> {
+                this.jdbc = new String[] { value(args, i + 1, arg), value(args, i + 2, arg), value(args, i + 3, arg) };
+                i += 3;
+            }
+            default -> {
+                if (arg.startsWith("--") || this.file != null) {
+                    throw new IllegalArgumentException("Invalid argument: " + arg);
+                }
+                this.file = Path.of(arg);
+            }
+            }
+        }
+        if ((this.file == null) == (this.jdbc == null)) {
+            throw new IllegalArgumentException("Specify either an events file or --jdbc.");
+        }
+        if (this.runs <= 0 || this.batch <= 0 || this.limit <= 0) {
+            throw new IllegalArgumentException("Invalid runs, batch or limit.");
+        }
+    }
+
+    private static String value(String[] args, int index, String name) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + name);
+        }
+        return args[index];
+    }
+
+    List<EventEntity> loadFromFile() throws IOException {
+        List<EventEntity> entities = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8)) {
+            String line;
+            while (entities.size() < this.limit && (line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    entities.add(JsonUtil.readJson(line, EventEntity.class));
+                }
+            }
+        }
+        return entities;
+    }
+
+    List<EventEntity> loadFromDb() {
+        var dbTemplate = new DbTemplate(new JdbcTemplate(new DriverManagerDataSource(jdbc[0], jdbc[1], jdbc[2])));
+        List<EventEntity> entities = new ArrayList<>();
+        long lastSequenceId = 0;
+        // 与StoreService相同，按sequenceId分页读取:
+        while (entities.size() < this.limit) {
+            int pageSize = (int) Math.min(100000, this.limit - entities.size());
+            List<EventEntity> page = dbTemplate.from(EventEntity.class).where("sequenceId > ?", lastSequenceId)
+                    .orderBy("sequenceId").limit(pageSize).list();
+            if (page.isEmpty()) {
+                break;
+            }
+            entities.addAll(page);
+            lastSequenceId = page.get(page.size() - 1).sequenceId;
+        }
+        return entities;
+    }
+
+    static void writeFile(Path path, List<EventEntity> entities) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (EventEntity entity : entities) {
+                writer.write(JsonUtil.writeJson(entity));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * 反序列化并检查事件链是否连续
+     */
+    static List<AbstractEvent> toEvents(List<EventEntity> entities) {
+        if (entities.isEmpty()) {
+            throw new IllegalArgumentException("No events to replay.");
+        }
+        var messageTypes = new MessageTypes();
+        messageTypes.init();
+        List<AbstractEvent> events = new ArrayList<>(entities.size());
+        long previousId = entities.get(0).previousId;
+        for (EventEntity entity : entities) {
+            if (entity.previousId != previousId) {
+                throw new IllegalArgumentException("Event lost before sequence id " + entity.sequenceId
+                        + ": expected previous id " + previousId + " but actual " + entity.previousId);
+            }
+            events.add((AbstractEvent) messageTypes.deserialize(entity.data));
+            previousId = entity.sequenceId;
+        }
+        if (events.get(0).previousId != 0) {
+            // 从中途开始回放时没有此前的资产和订单，引擎从空状态开始:
+            System.out.printf("WARNING: replay starts at sequence id %d with empty engine state.%n",
+                    events.get(0).sequenceId);
+            events.get(0).previousId = 0;
+        }
+        return events;
+    }
+
+    TradingEngineService createTradingEngine() {
+        var arena = new OrderArena(this.offHeap);
+        var matchEngines = new MatchEngineRegistry(arena, MarketScale.DEFAULT, OrderBook.DEFAULT_DEPTH, true,
+                this.parallel);
+        var assetService = new AssetService();
+        var orderService = new OrderService(assetService, arena);
+        var engine = new TradingEngineService();
+        engine.outputWaitStrategy = this.waitStrategy;
+        engine.assetService = assetService;
+        engine.orderService = orderService;
+        engine.matchEngines = matchEngines;
+        engine.clearingService = new ClearingService(assetService, orderService);
+        return engine;
+    }
+
+    /**
+     * 用全新的引擎回放全部事件。单个事件的延迟为processEvent()的耗时（包括输出环形队列满时的等待），
+     * 批次结束时等待并行撮合和生成OrderBook快照的耗时计入总耗时，但不计入单个事件的延迟
+     */
+    Result replay(List<AbstractEvent> events) {
+        int size = events.size();
+        long[] latencies = new long[size];
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long allocatedBefore = allocatedBytes();
+        TradingEngineService engine = createTradingEngine();
+        long[] outputs = new long[1]; // 仅由输出线程写入
+        engine.startOutputProcessor("replay-output", (output, sequence, endOfBatch) -> outputs[0] += output.size());
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            long t = System.nanoTime();
+            engine.processEvent(events.get(i));
+            latencies[i] = System.nanoTime() - t;
+            if ((i + 1) % this.batch == 0 || i == size - 1) {
+                engine.flushBatch();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        engine.stopOutputProcessors();
+        engine.matchEngines.shutdown();
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+        Arrays.sort(latencies);
+        var result = new Result(size, elapsed, latencies, outputs[0], allocated, heapBefore, heapAfter,
+                engine.orderService.size());
+        // 保证测量堆内存时引擎状态仍可达:
+        java.lang.ref.Reference.reachabilityFence(engine);
+        return result;
+    }
+
+    /**
+     * 当前线程累计分配的字节数，JVM不支持时返回0（并行撮合线程的分配不计入）
+     */
+    static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    record Result(int events, long elapsedNanos, long[] sortedLatencies, long outputs, long allocatedBytes,
+            long heapBefore, long heapAfter, int activeOrders) {
+
+        double eventsPerSecond() {
+            return this.events * 1_000_000_000.0 / this.elapsedNanos;
+        }
+
+        long percentile(double p) {
+            int index = (int) Math.ceil(p / 100 * this.sortedLatencies.length) - 1;
+            return this.sortedLatencies[Math.max(0, Math.min(index, this.sortedLatencies.length - 1))];
+        }
+
+        String format(int run) {
+            return String.format("""
+                    run %d: %d events in %.3f s, %.0f events/s, %d outputs, %d active orders
+                      latency (us): p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, p99.99 %.2f, max %.2f
+                      allocated: %d bytes/event, heap growth: %.1f MB (%.1f MB -> %.1f MB)""", run, this.events,
+                    this.elapsedNanos / 1e9, eventsPerSecond(), this.outputs, this.activeOrders,
+                    percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3, percentile(99.9) / 1e3,
+                    percentile(99.99) / 1e3, this.sortedLatencies[this.sortedLatencies.length - 1] / 1e3,
+                    this.allocatedBytes / this.events, (this.heapAfter - this.heapBefore) / 1048576.0,
+                    this.heapBefore / 1048576.0, this.heapAfter / 1048576.0);
+        }
+    }
+}
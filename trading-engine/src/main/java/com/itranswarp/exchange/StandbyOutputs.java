@@ -0,0 +1,94 @@
+package com.itranswarp.exchange;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import com.itranswarp.exchange.ring.EventHandler;
+import com.itranswarp.exchange.support.LoggerSupport;
+
+/**
+ * 备用引擎的输出副本：备用期间定序线程在发布输出时复制一份，最多保留capacity个（超出时丢弃最早的）。
+ *
+ * 备用期间输出线程丢弃全部输出；接管后每个输出线程在处理第一个输出之前，先按顺序重放自己丢弃的输出副本，
+ * 补上原主引擎停止前尚未推送或落库的部分。下游对重复的输出是幂等的：落库为insertIgnore，余额只被更新的检查点覆盖，
+ * 行情和OrderBook增量按sequenceId去重，API结果按refId匹配，通知为订单的最新状态。
+ */
+final class StandbyOutputs extends LoggerSupport {
+
+    record Held(long sequence, EngineOutput output) {
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Held> outputs = new ArrayDeque<>();
+    private long evicted; // 超出容量丢弃的输出数
+    private int pending; // 尚未重放的输出线程数
+
+    StandbyOutputs(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid standby buffer size: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * 保存输出的副本（定序线程在发布前调用）
+     */
+    synchronized void add(long sequence, EngineOutput output) {
+        if (this.outputs.size() == this.capacity) {
+            this.outputs.removeFirst();
+            this.evicted++;
+        }
+        this.outputs.addLast(new Held(sequence, output.copy()));
+    }
+
+    synchronized int size() {
+        return this.outputs.size();
+    }
+
+    /**
+     * 包装输出线程的handler：standby为true时丢弃输出，接管后先重放丢弃的输出
+     */
+    synchronized EventHandler<EngineOutput> wrap(BooleanSupplier standby, EventHandler<EngineOutput> handler) {
+        this.pending++;
+        return new EventHandler<>() {
+
+            private boolean replayed = false; // 仅由输出线程访问
+
+            @Override
+            public void onEvent(EngineOutput output, long sequence, boolean endOfBatch) throws Exception {
+                if (standby.getAsBoolean()) {
+                    return;
+                }
+                if (!this.replayed) {
+                    this.replayed = true;
+                    replay(handler, sequence);
+                }
+                handler.onEvent(output, sequence, endOfBatch);
+            }
+        };
+    }
+
+    /**
+     * 重放sequence之前的输出（均为该输出线程在备用期间丢弃的），全部输出线程重放后释放副本
+     */
+    private void replay(EventHandler<EngineOutput> handler, long sequence) throws Exception {
+        List<Held> held;
+        synchronized (this) {
+            held = this.outputs.stream().filter(h -> h.sequence < sequence).toList();
+            if (this.evicted > 0) {
+                logger.error("{} standby outputs were evicted before promotion, outputs before sequence {} may be lost.",
+                        this.evicted, held.isEmpty() ? sequence : held.get(0).sequence);
+            }
+        }
+        logger.warn("{} replay {} standby outputs...", Thread.currentThread().getName(), held.size());
+        for (Held h : held) {
+            handler.onEvent(h.output, h.sequence, false);
+        }
+        synchronized (this) {
+            if (--this.pending == 0) {
+                this.outputs.clear();
+            }
+        }
+    }
+}
@@ -1,17 +1,30 @@
 package com.itranswarp.exchange;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
@@ -19,22 +32,28 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import com.itranswarp.exchange.assets.AssetService;
 import com.itranswarp.exchange.assets.Asset;
+import com.itranswarp.exchange.assets.AssetService;
 import com.itranswarp.exchange.assets.Transfer;
+import com.itranswarp.exchange.assets.TransferLeg;
 import com.itranswarp.exchange.bean.OrderBookBean;
+import com.itranswarp.exchange.bean.OrderBookDeltaBean;
 import com.itranswarp.exchange.clearing.ClearingService;
-import com.itranswarp.exchange.enums.AssetEnum;
-import com.itranswarp.exchange.enums.Direction;
-import com.itranswarp.exchange.enums.MatchType;
-import com.itranswarp.exchange.enums.UserType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.invariant.InvariantChecker;
+import com.itranswarp.exchange.journal.EventJournal;
 import com.itranswarp.exchange.match.MatchDetailRecord;
 import com.itranswarp.exchange.match.MatchEngine;
+import com.itranswarp.exchange.match.MatchEngineRegistry;
 import com.itranswarp.exchange.match.MatchResult;
+import com.itranswarp.exchange.match.OrderBook;
+import com.itranswarp.exchange.metrics.EngineMetrics;
 import com.itranswarp.exchange.message.ApiResultMessage;
 import com.itranswarp.exchange.message.NotificationMessage;
 import com.itranswarp.exchange.message.TickMessage;
 import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.message.event.BatchTransferEvent;
+import com.itranswarp.exchange.message.event.OrderCancelAllEvent;
 import com.itranswarp.exchange.message.event.OrderCancelEvent;
 import com.itranswarp.exchange.message.event.OrderRequestEvent;
 import com.itranswarp.exchange.message.event.TransferEvent;
@@ -43,12 +62,20 @@ import com.itranswarp.exchange.messaging.MessageProducer;
 import com.itranswarp.exchange.messaging.Messaging;
 import com.itranswarp.exchange.messaging.Messaging.Topic;
 import com.itranswarp.exchange.messaging.MessagingFactory;
-import com.itranswarp.exchange.model.quotation.TickEntity;
+import com.itranswarp.exchange.model.trade.BalanceEntity;
 import com.itranswarp.exchange.model.trade.MatchDetailEntity;
 import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderArena;
 import com.itranswarp.exchange.order.OrderService;
 import com.itranswarp.exchange.redis.RedisCache;
 import com.itranswarp.exchange.redis.RedisService;
+import com.itranswarp.exchange.ring.BatchEventProcessor;
+import com.itranswarp.exchange.ring.EventHandler;
+import com.itranswarp.exchange.ring.RingBuffer;
+import com.itranswarp.exchange.ring.WaitStrategy;
+import com.itranswarp.exchange.snapshot.SnapshotService;
+import com.itranswarp.exchange.standby.EngineLease;
+import com.itranswarp.exchange.store.EventStream;
 import com.itranswarp.exchange.store.StoreService;
 import com.itranswarp.exchange.support.LoggerSupport;
 import com.itranswarp.exchange.util.IpUtil;
@@ -60,13 +87,22 @@ public class TradingEngineService extends LoggerSupport {
     @Autowired(required = false)
     ZoneId zoneId = ZoneId.systemDefault();
 
-    @Value("#{exchangeConfiguration.orderBookDepth}")
-    int orderBookDepth = 100;
-
     @Value("#{exchangeConfiguration.debugMode}")
     boolean debugMode = false;
 
-    boolean fatalError = false;
+    volatile boolean fatalError = false;
+
+    // panic时在独立线程上执行（测试时替换）:
+    Runnable exit = () -> System.exit(1);
+
+    // 正在停止输出线程，失败的输出不再重试:
+    volatile boolean stopping = false;
+
+    // 备用引擎：同步处理事件、维护完整状态，但不推送Redis、不落库、不发送Tick:
+    volatile boolean standby = false;
+
+    // 接管后需要重新推送全部OrderBook:
+    private volatile boolean refreshOrderBooks = false;
 
     @Autowired
     AssetService assetService;
@@ -75,7 +111,7 @@ public class TradingEngineService extends LoggerSupport {
     OrderService orderService;
 
     @Autowired
-    MatchEngine matchEngine;
+    MatchEngineRegistry matchEngines;
 
     @Autowired
     ClearingService clearingService;
@@ -89,215 +125,505 @@ public class TradingEngineService extends LoggerSupport {
     @Autowired
     RedisService redisService;
 
+    @Autowired(required = false)
+    SnapshotService snapshotService;
+
+    @Autowired(required = false)
+    EventJournal journal;
+
+    @Autowired(required = false)
+    EngineLease lease;
+
+    @Autowired
+    EngineMetrics metrics = new EngineMetrics(Duration.ofSeconds(10));
+
+    @Value("#{exchangeConfiguration.invariantCheck}")
+    boolean invariantCheck = false;
+
+    @Value("#{exchangeConfiguration.invariantSweepInterval}")
+    Duration invariantSweepInterval = Duration.ofMinutes(1);
+
+    @Value("#{exchangeConfiguration.orderBookSnapshotInterval}")
+    Duration orderBookSnapshotInterval = Duration.ofSeconds(1);
+
+    @Value("#{exchangeConfiguration.balanceCheckpointInterval}")
+    Duration balanceCheckpointInterval = Duration.ofSeconds(1);
+
+    @Value("#{exchangeConfiguration.outputBufferSize}")
+    int outputBufferSize = 4096;
+
+    @Value("#{exchangeConfiguration.standbyBufferSize}")
+    int standbyBufferSize = 65536;
+
+    // 备用期间输出的副本，接管后由各输出线程重放（主引擎为null）:
+    StandbyOutputs standbyOutputs;
+
+    @Value("#{exchangeConfiguration.outputWaitStrategy}")
+    WaitStrategy outputWaitStrategy = WaitStrategy.PARK;
+
+    // 补齐丢失事件时每批处理的事件数:
+    static final int CATCH_UP_BATCH = 1000;
+
+    // 落库或推送Redis失败时的重试间隔（指数退避）:
+    static final long OUTPUT_RETRY_MIN_MILLIS = 100;
+    static final long OUTPUT_RETRY_MAX_MILLIS = 10_000;
+
     private MessageConsumer consumer;
 
     private MessageProducer<TickMessage> producer;
 
     private long lastSequenceId = 0;
 
-    private boolean orderBookChanged = false;
+    // 本批次OrderBook有变化的交易对:
+    private final Set<SymbolEnum> orderBookChanged = EnumSet.noneOf(SymbolEnum.class);
+
+    // 并行撮合时已提交到撮合线程、尚未清算的事件，按sequenceId顺序完成:
+    private final Queue<Future<Runnable>> pendingMatches = new ArrayDeque<>();
 
     private String shaUpdateOrderBookLua;
 
-    private Thread tickThread;
-    private Thread notifyThread;
-    private Thread apiResultThread;
-    private Thread orderBookThread;
-    private Thread dbThread;
+    // 上次输出余额检查点的时间:
+    private long lastBalanceCheckpointAt = 0;
+
+    // 定时保存OrderBook完整深度的线程:
+    private ScheduledExecutorService orderBookSnapshotWriter;
+    // 由输出线程写入、定时保存的各交易对最新OrderBook:
+    private final Map<SymbolEnum, OrderBookBean> orderBookSnapshots = new EnumMap<>(SymbolEnum.class);
+
+    // 增量校验（debugMode或invariantCheck时启用）:
+    private InvariantChecker invariantChecker;
+    // 后台全量校验线程，定时请求定序线程在批次结束时编码快照:
+    private ScheduledExecutorService invariantSweeper;
+    private volatile boolean sweepRequested = false;
+
+    // 输出环形队列，由定序线程写入，每个输出线程按自己的速度批量消费:
+    private RingBuffer<EngineOutput> outputRing;
+    // 当前事件已申请但尚未发布的输出槽位:
+    private EngineOutput output;
+    private long outputSequence;
 
-    private OrderBookBean latestOrderBook = null;
-    private Queue<List<OrderEntity>> orderQueue = new ConcurrentLinkedQueue<>();
-    private Queue<List<MatchDetailEntity>> matchQueue = new ConcurrentLinkedQueue<>();
-    private Queue<TickMessage> tickQueue = new ConcurrentLinkedQueue<>();
-    private Queue<ApiResultMessage> apiResultQueue = new ConcurrentLinkedQueue<>();
-    private Queue<NotificationMessage> notificationQueue = new ConcurrentLinkedQueue<>();
+    private final List<BatchEventProcessor<EngineOutput>> outputProcessors = new ArrayList<>();
+    private final List<Thread> outputThreads = new ArrayList<>();
+
+    // 仅由各自的输出线程访问:
+    private final List<TickMessage> tickBatch = new ArrayList<>();
+    private final List<String> orderBookDeltaBatch = new ArrayList<>();
+    private final Map<Long, List<NotificationMessage>> notificationBatch = new LinkedHashMap<>();
+    private final List<String> apiResultBatch = new ArrayList<>();
+    private long[] apiResultCreatedAt = new long[1024];
+    private final List<MatchDetailEntity> matchBatch = new ArrayList<>();
+    private final List<OrderEntity> orderBatch = new ArrayList<>();
+    private final List<BalanceEntity> balanceBatch = new ArrayList<>();
 
     @PostConstruct
     public void init() {
         this.shaUpdateOrderBookLua = this.redisService.loadScriptFromClassPath("/redis/update-orderbook.lua");
-        this.consumer = this.messagingFactory.createBatchMessageListener(Messaging.Topic.TRADE, IpUtil.getHostId(),
-                this::processMessages);
         this.producer = this.messagingFactory.createMessageProducer(Topic.TICK, TickMessage.class);
-
-        this.tickThread = new Thread(this::runTickThread, "async-tick");
-        this.tickThread.start();
+        if (this.lease != null && this.lease.isEnabled()) {
+            try {
+                this.standby = !this.lease.tryAcquire();
+                if (this.standby) {
+                    // 备用引擎不能与主引擎共用快照和事件日志目录:
+                    this.lease.checkDataDirs();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (this.standby) {
+                this.standbyOutputs = new StandbyOutputs(this.standbyBufferSize);
+            }
+        }
+        // 输出线程须在处理事件之前启动:
+        startOutputProcessor("async-tick", primaryOnly(this::onTickOutput));
         // 消息推送redis线程
-        this.notifyThread = new Thread(this::runNotifyThread, "async-notify");
-        this.notifyThread.start();
+        startOutputProcessor("async-notify", primaryOnly(this::onNotificationOutput));
         // 异步输出OrderBook线程
-        this.orderBookThread = new Thread(this::runOrderBookThread, "async-orderbook");
-        this.orderBookThread.start();
+        startOutputProcessor("async-orderbook", primaryOnly(this::onOrderBookOutput));
+        startOrderBookSnapshotWriter();
         // api结果推送redis线程
-        this.apiResultThread = new Thread(this::runApiResultThread, "async-api-result");
-        this.apiResultThread.start();
+        startOutputProcessor("async-api-result", primaryOnly(this::onApiResultOutput));
         // 异步落库线程
-        this.dbThread = new Thread(this::runDbThread, "async-db");
-        this.dbThread.start();
+        startOutputProcessor("async-db", primaryOnly(this::onDbOutput));
+        // 本地事件日志线程
+        if (isJournalEnabled()) {
+            startOutputProcessor("async-journal", this::onJournalOutput);
+        }
+        // 从快照恢复并重放之后的事件，再开始消费消息:
+        recover();
+        // 备用引擎使用独立的消费组，与主引擎各自消费全部事件:
+        String groupId = this.standby ? IpUtil.getHostId() + "_standby" : IpUtil.getHostId();
+        this.consumer = this.messagingFactory.createBatchMessageListener(Messaging.Topic.TRADE, groupId,
+                this::processMessages);
+        if (this.standby) {
+            logger.warn("engine lease is held by another engine, start as standby...");
+            this.lease.awaitAcquire(this::promote);
+        }
     }
 
     @PreDestroy
     public void destroy() {
         this.consumer.stop();
-        this.orderBookThread.interrupt();
-        this.dbThread.interrupt();
+        stopOutputProcessors();
+        if (this.orderBookSnapshotWriter != null) {
+            this.orderBookSnapshotWriter.shutdownNow();
+        }
+        if (this.invariantSweeper != null) {
+            this.invariantSweeper.shutdownNow();
+        }
     }
 
-    private void runTickThread() {
-        logger.info("start tick thread...");
-        for (;;) {
-            List<TickMessage> msgs = new ArrayList<>();
-            for (;;) {
-                TickMessage msg = tickQueue.poll();
-                if (msg != null) {
-                    msgs.add(msg);
-                    if (msgs.size() >= 1000) {
-                        break;
-                    }
-                } else {
-                    break;
-                }
+    /**
+     * 备用引擎接管输出，此后输出线程消费到的输出全部正常推送和落库
+     */
+    void promote() {
+        this.standby = false;
+        this.refreshOrderBooks = true;
+        logger.warn("promoted to primary engine.");
+    }
+
+    /**
+     * 备用引擎的输出线程照常消费但丢弃输出，接管后先重放丢弃的输出副本（在接管后的第一个输出到达时）
+     */
+    EventHandler<EngineOutput> primaryOnly(EventHandler<EngineOutput> handler) {
+        if (this.standbyOutputs == null) {
+            return handler;
+        }
+        return this.standbyOutputs.wrap(() -> this.standby, handler);
+    }
+
+    /**
+     * 启动一个输出线程，从当前位置开始消费输出环形队列，处理失败时panic（由快照和事件重放恢复），停止过程中失败时只停止该线程
+     */
+    BatchEventProcessor<EngineOutput> startOutputProcessor(String name, EventHandler<EngineOutput> handler) {
+        var processor = new BatchEventProcessor<>(outputRing(), handler, e -> {
+            if (!this.stopping) {
+                panic();
             }
-            if (!msgs.isEmpty()) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("send {} tick messages...", msgs.size());
-                }
-                this.producer.sendMessages(msgs);
-            } else {
-                // 无TickMessage时，暂停1ms:
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
-                }
+        });
+        var thread = new Thread(processor, name);
+        this.outputProcessors.add(processor);
+        this.outputThreads.add(thread);
+        // 输出线程的积压（已发布但尚未处理的输出数）:
+        this.metrics.gauge("exchange.engine.output.backlog", "processor", name,
+                () -> this.outputRing.getCursor() - processor.sequence.get());
+        thread.start();
+        logger.info("start output thread {} with {} wait strategy...", name, this.outputRing.getWaitStrategy());
+        return processor;
+    }
+
+    /**
+     * 停止全部输出线程，已发布的输出处理完后返回
+     */
+    void stopOutputProcessors() {
+        this.stopping = true;
+        this.outputProcessors.forEach(BatchEventProcessor::halt);
+        for (Thread thread : this.outputThreads) {
+            if (thread == Thread.currentThread()) {
+                continue;
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                logger.warn("interrupted while waiting for {}.", thread.getName());
+                Thread.currentThread().interrupt();
+                break;
             }
         }
+        this.outputProcessors.clear();
+        this.outputThreads.clear();
     }
 
-    private void runNotifyThread() {
-        logger.info("start publish notify to redis...");
-        for (;;) {
-            NotificationMessage msg = this.notificationQueue.poll();
-            if (msg != null) {
-                redisService.publish(RedisCache.Topic.NOTIFICATION, JsonUtil.writeJson(msg));
-            } else {
-                // 无推送时，暂停1ms:
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
+    private RingBuffer<EngineOutput> outputRing() {
+        if (this.outputRing == null) {
+            this.outputRing = new RingBuffer<>(this.outputBufferSize, EngineOutput::new, this.outputWaitStrategy);
+        }
+        return this.outputRing;
+    }
+
+    /**
+     * 当前事件的输出槽位，首次调用时申请（输出环形队列满时等待最慢的输出线程）
+     */
+    private EngineOutput output() {
+        if (this.output == null) {
+            RingBuffer<EngineOutput> ring = outputRing();
+            this.outputSequence = ring.next();
+            this.output = ring.get(this.outputSequence);
+            this.output.clear();
+        }
+        return this.output;
+    }
+
+    /**
+     * 发布当前事件的全部输出
+     */
+    private void publishOutput() {
+        if (this.fatalError) {
+            // panic之后的状态不可信，不再发布输出（等待退出）:
+            return;
+        }
+        if (this.output != null) {
+            if (this.standby && this.standbyOutputs != null) {
+                this.standbyOutputs.add(this.outputSequence, this.output);
+            }
+            this.output = null;
+            this.outputRing.publish(this.outputSequence);
+        }
+    }
+
+    private void onTickOutput(EngineOutput output, long sequence, boolean endOfBatch) {
+        // 同一事件的成交合并为一条Tick消息:
+        TickMessage msg = null;
+        for (int i = 0; i < output.fillCount(); i++) {
+            EngineOutput.Fill fill = output.fill(i);
+            if (msg == null || msg.sequenceId != fill.sequenceId) {
+                msg = new TickMessage();
+                msg.sequenceId = fill.sequenceId;
+                msg.symbol = fill.symbol;
+                msg.createdAt = fill.createdAt;
+                msg.ticks = new ArrayList<>();
+                this.tickBatch.add(msg);
+            }
+            msg.ticks.add(fill.toTick());
+        }
+        if (!this.tickBatch.isEmpty() && (endOfBatch || this.tickBatch.size() >= 1000)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("send {} tick messages...", this.tickBatch.size());
+            }
+            this.producer.sendMessages(this.tickBatch);
+            this.tickBatch.clear();
+        }
+    }
+
+    private void onNotificationOutput(EngineOutput output, long sequence, boolean endOfBatch)
+            throws InterruptedException {
+        // 同一定序批次内按用户收集通知，maker的成交通知按成交记录的位置插入:
+        int fillIndex = 0;
+        for (int i = 0; i <= output.notifications.size(); i++) {
+            for (; fillIndex < output.fillCount() && output.fill(fillIndex).notificationIndex == i; fillIndex++) {
+                EngineOutput.Fill fill = output.fill(fillIndex);
+                addNotification(createNotification(fill.createdAt, "order_matched", fill.maker.userId,
+                        fill.maker.toEntity()));
+            }
+            if (i < output.notifications.size()) {
+                addNotification(output.notifications.get(i));
+            }
+        }
+        if (output.batchEnd && !this.notificationBatch.isEmpty()) {
+            // 每个用户只推送一条消息，多条通知合并为最新的订单状态，全部消息以管道方式一次发布:
+            List<String> messages = new ArrayList<>(this.notificationBatch.size());
+            for (List<NotificationMessage> msgs : this.notificationBatch.values()) {
+                NotificationMessage msg = msgs.size() == 1 ? msgs.get(0) : mergeNotifications(msgs);
+                messages.add(JsonUtil.writeJson(msg));
+            }
+            this.notificationBatch.clear();
+            publishRedis(RedisCache.Topic.NOTIFICATION, messages);
+        }
+    }
+
+    private void addNotification(NotificationMessage msg) {
+        this.notificationBatch.computeIfAbsent(msg.userId, k -> new ArrayList<>()).add(msg);
+    }
+
+    /**
+     * 合并同一用户的多条订单通知，每个订单只保留最新的状态
+     */
+    static NotificationMessage mergeNotifications(List<NotificationMessage> msgs) {
+        Map<Long, OrderEntity> orders = new LinkedHashMap<>();
+        for (NotificationMessage msg : msgs) {
+            if (msg.data instanceof OrderEntity order) {
+                orders.put(order.id, order);
+            } else if (msg.data instanceof List<?> list) {
+                for (Object item : list) {
+                    OrderEntity order = (OrderEntity) item;
+                    orders.put(order.id, order);
                 }
             }
         }
+        NotificationMessage last = msgs.get(msgs.size() - 1);
+        NotificationMessage merged = new NotificationMessage();
+        merged.createdAt = last.createdAt;
+        merged.type = "orders_updated";
+        merged.userId = last.userId;
+        merged.data = new ArrayList<>(orders.values());
+        return merged;
     }
 
-    private void runApiResultThread() {
-        logger.info("start publish api result to redis...");
-        for (;;) {
-            // 从api结果队列取出一个，推送到redis的TRADING_API_RESULT主题
-            ApiResultMessage result = this.apiResultQueue.poll();
-            if (result != null) {
-                redisService.publish(RedisCache.Topic.TRADING_API_RESULT, JsonUtil.writeJson(result));
-            } else {
-                // 无推送时，暂停1ms:
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
+    private void onApiResultOutput(EngineOutput output, long sequence, boolean endOfBatch)
+            throws InterruptedException {
+        // 推送到redis的TRADING_API_RESULT主题，当前可读的输出以管道方式一次发布:
+        for (ApiResultMessage result : output.apiResults) {
+            int n = this.apiResultBatch.size();
+            if (n == this.apiResultCreatedAt.length) {
+                this.apiResultCreatedAt = Arrays.copyOf(this.apiResultCreatedAt, n * 2);
+            }
+            this.apiResultCreatedAt[n] = result.createdAt;
+            this.apiResultBatch.add(JsonUtil.writeJson(result));
+        }
+        if (!this.apiResultBatch.isEmpty() && (endOfBatch || this.apiResultBatch.size() >= 1000)) {
+            publishRedis(RedisCache.Topic.TRADING_API_RESULT, this.apiResultBatch);
+            // 从定序到结果发布的时间（毫秒精度）:
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < this.apiResultBatch.size(); i++) {
+                this.metrics.endToEnd.record((now - this.apiResultCreatedAt[i]) * 1_000_000L);
+            }
+            this.apiResultBatch.clear();
+        }
+    }
+
+    private void onOrderBookOutput(EngineOutput output, long sequence, boolean endOfBatch)
+            throws InterruptedException {
+        // 增量按顺序全部推送，当前可读的输出以管道方式一次发布:
+        for (OrderBookDeltaBean delta : output.orderBookDeltas) {
+            NotificationMessage msg = new NotificationMessage();
+            msg.createdAt = System.currentTimeMillis();
+            msg.type = "orderbook_delta";
+            msg.data = delta;
+            this.orderBookDeltaBatch.add(JsonUtil.writeJson(msg));
+        }
+        // 完整深度只保留每个交易对最新的，由定时线程保存:
+        if (!output.orderBooks.isEmpty()) {
+            synchronized (this.orderBookSnapshots) {
+                for (OrderBookBean orderBook : output.orderBooks) {
+                    this.orderBookSnapshots.put(orderBook.symbol, orderBook);
                 }
             }
         }
+        if (!this.orderBookDeltaBatch.isEmpty() && (endOfBatch || this.orderBookDeltaBatch.size() >= 1000)) {
+            publishRedis(RedisCache.Topic.NOTIFICATION, this.orderBookDeltaBatch);
+            this.orderBookDeltaBatch.clear();
+        }
     }
 
-    private void runOrderBookThread() {
-        logger.info("start update orderbook snapshot to redis...");
-        long lastSequenceId = 0;
-        for (;;) {
-            // 获取OrderBookBean的引用，确保后续操作针对局部变量而非成员变量:
-            final OrderBookBean orderBook = this.latestOrderBook;
-            // 仅在OrderBookBean更新后刷新Redis:
-            if (orderBook != null && orderBook.sequenceId > lastSequenceId) {
+    private void startOrderBookSnapshotWriter() {
+        this.orderBookSnapshotWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "orderbook-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = this.orderBookSnapshotInterval.toMillis();
+        this.orderBookSnapshotWriter.scheduleWithFixedDelay(this::writeOrderBookSnapshots, interval, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 保存上次保存后有变化的OrderBook完整深度，不再推送（客户端通过增量更新）
+     */
+    private void writeOrderBookSnapshots() {
+        List<OrderBookBean> orderBooks;
+        synchronized (this.orderBookSnapshots) {
+            if (this.orderBookSnapshots.isEmpty()) {
+                return;
+            }
+            orderBooks = new ArrayList<>(this.orderBookSnapshots.values());
+            this.orderBookSnapshots.clear();
+        }
+        try {
+            for (OrderBookBean orderBook : orderBooks) {
                 if (logger.isDebugEnabled()) {
-                    logger.debug("update orderbook snapshot at sequence id {}...", orderBook.sequenceId);
+                    logger.debug("update {} orderbook snapshot at sequence id {}...", orderBook.symbol,
+                            orderBook.sequenceId);
                 }
                 redisService.executeScriptReturnBoolean(this.shaUpdateOrderBookLua,
-                        // keys: [cache-key]
-                        new String[] { RedisCache.Key.ORDER_BOOK },
+                        // keys: [cache-key, seq-key]
+                        new String[] { RedisCache.Key.of(RedisCache.Key.ORDER_BOOK, orderBook.symbol),
+                                RedisCache.Key.of(RedisCache.Key.ORDER_BOOK_SEQ, orderBook.symbol) },
                         // args: [sequenceId, json-data]
                         new String[] { String.valueOf(orderBook.sequenceId), JsonUtil.writeJson(orderBook) });
-                lastSequenceId = orderBook.sequenceId;
-            } else {
-                // 无更新时，暂停1ms:
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                    break;
-                }
             }
+        } catch (Exception e) {
+            logger.error("update orderbook snapshot failed.", e);
         }
     }
 
-    private void runDbThread() {
-        logger.info("start batch insert to db...");
-        for (;;) {
-            try {
-                saveToDb();
-            } catch (InterruptedException e) {
-                logger.warn("{} was interrupted.", Thread.currentThread().getName());
-                break;
+    private void onJournalOutput(EngineOutput output, long sequence, boolean endOfBatch) {
+        for (AbstractEvent event : output.events) {
+            this.journal.append(event);
+        }
+    }
+
+    void onDbOutput(EngineOutput output, long sequence, boolean endOfBatch) throws InterruptedException {
+        this.matchBatch.addAll(output.matchDetails);
+        this.orderBatch.addAll(output.orders);
+        // 每次成交生成taker和maker两条成交明细，已结束的maker订单一并落库:
+        for (int i = 0; i < output.fillCount(); i++) {
+            EngineOutput.Fill fill = output.fill(i);
+            this.matchBatch.add(fill.toMatchDetail(true));
+            this.matchBatch.add(fill.toMatchDetail(false));
+            if (fill.maker.status.isFinalStatus) {
+                this.orderBatch.add(fill.maker.toEntity());
             }
         }
+        // 余额检查点只在批次结束时输出:
+        this.balanceBatch.addAll(output.balances);
+        // 批次结束或累计超过1000条时批量写入:
+        if (endOfBatch || this.matchBatch.size() >= 1000 || this.orderBatch.size() >= 1000
+                || !this.balanceBatch.isEmpty()) {
+            this.matchBatch.sort(MatchDetailEntity::compareTo);
+            this.orderBatch.sort(OrderEntity::compareTo);
+            flushDb();
+        }
     }
 
-    // called by dbExecutor thread only:
-    private void saveToDb() throws InterruptedException {
-        if (!matchQueue.isEmpty()) {
-            // 每次最多批插入1000条
-            List<MatchDetailEntity> batch = new ArrayList<>(1000);
-            for (;;) {
-                // 每次取出的是一个list
-                List<MatchDetailEntity> matches = matchQueue.poll();
-                if (matches != null) {
-                    batch.addAll(matches);
-                    // 到达batch容量上限停止写入
-                    if (batch.size() >= 1000) {
-                        break;
-                    }
-                } else {
-                    break;
-                }
+    /**
+     * 成交、订单和余额分别写入，互不影响；失败的部分保留并按指数退避重试，全部成功后才返回，
+     * 落库线程不会前进到未写入的输出之后（生产者随之背压）
+     */
+    void flushDb() throws InterruptedException {
+        retryOutput("db writes", () -> {
+            boolean done = writeDb("insert match details", this.matchBatch, this.storeService::insertIgnore);
+            done &= writeDb("insert orders", this.orderBatch, this.storeService::insertIgnore);
+            // 余额检查点整体在一个事务中写入:
+            done &= writeDb("upsert balances", this.balanceBatch, this.storeService::upsertBalances);
+            return done;
+        });
+    }
+
+    /**
+     * 以管道方式发布到Redis，失败时与落库一样按指数退避重试，输出线程不会前进到未推送的输出之后
+     */
+    void publishRedis(String topic, List<String> messages) throws InterruptedException {
+        retryOutput("publish " + topic, () -> {
+            try {
+                this.redisService.publishAll(topic, messages);
+                return true;
+            } catch (RuntimeException e) {
+                // RedisService已记录异常:
+                return false;
             }
-            batch.sort(MatchDetailEntity::compareTo);
-            if (logger.isDebugEnabled()) {
-                logger.debug("batch insert {} match details...", batch.size());
-            }
-            this.storeService.insertIgnore(batch);
-        }
-        if (!orderQueue.isEmpty()) {
-            List<OrderEntity> batch = new ArrayList<>(1000);
-            for (;;) {
-                List<OrderEntity> orders = orderQueue.poll();
-                if (orders != null) {
-                    batch.addAll(orders);
-                    if (batch.size() >= 1000) {
-                        break;
-                    }
-                } else {
-                    break;
-                }
+        });
+    }
+
+    /**
+     * 重复执行直到成功，间隔按指数退避；停止输出线程时放弃（未完成的输出在重启后由快照和事件重放补上）
+     */
+    private void retryOutput(String action, BooleanSupplier attempt) throws InterruptedException {
+        for (long delay = OUTPUT_RETRY_MIN_MILLIS;; delay = Math.min(delay * 2, OUTPUT_RETRY_MAX_MILLIS)) {
+            if (attempt.getAsBoolean()) {
+                return;
             }
-            batch.sort(OrderEntity::compareTo);
-            if (logger.isDebugEnabled()) {
-                logger.debug("batch insert {} orders...", batch.size());
+            if (this.stopping) {
+                throw new IllegalStateException(action + " failed while stopping output.");
             }
-            this.storeService.insertIgnore(batch);
+            logger.warn("retry failed {} in {} ms...", action, delay);
+            Thread.sleep(delay);
         }
-        if (matchQueue.isEmpty()) {
-            Thread.sleep(1);
+    }
+
+    private <T> boolean writeDb(String action, List<T> batch, Consumer<List<T>> write) {
+        if (batch.isEmpty()) {
+            return true;
         }
+        if (logger.isDebugEnabled()) {
+            logger.debug("{} ({} rows)...", action, batch.size());
+        }
+        try {
+            write.accept(batch);
+        } catch (RuntimeException e) {
+            logger.error(action + " failed.", e);
+            return false;
+        }
+        batch.clear();
+        return true;
     }
 
     /**
@@ -306,14 +632,168 @@ public class TradingEngineService extends LoggerSupport {
      * @param messages
      */
     public void processMessages(List<AbstractEvent> messages) {
-        this.orderBookChanged = false;
+        this.metrics.batchSize.record(messages.size());
         for (AbstractEvent message : messages) {
             processEvent(message);
         }
-        if (this.orderBookChanged) {
-            // 获取最新的OrderBook快照:
-            this.latestOrderBook = this.matchEngine.getOrderBook(this.orderBookDepth);
+        flushBatch();
+        // 批次结束时并行撮合已全部完成，状态一致，可以写快照:
+        if (this.snapshotService != null && !this.fatalError && this.snapshotService.isDue(this.lastSequenceId)) {
+            this.snapshotService.takeSnapshot(this.lastSequenceId, this.assetService, this.orderService,
+                    this.matchEngines);
+        }
+    }
+
+    /**
+     * 启动时从最新的快照恢复状态，然后重放快照之后的全部事件
+     */
+    void recover() {
+        boolean snapshotEnabled = this.snapshotService != null && this.snapshotService.isEnabled();
+        if (!snapshotEnabled && !isJournalEnabled()) {
+            return;
+        }
+        if (snapshotEnabled) {
+            this.lastSequenceId = this.snapshotService.restoreLatest(this.assetService, this.orderService,
+                    this.matchEngines);
         }
+        long start = System.currentTimeMillis();
+        long snapshotId = this.lastSequenceId;
+        catchUp(Long.MAX_VALUE);
+        logger.info("recovered from sequence id {} to {} in {} ms.", snapshotId, this.lastSequenceId,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 批次结束：等待并行撮合完成，回收槽位，更新有变化的OrderBook快照
+     */
+    void flushBatch() {
+        // 并行撮合时等待本批次全部撮合并清算完成:
+        try {
+            completePendingMatches(true);
+        } catch (Exception e) {
+            logger.error("complete pending matches error.", e);
+            panic();
+            return;
+        }
+        this.orderService.reclaim();
+        boolean refresh = this.refreshOrderBooks;
+        if (refresh) {
+            this.refreshOrderBooks = false;
+            this.orderBookChanged.addAll(EnumSet.allOf(SymbolEnum.class));
+        }
+        if (this.invariantCheck && this.invariantChecker != null) {
+            checkInvariants();
+            if (this.sweepRequested && !this.fatalError) {
+                // 批次结束时状态一致，编码快照交给后台线程全量验证:
+                this.sweepRequested = false;
+                long sequenceId = this.lastSequenceId;
+                byte[] snapshot = this.snapshotService.encode(sequenceId, this.assetService, this.orderService,
+                        this.matchEngines);
+                this.invariantSweeper.submit(() -> sweepInvariants(sequenceId, snapshot));
+            }
+        }
+        for (SymbolEnum symbol : this.orderBookChanged) {
+            // 推送有变化的档位（接管后或变化档位过多时推送完整深度），深度无变化时不输出:
+            MatchEngine engine = this.matchEngines.get(symbol);
+            OrderBookDeltaBean delta = engine.getOrderBookDelta(this.lastSequenceId, refresh);
+            if (delta != null) {
+                output().orderBookDeltas.add(delta);
+                // 完整深度由MatchEngine增量维护（仅复制有变化的一侧），定时保存，与增量使用相同的sequenceId:
+                OrderBookBean orderBook = engine.getOrderBook();
+                orderBook.sequenceId = this.lastSequenceId;
+                output().orderBooks.add(orderBook);
+            }
+        }
+        this.orderBookChanged.clear();
+        if (refresh) {
+            // 接管前的余额检查点已被丢弃，全量写入一次:
+            this.assetService.markAllAssetsChanged();
+        }
+        checkpointBalances();
+        // 标记定序批次结束，输出线程据此合并本批次的输出:
+        output().batchEnd = true;
+        publishOutput();
+    }
+
+    /**
+     * 到达检查点间隔时输出自上次检查点以来余额有变化的用户资产：批次结束时状态一致，同一检查点的行带相同的sequenceId，
+     * 由落库线程在一个事务中写入，因此balances表始终是MAX(sequenceId)时的完整余额
+     */
+    void checkpointBalances() {
+        if (this.assetService.changedAssetCount() == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - this.lastBalanceCheckpointAt < this.balanceCheckpointInterval.toMillis()) {
+            return;
+        }
+        this.lastBalanceCheckpointAt = now;
+        long sequenceId = this.lastSequenceId;
+        List<BalanceEntity> balances = output().balances;
+        this.assetService.drainChangedAssets((userId, assetId, asset) -> {
+            BalanceEntity balance = new BalanceEntity();
+            balance.userId = userId;
+            balance.asset = assetId;
+            balance.available = asset.getAvailable();
+            balance.frozen = asset.getFrozen();
+            balance.sequenceId = sequenceId;
+            balance.updatedAt = now;
+            balances.add(balance);
+        });
+    }
+
+    /**
+     * 按顺序处理lastSequenceId之后的事件，直到lastSequenceId >= toSequenceId或没有更多事件：
+     * 先分页读本地日志，日志中没有的部分再以流的方式分页读数据库（由后台线程读取并反序列化），
+     * 每处理CATCH_UP_BATCH个事件结束一个批次，内存占用与缺失的事件数无关
+     */
+    void catchUp(long toSequenceId) {
+        while (isJournalEnabled() && this.lastSequenceId < toSequenceId && !this.fatalError) {
+            List<AbstractEvent> events = this.journal.read(this.lastSequenceId, CATCH_UP_BATCH);
+            if (events.isEmpty()) {
+                break;
+            }
+            for (AbstractEvent e : events) {
+                if (this.lastSequenceId >= toSequenceId) {
+                    break;
+                }
+                processLostEvent(e);
+            }
+            flushBatch();
+        }
+        if (this.lastSequenceId >= toSequenceId || this.fatalError) {
+            return;
+        }
+        try (EventStream stream = this.storeService.streamEventsFromDb(this.lastSequenceId)) {
+            int n = 0;
+            AbstractEvent e;
+            while (this.lastSequenceId < toSequenceId && !this.fatalError && (e = stream.next()) != null) {
+                processLostEvent(e);
+                if (++n % CATCH_UP_BATCH == 0) {
+                    flushBatch();
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("load events from db failed.", e);
+            panic();
+            return;
+        }
+        flushBatch();
+    }
+
+    private void processLostEvent(AbstractEvent event) {
+        // 补齐的事件本身不连续时不再递归补齐:
+        if (event.previousId > this.lastSequenceId) {
+            logger.error("lost events not found: expected previous id {} but actual {} for event {}",
+                    this.lastSequenceId, event.previousId, event);
+            panic();
+            return;
+        }
+        processEvent(event);
+    }
+
+    private boolean isJournalEnabled() {
+        return this.journal != null && this.journal.isEnabled();
     }
 
     public void processEvent(AbstractEvent event) {
@@ -325,21 +805,20 @@ public class TradingEngineService extends LoggerSupport {
             logger.warn("skip duplicate event: {}", event);
             return;
         }
-        // 如果丢失了消息，从数据库读取丢失的消息，逐个处理
+        // 如果丢失了消息，从本地日志或数据库读取丢失的消息，逐个处理
         if (event.previousId > this.lastSequenceId) {
             logger.warn("event lost: expected previous id {} but actual {} for event {}", this.lastSequenceId,
                     event.previousId, event);
-            // 查sequenceId > lastSequenceId的事件
-            List<AbstractEvent> events = this.storeService.loadEventsFromDb(this.lastSequenceId);
-            if (events.isEmpty()) {
-                logger.error("cannot load lost event from db.");
-                panic();
+            // 处理sequenceId > lastSequenceId的事件，直到补齐当前事件之前的全部事件:
+            catchUp(event.previousId);
+            if (this.fatalError) {
                 return;
             }
-            for (AbstractEvent e : events) {
-                this.processEvent(e);
+            if (this.lastSequenceId < event.previousId) {
+                logger.error("cannot load lost events from journal or db.");
+                panic();
+                return;
             }
-            return;
         }
         // 当前消息不指向上一条消息
         if (event.previousId != lastSequenceId) {
@@ -351,14 +830,27 @@ public class TradingEngineService extends LoggerSupport {
         if (logger.isDebugEnabled()) {
             logger.debug("process event {} -> {}: {}...", this.lastSequenceId, event.sequenceId, event);
         }
+        if (this.invariantChecker == null && (this.debugMode || this.invariantCheck)) {
+            startInvariantChecker();
+        }
         // ======== 核心逻辑：根据事件类型处理 ========
+        long start = System.nanoTime();
         try {
             if (event instanceof OrderRequestEvent) {
                 createOrder((OrderRequestEvent) event);
+                this.metrics.createOrder.recordSince(start);
             } else if (event instanceof OrderCancelEvent) {
                 cancelOrder((OrderCancelEvent) event);
+                this.metrics.cancelOrder.recordSince(start);
+            } else if (event instanceof OrderCancelAllEvent) {
+                cancelAllOrders((OrderCancelAllEvent) event);
+                this.metrics.cancelAllOrders.recordSince(start);
             } else if (event instanceof TransferEvent) {
                 transfer((TransferEvent) event);
+                this.metrics.transfer.recordSince(start);
+            } else if (event instanceof BatchTransferEvent) {
+                batchTransfer((BatchTransferEvent) event);
+                this.metrics.transfer.recordSince(start);
             } else {
                 logger.error("unable to process event type: {}", event.getClass().getName());
                 panic();
@@ -370,24 +862,97 @@ public class TradingEngineService extends LoggerSupport {
             return;
         }
         this.lastSequenceId = event.sequenceId;
+        if (isJournalEnabled()) {
+            output().events.add(event);
+        }
+        if (this.pendingMatches.isEmpty()) {
+            // 撮合线程已不再持有已删除订单的句柄，回收槽位:
+            this.orderService.reclaim();
+        }
         if (logger.isDebugEnabled()) {
             logger.debug("set last processed sequence id: {}...", this.lastSequenceId);
         }
         if (debugMode) {
-            this.validate();
+            this.completePendingMatches(true);
+            this.checkInvariants();
             this.debug();
         }
+        // 本事件（及期间完成的并行撮合）的输出一次性发布:
+        publishOutput();
     }
 
     private void panic() {
+        if (this.fatalError) {
+            return;
+        }
         logger.error("application panic. exit now...");
         this.fatalError = true;
-        System.exit(1);
+        // 关闭钩子会停止并等待输出线程，因此不能在调用者（可能是输出线程）上退出:
+        Thread thread = new Thread(this.exit, "panic-exit");
+        thread.start();
+    }
+
+    /**
+     * 按提交顺序完成并行撮合的事件（清算及输出），清算只在本线程执行，AssetService和OrderService仍为单线程写入
+     * @param waitAll 是否等待所有已提交的事件，否则遇到未完成的撮合即返回
+     */
+    void completePendingMatches(boolean waitAll) {
+        for (;;) {
+            Future<Runnable> future = this.pendingMatches.peek();
+            if (future == null || (!waitAll && !future.isDone())) {
+                break;
+            }
+            this.pendingMatches.poll();
+            Runnable completion;
+            try {
+                completion = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for match.", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Match failed.", e.getCause());
+            }
+            completion.run();
+        }
     }
 
     boolean transfer(TransferEvent event) {
         boolean ok = this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, event.fromUserId, event.toUserId,
                 event.asset, event.amount, event.sufficient);
+        if (!ok && !this.pendingMatches.isEmpty()) {
+            // 尚未清算的成交可能使可用余额暂时偏少，全部清算后重试，结果与串行处理一致:
+            completePendingMatches(true);
+            ok = this.assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, event.fromUserId, event.toUserId,
+                    event.asset, event.amount, event.sufficient);
+        }
+        return ok;
+    }
+
+    /**
+     * 批量转账：全部成功或全部失败，金额为负数或超出余额范围时整批失败
+     */
+    boolean batchTransfer(BatchTransferEvent event) {
+        List<TransferLeg> legs = new ArrayList<>(event.legs.size());
+        for (BatchTransferEvent.Leg leg : event.legs) {
+            if (leg.amount.signum() < 0) {
+                logger.warn("batch transfer failed: negative amount {}.", leg.amount);
+                return false;
+            }
+            long amount;
+            try {
+                amount = Asset.toUnitsRoundDown(leg.amount);
+            } catch (ArithmeticException e) {
+                logger.warn("batch transfer failed: amount overflow {}.", leg.amount);
+                return false;
+            }
+            legs.add(new TransferLeg(leg.fromUserId, leg.toUserId, leg.asset, amount, leg.sufficient));
+        }
+        boolean ok = this.assetService.tryTransfers(legs);
+        if (!ok && !this.pendingMatches.isEmpty()) {
+            // 与单笔转账相同，全部清算后重试:
+            completePendingMatches(true);
+            ok = this.assetService.tryTransfers(legs);
+        }
         return ok;
     }
 
@@ -397,65 +962,78 @@ public class TradingEngineService extends LoggerSupport {
         int month = zdt.getMonth().getValue();
         // 1、生成orderId，创建order
         long orderId = event.sequenceId * 10000 + (year * 100 + month);
+        MatchEngine matchEngine = this.matchEngines.get(event.symbol);
         OrderEntity order = this.orderService.createOrder(event.sequenceId, event.createdAt, orderId, event.userId,
-                event.direction, event.price, event.quantity);
+                event.symbol, event.type, event.direction, event.price, event.quantity, matchEngine.scale);
+        if (order == null && !this.pendingMatches.isEmpty()) {
+            // 清算只会增加可用余额，冻结失败可能是因为尚未清算的成交，全部清算后重试，结果与串行处理一致:
+            completePendingMatches(true);
+            order = this.orderService.createOrder(event.sequenceId, event.createdAt, orderId, event.userId,
+                    event.symbol, event.type, event.direction, event.price, event.quantity, matchEngine.scale);
+        }
         if (order == null) {
             logger.warn("create order failed.");
             // 推送失败结果:
-            this.apiResultQueue.add(ApiResultMessage.createOrderFailed(event.refId, event.createdAt));
+            output().apiResults.add(ApiResultMessage.createOrderFailed(event.refId, event.createdAt));
             return;
         }
-        // 2、撮合
-        MatchResult result = this.matchEngine.processOrder(event.sequenceId, order);
+        if (this.matchEngines.parallel) {
+            // 2、在交易对的撮合线程撮合，复制撮合结果（订单快照）后回到本线程清算:
+            final OrderEntity taker = order;
+            this.pendingMatches.add(this.matchEngines.submit(event.symbol, () -> {
+                long start = System.nanoTime();
+                MatchResult result = matchEngine.processOrder(event.sequenceId, taker).copy();
+                this.metrics.match.recordSince(start);
+                return () -> clearMatchResult(event, result);
+            }));
+            completePendingMatches(false);
+        } else {
+            // 2、撮合
+            long start = System.nanoTime();
+            MatchResult result = matchEngine.processOrder(event.sequenceId, order);
+            this.metrics.match.recordSince(start);
+            clearMatchResult(event, result);
+        }
+    }
+
+    void clearMatchResult(OrderRequestEvent event, MatchResult result) {
         // 3、清算
+        long start = System.nanoTime();
         this.clearingService.clearMatchResult(result);
+        this.metrics.clear.recordSince(start);
+        OrderEntity order = result.takerOrder;
+        EngineOutput output = output();
         // 推送成功结果,注意必须复制一份OrderEntity,因为将异步序列化:
-        this.apiResultQueue.add(ApiResultMessage.orderSuccess(event.refId, order.copy(), event.createdAt));
-        this.orderBookChanged = true;
-        // 收集Notification:
-        List<NotificationMessage> notifications = new ArrayList<>();
-        notifications.add(createNotification(event.createdAt, "order_matched", order.userId, order.copy()));
-        // 收集已完成的OrderEntity并生成MatchDetailEntity, TickEntity:
-        if (!result.matchDetails.isEmpty()) {
-            List<OrderEntity> closedOrders = new ArrayList<>();
-            List<MatchDetailEntity> matchDetails = new ArrayList<>();
-            List<TickEntity> ticks = new ArrayList<>();
-            if (result.takerOrder.status.isFinalStatus) {
-                closedOrders.add(result.takerOrder);
-            }
-            for (MatchDetailRecord detail : result.matchDetails) {
-                OrderEntity maker = detail.makerOrder();
-                notifications.add(createNotification(event.createdAt, "order_matched", maker.userId, maker.copy()));
-                if (maker.status.isFinalStatus) {
-                    closedOrders.add(maker);
-                }
-                MatchDetailEntity takerDetail = generateMatchDetailEntity(event.sequenceId, event.createdAt, detail,
-                        true);
-                MatchDetailEntity makerDetail = generateMatchDetailEntity(event.sequenceId, event.createdAt, detail,
-                        false);
-                matchDetails.add(takerDetail);
-                matchDetails.add(makerDetail);
-                TickEntity tick = new TickEntity();
-                tick.sequenceId = event.sequenceId;
-                tick.takerOrderId = detail.takerOrder().id;
-                tick.makerOrderId = detail.makerOrder().id;
-                tick.price = detail.price();
-                tick.quantity = detail.quantity();
-                tick.takerDirection = detail.takerOrder().direction == Direction.BUY;
-                tick.createdAt = event.createdAt;
-                ticks.add(tick);
-            }
-            // 异步写入数据库:
-            this.orderQueue.add(closedOrders);
-            this.matchQueue.add(matchDetails);
-            // 异步发送Tick消息:
-            TickMessage msg = new TickMessage();
-            msg.sequenceId = event.sequenceId;
-            msg.createdAt = event.createdAt;
-            msg.ticks = ticks;
-            this.tickQueue.add(msg);
-            // 异步通知OrderMatch:
-            this.notificationQueue.addAll(notifications);
+        output.apiResults.add(ApiResultMessage.orderSuccess(event.refId, order.copy(), event.createdAt));
+        this.orderBookChanged.add(event.symbol);
+        NotificationMessage notification = createNotification(event.createdAt, "order_matched", order.userId,
+                order.copy());
+        if (!result.isEmpty()) {
+            if (order.status.isFinalStatus) {
+                // 异步写入数据库:
+                output.orders.add(order);
+            }
+            output.notifications.add(notification);
+            // 每次成交只写入输出槽位中复用的成交记录（不创建对象），成交明细、Tick、maker通知和已结束的maker订单由输出线程生成:
+            // 注意MatchResult可能被MatchEngine复用，仅在此处同步读取:
+            int size = result.size();
+            for (int i = 0; i < size; i++) {
+                MatchDetailRecord detail = result.get(i);
+                EngineOutput.Fill fill = output.addFill();
+                fill.sequenceId = event.sequenceId;
+                fill.createdAt = event.createdAt;
+                fill.symbol = event.symbol;
+                fill.takerOrderId = order.id;
+                fill.takerUserId = order.userId;
+                fill.takerDirection = order.direction;
+                fill.quantityUnits = detail.quantity();
+                fill.maker.copyFrom(detail.makerOrder());
+                fill.notificationIndex = output.notifications.size();
+            }
+        } else if (order.status.isFinalStatus) {
+            // 未成交即取消的市价/IOC/FOK订单（不经过OrderService）直接落库:
+            output.orders.add(order);
+            output.notifications.add(notification);
         }
     }
 
@@ -468,166 +1046,154 @@ public class TradingEngineService extends LoggerSupport {
         return msg;
     }
 
-    MatchDetailEntity generateMatchDetailEntity(long sequenceId, long timestamp, MatchDetailRecord detail,
-                                                boolean forTaker) {
-        MatchDetailEntity d = new MatchDetailEntity();
-        d.sequenceId = sequenceId;
-        d.orderId = forTaker ? detail.takerOrder().id : detail.makerOrder().id;
-        d.counterOrderId = forTaker ? detail.makerOrder().id : detail.takerOrder().id;
-        d.direction = forTaker ? detail.takerOrder().direction : detail.makerOrder().direction;
-        d.price = detail.price();
-        d.quantity = detail.quantity();
-        d.type = forTaker ? MatchType.TAKER : MatchType.MAKER;
-        d.userId = forTaker ? detail.takerOrder().userId : detail.makerOrder().userId;
-        d.counterUserId = forTaker ? detail.makerOrder().userId : detail.takerOrder().userId;
-        d.createdAt = timestamp;
-        return d;
-    }
-
     void cancelOrder(OrderCancelEvent event) {
         OrderEntity order = this.orderService.getOrder(event.refOrderId);
         // 未找到活动订单或订单不属于该用户:
         if (order == null || order.userId.longValue() != event.userId.longValue()) {
             // 发送失败消息:
-            this.apiResultQueue.add(ApiResultMessage.cancelOrderFailed(event.refId, event.createdAt));
+            output().apiResults.add(ApiResultMessage.cancelOrderFailed(event.refId, event.createdAt));
             return;
         }
-        this.matchEngine.cancel(event.createdAt, order);
-        this.clearingService.clearCancelOrder(order);
-        this.orderBookChanged = true;
+        MatchEngine matchEngine = this.matchEngines.get(order.symbol);
+        if (this.matchEngines.parallel) {
+            // 订单可能已在撮合线程中完全成交但尚未清算，由撮合线程按顺序判断是否仍在订单簿中:
+            this.pendingMatches.add(this.matchEngines.submit(order.symbol, () -> {
+                if (!matchEngine.exist(order)) {
+                    return () -> output().apiResults
+                            .add(ApiResultMessage.cancelOrderFailed(event.refId, event.createdAt));
+                }
+                matchEngine.cancel(event.createdAt, order);
+                return () -> clearCancelOrder(event, order);
+            }));
+            completePendingMatches(false);
+        } else {
+            matchEngine.cancel(event.createdAt, order);
+            clearCancelOrder(event, order);
+        }
+    }
+
+    void clearCancelOrder(OrderCancelEvent event, OrderEntity order) {
+        this.clearingService.clearCancelOrder(order, this.matchEngines.scale);
+        this.orderBookChanged.add(order.symbol);
         // 发送成功消息:
-        this.apiResultQueue.add(ApiResultMessage.orderSuccess(event.refId, order, event.createdAt));
-        this.notificationQueue.add(createNotification(event.createdAt, "order_canceled", order.userId, order));
+        output().apiResults.add(ApiResultMessage.orderSuccess(event.refId, order, event.createdAt));
+        output().notifications.add(createNotification(event.createdAt, "order_canceled", order.userId, order));
+    }
+
+    void cancelAllOrders(OrderCancelAllEvent event) {
+        // 遍历用户的挂单链表，按交易对分组:
+        Map<SymbolEnum, List<OrderEntity>> groups = new EnumMap<>(SymbolEnum.class);
+        for (OrderEntity order : this.orderService.getUserOrders(event.userId)) {
+            if (event.symbol == null || order.symbol == event.symbol) {
+                groups.computeIfAbsent(order.symbol, s -> new ArrayList<>()).add(order);
+            }
+        }
+        List<OrderEntity> canceled = new ArrayList<>();
+        if (this.matchEngines.parallel) {
+            // 各交易对的撮合线程按顺序撤销仍在订单簿中的订单，全部完成后统一清算:
+            for (Entry<SymbolEnum, List<OrderEntity>> entry : groups.entrySet()) {
+                MatchEngine matchEngine = this.matchEngines.get(entry.getKey());
+                List<OrderEntity> orders = entry.getValue();
+                this.pendingMatches.add(this.matchEngines.submit(entry.getKey(), () -> {
+                    List<OrderEntity> result = matchEngine.cancel(event.createdAt, orders);
+                    return () -> canceled.addAll(result);
+                }));
+            }
+            this.pendingMatches.add(CompletableFuture.completedFuture(() -> clearCancelAllOrders(event, canceled)));
+            completePendingMatches(false);
+        } else {
+            for (Entry<SymbolEnum, List<OrderEntity>> entry : groups.entrySet()) {
+                canceled.addAll(this.matchEngines.get(entry.getKey()).cancel(event.createdAt, entry.getValue()));
+            }
+            clearCancelAllOrders(event, canceled);
+        }
+    }
+
+    void clearCancelAllOrders(OrderCancelAllEvent event, List<OrderEntity> orders) {
+        // 按资产汇总解冻:
+        this.clearingService.clearCancelOrders(event.userId, orders, this.matchEngines.scale);
+        for (OrderEntity order : orders) {
+            this.orderBookChanged.add(order.symbol);
+        }
+        // 只发送一条结果和一条通知:
+        output().apiResults.add(ApiResultMessage.ordersSuccess(event.refId, orders, event.createdAt));
+        if (!orders.isEmpty()) {
+            output().notifications.add(createNotification(event.createdAt, "orders_canceled", event.userId, orders));
+        }
     }
 
     public void debug() {
         System.out.println("========== trading engine ==========");
         this.assetService.debug();
         this.orderService.debug();
-        this.matchEngine.debug();
+        for (MatchEngine matchEngine : this.matchEngines.getEngines()) {
+            matchEngine.debug();
+        }
         System.out.println("========== // trading engine ==========");
     }
 
     /**
-     * 测试方法：验证
+     * 测试方法：全量验证
      */
     void validate() {
         logger.debug("start validate...");
-        validateAssets();
-        validateOrders();
-        validateMatchEngine();
+        try {
+            new InvariantChecker(this.assetService, this.orderService, this.matchEngines).validateAll();
+        } catch (IllegalStateException e) {
+            require(false, e.getMessage());
+        }
         logger.debug("validate ok.");
     }
 
-    void validateAssets() {
-        // 验证系统资产完整性:
-        // 累加所有资产
-        BigDecimal totalUSD = BigDecimal.ZERO;
-        BigDecimal totalBTC = BigDecimal.ZERO;
-        // 验证资产表每个用户的资产
-        for (Entry<Long, ConcurrentMap<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
-            Long userId = userEntry.getKey();
-            ConcurrentMap<AssetEnum, Asset> assets = userEntry.getValue();
-            // 验证该用户的所有类型资产
-            for (Entry<AssetEnum, Asset> entry : assets.entrySet()) {
-                AssetEnum assetId = entry.getKey();
-                Asset asset = entry.getValue();
-                if (userId.longValue() == UserType.DEBT.getInternalUserId()) {
-                    // 系统负债账户available不允许为正:
-                    require(asset.getAvailable().signum() <= 0, "Debt has positive available: " + asset);
-                    // 系统负债账户frozen必须为0:
-                    require(asset.getFrozen().signum() == 0, "Debt has non-zero frozen: " + asset);
-                } else {
-                    // 交易用户的available/frozen不允许为负数:
-                    require(asset.getAvailable().signum() >= 0, "Trader has negative available: " + asset);
-                    require(asset.getFrozen().signum() >= 0, "Trader has negative frozen: " + asset);
-                }
-                switch (assetId) {
-                    case USD -> {
-                        totalUSD = totalUSD.add(asset.getTotal());
-                    }
-                    case BTC -> {
-                        totalBTC = totalBTC.add(asset.getTotal());
-                    }
-                    default -> require(false, "Unexpected asset id: " + assetId);
-                }
-            }
+    /**
+     * 增量验证自上次验证后被修改的用户和交易对，第一次调用前须已调用startInvariantChecker()
+     */
+    void checkInvariants() {
+        try {
+            this.invariantChecker.checkTouched(this.orderBookChanged);
+        } catch (IllegalStateException e) {
+            require(false, e.getMessage());
         }
-        // 各类别资产总额为0:
-        require(totalUSD.signum() == 0, "Non zero USD balance: " + totalUSD);
-        require(totalBTC.signum() == 0, "Non zero BTC balance: " + totalBTC);
-    }
-
-    void validateOrders() {
-        // 验证订单:
-        Map<Long, Map<AssetEnum, BigDecimal>> userOrderFrozen = new HashMap<>();
-        for (Entry<Long, OrderEntity> entry : this.orderService.getActiveOrders().entrySet()) {
-            OrderEntity order = entry.getValue();
-            require(order.unfilledQuantity.signum() > 0, "Active order must have positive unfilled amount: " + order);
-            switch (order.direction) {
-                case BUY -> {
-                    // 订单必须在MatchEngine中:
-                    require(this.matchEngine.buyBook.exist(order), "order not found in buy book: " + order);
-                    // 累计冻结的USD:
-                    userOrderFrozen.putIfAbsent(order.userId, new HashMap<>());
-                    Map<AssetEnum, BigDecimal> frozenAssets = userOrderFrozen.get(order.userId);
-                    frozenAssets.putIfAbsent(AssetEnum.USD, BigDecimal.ZERO);
-                    BigDecimal frozen = frozenAssets.get(AssetEnum.USD);
-                    frozenAssets.put(AssetEnum.USD, frozen.add(order.price.multiply(order.unfilledQuantity)));
-                }
-                case SELL -> {
-                    // 订单必须在MatchEngine中:
-                    require(this.matchEngine.sellBook.exist(order), "order not found in sell book: " + order);
-                    // 累计冻结的BTC:
-                    userOrderFrozen.putIfAbsent(order.userId, new HashMap<>());
-                    Map<AssetEnum, BigDecimal> frozenAssets = userOrderFrozen.get(order.userId);
-                    frozenAssets.putIfAbsent(AssetEnum.BTC, BigDecimal.ZERO);
-                    BigDecimal frozen = frozenAssets.get(AssetEnum.BTC);
-                    frozenAssets.put(AssetEnum.BTC, frozen.add(order.unfilledQuantity));
-                }
-                default -> require(false, "Unexpected order direction: " + order.direction);
-            }
-        }
-        // 订单冻结的累计金额必须和Asset冻结一致:
-        for (Entry<Long, ConcurrentMap<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
-            Long userId = userEntry.getKey();
-            ConcurrentMap<AssetEnum, Asset> assets = userEntry.getValue();
-            for (Entry<AssetEnum, Asset> entry : assets.entrySet()) {
-                AssetEnum assetId = entry.getKey();
-                Asset asset = entry.getValue();
-                if (asset.getFrozen().signum() > 0) {
-                    Map<AssetEnum, BigDecimal> orderFrozen = userOrderFrozen.get(userId);
-                    require(orderFrozen != null, "No order frozen found for user: " + userId + ", asset: " + asset);
-                    BigDecimal frozen = orderFrozen.get(assetId);
-                    require(frozen != null, "No order frozen found for asset: " + asset);
-                    require(frozen.compareTo(asset.getFrozen()) == 0,
-                            "Order frozen " + frozen + " is not equals to asset frozen: " + asset);
-                    // 从userOrderFrozen中删除已验证的Asset数据:
-                    orderFrozen.remove(assetId);
-                }
-            }
+    }
+
+    private void startInvariantChecker() {
+        this.invariantChecker = new InvariantChecker(this.assetService, this.orderService, this.matchEngines);
+        try {
+            this.invariantChecker.start();
+        } catch (IllegalStateException e) {
+            require(false, e.getMessage());
         }
-        // userOrderFrozen不存在未验证的Asset数据:
-        for (Entry<Long, Map<AssetEnum, BigDecimal>> userEntry : userOrderFrozen.entrySet()) {
-            Long userId = userEntry.getKey();
-            Map<AssetEnum, BigDecimal> frozenAssets = userEntry.getValue();
-            require(frozenAssets.isEmpty(), "User " + userId + " has unexpected frozen for order: " + frozenAssets);
+        if (this.invariantCheck && this.snapshotService != null) {
+            this.invariantSweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "invariant-sweep");
+                t.setDaemon(true);
+                return t;
+            });
+            long interval = this.invariantSweepInterval.toMillis();
+            this.invariantSweeper.scheduleAtFixedRate(() -> this.sweepRequested = true, interval, interval,
+                    TimeUnit.MILLISECONDS);
         }
     }
 
-    void validateMatchEngine() {
-        // OrderBook的Order必须在ActiveOrders中:
-        Map<Long, OrderEntity> copyOfActiveOrders = new HashMap<>(this.orderService.getActiveOrders());
-        for (OrderEntity order : this.matchEngine.buyBook.book.values()) {
-            require(copyOfActiveOrders.remove(order.id) == order,
-                    "Order in buy book is not in active orders: " + order);
-        }
-        for (OrderEntity order : this.matchEngine.sellBook.book.values()) {
-            require(copyOfActiveOrders.remove(order.id) == order,
-                    "Order in sell book is not in active orders: " + order);
+    /**
+     * 在后台线程把快照恢复到独立的服务中并全量验证，不占用定序线程
+     */
+    private void sweepInvariants(long sequenceId, byte[] snapshot) {
+        long start = System.currentTimeMillis();
+        var arena = new OrderArena();
+        var scale = this.matchEngines.getEngines().iterator().next().scale;
+        var matchEngines = new MatchEngineRegistry(arena, scale, OrderBook.DEFAULT_DEPTH, false, false);
+        var assetService = new AssetService();
+        var orderService = new OrderService(assetService, arena);
+        try {
+            this.snapshotService.decode(snapshot, assetService, orderService, matchEngines);
+            new InvariantChecker(assetService, orderService, matchEngines).validateAll();
+        } catch (RuntimeException e) {
+            logger.error("invariant sweep failed at sequence id " + sequenceId, e);
+            panic();
+            return;
         }
-        // activeOrders的所有Order必须在Order Book中:
-        require(copyOfActiveOrders.isEmpty(), "Not all active orders are in order book.");
+        logger.info("invariant sweep ok at sequence id {} in {} ms.", sequenceId, System.currentTimeMillis() - start);
     }
 
     void require(boolean condition, String errorMessage) {
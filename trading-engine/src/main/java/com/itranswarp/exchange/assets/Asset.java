@@ -1,42 +1,81 @@
 package com.itranswarp.exchange.assets;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.itranswarp.exchange.enums.AssetEnum;
 
 /**
  * 资产类
+ * 余额以定点数long表示（余额 = units / 10^AssetEnum.BALANCE_SCALE），转账只做整数加减，BigDecimal只出现在API和持久化边界
  */
 public class Asset {
     // 可用余额
-    BigDecimal available;
+    long available;
     // 冻结余额
-    BigDecimal frozen;
+    long frozen;
 
     public Asset() {
-        this(BigDecimal.ZERO, BigDecimal.ZERO);
     }
 
-    public Asset(BigDecimal available, BigDecimal frozen) {
+    Asset(long available, long frozen) {
         this.available = available;
         this.frozen = frozen;
     }
 
+    public Asset(BigDecimal available, BigDecimal frozen) {
+        this.available = toUnits(available);
+        this.frozen = toUnits(frozen);
+    }
+
     public BigDecimal getAvailable() {
-        return available;
+        return toDecimal(available);
     }
 
     public BigDecimal getFrozen() {
-        return frozen;
+        return toDecimal(frozen);
     }
 
     @JsonIgnore
     public BigDecimal getTotal() {
-        return available.add(frozen);
+        return toDecimal(Math.addExact(available, frozen));
+    }
+
+    @JsonIgnore
+    public long getAvailableUnits() {
+        return available;
+    }
+
+    @JsonIgnore
+    public long getFrozenUnits() {
+        return frozen;
+    }
+
+    /**
+     * BigDecimal余额转定点数，精度超出BALANCE_SCALE或溢出时抛出ArithmeticException
+     */
+    public static long toUnits(BigDecimal amount) {
+        return amount.movePointRight(AssetEnum.BALANCE_SCALE).longValueExact();
+    }
+
+    /**
+     * 外部传入的金额转定点数，超出BALANCE_SCALE的部分向零舍去（不会多转），溢出时抛出ArithmeticException
+     */
+    public static long toUnitsRoundDown(BigDecimal amount) {
+        return amount.setScale(AssetEnum.BALANCE_SCALE, RoundingMode.DOWN).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long units) {
+        if (units == 0) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal value = BigDecimal.valueOf(units, AssetEnum.BALANCE_SCALE).stripTrailingZeros();
+        return value.scale() < 0 ? value.setScale(0) : value;
     }
 
     @Override
     public String toString() {
-        return String.format("[available=%04.2f, frozen=%02.2f]", available, frozen);
+        return "[available=" + getAvailable().toPlainString() + ", frozen=" + getFrozen().toPlainString() + "]";
     }
 }
@@ -1,12 +1,12 @@
 package com.itranswarp.exchange.assets;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
 
 import org.springframework.stereotype.Component;
 
@@ -18,39 +18,93 @@ import com.itranswarp.exchange.support.LoggerSupport;
 @Component
 public class AssetService extends LoggerSupport {
 
-    // 使用ConcurrentMap并不是为了让多线程并发写入，因为AssetService中并没有任何同步锁。
-    // UserId -> Map(AssetEnum -> Assets[available/frozen])
-    final ConcurrentMap<Long, ConcurrentMap<AssetEnum, Asset>> userAssets = new ConcurrentHashMap<>();
+    // 单线程写入，其他线程（如API查询）可以并发读取:
+    // UserId -> 按AssetEnum序号排列的Assets[available/frozen]
+    final UserAssetStore userAssets = new UserAssetStore();
+
+    private static final AssetEnum[] ASSET_IDS = AssetEnum.values();
+
+    // 增量校验时记录资产被修改的用户，为null时不记录:
+    Set<Long> touchedUsers = null;
 
     /**
-     * 根据用户id和资产id查资产
+     * 根据用户id和资产id查资产（返回的是正在使用的资产对象，仅限定序线程读取）
      * @param userId
      * @param assetId
      * @return
      */
     public Asset getAsset(Long userId, AssetEnum assetId) {
-        ConcurrentMap<AssetEnum, Asset> assets = userAssets.get(userId);
-        if (assets == null) {
-            return null;
-        }
-        return assets.get(assetId);
+        return userAssets.get(userId, assetId);
     }
 
     /**
-     * 根据用户id查所有类型资产
+     * 根据用户id查所有类型资产，返回同一时刻的余额副本（可在任意线程调用）
      * @param userId
      * @return
      */
     public Map<AssetEnum, Asset> getAssets(Long userId) {
-        Map<AssetEnum, Asset> assets = userAssets.get(userId);
-        if (assets == null) {
+        int user = userAssets.indexOf(userId);
+        if (user < 0) {
             return Map.of();
         }
-        return assets;
+        return userAssets.snapshot(user);
+    }
+
+    /**
+     * 按用户创建顺序复制全部用户的资产表（资产对象不复制），用于快照、全量校验和调试
+     */
+    public Map<Long, Map<AssetEnum, Asset>> getUserAssets() {
+        int size = userAssets.size();
+        Map<Long, Map<AssetEnum, Asset>> result = new LinkedHashMap<>(size * 2);
+        for (int user = 0; user < size; user++) {
+            Map<AssetEnum, Asset> assets = new EnumMap<>(AssetEnum.class);
+            userAssets.forEachAsset(user, assets::put);
+            result.put(userAssets.userId(user), assets);
+        }
+        return result;
     }
 
-    public ConcurrentMap<Long, ConcurrentMap<AssetEnum, Asset>> getUserAssets() {
-        return this.userAssets;
+    /**
+     * 从快照恢复用户资产（仅在启动时调用），精度超出BALANCE_SCALE时抛出ArithmeticException
+     */
+    public void restoreAsset(Long userId, AssetEnum assetId, BigDecimal available, BigDecimal frozen) {
+        long availableUnits = Asset.toUnits(available);
+        long frozenUnits = Asset.toUnits(frozen);
+        int user = userAssets.getOrCreateUser(userId);
+        Asset asset = userAssets.getOrCreate(user, assetId);
+        userAssets.beginWrite(user, user);
+        asset.available = availableUnits;
+        asset.frozen = frozenUnits;
+        userAssets.endWrite(user, user);
+        userAssets.markChanged(user, user, assetId);
+    }
+
+    /**
+     * 记录此后资产被修改的用户（供增量校验使用），传入null停止记录
+     */
+    public void trackTouchedUsers(Set<Long> touchedUsers) {
+        this.touchedUsers = touchedUsers;
+    }
+
+    /**
+     * 自上次取出后余额可能变化的资产数
+     */
+    public int changedAssetCount() {
+        return userAssets.changedCount();
+    }
+
+    /**
+     * 取出自上次取出后余额可能变化的资产（含从快照恢复的资产），供增量持久化使用（仅限定序线程调用）
+     */
+    public void drainChangedAssets(ChangedAssetConsumer consumer) {
+        userAssets.drainChanged(consumer);
+    }
+
+    /**
+     * 把全部资产记为已变化，下次取出时全量持久化（仅限定序线程调用）
+     */
+    public void markAllAssetsChanged() {
+        userAssets.markAllChanged();
     }
 
     /**
@@ -61,9 +115,16 @@ public class AssetService extends LoggerSupport {
      * @return
      */
     public boolean tryFreeze(Long userId, AssetEnum assetId, BigDecimal amount) {
-        boolean ok = tryTransfer(Transfer.AVAILABLE_TO_FROZEN, userId, userId, assetId, amount, true);
+        return tryTransfer(Transfer.AVAILABLE_TO_FROZEN, userId, userId, assetId, amount, true);
+    }
+
+    /**
+     * 冻结，amount为余额定点数
+     */
+    public boolean tryFreezeUnits(long userId, AssetEnum assetId, long amount) {
+        boolean ok = tryTransferUnits(Transfer.AVAILABLE_TO_FROZEN, userId, userId, assetId, amount, true);
         if (ok && logger.isDebugEnabled()) {
-            logger.debug("freezed user {}, asset {}, amount {}", userId, assetId, amount);
+            logger.debug("freezed user {}, asset {}, amount {}", userId, assetId, Asset.toDecimal(amount));
         }
         return ok;
     }
@@ -75,12 +136,19 @@ public class AssetService extends LoggerSupport {
      * @param amount
      */
     public void unfreeze(Long userId, AssetEnum assetId, BigDecimal amount) {
-        if (!tryTransfer(Transfer.FROZEN_TO_AVAILABLE, userId, userId, assetId, amount, true)) {
-            throw new RuntimeException(
-                    "Unfreeze failed for user " + userId + ", asset = " + assetId + ", amount = " + amount);
+        unfreezeUnits(userId, assetId, Asset.toUnitsRoundDown(amount));
+    }
+
+    /**
+     * 解冻，amount为余额定点数
+     */
+    public void unfreezeUnits(long userId, AssetEnum assetId, long amount) {
+        if (!tryTransferUnits(Transfer.FROZEN_TO_AVAILABLE, userId, userId, assetId, amount, true)) {
+            throw new RuntimeException("Unfreeze failed for user " + userId + ", asset = " + assetId + ", amount = "
+                    + Asset.toDecimal(amount));
         }
         if (logger.isDebugEnabled()) {
-            logger.debug("unfreezed user {}, asset {}, amount {}", userId, assetId, amount);
+            logger.debug("unfreezed user {}, asset {}, amount {}", userId, assetId, Asset.toDecimal(amount));
         }
     }
 
@@ -94,17 +162,26 @@ public class AssetService extends LoggerSupport {
      * @param amount
      */
     public void transfer(Transfer type, Long fromUser, Long toUser, AssetEnum assetId, BigDecimal amount) {
-        if (!tryTransfer(type, fromUser, toUser, assetId, amount, true)) {
+        transferUnits(type, fromUser, toUser, assetId, Asset.toUnitsRoundDown(amount));
+    }
+
+    /**
+     * 转账，amount为余额定点数
+     */
+    public void transferUnits(Transfer type, long fromUser, long toUser, AssetEnum assetId, long amount) {
+        if (!tryTransferUnits(type, fromUser, toUser, assetId, amount, true)) {
             throw new RuntimeException("Transfer failed for " + type + ", from user " + fromUser + " to user " + toUser
-                    + ", asset = " + assetId + ", amount = " + amount);
+                    + ", asset = " + assetId + ", amount = " + Asset.toDecimal(amount));
         }
         if (logger.isDebugEnabled()) {
-            logger.debug("transfer asset {}, from {} => {}, amount {}", assetId, fromUser, toUser, amount);
+            logger.debug("transfer asset {}, from {} => {}, amount {}", assetId, fromUser, toUser,
+                    Asset.toDecimal(amount));
         }
     }
 
     /**
      * 尝试转账（注意保证所有用户资产的各余额总和为0
+     * 超出BALANCE_SCALE的精度向零舍去，金额或余额溢出时转账失败
      * @param type 转账类型
      * @param fromUser 源账户
      * @param toUser 目标账户
@@ -115,88 +192,217 @@ public class AssetService extends LoggerSupport {
      */
     public boolean tryTransfer(Transfer type, Long fromUser, Long toUser, AssetEnum assetId, BigDecimal amount,
             boolean checkBalance) {
-        if (amount.signum() == 0) {
+        // 转账金额不能为负:
+        if (amount.signum() < 0) {
+            throw new IllegalArgumentException("Negative amount");
+        }
+        long units;
+        try {
+            units = Asset.toUnitsRoundDown(amount);
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        return tryTransferUnits(type, fromUser, toUser, assetId, units, checkBalance);
+    }
+
+    /**
+     * 尝试转账，amount为余额定点数；余额溢出时不修改任何余额并返回false
+     * （用户id为基本类型，清算时不装箱）
+     */
+    public boolean tryTransferUnits(Transfer type, long fromUser, long toUser, AssetEnum assetId, long amount,
+            boolean checkBalance) {
+        if (amount == 0) {
             return true;
         }
         // 转账金额不能为负:
-        if (amount.signum() < 0) {
+        if (amount < 0) {
             throw new IllegalArgumentException("Negative amount");
         }
-        // 获取源用户资产:
-        Asset fromAsset = getAsset(fromUser, assetId);
-        if (fromAsset == null) {
-            // 资产不存在时初始化用户资产:
-            fromAsset = initAssets(fromUser, assetId);
-        }
-        // 获取目标用户资产:
-        Asset toAsset = getAsset(toUser, assetId);
-        if (toAsset == null) {
-            // 资产不存在时初始化用户资产:
-            toAsset = initAssets(toUser, assetId);
-        }
-        // 直接return，用switch表达式
-        // 新语法不用break
-        return switch (type) {
-        case AVAILABLE_TO_AVAILABLE -> {
-            // 需要检查余额且余额不足:
-            if (checkBalance && fromAsset.available.compareTo(amount) < 0) {
-                // 转账失败
-                yield false;
+        // 获取源用户资产，不存在时初始化:
+        int from = userAssets.getOrCreateUser(fromUser);
+        Asset fromAsset = userAssets.getOrCreate(from, assetId);
+        // 获取目标用户资产，不存在时初始化:
+        int to = fromUser == toUser ? from : userAssets.getOrCreateUser(toUser);
+        Asset toAsset = to == from ? fromAsset : userAssets.getOrCreate(to, assetId);
+        if (this.touchedUsers != null) {
+            this.touchedUsers.add(fromUser);
+            this.touchedUsers.add(toUser);
+        }
+        try {
+            // 直接return，用switch表达式
+            // 新语法不用break
+            return switch (type) {
+            case AVAILABLE_TO_AVAILABLE -> {
+                // 需要检查余额且余额不足:
+                if (checkBalance && fromAsset.available < amount) {
+                    // 转账失败
+                    yield false;
+                }
+                // 先计算再写入，溢出时余额不变（同一用户时目标余额基于已减少的源余额）:
+                long fromBalance = Math.subtractExact(fromAsset.available, amount);
+                long toBalance = Math.addExact(toAsset == fromAsset ? fromBalance : toAsset.available, amount);
+                userAssets.beginWrite(from, to);
+                // 源用户的可用资产减少:
+                fromAsset.available = fromBalance;
+                // 目标用户的可用资产增加:
+                toAsset.available = toBalance;
+                userAssets.endWrite(from, to);
+                userAssets.markChanged(from, to, assetId);
+                yield true;
             }
-            // 源用户的可用资产减少:
-            fromAsset.available = fromAsset.available.subtract(amount);
-            // 目标用户的可用资产增加:
-            toAsset.available = toAsset.available.add(amount);
-            yield true;
-        }
-        case AVAILABLE_TO_FROZEN -> {
-            // 需要检查余额且余额不足:
-            if (checkBalance && fromAsset.available.compareTo(amount) < 0) {
-                yield false;
+            case AVAILABLE_TO_FROZEN -> {
+                // 需要检查余额且余额不足:
+                if (checkBalance && fromAsset.available < amount) {
+                    yield false;
+                }
+                long fromBalance = Math.subtractExact(fromAsset.available, amount);
+                long toBalance = Math.addExact(toAsset.frozen, amount);
+                userAssets.beginWrite(from, to);
+                fromAsset.available = fromBalance;
+                toAsset.frozen = toBalance;
+                userAssets.endWrite(from, to);
+                userAssets.markChanged(from, to, assetId);
+                yield true;
             }
-            fromAsset.available = fromAsset.available.subtract(amount);
-            toAsset.frozen = toAsset.frozen.add(amount);
-            yield true;
-        }
-        case FROZEN_TO_AVAILABLE -> {
-            // 需要检查余额且余额不足:
-            if (checkBalance && fromAsset.frozen.compareTo(amount) < 0) {
-                yield false;
+            case FROZEN_TO_AVAILABLE -> {
+                // 需要检查余额且余额不足:
+                if (checkBalance && fromAsset.frozen < amount) {
+                    yield false;
+                }
+                long fromBalance = Math.subtractExact(fromAsset.frozen, amount);
+                long toBalance = Math.addExact(toAsset.available, amount);
+                userAssets.beginWrite(from, to);
+                fromAsset.frozen = fromBalance;
+                toAsset.available = toBalance;
+                userAssets.endWrite(from, to);
+                userAssets.markChanged(from, to, assetId);
+                yield true;
             }
-            fromAsset.frozen = fromAsset.frozen.subtract(amount);
-            toAsset.available = toAsset.available.add(amount);
-            yield true;
-        }
-        default -> {
-            throw new IllegalArgumentException("invalid type: " + type);
+            default -> {
+                throw new IllegalArgumentException("invalid type: " + type);
+            }
+            };
+        } catch (ArithmeticException e) {
+            logger.warn("transfer overflow for {}, from user {} to user {}, asset = {}", type, fromUser, toUser,
+                    assetId);
+            return false;
         }
-        };
     }
 
-    private Asset initAssets(Long userId, AssetEnum assetId) {
-        ConcurrentMap<AssetEnum, Asset> map = userAssets.get(userId);
-        if (map == null) {
-            map = new ConcurrentHashMap<>();
-            userAssets.put(userId, map);
+    /**
+     * 原子地执行一组可用余额之间的转账：先检查全部转账，每个用户资产需检查余额时，
+     * 其转出总额不能超过转账前的可用余额（不计同批转入），任一检查失败或余额溢出时不修改任何资产并返回false；
+     * 检查通过后在一次版本号递增内写入全部余额，其他线程读到的快照不会只包含部分转账。
+     * @param legs 转账列表，金额为余额定点数
+     * @return 是否全部成功
+     */
+    public boolean tryTransfers(List<TransferLeg> legs) {
+        // 按用户汇总每种资产的净变化和转出总额:
+        Map<Long, BatchAccount> accounts = new LinkedHashMap<>();
+        try {
+            for (TransferLeg leg : legs) {
+                if (leg.amount() < 0) {
+                    return false;
+                }
+                if (leg.amount() == 0) {
+                    continue;
+                }
+                int i = leg.assetId().ordinal();
+                BatchAccount from = accounts.computeIfAbsent(leg.fromUser(), BatchAccount::new);
+                from.net[i] = Math.subtractExact(from.net[i], leg.amount());
+                from.debit[i] = Math.addExact(from.debit[i], leg.amount());
+                if (leg.checkBalance()) {
+                    from.checked |= 1 << i;
+                }
+                BatchAccount to = accounts.computeIfAbsent(leg.toUser(), BatchAccount::new);
+                to.net[i] = Math.addExact(to.net[i], leg.amount());
+            }
+            // 检查余额并计算转账后的可用余额，此时不创建任何用户或资产:
+            for (BatchAccount account : accounts.values()) {
+                for (int i = 0; i < UserAssetStore.ASSETS; i++) {
+                    if (account.debit[i] == 0 && account.net[i] == 0) {
+                        continue;
+                    }
+                    Asset asset = userAssets.get(account.userId, ASSET_IDS[i]);
+                    long available = asset == null ? 0 : asset.available;
+                    if ((account.checked & (1 << i)) != 0 && available < account.debit[i]) {
+                        return false;
+                    }
+                    account.balance[i] = Math.addExact(available, account.net[i]);
+                }
+            }
+        } catch (ArithmeticException e) {
+            logger.warn("batch transfer overflow, {} legs", legs.size());
+            return false;
         }
-        Asset zeroAsset = new Asset();
-        map.put(assetId, zeroAsset);
-        return zeroAsset;
+        // 先创建用户和资产（可能扩容），再一次写入全部余额:
+        int[] users = new int[accounts.size()];
+        int n = 0;
+        for (BatchAccount account : accounts.values()) {
+            account.user = userAssets.getOrCreateUser(account.userId);
+            users[n++] = account.user;
+            for (int i = 0; i < UserAssetStore.ASSETS; i++) {
+                if (account.net[i] != 0) {
+                    userAssets.getOrCreate(account.user, ASSET_IDS[i]);
+                }
+            }
+        }
+        userAssets.beginWrite(users);
+        for (BatchAccount account : accounts.values()) {
+            for (int i = 0; i < UserAssetStore.ASSETS; i++) {
+                if (account.net[i] != 0) {
+                    userAssets.get(account.user, ASSET_IDS[i]).available = account.balance[i];
+                }
+            }
+        }
+        userAssets.endWrite(users);
+        for (BatchAccount account : accounts.values()) {
+            for (int i = 0; i < UserAssetStore.ASSETS; i++) {
+                if (account.net[i] != 0) {
+                    userAssets.markChanged(account.user, account.user, ASSET_IDS[i]);
+                }
+            }
+            if (this.touchedUsers != null) {
+                this.touchedUsers.add(account.userId);
+            }
+        }
+        return true;
     }
 
     public void debug() {
         System.out.println("---------- assets ----------");
-        List<Long> userIds = new ArrayList<>(userAssets.keySet());
-        Collections.sort(userIds);
-        for (Long userId : userIds) {
+        long[] userIds = new long[userAssets.size()];
+        for (int user = 0; user < userIds.length; user++) {
+            userIds[user] = userAssets.userId(user);
+        }
+        Arrays.sort(userIds);
+        for (long userId : userIds) {
             System.out.println("  user " + userId + " ----------");
-            Map<AssetEnum, Asset> assets = userAssets.get(userId);
-            List<AssetEnum> assetIds = new ArrayList<>(assets.keySet());
-            Collections.sort(assetIds);
-            for (AssetEnum assetId : assetIds) {
-                System.out.println("    " + assetId + ": " + assets.get(assetId));
-            }
+            userAssets.forEachAsset(userAssets.indexOf(userId),
+                    (assetId, asset) -> System.out.println("    " + assetId + ": " + asset));
         }
         System.out.println("---------- // assets ----------");
     }
+
+    /**
+     * 批量转账中一个用户按资产序号汇总的变化
+     */
+    static final class BatchAccount {
+
+        final Long userId;
+        final long[] net = new long[UserAssetStore.ASSETS]; // 可用余额净变化
+        final long[] debit = new long[UserAssetStore.ASSETS]; // 转出总额
+        final long[] balance = new long[UserAssetStore.ASSETS]; // 转账后的可用余额
+        int checked; // 需要检查余额的资产（按序号的位图）
+        int user = -1;
+
+        BatchAccount(Long userId) {
+            this.userId = userId;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChangedAssetConsumer {
+        void accept(long userId, AssetEnum assetId, Asset asset);
+    }
 }
@@ -0,0 +1,15 @@
+package com.itranswarp.exchange.assets;
+
+import com.itranswarp.exchange.enums.AssetEnum;
+
+/**
+ * 批量转账中的一笔可用余额转账
+ *
+ * @param fromUser     源账户
+ * @param toUser       目标账户
+ * @param assetId      资产类型
+ * @param amount       数额（余额定点数）
+ * @param checkBalance 是否检查余额
+ */
+public record TransferLeg(Long fromUser, Long toUser, AssetEnum assetId, long amount, boolean checkBalance) {
+}
@@ -0,0 +1,341 @@
+package com.itranswarp.exchange.assets;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.itranswarp.exchange.enums.AssetEnum;
+
+/**
+ * 用户资产存储：userId到用户序号的开放寻址索引（线性探测，long键无装箱），每个用户按AssetEnum序号占用连续的资产槽位。
+ *
+ * 只允许单线程写入，其他线程可以并发读取：新用户的槽位和索引先写入，再递增volatile的用户数发布，
+ * 读线程先读用户数，只接受序号小于该值的用户；扩容时替换整个数组，新数组同样通过volatile引用发布。
+ *
+ * 余额的修改以用户为单位加版本号（seqlock）：写线程修改前后各递增一次（奇数表示正在写入），
+ * 读线程复制用户的全部余额后校验版本号未变，得到一致的快照，写线程从不等待读线程。
+ *
+ * 写线程在余额修改完成后把资产槽位记为已变化（位图去重），供增量持久化取出，变化记录只由写线程访问。
+ */
+final class UserAssetStore {
+
+    static final int ASSETS = AssetEnum.values().length;
+
+    private static final long EMPTY = Long.MIN_VALUE; // 空索引位置
+    private static final AssetEnum[] ASSET_IDS = AssetEnum.values();
+
+    private volatile Index index = new Index(64);
+    private volatile long[] userIds = new long[32]; // 用户序号 -> userId
+    private volatile Asset[] slots = new Asset[32 * ASSETS]; // 用户序号 * ASSETS + 资产序号 -> 资产
+    private volatile int[] versions = new int[32]; // 用户序号 -> 余额版本号
+    private volatile int size; // 已发布的用户数
+
+    // 自上次取出后变化的资产槽位（仅写线程访问）:
+    private long[] changedBits = new long[(32 * ASSETS + 63) / 64];
+    private int[] changedSlots = new int[64];
+    private int changedCount;
+
+    /**
+     * 用户数
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * 用户序号对应的userId，序号必须小于size()
+     */
+    long userId(int user) {
+        return this.userIds[user];
+    }
+
+    /**
+     * 查找用户序号，不存在时返回-1
+     */
+    int indexOf(long userId) {
+        int published = this.size;
+        int user = this.index.get(userId);
+        return user < published ? user : -1;
+    }
+
+    /**
+     * 用户的资产，不存在时返回null
+     */
+    Asset get(int user, AssetEnum assetId) {
+        return this.slots[user * ASSETS + assetId.ordinal()];
+    }
+
+    /**
+     * 用户的资产，不存在时返回null
+     */
+    Asset get(long userId, AssetEnum assetId) {
+        int user = indexOf(userId);
+        return user < 0 ? null : get(user, assetId);
+    }
+
+    /**
+     * 读取用户全部资产余额的一致副本（可在任意线程调用）
+     */
+    Map<AssetEnum, Asset> snapshot(int user) {
+        long[] values = new long[ASSETS * 2];
+        for (;;) {
+            int[] versions = this.versions;
+            int version = versions[user];
+            VarHandle.acquireFence();
+            if ((version & 1) == 0) {
+                Asset[] slots = this.slots;
+                int present = 0;
+                for (int i = 0; i < ASSETS; i++) {
+                    Asset asset = slots[user * ASSETS + i];
+                    if (asset != null) {
+                        present |= 1 << i;
+                        values[i * 2] = asset.available;
+                        values[i * 2 + 1] = asset.frozen;
+                    }
+                }
+                VarHandle.loadLoadFence();
+                // 扩容后写线程只修改新数组上的版本号，数组被替换时同样重试:
+                if (versions[user] == version && this.versions == versions) {
+                    Map<AssetEnum, Asset> assets = new EnumMap<>(AssetEnum.class);
+                    for (int i = 0; i < ASSETS; i++) {
+                        if ((present & (1 << i)) != 0) {
+                            assets.put(ASSET_IDS[i], new Asset(values[i * 2], values[i * 2 + 1]));
+                        }
+                    }
+                    return assets;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 用户序号，不存在时创建（仅限写线程调用）
+     */
+    int getOrCreateUser(long userId) {
+        int user = this.index.get(userId);
+        return user < 0 ? addUser(userId) : user;
+    }
+
+    /**
+     * 用户的资产，不存在时创建（仅限写线程调用）
+     */
+    Asset getOrCreate(long userId, AssetEnum assetId) {
+        return getOrCreate(getOrCreateUser(userId), assetId);
+    }
+
+    /**
+     * 用户的资产，不存在时创建（仅限写线程调用）
+     */
+    Asset getOrCreate(int user, AssetEnum assetId) {
+        int slot = user * ASSETS + assetId.ordinal();
+        Asset asset = this.slots[slot];
+        if (asset == null) {
+            asset = new Asset();
+            this.slots[slot] = asset;
+        }
+        return asset;
+    }
+
+    /**
+     * 开始修改一个或两个用户的余额（仅限写线程调用，user和other可以相同）
+     */
+    void beginWrite(int user, int other) {
+        int[] versions = this.versions;
+        versions[user]++;
+        if (other != user) {
+            versions[other]++;
+        }
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * 结束修改，参数与beginWrite()相同
+     */
+    void endWrite(int user, int other) {
+        VarHandle.releaseFence();
+        int[] versions = this.versions;
+        versions[user]++;
+        if (other != user) {
+            versions[other]++;
+        }
+    }
+
+    /**
+     * 开始修改多个用户的余额（仅限写线程调用，users不能重复）
+     */
+    void beginWrite(int[] users) {
+        int[] versions = this.versions;
+        for (int user : users) {
+            versions[user]++;
+        }
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * 结束修改，参数与beginWrite(int[])相同
+     */
+    void endWrite(int[] users) {
+        VarHandle.releaseFence();
+        int[] versions = this.versions;
+        for (int user : users) {
+            versions[user]++;
+        }
+    }
+
+    /**
+     * 把一个或两个用户的资产记为已变化，在endWrite()之后调用（仅限写线程调用，user和other可以相同）
+     */
+    void markChanged(int user, int other, AssetEnum assetId) {
+        markChanged(user * ASSETS + assetId.ordinal());
+        if (other != user) {
+            markChanged(other * ASSETS + assetId.ordinal());
+        }
+    }
+
+    /**
+     * 自上次取出后变化的资产数
+     */
+    int changedCount() {
+        return this.changedCount;
+    }
+
+    /**
+     * 按变化的先后顺序取出并清空变化记录（仅限写线程调用）
+     */
+    void drainChanged(AssetService.ChangedAssetConsumer consumer) {
+        Asset[] slots = this.slots;
+        long[] userIds = this.userIds;
+        for (int i = 0; i < this.changedCount; i++) {
+            int slot = this.changedSlots[i];
+            this.changedBits[slot >>> 6] &= ~(1L << slot);
+            consumer.accept(userIds[slot / ASSETS], ASSET_IDS[slot % ASSETS], slots[slot]);
+        }
+        this.changedCount = 0;
+    }
+
+    /**
+     * 把全部已有资产记为已变化（仅限写线程调用）
+     */
+    void markAllChanged() {
+        Asset[] slots = this.slots;
+        int end = this.size * ASSETS;
+        for (int slot = 0; slot < end; slot++) {
+            if (slots[slot] != null) {
+                markChanged(slot);
+            }
+        }
+    }
+
+    private void markChanged(int slot) {
+        int word = slot >>> 6;
+        if (word >= this.changedBits.length) {
+            this.changedBits = Arrays.copyOf(this.changedBits, (this.slots.length + 63) / 64);
+        }
+        long bit = 1L << slot;
+        if ((this.changedBits[word] & bit) == 0) {
+            this.changedBits[word] |= bit;
+            if (this.changedCount == this.changedSlots.length) {
+                this.changedSlots = Arrays.copyOf(this.changedSlots, this.changedCount * 2);
+            }
+            this.changedSlots[this.changedCount++] = slot;
+        }
+    }
+
+    /**
+     * 按资产序号遍历用户已有的资产
+     */
+    void forEachAsset(int user, AssetConsumer consumer) {
+        Asset[] slots = this.slots;
+        int base = user * ASSETS;
+        for (int i = 0; i < ASSETS; i++) {
+            Asset asset = slots[base + i];
+            if (asset != null) {
+                consumer.accept(ASSET_IDS[i], asset);
+            }
+        }
+    }
+
+    private int addUser(long userId) {
+        if (userId == EMPTY) {
+            throw new IllegalArgumentException("Invalid user id: " + userId);
+        }
+        int user = this.size;
+        if (user == this.userIds.length) {
+            this.slots = Arrays.copyOf(this.slots, user * 2 * ASSETS);
+            this.userIds = Arrays.copyOf(this.userIds, user * 2);
+            this.versions = Arrays.copyOf(this.versions, user * 2);
+        }
+        this.userIds[user] = userId;
+        Index index = this.index;
+        // 装载因子不超过0.5:
+        if ((user + 1) * 2 > index.keys.length) {
+            index = index.resize(this.userIds, user);
+            this.index = index;
+        }
+        index.put(userId, user);
+        this.size = user + 1;
+        return user;
+    }
+
+    @FunctionalInterface
+    interface AssetConsumer {
+        void accept(AssetEnum assetId, Asset asset);
+    }
+
+    static final class Index {
+
+        final long[] keys;
+        final int[] values;
+        final int mask;
+
+        Index(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(this.keys, EMPTY);
+        }
+
+        int get(long key) {
+            if (key == EMPTY) {
+                return -1;
+            }
+            for (int i = hash(key) & this.mask;; i = (i + 1) & this.mask) {
+                long k = this.keys[i];
+                if (k == key) {
+                    return this.values[i];
+                }
+                if (k == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(long key, int value) {
+            int i = hash(key) & this.mask;
+            while (this.keys[i] != EMPTY) {
+                i = (i + 1) & this.mask;
+            }
+            // 先写值再写键，读线程看到键时值已写入:
+            this.values[i] = value;
+            this.keys[i] = key;
+        }
+
+        /**
+         * 容量翻倍并重建前count个用户的索引
+         */
+        Index resize(long[] userIds, int count) {
+            Index index = new Index(this.keys.length * 2);
+            for (int user = 0; user < count; user++) {
+                index.put(userIds[user], user);
+            }
+            return index;
+        }
+
+        static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.itranswarp.exchange.clearing;
 
-import java.math.BigDecimal;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -8,9 +8,12 @@ import org.springframework.stereotype.Component;
 import com.itranswarp.exchange.assets.AssetService;
 import com.itranswarp.exchange.assets.Transfer;
 import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.match.MarketScale;
 import com.itranswarp.exchange.match.MatchDetailRecord;
 import com.itranswarp.exchange.match.MatchResult;
 import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderRecord;
 import com.itranswarp.exchange.order.OrderService;
 import com.itranswarp.exchange.support.LoggerSupport;
 
@@ -20,6 +23,8 @@ import com.itranswarp.exchange.support.LoggerSupport;
 @Component
 public class ClearingService extends LoggerSupport {
 
+    static final AssetEnum[] ASSETS = AssetEnum.values();
+
     // 引用资产和订单系统
     final AssetService assetService;
 
@@ -32,17 +37,24 @@ public class ClearingService extends LoggerSupport {
 
     /**
      * 清算撮合引擎的输出
+     * （按下标遍历，MatchResult复用时不产生Iterator等临时对象）
      * @param result
      */
     public void clearMatchResult(MatchResult result) {
         // 匹配记录中的taker
         OrderEntity taker = result.takerOrder;
+        // 定点数精度，成交数量和金额换算为资产余额定点数后清算
+        MarketScale scale = result.scale;
+        // 交易对的基础资产（如BTC）和计价资产（如USD）
+        AssetEnum base = taker.symbol.base;
+        AssetEnum quote = taker.symbol.quote;
         // taker分为买和卖两种
         switch (taker.direction) {
         case BUY -> {
             // 买入时，按Maker的价格成交：
             // 遍历撮合结果的所有匹配记录（taker对应的所有maker）
-            for (MatchDetailRecord detail : result.matchDetails) {
+            for (int i = 0; i < result.size(); i++) {
+                MatchDetailRecord detail = result.get(i);
                 // debug日志开启则打印
                 if (logger.isDebugEnabled()) {
                     logger.debug(
@@ -51,37 +63,34 @@ public class ClearingService extends LoggerSupport {
                             detail.takerOrder().userId, detail.makerOrder().userId);
                 }
                 // 从匹配记录中读卖家挂单
-                OrderEntity maker = detail.makerOrder();
+                OrderRecord maker = detail.makerOrder();
                 // 数量
-                BigDecimal matched = detail.quantity();
+                long matched = detail.quantity();
                 /** 【注意】：对Taker买入成交的订单，成交价格是按照Maker的报价成交的，而Taker冻结的金额是按照Taker订单的报价冻结的
                      因此，解冻后，部分差额要退回至Taker可用余额
                  **/
-                if (taker.price.compareTo(maker.price) > 0) {
+                if (taker.priceUnits > maker.priceUnits) {
                     // 实际买入价比报价低，部分USD退回账户:
-                    BigDecimal unfreezeQuote = taker.price.subtract(maker.price).multiply(matched);
-                    logger.debug("unfree extra unused quote {} back to taker user {}", unfreezeQuote, taker.userId);
-                    assetService.unfreeze(taker.userId, AssetEnum.USD, unfreezeQuote);
+                    long unfreezeQuote = scale.toAmountUnits(taker.priceUnits - maker.priceUnits, matched);
+                    assetService.unfreezeUnits(taker.userId, quote, unfreezeQuote);
                 }
                 // 买家出USD，换卖家的BTC
                 // 买方USD转入卖方账户:
-                assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, AssetEnum.USD,
-                        maker.price.multiply(matched));
+                assetService.transferUnits(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, quote,
+                        scale.toAmountUnits(maker.priceUnits, matched));
                 // 卖方BTC转入买方账户:
-                assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, AssetEnum.BTC, matched);
+                assetService.transferUnits(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, base,
+                        scale.toBaseUnits(matched));
                 // 删除完全成交的Maker:
-                if (maker.unfilledQuantity.signum() == 0) {
+                if (maker.unfilledUnits == 0) {
                     orderService.removeOrder(maker.id);
                 }
             }
-            // 删除完全成交的Taker:
-            if (taker.unfilledQuantity.signum() == 0) {
-                orderService.removeOrder(taker.id);
-            }
         }
         case SELL -> {
             // taker是卖单，以maker的价格成交
-            for (MatchDetailRecord detail : result.matchDetails) {
+            for (int i = 0; i < result.size(); i++) {
+                MatchDetailRecord detail = result.get(i);
                 if (logger.isDebugEnabled()) {
                     logger.debug(
                             "clear sell matched detail: price = {}, quantity = {}, takerOrderId = {}, makerOrderId = {}, takerUserId = {}, makerUserId = {}",
@@ -89,45 +98,87 @@ public class ClearingService extends LoggerSupport {
                             detail.takerOrder().userId, detail.makerOrder().userId);
                 }
                 // maker是买家挂单
-                OrderEntity maker = detail.makerOrder();
-                BigDecimal matched = detail.quantity();
+                OrderRecord maker = detail.makerOrder();
+                long matched = detail.quantity();
                 // 卖家出BTC，换买家的USD
                 /**【注意】这里不用考虑差价，因为taker是卖单时，以买单的maker.price成交。
                     设计下单时，卖单冻结的是BTC，并不是USD，因此并不关心taker.price。换成USD直接按挂单价maker.price换算即可。
                     前面买单考虑差价是因为冻结的是USD，最终交易的也是USD，即taker.price与maker.price存在差价
                  **/
                 // 卖方BTC转入买方账户:
-                assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, AssetEnum.BTC, matched);
+                assetService.transferUnits(Transfer.FROZEN_TO_AVAILABLE, taker.userId, maker.userId, base,
+                        scale.toBaseUnits(matched));
                 // 买方USD转入卖方账户:
-                assetService.transfer(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, AssetEnum.USD,
-                        maker.price.multiply(matched));
+                assetService.transferUnits(Transfer.FROZEN_TO_AVAILABLE, maker.userId, taker.userId, quote,
+                        scale.toAmountUnits(maker.priceUnits, matched));
                 // 删除完全成交的Maker:
-                if (maker.unfilledQuantity.signum() == 0) {
+                if (maker.unfilledUnits == 0) {
                     orderService.removeOrder(maker.id);
                 }
             }
-            // 删除完全成交的Taker:
-            if (taker.unfilledQuantity.signum() == 0) {
-                orderService.removeOrder(taker.id);
-            }
         }
         default -> throw new IllegalArgumentException("Invalid direction.");
         }
+        if (!taker.type.rest) {
+            // 不挂单的Taker未登记在OrderService，解冻未成交部分:
+            if (taker.unfilledUnits > 0) {
+                assetService.unfreezeUnits(taker.userId, taker.direction == Direction.BUY ? quote : base,
+                        taker.direction == Direction.BUY ? scale.toAmountUnits(taker.priceUnits, taker.unfilledUnits)
+                                : scale.toBaseUnits(taker.unfilledUnits));
+            }
+        } else if (taker.unfilledUnits == 0) {
+            // 删除完全成交的Taker:
+            orderService.removeOrder(taker.id);
+        }
     }
 
-    public void clearCancelOrder(OrderEntity order) {
+    /**
+     * 清算撤销的挂单，按定点数解冻未成交部分
+     */
+    public void clearCancelOrder(OrderEntity order, MarketScale scale) {
         switch (order.direction) {
         case BUY -> {
-            // 解冻USD = 价格 x 未成交数量
-            assetService.unfreeze(order.userId, AssetEnum.USD, order.price.multiply(order.unfilledQuantity));
+            // 解冻计价资产 = 价格 x 未成交数量
+            assetService.unfreezeUnits(order.userId, order.symbol.quote,
+                    scale.toAmountUnits(order.priceUnits, order.unfilledUnits));
         }
         case SELL -> {
-            // 解冻BTC = 未成交数量
-            assetService.unfreeze(order.userId, AssetEnum.BTC, order.unfilledQuantity);
+            // 解冻基础资产 = 未成交数量
+            assetService.unfreezeUnits(order.userId, order.symbol.base, scale.toBaseUnits(order.unfilledUnits));
         }
         default -> throw new IllegalArgumentException("Invalid direction.");
         }
         // 从OrderService中删除订单:
         orderService.removeOrder(order.id);
     }
+
+    /**
+     * 批量清算同一用户撤销的挂单，按资产汇总后每种资产只解冻一次
+     */
+    public void clearCancelOrders(Long userId, List<OrderEntity> orders, MarketScale scale) {
+        // 按AssetEnum序号汇总:
+        long[] unfreezes = new long[ASSETS.length];
+        for (OrderEntity order : orders) {
+            if (order.userId.longValue() != userId.longValue()) {
+                throw new IllegalArgumentException("Order " + order.id + " does not belong to user " + userId);
+            }
+            switch (order.direction) {
+            case BUY -> {
+                int i = order.symbol.quote.ordinal();
+                unfreezes[i] = Math.addExact(unfreezes[i], scale.toAmountUnits(order.priceUnits, order.unfilledUnits));
+            }
+            case SELL -> {
+                int i = order.symbol.base.ordinal();
+                unfreezes[i] = Math.addExact(unfreezes[i], scale.toBaseUnits(order.unfilledUnits));
+            }
+            default -> throw new IllegalArgumentException("Invalid direction.");
+            }
+            orderService.removeOrder(order.id);
+        }
+        for (int i = 0; i < unfreezes.length; i++) {
+            if (unfreezes[i] > 0) {
+                assetService.unfreezeUnits(userId, ASSETS[i], unfreezes[i]);
+            }
+        }
+    }
 }
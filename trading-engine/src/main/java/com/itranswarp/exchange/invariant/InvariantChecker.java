@@ -0,0 +1,270 @@
+package com.itranswarp.exchange.invariant;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.itranswarp.exchange.assets.Asset;
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.enums.UserType;
+import com.itranswarp.exchange.match.MatchEngine;
+import com.itranswarp.exchange.match.MatchEngineRegistry;
+import com.itranswarp.exchange.match.OrderBook;
+import com.itranswarp.exchange.match.PriceLevel;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderArena;
+import com.itranswarp.exchange.order.OrderService;
+
+/**
+ * 交易引擎状态的不变量校验，失败时抛出IllegalStateException。
+ *
+ * 增量校验：维护每种资产的累计总额和每个用户各资产的上次总额，只校验自上次校验后资产有变化的用户
+ * （余额符号、订单冻结之和、订单在订单簿中）和有变化的交易对（最优档位），代价与被修改的状态成正比；
+ * 全量校验扫描全部资产、订单和订单簿，用于测试和后台对快照的定时校验。
+ */
+public class InvariantChecker {
+
+    final AssetService assetService;
+    final OrderService orderService;
+    final MatchEngineRegistry matchEngines;
+
+    // 每种资产所有用户的总额之和，必须始终为0:
+    final Map<AssetEnum, BigDecimal> totals = new EnumMap<>(AssetEnum.class);
+    // 上次校验时每个用户各资产的总额:
+    final Map<Long, Map<AssetEnum, BigDecimal>> userTotals = new HashMap<>();
+    // 自上次校验后资产有变化的用户（由AssetService记录）:
+    final Set<Long> touchedUsers = new HashSet<>();
+
+    public InvariantChecker(AssetService assetService, OrderService orderService, MatchEngineRegistry matchEngines) {
+        this.assetService = assetService;
+        this.orderService = orderService;
+        this.matchEngines = matchEngines;
+    }
+
+    /**
+     * 开始增量校验：全量校验一次并记录各资产总额，此后由AssetService记录被修改的用户
+     */
+    public void start() {
+        validateAll();
+        this.totals.clear();
+        this.userTotals.clear();
+        for (Entry<Long, Map<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
+            Map<AssetEnum, BigDecimal> last = new EnumMap<>(AssetEnum.class);
+            for (Entry<AssetEnum, Asset> entry : userEntry.getValue().entrySet()) {
+                BigDecimal total = entry.getValue().getTotal();
+                last.put(entry.getKey(), total);
+                this.totals.merge(entry.getKey(), total, BigDecimal::add);
+            }
+            this.userTotals.put(userEntry.getKey(), last);
+        }
+        this.touchedUsers.clear();
+        this.assetService.trackTouchedUsers(this.touchedUsers);
+    }
+
+    public void stop() {
+        this.assetService.trackTouchedUsers(null);
+    }
+
+    /**
+     * 校验自上次校验后被修改的用户，以及指定交易对的最优档位
+     */
+    public void checkTouched(Collection<SymbolEnum> symbols) {
+        Set<AssetEnum> changed = EnumSet.noneOf(AssetEnum.class);
+        for (Long userId : this.touchedUsers) {
+            Map<AssetEnum, Asset> assets = this.assetService.getAssets(userId);
+            Map<AssetEnum, BigDecimal> last = this.userTotals.computeIfAbsent(userId,
+                    k -> new EnumMap<>(AssetEnum.class));
+            for (Entry<AssetEnum, Asset> entry : assets.entrySet()) {
+                checkAsset(userId, entry.getValue());
+                // 累计该用户资产总额的变化:
+                BigDecimal total = entry.getValue().getTotal();
+                BigDecimal previous = last.put(entry.getKey(), total);
+                if (previous == null || previous.compareTo(total) != 0) {
+                    this.totals.merge(entry.getKey(), previous == null ? total : total.subtract(previous),
+                            BigDecimal::add);
+                    changed.add(entry.getKey());
+                }
+            }
+            checkUserOrders(userId, assets);
+        }
+        this.touchedUsers.clear();
+        // 各类别资产总额为0:
+        for (AssetEnum assetId : changed) {
+            BigDecimal total = this.totals.get(assetId);
+            require(total.signum() == 0, "Non zero " + assetId + " balance: " + total);
+        }
+        for (SymbolEnum symbol : symbols) {
+            checkBestLevels(this.matchEngines.get(symbol));
+        }
+    }
+
+    /**
+     * 全量校验
+     */
+    public void validateAll() {
+        validateAssets();
+        validateOrders();
+        validateMatchEngine();
+    }
+
+    void validateAssets() {
+        // 累加所有资产
+        Map<AssetEnum, BigDecimal> totals = new EnumMap<>(AssetEnum.class);
+        // 验证资产表每个用户的资产
+        for (Entry<Long, Map<AssetEnum, Asset>> userEntry : this.assetService.getUserAssets().entrySet()) {
+            for (Entry<AssetEnum, Asset> entry : userEntry.getValue().entrySet()) {
+                checkAsset(userEntry.getKey(), entry.getValue());
+                totals.merge(entry.getKey(), entry.getValue().getTotal(), BigDecimal::add);
+            }
+        }
+        // 各类别资产总额为0:
+        for (Entry<AssetEnum, BigDecimal> entry : totals.entrySet()) {
+            require(entry.getValue().signum() == 0, "Non zero " + entry.getKey() + " balance: " + entry.getValue());
+        }
+    }
+
+    void validateOrders() {
+        Map<Long, Map<AssetEnum, BigDecimal>> userOrderFrozen = new HashMap<>();
+        for (OrderEntity order : this.orderService.getActiveOrders().values()) {
+            checkOrder(order);
+            addFrozen(userOrderFrozen.computeIfAbsent(order.userId, k -> new EnumMap<>(AssetEnum.class)), order);
+        }
+        // 订单冻结的累计金额必须和Asset冻结一致:
+        Map<Long, Map<AssetEnum, Asset>> userAssets = this.assetService.getUserAssets();
+        for (Entry<Long, Map<AssetEnum, Asset>> userEntry : userAssets.entrySet()) {
+            checkFrozen(userEntry.getKey(), userEntry.getValue(),
+                    userOrderFrozen.getOrDefault(userEntry.getKey(), Map.of()));
+        }
+        // 冻结了资产的订单必须属于已有资产的用户:
+        for (Long userId : userOrderFrozen.keySet()) {
+            require(userAssets.containsKey(userId),
+                    "User " + userId + " has unexpected frozen for order: " + userOrderFrozen.get(userId));
+        }
+    }
+
+    void validateMatchEngine() {
+        // OrderBook的Order必须在ActiveOrders中:
+        Map<Long, OrderEntity> copyOfActiveOrders = this.orderService.getActiveOrders();
+        for (MatchEngine matchEngine : this.matchEngines.getEngines()) {
+            for (OrderEntity order : matchEngine.buyBook.getOrders()) {
+                require(copyOfActiveOrders.remove(order.id) != null,
+                        "Order in buy book is not in active orders: " + order);
+                require(order.symbol == matchEngine.symbol, "Order in wrong match engine: " + order);
+            }
+            for (OrderEntity order : matchEngine.sellBook.getOrders()) {
+                require(copyOfActiveOrders.remove(order.id) != null,
+                        "Order in sell book is not in active orders: " + order);
+                require(order.symbol == matchEngine.symbol, "Order in wrong match engine: " + order);
+            }
+            // 价格档位的总数量必须等于档位内订单未成交数量之和:
+            for (PriceLevel level : matchEngine.buyBook.levels.values()) {
+                checkPriceLevel(matchEngine.buyBook, level);
+            }
+            for (PriceLevel level : matchEngine.sellBook.levels.values()) {
+                checkPriceLevel(matchEngine.sellBook, level);
+            }
+            checkBestLevels(matchEngine);
+        }
+        // activeOrders的所有Order必须在Order Book中:
+        require(copyOfActiveOrders.isEmpty(), "Not all active orders are in order book.");
+    }
+
+    void checkAsset(Long userId, Asset asset) {
+        if (userId.longValue() == UserType.DEBT.getInternalUserId()) {
+            // 系统负债账户available不允许为正:
+            require(asset.getAvailable().signum() <= 0, "Debt has positive available: " + asset);
+            // 系统负债账户frozen必须为0:
+            require(asset.getFrozen().signum() == 0, "Debt has non-zero frozen: " + asset);
+        } else {
+            // 交易用户的available/frozen不允许为负数:
+            require(asset.getAvailable().signum() >= 0, "Trader has negative available: " + asset);
+            require(asset.getFrozen().signum() >= 0, "Trader has negative frozen: " + asset);
+        }
+    }
+
+    void checkUserOrders(Long userId, Map<AssetEnum, Asset> assets) {
+        Map<AssetEnum, BigDecimal> orderFrozen = new EnumMap<>(AssetEnum.class);
+        for (OrderEntity order : this.orderService.getUserOrders(userId)) {
+            checkOrder(order);
+            addFrozen(orderFrozen, order);
+        }
+        checkFrozen(userId, assets, orderFrozen);
+    }
+
+    void checkOrder(OrderEntity order) {
+        MatchEngine matchEngine = this.matchEngines.get(order.symbol);
+        require(order.unfilledQuantity.signum() > 0, "Active order must have positive unfilled amount: " + order);
+        require(order.unfilledQuantity.compareTo(matchEngine.scale.toQuantity(order.unfilledUnits)) == 0,
+                "Active order has inconsistent unfilled units: " + order);
+        switch (order.direction) {
+        case BUY -> require(matchEngine.buyBook.exist(order), "order not found in buy book: " + order);
+        case SELL -> require(matchEngine.sellBook.exist(order), "order not found in sell book: " + order);
+        default -> require(false, "Unexpected order direction: " + order.direction);
+        }
+    }
+
+    void addFrozen(Map<AssetEnum, BigDecimal> frozen, OrderEntity order) {
+        switch (order.direction) {
+        // 买单冻结计价资产:
+        case BUY -> frozen.merge(order.symbol.quote, order.price.multiply(order.unfilledQuantity), BigDecimal::add);
+        // 卖单冻结基础资产:
+        case SELL -> frozen.merge(order.symbol.base, order.unfilledQuantity, BigDecimal::add);
+        default -> require(false, "Unexpected order direction: " + order.direction);
+        }
+    }
+
+    void checkFrozen(Long userId, Map<AssetEnum, Asset> assets, Map<AssetEnum, BigDecimal> orderFrozen) {
+        for (Entry<AssetEnum, Asset> entry : assets.entrySet()) {
+            BigDecimal frozen = orderFrozen.getOrDefault(entry.getKey(), BigDecimal.ZERO);
+            require(frozen.compareTo(entry.getValue().getFrozen()) == 0, "User " + userId + " order frozen " + frozen
+                    + " is not equals to asset frozen: " + entry.getValue());
+        }
+        for (AssetEnum assetId : orderFrozen.keySet()) {
+            require(assets.containsKey(assetId),
+                    "User " + userId + " has unexpected frozen for order: " + orderFrozen);
+        }
+    }
+
+    void checkBestLevels(MatchEngine matchEngine) {
+        PriceLevel bid = matchEngine.buyBook.getBestLevel();
+        PriceLevel ask = matchEngine.sellBook.getBestLevel();
+        if (bid != null) {
+            checkPriceLevel(matchEngine.buyBook, bid);
+            require(bid == matchEngine.buyBook.levels.firstEntry().getValue(), "Wrong best bid: " + bid.price);
+        }
+        if (ask != null) {
+            checkPriceLevel(matchEngine.sellBook, ask);
+            require(ask == matchEngine.sellBook.levels.firstEntry().getValue(), "Wrong best ask: " + ask.price);
+        }
+        // 挂单后买卖盘不能交叉:
+        if (bid != null && ask != null) {
+            require(bid.price < ask.price, "Crossed order book " + matchEngine.symbol + ": " + bid.price + " >= "
+                    + ask.price);
+        }
+    }
+
+    void checkPriceLevel(OrderBook book, PriceLevel level) {
+        OrderArena arena = book.arena;
+        require(!level.isEmpty(), "Empty price level in order book: " + level.price);
+        long total = 0;
+        for (int handle = level.getFirst(); handle != OrderArena.NULL; handle = arena.bookNext(handle)) {
+            require(arena.priceUnits(handle) == level.price, "Order in wrong price level: " + arena.id(handle));
+            total += arena.unfilledUnits(handle);
+        }
+        require(total == level.getTotalQuantity(), "Price level total quantity mismatch: " + level.price);
+    }
+
+    void require(boolean condition, String errorMessage) {
+        if (!condition) {
+            throw new IllegalStateException(errorMessage);
+        }
+    }
+}
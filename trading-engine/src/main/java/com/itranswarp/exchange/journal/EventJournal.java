@@ -0,0 +1,294 @@
+package com.itranswarp.exchange.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.messaging.MessageTypes;
+import com.itranswarp.exchange.support.LoggerSupport;
+
+/**
+ * 本地事件日志：按sequenceId顺序追加已处理的事件，内存映射的固定大小段文件journal-{首个sequenceId}.log，写满后滚动。
+ *
+ * 每条记录为: length(int) + sequenceId(long) + previousId(long) + data(classname#json) + crc32(int)，length为0表示段结束。
+ * 每段在内存中维护sequenceId到偏移的索引，补齐丢失事件和启动重放时先读本地日志，日志中没有的范围再读数据库。
+ * 进程崩溃时已写入映射内存的数据由操作系统落盘，段滚动和关闭时强制刷盘。
+ */
+@Component
+public class EventJournal extends LoggerSupport {
+
+    static final int HEADER = 4 + 8 + 8;
+    static final int TRAILER = 4;
+
+    @Autowired
+    MessageTypes messageTypes;
+
+    final Path dir; // 为null时不写日志
+    final int segmentSize;
+    final int maxSegments;
+
+    // 首个sequenceId -> 段:
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment current;
+    private long lastSequenceId = 0;
+
+    public EventJournal(@Value("#{exchangeConfiguration.journalDir}") String dir,
+            @Value("#{exchangeConfiguration.journalSegmentSize}") int segmentSize,
+            @Value("#{exchangeConfiguration.journalMaxSegments}") int maxSegments) {
+        this.dir = dir == null || dir.isBlank() ? null : Path.of(dir).toAbsolutePath();
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(2, maxSegments);
+    }
+
+    public boolean isEnabled() {
+        return this.dir != null;
+    }
+
+    /**
+     * 打开已有的段并重建索引，截断最后一段中不完整的记录
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (this.dir == null) {
+            return;
+        }
+        Files.createDirectories(this.dir);
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(this.dir)) {
+            files = stream.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith("journal-") && name.endsWith(".log");
+            }).sorted().toList();
+        }
+        for (Path file : files) {
+            Segment segment = new Segment(file, Math.max(this.segmentSize, (int) Files.size(file)));
+            segment.scan();
+            if (segment.count == 0) {
+                // 空段（例如上次在写入首条记录时崩溃），丢弃:
+                segment.close();
+                Files.delete(file);
+                continue;
+            }
+            this.segments.put(segment.firstSequenceId(), segment);
+            this.lastSequenceId = segment.lastSequenceId();
+            this.current = segment;
+        }
+        logger.info("opened journal {} with {} segments, last sequence id {}.", this.dir, this.segments.size(),
+                this.lastSequenceId);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        for (Segment segment : this.segments.values()) {
+            segment.close();
+        }
+        this.segments.clear();
+        this.current = null;
+    }
+
+    public synchronized long getLastSequenceId() {
+        return this.lastSequenceId;
+    }
+
+    /**
+     * 追加事件，已写入的事件忽略；与上一条不连续时开始新的段
+     */
+    public synchronized void append(AbstractEvent event) {
+        if (event.sequenceId <= this.lastSequenceId) {
+            return;
+        }
+        byte[] data = this.messageTypes.serialize(event).getBytes(StandardCharsets.UTF_8);
+        int size = HEADER + data.length + TRAILER;
+        if (this.current == null || event.previousId != this.lastSequenceId
+                || this.current.position + size + 4 > this.current.buffer.capacity()) {
+            roll(event.sequenceId, size);
+        }
+        this.current.append(event.sequenceId, event.previousId, data);
+        this.lastSequenceId = event.sequenceId;
+    }
+
+    /**
+     * 读取sequenceId > afterSequenceId的连续事件，最多limit个；日志中没有紧接afterSequenceId的事件时返回空
+     */
+    public synchronized List<AbstractEvent> read(long afterSequenceId, int limit) {
+        List<AbstractEvent> events = new ArrayList<>();
+        Map.Entry<Long, Segment> entry = this.segments.floorEntry(afterSequenceId + 1);
+        if (entry == null) {
+            return events;
+        }
+        long expectedPrevious = afterSequenceId;
+        for (Segment segment : this.segments.tailMap(entry.getKey()).values()) {
+            int index = segment.indexAfter(afterSequenceId);
+            for (; index < segment.count && events.size() < limit; index++) {
+                int offset = segment.offsets[index];
+                if (segment.buffer.getLong(offset + 12) != expectedPrevious) {
+                    return events;
+                }
+                AbstractEvent event = (AbstractEvent) this.messageTypes.deserialize(segment.data(offset));
+                events.add(event);
+                expectedPrevious = event.sequenceId;
+            }
+            if (events.size() >= limit) {
+                break;
+            }
+        }
+        return events;
+    }
+
+    private void roll(long firstSequenceId, int recordSize) {
+        if (this.current != null) {
+            this.current.buffer.force();
+        }
+        Path file = this.dir.resolve(String.format("journal-%020d.log", firstSequenceId));
+        try {
+            this.current = new Segment(file, Math.max(this.segmentSize, recordSize + 4));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.segments.put(firstSequenceId, this.current);
+        // 删除最旧的段:
+        while (this.segments.size() > this.maxSegments) {
+            Segment oldest = this.segments.pollFirstEntry().getValue();
+            oldest.close();
+            try {
+                Files.deleteIfExists(oldest.file);
+            } catch (IOException e) {
+                logger.warn("delete journal segment failed: " + oldest.file, e);
+            }
+        }
+        logger.info("roll journal segment {}.", file);
+    }
+
+    static class Segment {
+
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int position = 0;
+        int count = 0;
+        long[] sequenceIds = new long[1024];
+        int[] offsets = new int[1024];
+
+        Segment(Path file, int size) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        long firstSequenceId() {
+            return this.sequenceIds[0];
+        }
+
+        long lastSequenceId() {
+            return this.sequenceIds[this.count - 1];
+        }
+
+        /**
+         * 扫描记录重建索引，遇到空记录、校验失败或不连续的记录时截断
+         */
+        void scan() {
+            long previousId = 0;
+            for (;;) {
+                int offset = this.position;
+                if (offset + HEADER + TRAILER > this.buffer.capacity()) {
+                    break;
+                }
+                int length = this.buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER + length + TRAILER > this.buffer.capacity()) {
+                    break;
+                }
+                long sequenceId = this.buffer.getLong(offset + 4);
+                long prev = this.buffer.getLong(offset + 12);
+                if (this.count > 0 && prev != previousId) {
+                    break;
+                }
+                if (this.buffer.getInt(offset + HEADER + length) != checksum(offset, HEADER + length)) {
+                    break;
+                }
+                index(sequenceId, offset);
+                this.position = offset + HEADER + length + TRAILER;
+                previousId = sequenceId;
+            }
+            // 清除不完整的尾部，保证下一条记录之后为0:
+            if (this.position + 4 <= this.buffer.capacity()) {
+                this.buffer.putInt(this.position, 0);
+            }
+        }
+
+        void append(long sequenceId, long previousId, byte[] data) {
+            int offset = this.position;
+            // 先写入记录内容和下一条的结束标记，最后写入长度:
+            this.buffer.putLong(offset + 4, sequenceId);
+            this.buffer.putLong(offset + 12, previousId);
+            this.buffer.put(offset + HEADER, data);
+            int end = offset + HEADER + data.length + TRAILER;
+            if (end + 4 <= this.buffer.capacity()) {
+                this.buffer.putInt(end, 0);
+            }
+            this.buffer.putInt(offset, data.length);
+            this.buffer.putInt(offset + HEADER + data.length, checksum(offset, HEADER + data.length));
+            index(sequenceId, offset);
+            this.position = end;
+        }
+
+        String data(int offset) {
+            byte[] data = new byte[this.buffer.getInt(offset)];
+            this.buffer.get(offset + HEADER, data);
+            return new String(data, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 第一条sequenceId > afterSequenceId的记录的索引
+         */
+        int indexAfter(long afterSequenceId) {
+            int n = Arrays.binarySearch(this.sequenceIds, 0, this.count, afterSequenceId);
+            return n >= 0 ? n + 1 : -n - 1;
+        }
+
+        void close() {
+            this.buffer.force();
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void index(long sequenceId, int offset) {
+            if (this.count == this.sequenceIds.length) {
+                this.sequenceIds = Arrays.copyOf(this.sequenceIds, this.count * 2);
+                this.offsets = Arrays.copyOf(this.offsets, this.count * 2);
+            }
+            this.sequenceIds[this.count] = sequenceId;
+            this.offsets[this.count] = offset;
+            this.count++;
+        }
+
+        private int checksum(int offset, int length) {
+            var crc = new CRC32();
+            crc.update(this.buffer.slice(offset, length));
+            return (int) crc.getValue();
+        }
+    }
+}
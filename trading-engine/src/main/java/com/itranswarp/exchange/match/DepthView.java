@@ -0,0 +1,200 @@
+package com.itranswarp.exchange.match;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.itranswarp.exchange.bean.OrderBookItemBean;
+import com.itranswarp.exchange.enums.Direction;
+
+/**
+ * 订单簿前N档深度
+ * 随订单簿档位变化原地更新，仅在有变化时生成新的不可变快照，同时记录有变化的档位价格用于生成增量
+ */
+public class DepthView {
+
+    final OrderBook book;
+    final int capacity; // 最大档数
+    final long[] prices; // 档位价格（定点数），按订单簿顺序排列
+    final long[] quantities; // 档位总数量（定点数）
+    final BigDecimal[] priceValues; // 档位价格
+    int size; // 当前档数
+    boolean changed = true; // 上次快照后是否有变化
+    List<OrderBookItemBean> snapshot; // 上次快照
+    final long[] changedPrices; // 上次取增量后有变化的档位价格（可能重复）
+    int changedCount;
+    boolean changesOverflow; // 变化过多（超过changedPrices容量），应改用全量快照
+
+    DepthView(OrderBook book, int capacity) {
+        this.book = book;
+        this.capacity = capacity;
+        this.prices = new long[capacity];
+        this.quantities = new long[capacity];
+        this.priceValues = new BigDecimal[capacity];
+        this.changedPrices = new long[Math.max(16, capacity * 2)];
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isChanged() {
+        return this.changed;
+    }
+
+    /**
+     * 档位新增或数量变化
+     */
+    void update(PriceLevel level) {
+        if (this.capacity == 0) {
+            return;
+        }
+        int index = indexOf(level.price);
+        if (index >= 0) {
+            this.quantities[index] = level.totalQuantity;
+        } else {
+            int pos = -index - 1;
+            // 视图已满且新档位排在最后:
+            if (pos >= this.capacity) {
+                return;
+            }
+            // 视图已满时最后一档被挤出:
+            if (this.size == this.capacity) {
+                markChanged(this.prices[this.size - 1]);
+            }
+            int end = Math.min(this.size, this.capacity - 1);
+            System.arraycopy(this.prices, pos, this.prices, pos + 1, end - pos);
+            System.arraycopy(this.quantities, pos, this.quantities, pos + 1, end - pos);
+            System.arraycopy(this.priceValues, pos, this.priceValues, pos + 1, end - pos);
+            set(pos, level);
+            this.size = end + 1;
+        }
+        markChanged(level.price);
+        this.changed = true;
+    }
+
+    /**
+     * 档位删除（必须在档位从订单簿删除之后调用）
+     */
+    void remove(PriceLevel level) {
+        int index = indexOf(level.price);
+        if (index < 0) {
+            return;
+        }
+        int tail = this.size - index - 1;
+        System.arraycopy(this.prices, index + 1, this.prices, index, tail);
+        System.arraycopy(this.quantities, index + 1, this.quantities, index, tail);
+        System.arraycopy(this.priceValues, index + 1, this.priceValues, index, tail);
+        this.size--;
+        this.priceValues[this.size] = null;
+        markChanged(level.price);
+        // 从订单簿补齐最后一档:
+        if (this.size == this.capacity - 1) {
+            Map.Entry<Long, PriceLevel> next = this.size == 0 ? this.book.levels.firstEntry()
+                    : this.book.levels.higherEntry(this.prices[this.size - 1]);
+            if (next != null) {
+                set(this.size, next.getValue());
+                markChanged(next.getKey());
+                this.size++;
+            }
+        }
+        this.changed = true;
+    }
+
+    /**
+     * 返回不可变快照，无变化时返回上次的快照
+     */
+    public List<OrderBookItemBean> snapshot() {
+        if (this.changed || this.snapshot == null) {
+            OrderBookItemBean[] items = new OrderBookItemBean[this.size];
+            for (int i = 0; i < this.size; i++) {
+                items[i] = new OrderBookItemBean(this.priceValues[i], this.book.scale.toQuantity(this.quantities[i]));
+            }
+            this.snapshot = List.of(items);
+            this.changed = false;
+        }
+        return this.snapshot;
+    }
+
+    /**
+     * 上次调用后视图内有变化的档位（数量为视图中的最新值，0表示档位已删除或移出视图），按价格升序排列；
+     * 无变化时返回空列表，变化过多时返回null（应改用全量快照）。调用后清除变化记录
+     */
+    public List<OrderBookItemBean> drainChanges() {
+        if (this.changesOverflow) {
+            clearChanges();
+            return null;
+        }
+        if (this.changedCount == 0) {
+            return List.of();
+        }
+        Arrays.sort(this.changedPrices, 0, this.changedCount);
+        List<OrderBookItemBean> items = new ArrayList<>(this.changedCount);
+        for (int i = 0; i < this.changedCount; i++) {
+            long price = this.changedPrices[i];
+            if (i > 0 && price == this.changedPrices[i - 1]) {
+                continue;
+            }
+            int index = indexOf(price);
+            items.add(index >= 0
+                    ? new OrderBookItemBean(this.priceValues[index], this.book.scale.toQuantity(this.quantities[index]))
+                    : new OrderBookItemBean(this.book.scale.toPrice(price), BigDecimal.ZERO));
+        }
+        this.changedCount = 0;
+        return items;
+    }
+
+    /**
+     * 丢弃变化记录（已生成全量快照时）
+     */
+    public void clearChanges() {
+        this.changedCount = 0;
+        this.changesOverflow = false;
+    }
+
+    private void markChanged(long price) {
+        // 同一档位连续变化只记录一次:
+        if (this.changesOverflow
+                || (this.changedCount > 0 && this.changedPrices[this.changedCount - 1] == price)) {
+            return;
+        }
+        if (this.changedCount == this.changedPrices.length) {
+            this.changesOverflow = true;
+            return;
+        }
+        this.changedPrices[this.changedCount++] = price;
+    }
+
+    private void set(int index, PriceLevel level) {
+        this.prices[index] = level.price;
+        this.quantities[index] = level.totalQuantity;
+        this.priceValues[index] = level.priceValue;
+    }
+
+    /**
+     * 二分查找，未找到时返回(-(插入位置) - 1)
+     */
+    private int indexOf(long price) {
+        int low = 0;
+        int high = this.size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = this.book.direction == Direction.BUY ? Long.compare(price, this.prices[mid])
+                    : Long.compare(this.prices[mid], price);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,64 @@
+package com.itranswarp.exchange.match;
+
+import java.math.BigDecimal;
+
+import com.itranswarp.exchange.enums.AssetEnum;
+
+/**
+ * 定点数精度
+ * 撮合时价格和数量均以long表示（价格 = priceUnits / 10^priceScale），BigDecimal只出现在API和持久化边界
+ *
+ * @param priceScale    价格小数位数（tick）
+ * @param quantityScale 数量小数位数（lot）
+ */
+public record MarketScale(int priceScale, int quantityScale) {
+
+    public static final MarketScale DEFAULT = new MarketScale(AssetEnum.SCALE, AssetEnum.SCALE);
+
+    private static final long[] POW10 = { 1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L,
+            100_000_000L };
+
+    public MarketScale {
+        // 金额（价格 x 数量）必须能无损表示为资产余额定点数:
+        if (priceScale < 0 || quantityScale < 0 || priceScale + quantityScale > AssetEnum.BALANCE_SCALE) {
+            throw new IllegalArgumentException("Invalid scale.");
+        }
+    }
+
+    /**
+     * BigDecimal价格转long，精度超出priceScale时抛出ArithmeticException
+     */
+    public long toPriceUnits(BigDecimal price) {
+        return price.movePointRight(this.priceScale).longValueExact();
+    }
+
+    /**
+     * BigDecimal数量转long，精度超出quantityScale时抛出ArithmeticException
+     */
+    public long toQuantityUnits(BigDecimal quantity) {
+        return quantity.movePointRight(this.quantityScale).longValueExact();
+    }
+
+    public BigDecimal toPrice(long priceUnits) {
+        return BigDecimal.valueOf(priceUnits, this.priceScale);
+    }
+
+    public BigDecimal toQuantity(long quantityUnits) {
+        return quantityUnits == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(quantityUnits, this.quantityScale);
+    }
+
+    /**
+     * 金额 = 价格 x 数量，以资产余额定点数表示，溢出时抛出ArithmeticException
+     */
+    public long toAmountUnits(long priceUnits, long quantityUnits) {
+        return Math.multiplyExact(Math.multiplyExact(priceUnits, quantityUnits),
+                POW10[AssetEnum.BALANCE_SCALE - this.priceScale - this.quantityScale]);
+    }
+
+    /**
+     * 数量以资产余额定点数表示，溢出时抛出ArithmeticException
+     */
+    public long toBaseUnits(long quantityUnits) {
+        return Math.multiplyExact(quantityUnits, POW10[AssetEnum.BALANCE_SCALE - this.quantityScale]);
+    }
+}
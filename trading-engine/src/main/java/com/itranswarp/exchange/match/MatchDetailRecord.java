@@ -1,8 +1,73 @@
 package com.itranswarp.exchange.match;
 
-import java.math.BigDecimal;
+import java.util.Objects;
 
 import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderRecord;
 
-public record MatchDetailRecord(BigDecimal price, BigDecimal quantity, OrderEntity takerOrder, OrderEntity makerOrder) {
+/**
+ * 撮合记录，price和quantity为定点数（见MarketScale），maker为成交后的定点数快照
+ * 可被MatchResult重复使用，因此只能在撮合线程内、下一次撮合之前读取
+ */
+public final class MatchDetailRecord {
+
+    private long price;
+    private long quantity;
+    private OrderEntity takerOrder;
+    private OrderRecord makerOrder;
+
+    public MatchDetailRecord(long price, long quantity, OrderEntity takerOrder, OrderRecord makerOrder) {
+        set(price, quantity, takerOrder, makerOrder);
+    }
+
+    void set(long price, long quantity, OrderEntity takerOrder, OrderRecord makerOrder) {
+        this.price = price;
+        this.quantity = quantity;
+        this.takerOrder = takerOrder;
+        this.makerOrder = makerOrder;
+    }
+
+    void clear() {
+        this.takerOrder = null;
+        this.makerOrder = null;
+    }
+
+    public long price() {
+        return this.price;
+    }
+
+    public long quantity() {
+        return this.quantity;
+    }
+
+    public OrderEntity takerOrder() {
+        return this.takerOrder;
+    }
+
+    public OrderRecord makerOrder() {
+        return this.makerOrder;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof MatchDetailRecord r) {
+            return this.price == r.price && this.quantity == r.quantity
+                    && Objects.equals(this.takerOrder, r.takerOrder) && Objects.equals(this.makerOrder, r.makerOrder);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.price, this.quantity, this.takerOrder, this.makerOrder);
+    }
+
+    @Override
+    public String toString() {
+        return "MatchDetailRecord[price=" + price + ", quantity=" + quantity + ", takerOrder=" + takerOrder
+                + ", makerOrder=" + makerOrder + "]";
+    }
 }
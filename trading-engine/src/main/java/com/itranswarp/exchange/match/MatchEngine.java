@@ -1,24 +1,60 @@
 package com.itranswarp.exchange.match;
 
 import java.math.BigDecimal;
-
-import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.itranswarp.exchange.bean.OrderBookBean;
+import com.itranswarp.exchange.bean.OrderBookDeltaBean;
+import com.itranswarp.exchange.bean.OrderBookItemBean;
 import com.itranswarp.exchange.enums.Direction;
 import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
 import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderArena;
 
 /**
  * 撮合引擎
+ * 每个交易对一个实例（见MatchEngineRegistry），非线程安全，同一时刻只能由一个线程调用
  */
-@Component
 public class MatchEngine {
 
-    public final OrderBook buyBook = new OrderBook(Direction.BUY); // 买盘
-    public final OrderBook sellBook = new OrderBook(Direction.SELL); // 卖盘
+    public final SymbolEnum symbol; // 交易对
+    public final OrderArena arena; // 挂单存储区
+    public final OrderBook buyBook; // 买盘
+    public final OrderBook sellBook; // 卖盘
+    public final MarketScale scale; // 价格/数量定点数精度
     public BigDecimal marketPrice = BigDecimal.ZERO; // 最新市场价
+    public long marketPriceUnits = 0; // 最新市场价（定点数）
+    private final MatchResult reusableResult; // 复用模式下的撮合结果，为null时每次新建
     private long sequenceId; // 上次处理的Sequence ID
+    private long deltaSequenceId; // 上次输出增量时的Sequence ID
+
+    public MatchEngine() {
+        this(MarketScale.DEFAULT, OrderBook.DEFAULT_DEPTH, false);
+    }
+
+    public MatchEngine(MarketScale scale, int orderBookDepth, boolean reuseMatchResult) {
+        this(SymbolEnum.BTC_USD, new OrderArena(), scale, orderBookDepth, reuseMatchResult);
+    }
+
+    /**
+     * @param symbol           交易对
+     * @param arena            挂单存储区（可由多个交易对共享）
+     * @param scale            定点数精度
+     * @param orderBookDepth   深度快照档数
+     * @param reuseMatchResult 是否复用MatchResult（复用时返回的结果仅在下一次processOrder()之前有效）
+     */
+    public MatchEngine(SymbolEnum symbol, OrderArena arena, MarketScale scale, int orderBookDepth,
+            boolean reuseMatchResult) {
+        this.symbol = symbol;
+        this.arena = arena;
+        this.scale = scale;
+        this.reusableResult = reuseMatchResult ? new MatchResult(null, scale) : null;
+        this.buyBook = new OrderBook(Direction.BUY, arena, scale, orderBookDepth);
+        this.sellBook = new OrderBook(Direction.SELL, arena, scale, orderBookDepth);
+    }
 
     /**
      * 撮合
@@ -40,80 +76,173 @@ public class MatchEngine {
      * @param sequenceId 定序id
      * @param takerOrder  当前正在处理的订单
      * @param makerBook   尝试匹配成交的OrderBook（对手盘）
-     * @param anotherBook 未能完全成交后挂单的OrderBook
+     * @param anotherBook 未能完全成交后挂单的OrderBook（仅限价单）
      * @return 成交结果
      */
     private MatchResult processOrder(long sequenceId, OrderEntity takerOrder, OrderBook makerBook,
             OrderBook anotherBook) {
         this.sequenceId = sequenceId;
         long ts = takerOrder.createdAt;
-        MatchResult matchResult = new MatchResult(takerOrder);
-        BigDecimal takerUnfilledQuantity = takerOrder.quantity;
+        MatchResult matchResult = this.reusableResult != null ? this.reusableResult.reset(takerOrder)
+                : new MatchResult(takerOrder, this.scale);
+        long takerUnfilledQuantity = takerOrder.quantityUnits;
+        if (takerOrder.type == OrderType.FOK
+                && !makerBook.hasQuantity(takerOrder.priceUnits, takerOrder.quantityUnits)) {
+            // FOK订单无法全部成交，不撮合直接取消:
+            takerOrder.updateOrder(takerUnfilledQuantity, takerOrder.quantity, OrderStatus.FULLY_CANCELLED, ts);
+            return matchResult;
+        }
         // 一直循环，每次取maker（对手盘）第一个，目标是将taker完全匹配完
+        // maker只以句柄访问OrderArena中的槽位，撮合记录中的maker为成交后的快照
+        OrderArena arena = this.arena;
         for (;;) {
-            OrderEntity makerOrder = makerBook.getFirst();
-            if (makerOrder == null) {
+            int makerHandle = makerBook.getFirst();
+            if (makerHandle == OrderArena.NULL) {
                 // 对手盘不存在:
                 break;
             }
-            if (takerOrder.direction == Direction.BUY && takerOrder.price.compareTo(makerOrder.price) < 0) {
+            long makerPrice = arena.priceUnits(makerHandle);
+            if (takerOrder.direction == Direction.BUY && takerOrder.priceUnits < makerPrice) {
                 // 买入订单价格比卖盘第一档价格低:
                 break;
-            } else if (takerOrder.direction == Direction.SELL && takerOrder.price.compareTo(makerOrder.price) > 0) {
+            } else if (takerOrder.direction == Direction.SELL && takerOrder.priceUnits > makerPrice) {
                 // 卖出订单价格比买盘第一档价格高:
                 break;
             }
             // 以Maker价格成交,则市场价更新
-            this.marketPrice = makerOrder.price;
+            this.marketPrice = makerBook.getBestLevel().priceValue;
+            this.marketPriceUnits = makerPrice;
             // 待成交数量为两者较小值:
-            BigDecimal matchedQuantity = takerUnfilledQuantity.min(makerOrder.unfilledQuantity);
-            // 成交记录（价格、数量、maker）写入撮合匹配列表
-            matchResult.add(makerOrder.price, matchedQuantity, makerOrder);
+            long makerUnfilledQuantity = arena.unfilledUnits(makerHandle);
+            long matchedQuantity = Math.min(takerUnfilledQuantity, makerUnfilledQuantity);
             // 更新成交后的订单数量 = taker数量 减去 待成交数量
-            takerUnfilledQuantity = takerUnfilledQuantity.subtract(matchedQuantity);
-            BigDecimal makerUnfilledQuantity = makerOrder.unfilledQuantity.subtract(matchedQuantity);
+            takerUnfilledQuantity -= matchedQuantity;
+            makerUnfilledQuantity -= matchedQuantity;
             // 对手盘完全成交后（即看成交后的订单数是否为0），从订单簿中删除:
-            if (makerUnfilledQuantity.signum() == 0) {
-                makerOrder.updateOrder(makerUnfilledQuantity, OrderStatus.FULLY_FILLED, ts);
-                makerBook.remove(makerOrder);
+            if (makerUnfilledQuantity == 0) {
+                makerBook.remove(makerHandle);
+                arena.update(makerHandle, 0, OrderStatus.FULLY_FILLED, ts);
             } else {
                 // 对手盘部分成交:
-                makerOrder.updateOrder(makerUnfilledQuantity, OrderStatus.PARTIAL_FILLED, ts);
+                makerBook.reduce(makerHandle, matchedQuantity);
+                arena.update(makerHandle, makerUnfilledQuantity, OrderStatus.PARTIAL_FILLED, ts);
             }
+            // 成交记录（价格、数量、maker快照）写入撮合匹配列表
+            matchResult.add(makerPrice, matchedQuantity, arena, makerHandle);
             // Taker订单完全成交后，退出循环:
-            if (takerUnfilledQuantity.signum() == 0) {
-                takerOrder.updateOrder(takerUnfilledQuantity, OrderStatus.FULLY_FILLED, ts);
+            if (takerUnfilledQuantity == 0) {
+                takerOrder.updateOrder(0, BigDecimal.ZERO, OrderStatus.FULLY_FILLED, ts);
                 break;
             }
         } // end for
-        // Taker订单未完全成交时，放入买/卖订单簿:
-        if (takerUnfilledQuantity.signum() > 0) {
-            takerOrder.updateOrder(takerUnfilledQuantity,
-                    takerUnfilledQuantity.compareTo(takerOrder.quantity) == 0 ? OrderStatus.PENDING
-                            : OrderStatus.PARTIAL_FILLED,
-                    ts);
-            anotherBook.add(takerOrder);
+        if (takerUnfilledQuantity > 0) {
+            boolean unchanged = takerUnfilledQuantity == takerOrder.quantityUnits;
+            BigDecimal unfilled = unchanged ? takerOrder.quantity : this.scale.toQuantity(takerUnfilledQuantity);
+            if (takerOrder.type.rest) {
+                // 限价单未完全成交时，更新槽位后放入买/卖订单簿:
+                takerOrder.updateOrder(takerUnfilledQuantity, unfilled,
+                        unchanged ? OrderStatus.PENDING : OrderStatus.PARTIAL_FILLED, ts);
+                arena.update(takerOrder.handle, takerUnfilledQuantity, takerOrder.status, ts);
+                anotherBook.add(takerOrder);
+            } else {
+                // 市价/IOC/FOK订单的剩余部分直接取消，不进入订单簿:
+                takerOrder.updateOrder(takerUnfilledQuantity, unfilled,
+                        unchanged ? OrderStatus.FULLY_CANCELLED : OrderStatus.PARTIAL_CANCELLED, ts);
+            }
+        } else if (takerOrder.handle != OrderArena.NULL) {
+            // 完全成交的限价单，槽位由OrderService在清算时释放:
+            arena.update(takerOrder.handle, 0, OrderStatus.FULLY_FILLED, ts);
         }
         return matchResult;
     }
 
+    /**
+     * 订单是否在订单簿中
+     */
+    public boolean exist(OrderEntity order) {
+        return (order.direction == Direction.BUY ? this.buyBook : this.sellBook).exist(order);
+    }
+
+    /**
+     * 取消挂单，order为挂单的快照，取消后更新为最新状态
+     */
     public void cancel(long ts, OrderEntity order) {
         OrderBook book = order.direction == Direction.BUY ? this.buyBook : this.sellBook;
-        if (!book.remove(order)) {
+        if (!book.exist(order)) {
             throw new IllegalArgumentException("Order not found in order book.");
         }
-        OrderStatus status = order.unfilledQuantity.compareTo(order.quantity) == 0 ? OrderStatus.FULLY_CANCELLED
+        int handle = order.handle;
+        book.remove(handle);
+        long unfilledUnits = this.arena.unfilledUnits(handle);
+        OrderStatus status = unfilledUnits == this.arena.quantityUnits(handle) ? OrderStatus.FULLY_CANCELLED
                 : OrderStatus.PARTIAL_CANCELLED;
-        order.updateOrder(order.unfilledQuantity, status, ts);
+        this.arena.update(handle, unfilledUnits, status, ts);
+        this.arena.load(handle, order);
     }
 
-    public OrderBookBean getOrderBook(int maxDepth) {
-        return new OrderBookBean(this.sequenceId, this.marketPrice, this.buyBook.getOrderBook(maxDepth),
-                this.sellBook.getOrderBook(maxDepth));
+    /**
+     * 批量取消挂单，跳过已不在订单簿中的订单（如已完全成交），返回已取消的订单
+     */
+    public List<OrderEntity> cancel(long ts, List<OrderEntity> orders) {
+        List<OrderEntity> canceled = new ArrayList<>(orders.size());
+        for (OrderEntity order : orders) {
+            if (exist(order)) {
+                cancel(ts, order);
+                canceled.add(order);
+            }
+        }
+        return canceled;
+    }
+
+    public long getSequenceId() {
+        return this.sequenceId;
+    }
+
+    /**
+     * 从快照恢复上次处理的Sequence ID和最新市场价（仅在启动时调用）
+     */
+    public void restore(long sequenceId, long marketPriceUnits) {
+        this.sequenceId = sequenceId;
+        this.marketPriceUnits = marketPriceUnits;
+        this.marketPrice = marketPriceUnits == 0 ? BigDecimal.ZERO : this.scale.toPrice(marketPriceUnits);
+    }
+
+    /**
+     * 从快照恢复挂单（仅在启动时按sequenceId顺序调用），订单必须已由OrderService分配槽位
+     */
+    public void restoreOrder(OrderEntity order) {
+        (order.direction == Direction.BUY ? this.buyBook : this.sellBook).add(order);
+    }
+
+    /**
+     * 获取深度快照，未变化的一侧复用上次的不可变快照
+     */
+    public OrderBookBean getOrderBook() {
+        return new OrderBookBean(this.symbol, this.sequenceId, this.marketPrice, this.buyBook.getDepth(),
+                this.sellBook.getDepth());
+    }
+
+    /**
+     * 获取上次调用之后的深度增量，sequenceId为调用方已处理的最新Sequence ID，深度无变化时返回null；
+     * snapshot为true或变化档位过多时返回完整深度（snapshot=true）
+     */
+    public OrderBookDeltaBean getOrderBookDelta(long sequenceId, boolean snapshot) {
+        List<OrderBookItemBean> buy = this.buyBook.depth.drainChanges();
+        List<OrderBookItemBean> sell = this.sellBook.depth.drainChanges();
+        if (!snapshot && buy != null && sell != null && buy.isEmpty() && sell.isEmpty()) {
+            return null;
+        }
+        long previousId = this.deltaSequenceId;
+        this.deltaSequenceId = sequenceId;
+        if (snapshot || buy == null || sell == null) {
+            return new OrderBookDeltaBean(this.symbol, sequenceId, previousId, true, this.marketPrice,
+                    this.buyBook.getDepth(), this.sellBook.getDepth());
+        }
+        return new OrderBookDeltaBean(this.symbol, sequenceId, previousId, false, this.marketPrice, buy, sell);
     }
 
     public void debug() {
-        System.out.println("---------- match engine ----------");
+        System.out.println("---------- match engine: " + this.symbol + " ----------");
         System.out.println(this.sellBook);
         System.out.println("  ----------");
         System.out.println("  " + this.marketPrice);
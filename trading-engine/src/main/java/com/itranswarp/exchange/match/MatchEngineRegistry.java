@@ -0,0 +1,102 @@
+package com.itranswarp.exchange.match;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.order.OrderArena;
+import com.itranswarp.exchange.support.LoggerSupport;
+
+/**
+ * 撮合引擎注册表
+ * 每个交易对一个MatchEngine；并行模式下每个交易对另有专属的撮合线程，同一交易对的任务严格按提交顺序执行
+ */
+@Component
+public class MatchEngineRegistry extends LoggerSupport {
+
+    public final boolean parallel; // 是否并行撮合
+    public final OrderArena arena; // 所有交易对共享的挂单存储区
+    public final MarketScale scale; // 所有交易对共享的定点数精度
+    final Map<SymbolEnum, MatchEngine> engines = new EnumMap<>(SymbolEnum.class);
+    final Map<SymbolEnum, ExecutorService> executors = new EnumMap<>(SymbolEnum.class);
+
+    public MatchEngineRegistry() {
+        this(new OrderArena(), MarketScale.DEFAULT, OrderBook.DEFAULT_DEPTH, false, false);
+    }
+
+    @Autowired
+    public MatchEngineRegistry(OrderArena arena, @Value("#{exchangeConfiguration.priceScale}") int priceScale,
+            @Value("#{exchangeConfiguration.quantityScale}") int quantityScale,
+            @Value("#{exchangeConfiguration.orderBookDepth}") int orderBookDepth,
+            @Value("#{exchangeConfiguration.reuseMatchResult}") boolean reuseMatchResult,
+            @Value("#{exchangeConfiguration.parallelMatching}") boolean parallel) {
+        this(arena, new MarketScale(priceScale, quantityScale), orderBookDepth, reuseMatchResult, parallel);
+    }
+
+    /**
+     * @param arena            挂单存储区（与OrderService共享）
+     * @param scale            定点数精度
+     * @param orderBookDepth   深度快照档数
+     * @param reuseMatchResult 是否复用MatchResult（并行模式下撮合结果需交给其他线程，不复用）
+     * @param parallel         是否每个交易对在独立线程撮合
+     */
+    public MatchEngineRegistry(OrderArena arena, MarketScale scale, int orderBookDepth, boolean reuseMatchResult,
+            boolean parallel) {
+        this.parallel = parallel;
+        this.arena = arena;
+        this.scale = scale;
+        for (SymbolEnum symbol : SymbolEnum.values()) {
+            this.engines.put(symbol,
+                    new MatchEngine(symbol, arena, scale, orderBookDepth, reuseMatchResult && !parallel));
+            if (parallel) {
+                String name = "match-" + symbol.name().toLowerCase();
+                this.executors.put(symbol, Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, name);
+                    t.setDaemon(true);
+                    return t;
+                }));
+            }
+        }
+    }
+
+    public MatchEngine get(SymbolEnum symbol) {
+        MatchEngine engine = this.engines.get(symbol);
+        if (engine == null) {
+            throw new IllegalArgumentException("Invalid symbol: " + symbol);
+        }
+        return engine;
+    }
+
+    public Collection<MatchEngine> getEngines() {
+        return this.engines.values();
+    }
+
+    /**
+     * 提交到交易对的撮合线程执行（仅并行模式）
+     */
+    public <T> Future<T> submit(SymbolEnum symbol, Callable<T> task) {
+        ExecutorService executor = this.executors.get(symbol);
+        if (executor == null) {
+            throw new IllegalStateException("Parallel matching is disabled.");
+        }
+        return executor.submit(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService executor : this.executors.values()) {
+            executor.shutdownNow();
+        }
+    }
+}
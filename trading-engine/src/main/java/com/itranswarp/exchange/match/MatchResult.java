@@ -1,40 +1,138 @@
 package com.itranswarp.exchange.match;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderArena;
+import com.itranswarp.exchange.order.OrderRecord;
 
 /**
  * 撮合结果
  * 一个taker单可能对应多个maker单
+ * 复用模式下，MatchEngine每次撮合前调用reset()，已分配的MatchDetailRecord和maker快照被重复使用，撮合过程不再产生垃圾对象
  */
 public class MatchResult {
 
-    public final OrderEntity takerOrder; //吃单
-    public final List<MatchDetailRecord> matchDetails = new ArrayList<>(); // 撮合的匹配记录列表
+    public OrderEntity takerOrder; //吃单
+    public final MarketScale scale; // 定点数精度
+    public final List<MatchDetailRecord> matchDetails = new DetailList(); // 撮合的匹配记录列表（只读视图）
+    private MatchDetailRecord[] details = new MatchDetailRecord[16]; // 匹配记录池
+    private OrderRecord[] makerSnapshots = new OrderRecord[16]; // maker快照池（挂单本身存放在OrderArena中）
+    private int size; // 当前匹配记录数
 
-    public MatchResult(OrderEntity takerOrder) {
+    public MatchResult(OrderEntity takerOrder, MarketScale scale) {
         this.takerOrder = takerOrder;
+        this.scale = scale;
     }
 
     /**
-     * 写入一条撮合的匹配记录
-     * @param price 价格
-     * @param matchedQuantity 数量
-     * @param makerOrder 挂单
+     * 重置以便复用
      */
-    public void add(BigDecimal price, BigDecimal matchedQuantity, OrderEntity makerOrder) {
-        matchDetails.add(new MatchDetailRecord(price, matchedQuantity, this.takerOrder, makerOrder));
+    MatchResult reset(OrderEntity takerOrder) {
+        for (int i = 0; i < this.size; i++) {
+            this.details[i].clear();
+        }
+        this.takerOrder = takerOrder;
+        this.size = 0;
+        return this;
+    }
+
+    /**
+     * 写入一条撮合的匹配记录，maker复制到快照池中
+     * @param price 价格（定点数）
+     * @param matchedQuantity 数量（定点数）
+     * @param makerOrder 挂单快照
+     */
+    public void add(long price, long matchedQuantity, OrderRecord makerOrder) {
+        nextMakerSnapshot().copyFrom(makerOrder);
+        addDetail(price, matchedQuantity);
+    }
+
+    /**
+     * 写入一条撮合的匹配记录，maker为从OrderArena读取的快照，复用模式下快照对象也被重复使用
+     * @param price 价格（定点数）
+     * @param matchedQuantity 数量（定点数）
+     * @param arena 挂单存储区
+     * @param makerHandle 挂单句柄（必须已更新成交后的未成交数量和状态）
+     */
+    void add(long price, long matchedQuantity, OrderArena arena, int makerHandle) {
+        arena.load(makerHandle, nextMakerSnapshot());
+        addDetail(price, matchedQuantity);
+    }
+
+    private OrderRecord nextMakerSnapshot() {
+        if (this.size == this.makerSnapshots.length) {
+            this.makerSnapshots = Arrays.copyOf(this.makerSnapshots, this.size * 2);
+        }
+        OrderRecord maker = this.makerSnapshots[this.size];
+        if (maker == null) {
+            maker = this.makerSnapshots[this.size] = new OrderRecord();
+        }
+        return maker;
+    }
+
+    private void addDetail(long price, long matchedQuantity) {
+        if (this.size == this.details.length) {
+            this.details = Arrays.copyOf(this.details, this.size * 2);
+        }
+        OrderRecord maker = this.makerSnapshots[this.size];
+        MatchDetailRecord detail = this.details[this.size];
+        if (detail == null) {
+            this.details[this.size] = new MatchDetailRecord(price, matchedQuantity, this.takerOrder, maker);
+        } else {
+            detail.set(price, matchedQuantity, this.takerOrder, maker);
+        }
+        this.size++;
+    }
+
+    /**
+     * 复制撮合结果，taker和maker均复制为此刻的快照，用于交给其他线程处理
+     */
+    public MatchResult copy() {
+        MatchResult copy = new MatchResult(this.takerOrder.copy(), this.scale);
+        for (int i = 0; i < this.size; i++) {
+            MatchDetailRecord detail = this.details[i];
+            copy.add(detail.price(), detail.quantity(), detail.makerOrder());
+        }
+        return copy;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public MatchDetailRecord get(int index) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return this.details[index];
     }
 
     @Override
     public String toString() {
-        if (matchDetails.isEmpty()) {
+        if (this.size == 0) {
             return "no matched.";
         }
-        return matchDetails.size() + " matched: "
+        return this.size + " matched: "
                 + String.join(", ", this.matchDetails.stream().map(MatchDetailRecord::toString).toArray(String[]::new));
     }
+
+    private class DetailList extends AbstractList<MatchDetailRecord> {
+
+        @Override
+        public MatchDetailRecord get(int index) {
+            return MatchResult.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return MatchResult.this.size;
+        }
+    }
 }
@@ -1,82 +1,194 @@
 package com.itranswarp.exchange.match;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import com.itranswarp.exchange.bean.OrderBookItemBean;
 import com.itranswarp.exchange.enums.Direction;
 import com.itranswarp.exchange.model.trade.OrderEntity;
-
-import java.util.TreeMap;
+import com.itranswarp.exchange.order.OrderArena;
 
 /**
- * 订单薄（增删改都是对红黑树操作
+ * 订单薄
+ * 按价格档位排序（红黑树仅以价格为key），每个档位内订单按时间先后排队
  */
 public class OrderBook {
 
     public final Direction direction; // 排序方向
-    public final TreeMap<OrderKey, OrderEntity> book; // 排序树
+    public final OrderArena arena; // 挂单存储区
+    public final MarketScale scale; // 定点数精度
+    public final TreeMap<Long, PriceLevel> levels; // 价格档位排序树
+    public final DepthView depth; // 前N档深度
+    private PriceLevel bestLevel; // 最优档位
+    private PriceLevel[] levelsById = new PriceLevel[64]; // 档位id => 档位
+    private int[] freeLevelIds = new int[64]; // 可复用的档位id
+    private int freeLevelIdCount;
+    private int nextLevelId;
+    private int size; // 订单总数
 
     public OrderBook(Direction direction) {
+        this(direction, MarketScale.DEFAULT, DEFAULT_DEPTH);
+    }
+
+    public OrderBook(Direction direction, MarketScale scale, int maxDepth) {
+        this(direction, new OrderArena(), scale, maxDepth);
+    }
+
+    public OrderBook(Direction direction, OrderArena arena, MarketScale scale, int maxDepth) {
         this.direction = direction;
-        // 根据direction（买or卖）排序
-        this.book = new TreeMap<>(direction == Direction.BUY ? SORT_BUY : SORT_SELL);
+        this.arena = arena;
+        this.scale = scale;
+        // 根据direction（买or卖）排序:
+        this.levels = new TreeMap<>(direction == Direction.BUY ? SORT_BUY : SORT_SELL);
+        this.depth = new DepthView(this, maxDepth);
     }
 
-    public OrderEntity getFirst() {
-        return this.book.isEmpty() ? null : this.book.firstEntry().getValue();
+    /**
+     * 最优价格的最早订单句柄，订单簿为空时返回OrderArena.NULL
+     */
+    public int getFirst() {
+        return this.bestLevel == null ? OrderArena.NULL : this.bestLevel.head;
     }
 
-    public boolean remove(OrderEntity order) {
-        return this.book.remove(new OrderKey(order.sequenceId, order.price)) != null;
+    public PriceLevel getBestLevel() {
+        return this.bestLevel;
+    }
+
+    /**
+     * 按句柄删除，通过槽位中的档位id直接定位档位，无需查找
+     */
+    public boolean remove(int handle) {
+        PriceLevel level = levelOf(handle);
+        if (level == null) {
+            return false;
+        }
+        level.unlink(this.arena, handle);
+        this.size--;
+        // 档位为空时删除:
+        if (level.isEmpty()) {
+            this.levels.remove(level.key);
+            releaseLevel(level);
+            if (level == this.bestLevel) {
+                var first = this.levels.firstEntry();
+                this.bestLevel = first == null ? null : first.getValue();
+            }
+            this.depth.remove(level);
+        } else {
+            this.depth.update(level);
+        }
+        return true;
     }
 
+    /**
+     * 挂单，订单必须已在OrderArena中分配槽位，且槽位中的未成交数量为最新值
+     */
     public boolean add(OrderEntity order) {
-        return this.book.put(new OrderKey(order.sequenceId, order.price), order) == null;
+        int handle = order.handle;
+        if (handle == OrderArena.NULL) {
+            throw new IllegalArgumentException("Order is not allocated in order arena: " + order.id);
+        }
+        if (this.arena.level(handle) != OrderArena.NULL) {
+            return false;
+        }
+        PriceLevel level = this.levels.get(order.priceUnits);
+        if (level == null) {
+            level = createLevel(order.priceUnits, order.price);
+            this.levels.put(level.key, level);
+            if (this.bestLevel == null || this.levels.comparator().compare(level.price, this.bestLevel.price) < 0) {
+                this.bestLevel = level;
+            }
+        }
+        level.append(this.arena, handle);
+        this.size++;
+        this.depth.update(level);
+        return true;
+    }
+
+    /**
+     * 订单部分成交后减少所在档位的总数量（必须在更新槽位的未成交数量之前调用）
+     */
+    public void reduce(int handle, long quantity) {
+        PriceLevel level = this.levelsById[this.arena.level(handle)];
+        level.totalQuantity -= quantity;
+        this.depth.update(level);
+    }
+
+    /**
+     * 按价格优先遍历档位，判断价格不差于limitPrice的总数量是否不少于quantity（FOK预检查）
+     * @param limitPrice 吃单价格（定点数），卖盘取不高于该价格的档位，买盘取不低于该价格的档位
+     * @param quantity   需要的数量（定点数）
+     */
+    public boolean hasQuantity(long limitPrice, long quantity) {
+        long total = 0;
+        for (PriceLevel level : this.levels.values()) {
+            if (this.direction == Direction.SELL ? level.price > limitPrice : level.price < limitPrice) {
+                break;
+            }
+            total += level.totalQuantity;
+            if (total >= quantity) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public boolean exist(OrderEntity order) {
-        return this.book.containsKey(new OrderKey(order.sequenceId, order.price));
+        return order.handle != OrderArena.NULL && this.arena.isAllocated(order.handle)
+                && this.arena.id(order.handle) == order.id.longValue() && levelOf(order.handle) != null;
     }
 
     public int size() {
-        return this.book.size();
+        return this.size;
+    }
+
+    /**
+     * 按价格、时间顺序读取全部订单快照，仅用于测试和调试
+     */
+    public List<OrderEntity> getOrders() {
+        List<OrderEntity> orders = new ArrayList<>(this.size);
+        for (PriceLevel level : this.levels.values()) {
+            for (int handle = level.head; handle != OrderArena.NULL; handle = this.arena.bookNext(handle)) {
+                OrderEntity order = new OrderEntity();
+                this.arena.load(handle, order);
+                orders.add(order);
+            }
+        }
+        return orders;
     }
 
+    /**
+     * 前N档深度快照（N由构造时的maxDepth决定），无变化时返回上次的不可变快照
+     */
+    public List<OrderBookItemBean> getDepth() {
+        return this.depth.snapshot();
+    }
+
+    /**
+     * 遍历价格档位生成深度，仅用于测试和调试
+     */
     public List<OrderBookItemBean> getOrderBook(int maxDepth) {
-        List<OrderBookItemBean> items = new ArrayList<>(maxDepth);
-        OrderBookItemBean prevItem = null;
-        for (OrderKey key : this.book.keySet()) {
-            OrderEntity order = this.book.get(key);
-            if (prevItem == null) {
-                prevItem = new OrderBookItemBean(order.price, order.unfilledQuantity);
-                items.add(prevItem);
-            } else {
-                if (order.price.compareTo(prevItem.price) == 0) {
-                    prevItem.addQuantity(order.unfilledQuantity);
-                } else {
-                    if (items.size() >= maxDepth) {
-                        break;
-                    }
-                    prevItem = new OrderBookItemBean(order.price, order.unfilledQuantity);
-                    items.add(prevItem);
-                }
+        List<OrderBookItemBean> items = new ArrayList<>(Math.min(maxDepth, this.levels.size()));
+        for (PriceLevel level : this.levels.values()) {
+            if (items.size() >= maxDepth) {
+                break;
             }
+            items.add(new OrderBookItemBean(level.priceValue, this.scale.toQuantity(level.totalQuantity)));
         }
         return items;
     }
 
     @Override
     public String toString() {
-        if (this.book.isEmpty()) {
+        if (this.levels.isEmpty()) {
             return "(empty)";
         }
         List<String> orders = new ArrayList<>(10);
-        for (Entry<OrderKey, OrderEntity> entry : this.book.entrySet()) {
-            OrderEntity order = entry.getValue();
+        for (OrderEntity order : getOrders()) {
             orders.add("  " + order.price + " " + order.unfilledQuantity + " " + order.toString());
         }
         if (direction == Direction.SELL) {
@@ -85,23 +197,47 @@ public class OrderBook {
         return String.join("\n", orders);
     }
 
-    private static final Comparator<OrderKey> SORT_SELL = new Comparator<>() {
-        @Override
-        public int compare(OrderKey o1, OrderKey o2) {
-            // 价格低在前:
-            int cmp = o1.price().compareTo(o2.price());
-            // 时间早在前:
-            return cmp == 0 ? Long.compare(o1.sequenceId(), o2.sequenceId()) : cmp;
+    /**
+     * 句柄所在的本订单簿档位，不在本订单簿中时返回null
+     */
+    private PriceLevel levelOf(int handle) {
+        int id = this.arena.level(handle);
+        if (id < 0 || id >= this.nextLevelId) {
+            return null;
         }
-    };
-
-    private static final Comparator<OrderKey> SORT_BUY = new Comparator<>() {
-        @Override
-        public int compare(OrderKey o1, OrderKey o2) {
-            // 价格高在前:
-            int cmp = o2.price().compareTo(o1.price());
-            // 时间早在前:
-            return cmp == 0 ? Long.compare(o1.sequenceId(), o2.sequenceId()) : cmp;
+        PriceLevel level = this.levelsById[id];
+        return level != null && level.price == this.arena.priceUnits(handle)
+                && this.arena.direction(handle) == this.direction ? level : null;
+    }
+
+    private PriceLevel createLevel(long price, BigDecimal priceValue) {
+        int id;
+        if (this.freeLevelIdCount > 0) {
+            id = this.freeLevelIds[--this.freeLevelIdCount];
+        } else {
+            id = this.nextLevelId++;
+            if (id == this.levelsById.length) {
+                this.levelsById = Arrays.copyOf(this.levelsById, id * 2);
+            }
+        }
+        PriceLevel level = new PriceLevel(this, id, price, priceValue);
+        this.levelsById[id] = level;
+        return level;
+    }
+
+    private void releaseLevel(PriceLevel level) {
+        this.levelsById[level.id] = null;
+        if (this.freeLevelIdCount == this.freeLevelIds.length) {
+            this.freeLevelIds = Arrays.copyOf(this.freeLevelIds, this.freeLevelIdCount * 2);
         }
-    };
+        this.freeLevelIds[this.freeLevelIdCount++] = level.id;
+    }
+
+    public static final int DEFAULT_DEPTH = 50;
+
+    // 价格低在前:
+    private static final Comparator<Long> SORT_SELL = Comparator.naturalOrder();
+
+    // 价格高在前:
+    private static final Comparator<Long> SORT_BUY = Comparator.reverseOrder();
 }
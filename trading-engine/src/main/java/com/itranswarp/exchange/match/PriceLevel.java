@@ -0,0 +1,85 @@
+package com.itranswarp.exchange.match;
+
+import java.math.BigDecimal;
+
+import com.itranswarp.exchange.order.OrderArena;
+
+/**
+ * 价格档位
+ * 同一价格的订单按时间先后组成双向链表（链表指针为OrderArena中的句柄），并维护该档位的总数量
+ */
+public class PriceLevel {
+
+    final OrderBook book; // 所属订单簿
+    final int id; // 档位id，存放在挂单槽位中用于O(1)定位档位
+    public final long price; // 价格（定点数）
+    final Long key; // 订单簿中的key，删除档位时复用避免装箱
+    public final BigDecimal priceValue; // 价格
+    long totalQuantity; // 总未成交数量（定点数）
+    int size; // 订单数
+    int head = OrderArena.NULL; // 最早的订单
+    int tail = OrderArena.NULL; // 最新的订单
+
+    PriceLevel(OrderBook book, int id, long price, BigDecimal priceValue) {
+        this.book = book;
+        this.id = id;
+        this.price = price;
+        this.key = Long.valueOf(price);
+        this.priceValue = priceValue;
+    }
+
+    public long getTotalQuantity() {
+        return this.totalQuantity;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.head == OrderArena.NULL;
+    }
+
+    /**
+     * 最早的订单句柄，为空时返回OrderArena.NULL
+     */
+    public int getFirst() {
+        return this.head;
+    }
+
+    /**
+     * 追加到队尾
+     */
+    void append(OrderArena arena, int handle) {
+        arena.setBookLinks(handle, this.id, this.tail, OrderArena.NULL);
+        if (this.tail == OrderArena.NULL) {
+            this.head = handle;
+        } else {
+            arena.setBookNext(this.tail, handle);
+        }
+        this.tail = handle;
+        this.totalQuantity += arena.unfilledUnits(handle);
+        this.size++;
+    }
+
+    /**
+     * 从链表中摘除
+     */
+    void unlink(OrderArena arena, int handle) {
+        int prev = arena.bookPrev(handle);
+        int next = arena.bookNext(handle);
+        if (prev == OrderArena.NULL) {
+            this.head = next;
+        } else {
+            arena.setBookNext(prev, next);
+        }
+        if (next == OrderArena.NULL) {
+            this.tail = prev;
+        } else {
+            arena.setBookPrev(next, prev);
+        }
+        arena.setBookLinks(handle, OrderArena.NULL, OrderArena.NULL, OrderArena.NULL);
+        this.totalQuantity -= arena.unfilledUnits(handle);
+        this.size--;
+    }
+}
@@ -0,0 +1,179 @@
+package com.itranswarp.exchange.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.support.LoggerSupport;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 交易引擎各阶段的HdrHistogram统计，通过Micrometer暴露到actuator的/actuator/metrics。
+ *
+ * 定序线程和输出线程只调用Recorder.recordValue()（无锁、无分配），由后台线程每个统计周期切换一次区间直方图，
+ * 百分位数按上一个完整周期计算，读取指标时不访问正在写入的直方图。
+ */
+@Component
+public class EngineMetrics extends LoggerSupport {
+
+    static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    @Autowired(required = false)
+    MeterRegistry registry;
+
+    final long intervalMillis;
+
+    final List<Stat> stats = new ArrayList<>();
+
+    // 每批Kafka消息的事件数:
+    public final Stat batchSize = count("exchange.engine.batch.size");
+    // 按事件类型统计定序线程的处理时间（含撮合和清算，不含输出）:
+    public final Stat createOrder = time("exchange.engine.event", "type", "create");
+    public final Stat cancelOrder = time("exchange.engine.event", "type", "cancel");
+    public final Stat cancelAllOrders = time("exchange.engine.event", "type", "cancel_all");
+    public final Stat transfer = time("exchange.engine.event", "type", "transfer");
+    // 撮合时间（并行撮合时在撮合线程统计）和清算时间:
+    public final Stat match = time("exchange.engine.match");
+    public final Stat clear = time("exchange.engine.clear");
+    // 事件创建（定序）到API结果发布到Redis的时间:
+    public final Stat endToEnd = time("exchange.engine.end.to.end");
+
+    private ScheduledExecutorService rotator;
+
+    public EngineMetrics(@Value("#{exchangeConfiguration.metricsInterval}") Duration interval) {
+        this.intervalMillis = Math.max(100, interval.toMillis());
+    }
+
+    @PostConstruct
+    public void init() {
+        if (this.registry == null) {
+            return;
+        }
+        for (Stat stat : this.stats) {
+            stat.register(this.registry);
+        }
+        this.rotator = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "engine-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        this.rotator.scheduleAtFixedRate(this::rotate, this.intervalMillis, this.intervalMillis,
+                TimeUnit.MILLISECONDS);
+        logger.info("engine metrics registered with {} ms interval.", this.intervalMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.rotator != null) {
+            this.rotator.shutdownNow();
+        }
+    }
+
+    /**
+     * 注册由其他线程读取的瞬时值（如队列积压），未启用Micrometer时忽略
+     */
+    public void gauge(String name, String tagKey, String tagValue, Supplier<Number> supplier) {
+        if (this.registry != null) {
+            Gauge.builder(name, supplier).tag(tagKey, tagValue).register(this.registry);
+        }
+    }
+
+    /**
+     * 切换全部直方图的统计周期
+     */
+    void rotate() {
+        for (Stat stat : this.stats) {
+            stat.rotate();
+        }
+    }
+
+    private Stat time(String name, String... tags) {
+        return add(new Stat(name, tags, true));
+    }
+
+    private Stat count(String name) {
+        return add(new Stat(name, new String[0], false));
+    }
+
+    private Stat add(Stat stat) {
+        this.stats.add(stat);
+        return stat;
+    }
+
+    /**
+     * 单个统计项：时间以纳秒记录，以秒暴露；计数直接暴露
+     */
+    public static class Stat {
+
+        final String name;
+        final String[] tags;
+        final boolean time;
+        final Recorder recorder = new Recorder(3); // 自动扩展范围，支持多个线程写入
+        private Histogram interval; // 上一个完整统计周期
+        private long totalCount;
+
+        Stat(String name, String[] tags, boolean time) {
+            this.name = name;
+            this.tags = tags;
+            this.time = time;
+        }
+
+        public void record(long value) {
+            this.recorder.recordValue(Math.max(0, value));
+        }
+
+        /**
+         * 记录从startNanos（System.nanoTime()）到现在的时间
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        synchronized void rotate() {
+            this.interval = this.recorder.getIntervalHistogram(this.interval);
+            this.totalCount += this.interval.getTotalCount();
+        }
+
+        synchronized double percentile(double p) {
+            return this.interval == null ? 0 : scale(this.interval.getValueAtPercentile(p * 100));
+        }
+
+        synchronized double max() {
+            return this.interval == null ? 0 : scale(this.interval.getMaxValue());
+        }
+
+        synchronized long count() {
+            return this.totalCount;
+        }
+
+        private double scale(long value) {
+            return this.time ? value / 1e9 : value;
+        }
+
+        void register(MeterRegistry registry) {
+            String unit = this.time ? "seconds" : "events";
+            for (double p : PERCENTILES) {
+                Gauge.builder(this.name + ".percentile", this, s -> s.percentile(p)).tags(this.tags)
+                        .tag("phi", String.valueOf(p)).baseUnit(unit).register(registry);
+            }
+            Gauge.builder(this.name + ".max", this, Stat::max).tags(this.tags).baseUnit(unit).register(registry);
+            FunctionCounter.builder(this.name + ".count", this, Stat::count).tags(this.tags).register(registry);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.itranswarp.exchange.order;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.match.MarketScale;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+/**
+ * 挂单存储区
+ * 挂单以固定大小的槽位存放在分块的ByteBuffer中（可选堆外内存），以int句柄寻址，订单簿和OrderService的索引只保存句柄，
+ * 挂单本身不再对应常驻的OrderEntity对象；释放的槽位经空闲链表复用。
+ *
+ * 线程约定：槽位只在定序线程分配和释放；撮合线程只修改未成交数量、状态和订单簿链表；
+ * 其他线程通过load()按版本号读取一致的快照。
+ */
+@Component
+public class OrderArena {
+
+    // 槽位布局（字节偏移）:
+    static final int VERSION = 0; // int 版本号，奇数表示正在写入
+    static final int BOOK_PREV = 4; // int 同一价格档位的前一个挂单
+    static final int BOOK_NEXT = 8; // int 同一价格档位的后一个挂单，空闲时为空闲链表的下一个槽位
+    static final int USER_PREV = 12; // int 同一用户的前一个挂单
+    static final int USER_NEXT = 16; // int 同一用户的后一个挂单
+    static final int LEVEL = 20; // int 所在价格档位id，不在订单簿中时为-1
+    static final int ID = 24; // long
+    static final int SEQUENCE_ID = 32; // long
+    static final int USER_ID = 40; // long
+    static final int PRICE_UNITS = 48; // long
+    static final int QUANTITY_UNITS = 56; // long
+    static final int UNFILLED_UNITS = 64; // long
+    static final int CREATED_AT = 72; // long
+    static final int UPDATED_AT = 80; // long
+    static final int SYMBOL = 88; // byte 交易对ordinal + 1，0表示空闲
+    static final int TYPE = 89; // byte
+    static final int DIRECTION = 90; // byte
+    static final int STATUS = 91; // byte
+    static final int PRICE_SCALE = 92; // byte
+    static final int QUANTITY_SCALE = 93; // byte
+    static final int SLOT_SIZE = 96;
+
+    static final int CHUNK_BITS = 14; // 每块16384个槽位
+    static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+
+    public static final int NULL = -1; // 空句柄
+
+    private static final SymbolEnum[] SYMBOLS = SymbolEnum.values();
+    private static final OrderType[] TYPES = OrderType.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    public final boolean direct; // 是否使用堆外内存
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int top; // 从未分配过的第一个槽位
+    private int freeHead = NULL; // 空闲链表
+    private int[] retired = new int[64]; // 已释放、尚未回收到空闲链表的槽位
+    private int retiredSize;
+    private int size; // 已分配的槽位数
+
+    public OrderArena() {
+        this(false);
+    }
+
+    @Autowired
+    public OrderArena(@Value("#{exchangeConfiguration.offHeapOrders}") boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * 已分配的槽位数
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * 已申请的槽位容量
+     */
+    public int capacity() {
+        return this.chunks.length << CHUNK_BITS;
+    }
+
+    /**
+     * 已申请的内存字节数
+     */
+    public long memory() {
+        return (long) capacity() * SLOT_SIZE;
+    }
+
+    /**
+     * 分配槽位并写入订单（仅定序线程）
+     */
+    public int allocate(OrderEntity order, MarketScale scale) {
+        int handle = this.freeHead;
+        if (handle != NULL) {
+            this.freeHead = chunk(handle).getInt(offset(handle) + BOOK_NEXT);
+        } else {
+            handle = this.top;
+            if ((handle >>> CHUNK_BITS) == this.chunks.length) {
+                grow();
+            }
+            this.top++;
+        }
+        ByteBuffer buf = chunk(handle);
+        int off = offset(handle);
+        beginWrite(buf, off);
+        buf.putInt(off + BOOK_PREV, NULL);
+        buf.putInt(off + BOOK_NEXT, NULL);
+        buf.putInt(off + USER_PREV, NULL);
+        buf.putInt(off + USER_NEXT, NULL);
+        buf.putInt(off + LEVEL, NULL);
+        buf.putLong(off + ID, order.id);
+        buf.putLong(off + SEQUENCE_ID, order.sequenceId);
+        buf.putLong(off + USER_ID, order.userId);
+        buf.putLong(off + PRICE_UNITS, order.priceUnits);
+        buf.putLong(off + QUANTITY_UNITS, order.quantityUnits);
+        buf.putLong(off + UNFILLED_UNITS, order.unfilledUnits);
+        buf.putLong(off + CREATED_AT, order.createdAt);
+        buf.putLong(off + UPDATED_AT, order.updatedAt);
+        buf.put(off + SYMBOL, (byte) (order.symbol.ordinal() + 1));
+        buf.put(off + TYPE, (byte) order.type.ordinal());
+        buf.put(off + DIRECTION, (byte) order.direction.ordinal());
+        buf.put(off + STATUS, (byte) (order.status == null ? OrderStatus.PENDING : order.status).ordinal());
+        buf.put(off + PRICE_SCALE, (byte) scale.priceScale());
+        buf.put(off + QUANTITY_SCALE, (byte) scale.quantityScale());
+        endWrite(buf, off);
+        this.size++;
+        order.handle = handle;
+        return handle;
+    }
+
+    /**
+     * 释放槽位（仅定序线程）
+     * 撮合线程可能仍持有该句柄，因此先标记为空闲，待reclaim()时才进入空闲链表被复用
+     */
+    public void free(int handle) {
+        ByteBuffer buf = chunk(handle);
+        int off = offset(handle);
+        if (buf.get(off + SYMBOL) == 0) {
+            throw new IllegalArgumentException("Order handle already freed: " + handle);
+        }
+        beginWrite(buf, off);
+        buf.put(off + SYMBOL, (byte) 0);
+        endWrite(buf, off);
+        if (this.retiredSize == this.retired.length) {
+            this.retired = Arrays.copyOf(this.retired, this.retiredSize * 2);
+        }
+        this.retired[this.retiredSize++] = handle;
+        this.size--;
+    }
+
+    /**
+     * 将已释放的槽位回收到空闲链表（仅定序线程，且必须确认撮合线程不再持有这些句柄）
+     */
+    public void reclaim() {
+        for (int i = 0; i < this.retiredSize; i++) {
+            int handle = this.retired[i];
+            chunk(handle).putInt(offset(handle) + BOOK_NEXT, this.freeHead);
+            this.freeHead = handle;
+        }
+        this.retiredSize = 0;
+    }
+
+    public boolean isAllocated(int handle) {
+        return handle >= 0 && handle < this.top && chunk(handle).get(offset(handle) + SYMBOL) != 0;
+    }
+
+    public long id(int handle) {
+        return chunk(handle).getLong(offset(handle) + ID);
+    }
+
+    public long userId(int handle) {
+        return chunk(handle).getLong(offset(handle) + USER_ID);
+    }
+
+    public long priceUnits(int handle) {
+        return chunk(handle).getLong(offset(handle) + PRICE_UNITS);
+    }
+
+    public long quantityUnits(int handle) {
+        return chunk(handle).getLong(offset(handle) + QUANTITY_UNITS);
+    }
+
+    public long unfilledUnits(int handle) {
+        return chunk(handle).getLong(offset(handle) + UNFILLED_UNITS);
+    }
+
+    public SymbolEnum symbol(int handle) {
+        return SYMBOLS[chunk(handle).get(offset(handle) + SYMBOL) - 1];
+    }
+
+    public Direction direction(int handle) {
+        return DIRECTIONS[chunk(handle).get(offset(handle) + DIRECTION)];
+    }
+
+    /**
+     * 更新未成交数量和状态（撮合线程）
+     */
+    public void update(int handle, long unfilledUnits, OrderStatus status, long updatedAt) {
+        ByteBuffer buf = chunk(handle);
+        int off = offset(handle);
+        beginWrite(buf, off);
+        buf.putLong(off + UNFILLED_UNITS, unfilledUnits);
+        buf.put(off + STATUS, (byte) status.ordinal());
+        buf.putLong(off + UPDATED_AT, updatedAt);
+        endWrite(buf, off);
+    }
+
+    /**
+     * 读取订单快照，槽位空闲时返回false
+     * （可在任意线程调用，读到写入中的数据时重试）
+     */
+    public boolean load(int handle, OrderEntity target) {
+        OrderRecord record = new OrderRecord();
+        if (!load(handle, record)) {
+            return false;
+        }
+        record.copyTo(target);
+        return true;
+    }
+
+    /**
+     * 读取订单的定点数快照，槽位空闲时返回false，不创建任何对象
+     * （可在任意线程调用，读到写入中的数据时重试）
+     */
+    public boolean load(int handle, OrderRecord target) {
+        ByteBuffer[] chunks = this.chunks;
+        if (handle < 0 || (handle >>> CHUNK_BITS) >= chunks.length) {
+            return false;
+        }
+        ByteBuffer buf = chunks[handle >>> CHUNK_BITS];
+        int off = offset(handle);
+        for (;;) {
+            int version = buf.getInt(off + VERSION);
+            VarHandle.acquireFence();
+            if ((version & 1) == 0) {
+                int symbol = buf.get(off + SYMBOL);
+                if (symbol == 0) {
+                    return false;
+                }
+                target.id = buf.getLong(off + ID);
+                target.sequenceId = buf.getLong(off + SEQUENCE_ID);
+                target.userId = buf.getLong(off + USER_ID);
+                target.symbol = SYMBOLS[symbol - 1];
+                target.type = TYPES[buf.get(off + TYPE)];
+                target.direction = DIRECTIONS[buf.get(off + DIRECTION)];
+                target.status = STATUSES[buf.get(off + STATUS)];
+                target.priceUnits = buf.getLong(off + PRICE_UNITS);
+                target.quantityUnits = buf.getLong(off + QUANTITY_UNITS);
+                target.unfilledUnits = buf.getLong(off + UNFILLED_UNITS);
+                target.priceScale = buf.get(off + PRICE_SCALE);
+                target.quantityScale = buf.get(off + QUANTITY_SCALE);
+                target.createdAt = buf.getLong(off + CREATED_AT);
+                target.updatedAt = buf.getLong(off + UPDATED_AT);
+                target.handle = handle;
+                VarHandle.loadLoadFence();
+                if (buf.getInt(off + VERSION) == version) {
+                    return true;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // 订单簿链表（撮合线程）:
+
+    public int bookPrev(int handle) {
+        return chunk(handle).getInt(offset(handle) + BOOK_PREV);
+    }
+
+    public int bookNext(int handle) {
+        return chunk(handle).getInt(offset(handle) + BOOK_NEXT);
+    }
+
+    public int level(int handle) {
+        return chunk(handle).getInt(offset(handle) + LEVEL);
+    }
+
+    public void setBookLinks(int handle, int level, int prev, int next) {
+        ByteBuffer buf = chunk(handle);
+        int off = offset(handle);
+        buf.putInt(off + LEVEL, level);
+        buf.putInt(off + BOOK_PREV, prev);
+        buf.putInt(off + BOOK_NEXT, next);
+    }
+
+    public void setBookPrev(int handle, int prev) {
+        chunk(handle).putInt(offset(handle) + BOOK_PREV, prev);
+    }
+
+    public void setBookNext(int handle, int next) {
+        chunk(handle).putInt(offset(handle) + BOOK_NEXT, next);
+    }
+
+    // 用户挂单链表（定序线程）:
+
+    public int userPrev(int handle) {
+        return chunk(handle).getInt(offset(handle) + USER_PREV);
+    }
+
+    public int userNext(int handle) {
+        return chunk(handle).getInt(offset(handle) + USER_NEXT);
+    }
+
+    public void setUserPrev(int handle, int prev) {
+        chunk(handle).putInt(offset(handle) + USER_PREV, prev);
+    }
+
+    public void setUserNext(int handle, int next) {
+        chunk(handle).putInt(offset(handle) + USER_NEXT, next);
+    }
+
+    private void grow() {
+        ByteBuffer chunk = this.direct ? ByteBuffer.allocateDirect(CHUNK_SLOTS * SLOT_SIZE)
+                : ByteBuffer.allocate(CHUNK_SLOTS * SLOT_SIZE);
+        chunk.order(ByteOrder.nativeOrder());
+        ByteBuffer[] newChunks = Arrays.copyOf(this.chunks, this.chunks.length + 1);
+        newChunks[newChunks.length - 1] = chunk;
+        this.chunks = newChunks;
+    }
+
+    private ByteBuffer chunk(int handle) {
+        return this.chunks[handle >>> CHUNK_BITS];
+    }
+
+    private static int offset(int handle) {
+        return (handle & CHUNK_MASK) * SLOT_SIZE;
+    }
+
+    private static void beginWrite(ByteBuffer buf, int off) {
+        buf.putInt(off + VERSION, buf.getInt(off + VERSION) + 1);
+        VarHandle.storeStoreFence();
+    }
+
+    private static void endWrite(ByteBuffer buf, int off) {
+        VarHandle.releaseFence();
+        buf.putInt(off + VERSION, buf.getInt(off + VERSION) + 1);
+    }
+}
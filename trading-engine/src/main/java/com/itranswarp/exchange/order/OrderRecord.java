@@ -0,0 +1,116 @@
+package com.itranswarp.exchange.order;
+
+import java.math.BigDecimal;
+
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+/**
+ * 订单的定点数快照，只有基本类型和枚举字段（不装箱、不创建BigDecimal），可被重复使用，
+ * 撮合和清算时由OrderArena.load()写入；需要落库或推送时再由输出线程调用toEntity()转换为OrderEntity
+ */
+public final class OrderRecord {
+
+    public long id;
+    public long sequenceId;
+    public SymbolEnum symbol;
+    public OrderType type;
+    public Direction direction;
+    public long userId;
+    public OrderStatus status;
+    public long priceUnits;
+    public long quantityUnits;
+    public long unfilledUnits;
+    public int priceScale;
+    public int quantityScale;
+    public long createdAt;
+    public long updatedAt;
+    public int handle = OrderArena.NULL;
+
+    /**
+     * 复制另一个快照的全部字段
+     */
+    public void copyFrom(OrderRecord r) {
+        this.id = r.id;
+        this.sequenceId = r.sequenceId;
+        this.symbol = r.symbol;
+        this.type = r.type;
+        this.direction = r.direction;
+        this.userId = r.userId;
+        this.status = r.status;
+        this.priceUnits = r.priceUnits;
+        this.quantityUnits = r.quantityUnits;
+        this.unfilledUnits = r.unfilledUnits;
+        this.priceScale = r.priceScale;
+        this.quantityScale = r.quantityScale;
+        this.createdAt = r.createdAt;
+        this.updatedAt = r.updatedAt;
+        this.handle = r.handle;
+    }
+
+    public BigDecimal price() {
+        return BigDecimal.valueOf(this.priceUnits, this.priceScale);
+    }
+
+    /**
+     * 按数量精度转换为BigDecimal
+     */
+    public BigDecimal toQuantity(long quantityUnits) {
+        return quantityUnits == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(quantityUnits, this.quantityScale);
+    }
+
+    /**
+     * 转换为新的OrderEntity
+     */
+    public OrderEntity toEntity() {
+        OrderEntity order = new OrderEntity();
+        copyTo(order);
+        return order;
+    }
+
+    /**
+     * 写入已有的OrderEntity
+     */
+    public void copyTo(OrderEntity target) {
+        target.id = this.id;
+        target.sequenceId = this.sequenceId;
+        target.userId = this.userId;
+        target.symbol = this.symbol;
+        target.type = this.type;
+        target.direction = this.direction;
+        target.price = price();
+        target.priceUnits = this.priceUnits;
+        target.quantity = toQuantity(this.quantityUnits);
+        target.quantityUnits = this.quantityUnits;
+        target.createdAt = this.createdAt;
+        target.handle = this.handle;
+        target.updateOrder(this.unfilledUnits, toQuantity(this.unfilledUnits), this.status, this.updatedAt);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof OrderRecord r) {
+            return this.id == r.id;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.id);
+    }
+
+    @Override
+    public String toString() {
+        return "OrderRecord [id=" + id + ", sequenceId=" + sequenceId + ", symbol=" + symbol + ", type=" + type
+                + ", direction=" + direction + ", userId=" + userId + ", status=" + status + ", priceUnits="
+                + priceUnits + ", quantityUnits=" + quantityUnits + ", unfilledUnits=" + unfilledUnits
+                + ", createdAt=" + createdAt + ", updatedAt=" + updatedAt + "]";
+    }
+}
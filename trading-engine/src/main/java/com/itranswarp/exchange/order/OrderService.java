@@ -1,50 +1,83 @@
 package com.itranswarp.exchange.order;
 
+import java.lang.invoke.VarHandle;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.itranswarp.exchange.assets.AssetService;
-import com.itranswarp.exchange.enums.AssetEnum;
 import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.match.MarketScale;
 import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.util.LongIntHashMap;
 
 @Component
 public class OrderService {
     // 引用AssetService:
     final AssetService assetService;
 
-    public OrderService(@Autowired AssetService assetService) {
+    // 挂单存储区，与MatchEngine共享:
+    final OrderArena arena;
+
+    public OrderService(@Autowired AssetService assetService, @Autowired OrderArena arena) {
         this.assetService = assetService;
+        this.arena = arena;
     }
 
-    // 跟踪所有活动订单map: OrderID => OrderEntity
-    final ConcurrentMap<Long, OrderEntity> activeOrders = new ConcurrentHashMap<>();
+    // 跟踪所有活动订单: OrderID => 挂单句柄
+    final LongIntHashMap activeOrders = new LongIntHashMap(1024);
+
+    // 跟踪用户活动订单: UserID => 最新挂单句柄（同一用户的挂单通过槽位中的指针串成双向链表）
+    final LongIntHashMap userOrders = new LongIntHashMap(1024);
 
-    // 跟踪用户活动订单: UserID => Map(OrderID => OrderEntity)
-    final ConcurrentMap<Long, ConcurrentMap<Long, OrderEntity>> userOrders = new ConcurrentHashMap<>();
+    // 用户挂单链表的版本号（seqlock，修改链表前后各递增一次，奇数表示正在修改），不随挂单删除: UserID => 版本号
+    final LongIntHashMap userOrderVersions = new LongIntHashMap(1024);
 
     /**
      * 创建订单，失败返回null:
+     * 限价单在OrderArena中分配槽位并登记到activeOrders/userOrders，返回的OrderEntity仅供本次撮合和输出使用；
+     * 不挂单的订单（市价/IOC/FOK）只冻结资产，不分配槽位也不登记
      */
-    public OrderEntity createOrder(long sequenceId, long ts, Long orderId, Long userId, Direction direction,
-            BigDecimal price, BigDecimal quantity) {
+    public OrderEntity createOrder(long sequenceId, long ts, Long orderId, Long userId, SymbolEnum symbol,
+            OrderType type, Direction direction, BigDecimal price, BigDecimal quantity, MarketScale scale) {
+        // 转换为撮合使用的定点数，精度超出或溢出时失败:
+        long priceUnits;
+        long quantityUnits;
+        long frozenUnits;
+        try {
+            priceUnits = scale.toPriceUnits(price);
+            quantityUnits = scale.toQuantityUnits(quantity);
+            // 冻结金额以资产余额定点数计算:
+            frozenUnits = direction == Direction.BUY ? scale.toAmountUnits(priceUnits, quantityUnits)
+                    : scale.toBaseUnits(quantityUnits);
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        if (quantityUnits <= 0 || priceUnits < 0) {
+            return null;
+        }
+        // 仅市价卖单允许price = 0（不限成交价）:
+        if (priceUnits == 0 && !(type == OrderType.MARKET && direction == Direction.SELL)) {
+            return null;
+        }
         switch (direction) {
         case BUY -> {
-            // 买入，需冻结USD：
-            if (!assetService.tryFreeze(userId, AssetEnum.USD, price.multiply(quantity))) {
+            // 买入，需冻结计价资产（如USD）：
+            if (!assetService.tryFreezeUnits(userId, symbol.quote, frozenUnits)) {
                 return null;
             }
         }
         case SELL -> {
-            // 卖出，需冻结BTC：
-            if (!assetService.tryFreeze(userId, AssetEnum.BTC, quantity)) {
+            // 卖出，需冻结基础资产（如BTC）：
+            if (!assetService.tryFreezeUnits(userId, symbol.base, frozenUnits)) {
                 return null;
             }
         }
@@ -55,63 +88,168 @@ public class OrderService {
         order.id = orderId;
         order.sequenceId = sequenceId;
         order.userId = userId;
+        order.symbol = symbol;
+        order.type = type;
         order.direction = direction;
         order.price = price;
+        order.priceUnits = priceUnits;
         order.quantity = quantity;
+        order.quantityUnits = quantityUnits;
         order.unfilledQuantity = quantity;
+        order.unfilledUnits = quantityUnits;
         order.createdAt = order.updatedAt = ts;
-        // 添加到ActiveOrders:
-        this.activeOrders.put(order.id, order);
-        // 添加到UserOrders:
-        ConcurrentMap<Long, OrderEntity> uOrders = this.userOrders.get(userId);
-        if (uOrders == null) {
-            uOrders = new ConcurrentHashMap<>();
-            this.userOrders.put(userId, uOrders);
-        }
-        uOrders.put(order.id, order);
+        if (type.rest) {
+            register(order, scale);
+        }
         return order;
     }
 
-    public ConcurrentMap<Long, OrderEntity> getActiveOrders() {
-        return this.activeOrders;
+    /**
+     * 从快照恢复活动订单（仅在启动时按sequenceId顺序调用），订单冻结的资产随资产快照恢复
+     */
+    public void restoreOrder(OrderEntity order, MarketScale scale) {
+        register(order, scale);
+    }
+
+    private void register(OrderEntity order, MarketScale scale) {
+        // 分配槽位并添加到ActiveOrders:
+        int handle = this.arena.allocate(order, scale);
+        this.activeOrders.put(order.id, handle, OrderArena.NULL);
+        // 添加到UserOrders链表头部:
+        beginUserWrite(order.userId);
+        int head = this.userOrders.put(order.userId, handle, OrderArena.NULL);
+        if (head != OrderArena.NULL) {
+            this.arena.setUserNext(handle, head);
+            this.arena.setUserPrev(head, handle);
+        }
+        endUserWrite(order.userId);
     }
 
+    public int size() {
+        return this.activeOrders.size();
+    }
+
+    /**
+     * 读取所有活动订单的快照，仅用于验证和调试
+     */
+    public Map<Long, OrderEntity> getActiveOrders() {
+        Map<Long, OrderEntity> orders = new HashMap<>(this.activeOrders.size() * 2);
+        this.activeOrders.forEach((orderId, handle) -> {
+            OrderEntity order = new OrderEntity();
+            if (this.arena.load(handle, order) && order.id.longValue() == orderId) {
+                orders.put(orderId, order);
+            }
+        });
+        return orders;
+    }
+
+    /**
+     * 读取活动订单的快照，不存在时返回null（可在任意线程调用）
+     */
     public OrderEntity getOrder(Long orderId) {
-        return this.activeOrders.get(orderId);
+        int handle = this.activeOrders.get(orderId, OrderArena.NULL);
+        if (handle == OrderArena.NULL) {
+            return null;
+        }
+        OrderEntity order = new OrderEntity();
+        // 其他线程读取时句柄可能已被复用，需校验订单ID:
+        if (!this.arena.load(handle, order) || order.id.longValue() != orderId.longValue()) {
+            return null;
+        }
+        return order;
     }
 
-    public ConcurrentMap<Long, OrderEntity> getUserOrders(Long userId) {
-        return this.userOrders.get(userId);
+    /**
+     * 读取用户所有活动订单的快照（可在任意线程调用）：
+     * 遍历前后用户挂单链表的版本号相同才返回，否则重试，定序线程从不等待读线程
+     */
+    public List<OrderEntity> getUserOrders(Long userId) {
+        for (;;) {
+            int version = this.userOrderVersions.get(userId, 0);
+            VarHandle.acquireFence();
+            if ((version & 1) == 0) {
+                List<OrderEntity> orders = loadUserOrders(userId);
+                VarHandle.loadLoadFence();
+                if (this.userOrderVersions.get(userId, 0) == version) {
+                    return orders;
+                }
+            }
+            Thread.onSpinWait();
+        }
     }
 
+    private List<OrderEntity> loadUserOrders(Long userId) {
+        int handle = this.userOrders.get(userId, OrderArena.NULL);
+        if (handle == OrderArena.NULL) {
+            return List.of();
+        }
+        List<OrderEntity> orders = new ArrayList<>();
+        // 其他线程读取时链表可能正在变化，限制遍历次数并校验用户ID，由调用方校验版本号:
+        for (int n = this.activeOrders.size(); handle != OrderArena.NULL && n >= 0; n--) {
+            OrderEntity order = new OrderEntity();
+            if (!this.arena.load(handle, order) || order.userId.longValue() != userId.longValue()) {
+                break;
+            }
+            orders.add(order);
+            handle = this.arena.userNext(handle);
+        }
+        return orders;
+    }
 
     /**
-     * 删除活动订单
-     * （必须从activeOrders和userOrders中全部成功删除，否则会造成OrderService内部状态混乱。
+     * 删除活动订单并释放槽位（订单必须已从订单簿中删除）
      * @param orderId
      */
-    public void removeOrder(Long orderId) {
+    public void removeOrder(long orderId) {
         // 从ActiveOrders中删除:
-        OrderEntity removed = this.activeOrders.remove(orderId);
-        if (removed == null) {
+        int handle = this.activeOrders.remove(orderId, OrderArena.NULL);
+        if (handle == OrderArena.NULL) {
             throw new IllegalArgumentException("Order not found by orderId in active orders: " + orderId);
         }
-        // 从UserOrders中删除:
-        ConcurrentMap<Long, OrderEntity> uOrders = userOrders.get(removed.userId);
-        if (uOrders == null) {
-            throw new IllegalArgumentException("User orders not found by userId: " + removed.userId);
+        // 从UserOrders链表中删除:
+        long userId = this.arena.userId(handle);
+        beginUserWrite(userId);
+        int prev = this.arena.userPrev(handle);
+        int next = this.arena.userNext(handle);
+        if (prev == OrderArena.NULL) {
+            if (next == OrderArena.NULL) {
+                this.userOrders.remove(userId, OrderArena.NULL);
+            } else {
+                this.userOrders.put(userId, next, OrderArena.NULL);
+            }
+        } else {
+            this.arena.setUserNext(prev, next);
         }
-        if (uOrders.remove(orderId) == null) {
-            throw new IllegalArgumentException("Order not found by orderId in user orders: " + orderId);
+        if (next != OrderArena.NULL) {
+            this.arena.setUserPrev(next, prev);
         }
+        endUserWrite(userId);
+        this.arena.free(handle);
+    }
+
+    private void beginUserWrite(long userId) {
+        this.userOrderVersions.put(userId, this.userOrderVersions.get(userId, 0) + 1, 0);
+        VarHandle.storeStoreFence();
+    }
+
+    private void endUserWrite(long userId) {
+        VarHandle.releaseFence();
+        this.userOrderVersions.put(userId, this.userOrderVersions.get(userId, 0) + 1, 0);
+    }
+
+    /**
+     * 回收已释放的槽位，调用时撮合线程必须不再持有已删除订单的句柄
+     */
+    public void reclaim() {
+        this.arena.reclaim();
     }
 
     public void debug() {
         System.out.println("---------- orders ----------");
-        List<OrderEntity> orders = new ArrayList<>(this.activeOrders.values());
+        List<OrderEntity> orders = new ArrayList<>(getActiveOrders().values());
         Collections.sort(orders);
         for (OrderEntity order : orders) {
-            System.out.println("  " + order.id + " " + order.direction + " price: " + order.price + " unfilled: "
+            System.out.println("  " + order.id + " " + order.symbol + " " + order.direction + " price: " + order.price + " unfilled: "
                     + order.unfilledQuantity + " quantity: " + order.quantity + " sequenceId: " + order.sequenceId
                     + " userId: " + order.userId);
         }
@@ -0,0 +1,330 @@
+package com.itranswarp.exchange.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.assets.Asset;
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.match.MarketScale;
+import com.itranswarp.exchange.match.MatchEngine;
+import com.itranswarp.exchange.match.MatchEngineRegistry;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderService;
+import com.itranswarp.exchange.support.LoggerSupport;
+
+/**
+ * 交易引擎状态快照：某个sequenceId时的全部资产、活动订单和各交易对的市场价。
+ *
+ * 快照在定序线程上编码（此时没有未完成的并行撮合），由后台线程写入snapshot-{sequenceId}.bin，
+ * 先写临时文件再改名，末尾为CRC32校验和。启动时从最新的有效快照恢复，只需重放之后的事件。
+ */
+@Component
+public class SnapshotService extends LoggerSupport {
+
+    static final int MAGIC = 0x57455353; // "WESS"
+    static final int VERSION = 1;
+    static final int RETAIN = 3; // 保留最近的快照数
+
+    final Path dir; // 为null时不写快照
+    final long intervalEvents;
+    final long intervalMillis;
+
+    private long lastSequenceId = 0;
+    private long lastTime = System.currentTimeMillis();
+    private ExecutorService writer;
+
+    public SnapshotService(@Value("#{exchangeConfiguration.snapshotDir}") String dir,
+            @Value("#{exchangeConfiguration.snapshotIntervalEvents}") long intervalEvents,
+            @Value("#{exchangeConfiguration.snapshotInterval}") Duration interval) {
+        this.dir = dir == null || dir.isBlank() ? null : Path.of(dir).toAbsolutePath();
+        this.intervalEvents = intervalEvents;
+        this.intervalMillis = interval.toMillis();
+    }
+
+    /**
+     * 等待正在写入的快照完成
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (this.writer != null) {
+            this.writer.shutdown();
+            this.writer.awaitTermination(1, TimeUnit.MINUTES);
+            this.writer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.dir != null;
+    }
+
+    /**
+     * 距上次快照已处理intervalEvents个事件，或已超过interval时需要写快照
+     */
+    public boolean isDue(long sequenceId) {
+        if (this.dir == null || sequenceId <= this.lastSequenceId) {
+            return false;
+        }
+        return sequenceId - this.lastSequenceId >= this.intervalEvents
+                || System.currentTimeMillis() - this.lastTime >= this.intervalMillis;
+    }
+
+    /**
+     * 在定序线程编码快照，由后台线程写入磁盘
+     */
+    public void takeSnapshot(long sequenceId, AssetService assetService, OrderService orderService,
+            MatchEngineRegistry matchEngines) {
+        long start = System.currentTimeMillis();
+        byte[] data = encode(sequenceId, assetService, orderService, matchEngines);
+        logger.info("encoded snapshot at sequence id {}: {} bytes in {} ms.", sequenceId, data.length,
+                System.currentTimeMillis() - start);
+        this.lastSequenceId = sequenceId;
+        this.lastTime = System.currentTimeMillis();
+        if (this.writer == null) {
+            this.writer = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "async-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        this.writer.submit(() -> {
+            try {
+                write(sequenceId, data);
+            } catch (IOException e) {
+                logger.error("write snapshot failed at sequence id " + sequenceId, e);
+            }
+        });
+    }
+
+    /**
+     * 从最新的有效快照恢复状态，返回快照的sequenceId，没有快照时返回0
+     */
+    public long restoreLatest(AssetService assetService, OrderService orderService,
+            MatchEngineRegistry matchEngines) {
+        if (this.dir == null) {
+            return 0;
+        }
+        for (Path file : listSnapshots()) {
+            byte[] data;
+            try {
+                data = Files.readAllBytes(file);
+                verify(data);
+            } catch (IOException e) {
+                logger.warn("skip invalid snapshot {}: {}", file, e.getMessage());
+                continue;
+            }
+            long sequenceId = decode(data, assetService, orderService, matchEngines);
+            logger.info("restored snapshot {} at sequence id {}.", file, sequenceId);
+            this.lastSequenceId = sequenceId;
+            return sequenceId;
+        }
+        return 0;
+    }
+
+    /**
+     * 编码：资产、按sequenceId排序的活动订单（即订单簿中同一价格的时间顺序）、各交易对状态，末尾为CRC32
+     */
+    public byte[] encode(long sequenceId, AssetService assetService, OrderService orderService,
+            MatchEngineRegistry matchEngines) {
+        var bytes = new ByteArrayOutputStream(1024 * 1024);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequenceId);
+            out.writeLong(System.currentTimeMillis());
+            // 交易对:
+            List<MatchEngine> engines = new ArrayList<>(matchEngines.getEngines());
+            out.writeInt(engines.size());
+            for (MatchEngine engine : engines) {
+                out.writeUTF(engine.symbol.name());
+                out.writeLong(engine.getSequenceId());
+                out.writeLong(engine.marketPriceUnits);
+            }
+            // 资产:
+            Map<Long, Map<AssetEnum, Asset>> userAssets = assetService.getUserAssets();
+            int count = 0;
+            for (Map<AssetEnum, Asset> assets : userAssets.values()) {
+                count += assets.size();
+            }
+            out.writeInt(count);
+            for (var userEntry : userAssets.entrySet()) {
+                for (var entry : userEntry.getValue().entrySet()) {
+                    out.writeLong(userEntry.getKey());
+                    out.writeUTF(entry.getKey().name());
+                    writeDecimal(out, entry.getValue().getAvailable());
+                    writeDecimal(out, entry.getValue().getFrozen());
+                }
+            }
+            // 活动订单:
+            List<OrderEntity> orders = new ArrayList<>(orderService.getActiveOrders().values());
+            orders.sort(Comparator.comparingLong(o -> o.sequenceId));
+            out.writeInt(orders.size());
+            for (OrderEntity order : orders) {
+                out.writeLong(order.id);
+                out.writeLong(order.sequenceId);
+                out.writeLong(order.userId);
+                out.writeUTF(order.symbol.name());
+                out.writeUTF(order.type.name());
+                out.writeUTF(order.direction.name());
+                out.writeUTF(order.status.name());
+                out.writeLong(order.priceUnits);
+                out.writeLong(order.quantityUnits);
+                out.writeLong(order.unfilledUnits);
+                out.writeLong(order.createdAt);
+                out.writeLong(order.updatedAt);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        byte[] data = Arrays.copyOf(bytes.toByteArray(), bytes.size() + Long.BYTES);
+        ByteBuffer.wrap(data, bytes.size(), Long.BYTES).putLong(crc.getValue());
+        return data;
+    }
+
+    /**
+     * 解码并恢复状态（服务必须为空），返回快照的sequenceId
+     */
+    public long decode(byte[] data, AssetService assetService, OrderService orderService,
+            MatchEngineRegistry matchEngines) {
+        try (var in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - Long.BYTES))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot format.");
+            }
+            long sequenceId = in.readLong();
+            in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                MatchEngine engine = matchEngines.get(SymbolEnum.valueOf(in.readUTF()));
+                engine.restore(in.readLong(), in.readLong());
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                assetService.restoreAsset(in.readLong(), AssetEnum.valueOf(in.readUTF()), readDecimal(in),
+                        readDecimal(in));
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                OrderEntity order = new OrderEntity();
+                order.id = in.readLong();
+                order.sequenceId = in.readLong();
+                order.userId = in.readLong();
+                order.symbol = SymbolEnum.valueOf(in.readUTF());
+                order.type = OrderType.valueOf(in.readUTF());
+                order.direction = Direction.valueOf(in.readUTF());
+                order.status = OrderStatus.valueOf(in.readUTF());
+                MatchEngine engine = matchEngines.get(order.symbol);
+                MarketScale scale = engine.scale;
+                order.priceUnits = in.readLong();
+                order.price = scale.toPrice(order.priceUnits);
+                order.quantityUnits = in.readLong();
+                order.quantity = scale.toQuantity(order.quantityUnits);
+                order.unfilledUnits = in.readLong();
+                order.unfilledQuantity = scale.toQuantity(order.unfilledUnits);
+                order.createdAt = in.readLong();
+                order.updatedAt = in.readLong();
+                orderService.restoreOrder(order, scale);
+                engine.restoreOrder(order);
+            }
+            return sequenceId;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void write(long sequenceId, byte[] data) throws IOException {
+        Files.createDirectories(this.dir);
+        Path file = this.dir.resolve(String.format("snapshot-%020d.bin", sequenceId));
+        Path tmp = this.dir.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        logger.info("saved snapshot {}.", file);
+        // 删除较旧的快照:
+        List<Path> files = listSnapshots();
+        for (int i = RETAIN; i < files.size(); i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * 快照文件，最新的在前
+     */
+    public List<Path> listSnapshots() {
+        if (!Files.isDirectory(this.dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(this.dir)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith("snapshot-") && name.endsWith(".bin");
+            }).sorted(Comparator.reverseOrder()).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void verify(byte[] data) throws IOException {
+        if (data.length < Long.BYTES * 2) {
+            throw new IOException("Snapshot too short.");
+        }
+        var crc = new CRC32();
+        crc.update(data, 0, data.length - Long.BYTES);
+        if (ByteBuffer.wrap(data, data.length - Long.BYTES, Long.BYTES).getLong() != crc.getValue()) {
+            throw new IOException("Snapshot checksum mismatch.");
+        }
+    }
+
+    static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(value.scale());
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+    }
+
+    static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int scale = in.readInt();
+        byte[] unscaled = new byte[in.readShort()];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
@@ -0,0 +1,154 @@
+package com.itranswarp.exchange.standby;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.itranswarp.exchange.support.LoggerSupport;
+import com.itranswarp.exchange.util.IpUtil;
+
+/**
+ * 主交易引擎的租约：持有锁文件的排他锁即为主引擎。
+ *
+ * 主引擎进程退出（包括panic和崩溃）时操作系统释放锁，备用引擎轮询到锁可用后立即接管输出。
+ * 锁文件只在同一主机上有效，主备引擎必须使用各自的快照和事件日志目录，持有者将自己的目录写入锁文件供备用引擎检查。
+ */
+@Component
+public class EngineLease extends LoggerSupport {
+
+    final Path lockFile; // 为null时不启用主备
+    final long checkIntervalMillis;
+    final List<Path> dataDirs; // 本实例的快照和事件日志目录
+
+    private FileChannel channel;
+    private FileLock lock;
+    private Thread watcher;
+
+    public EngineLease(@Value("#{exchangeConfiguration.engineLockFile}") String lockFile,
+            @Value("#{exchangeConfiguration.standbyCheckInterval}") Duration checkInterval,
+            @Value("#{exchangeConfiguration.snapshotDir}") String snapshotDir,
+            @Value("#{exchangeConfiguration.journalDir}") String journalDir) {
+        this.lockFile = lockFile == null || lockFile.isBlank() ? null : Path.of(lockFile).toAbsolutePath();
+        this.checkIntervalMillis = Math.max(10, checkInterval.toMillis());
+        this.dataDirs = Stream.of(snapshotDir, journalDir).filter(dir -> dir != null && !dir.isBlank())
+                .map(dir -> Path.of(dir).toAbsolutePath().normalize()).toList();
+    }
+
+    public boolean isEnabled() {
+        return this.lockFile != null;
+    }
+
+    public synchronized boolean isHeld() {
+        return this.lock != null && this.lock.isValid();
+    }
+
+    /**
+     * 尝试获得租约，成功时在锁文件中写入持有者及其快照和事件日志目录
+     */
+    public synchronized boolean tryAcquire() throws IOException {
+        if (isHeld()) {
+            return true;
+        }
+        if (this.channel == null) {
+            Path dir = this.lockFile.getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            this.channel = FileChannel.open(this.lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+        try {
+            this.lock = this.channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // 同一进程内的其他实例持有锁:
+            this.lock = null;
+        }
+        if (this.lock == null) {
+            return false;
+        }
+        StringBuilder owner = new StringBuilder(IpUtil.getHostId()).append('/').append(ProcessHandle.current().pid())
+                .append('\n');
+        this.dataDirs.forEach(dir -> owner.append(dir).append('\n'));
+        this.channel.truncate(0);
+        this.channel.write(ByteBuffer.wrap(owner.toString().getBytes(StandardCharsets.UTF_8)), 0);
+        this.channel.force(false);
+        logger.info("acquired engine lease {}.", this.lockFile);
+        return true;
+    }
+
+    /**
+     * 检查同一主机上的租约持有者是否与本实例共用快照或事件日志目录（共用时备用引擎会覆盖主引擎的文件）
+     */
+    public void checkDataDirs() throws IOException {
+        List<String> lines = Files.readAllLines(this.lockFile, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).startsWith(IpUtil.getHostId() + "/")) {
+            return;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            Path holderDir = Path.of(line);
+            for (Path dir : this.dataDirs) {
+                if (dir.startsWith(holderDir) || holderDir.startsWith(dir)) {
+                    throw new IllegalStateException("Directory " + dir + " is shared with engine lease holder "
+                            + lines.get(0) + ", standby engine must use its own snapshot-dir and journal-dir.");
+                }
+            }
+        }
+    }
+
+    /**
+     * 后台轮询直到获得租约，然后调用onAcquired
+     */
+    public synchronized void awaitAcquire(Runnable onAcquired) {
+        if (this.watcher != null) {
+            throw new IllegalStateException("Already waiting for engine lease.");
+        }
+        this.watcher = new Thread(() -> {
+            try {
+                while (!tryAcquire()) {
+                    Thread.sleep(this.checkIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                logger.error("check engine lease failed.", e);
+                return;
+            }
+            onAcquired.run();
+        }, "engine-lease");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    @PreDestroy
+    public synchronized void release() throws IOException {
+        if (this.watcher != null) {
+            this.watcher.interrupt();
+            this.watcher = null;
+        }
+        if (this.lock != null) {
+            this.lock.release();
+            this.lock = null;
+        }
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.itranswarp.exchange.store;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.support.LoggerSupport;
+
+/**
+ * 按sequenceId顺序读取事件的流：后台线程按sequenceId分页查询并反序列化，通过有界队列交给处理线程，
+ * 因此读取和处理可以重叠，内存占用只取决于页大小和队列容量
+ */
+public class EventStream extends LoggerSupport implements AutoCloseable {
+
+    /**
+     * 分页读取sequenceId > afterSequenceId的事件，最多limit个，返回读取的事件数
+     */
+    @FunctionalInterface
+    public interface PageLoader {
+        int load(long afterSequenceId, int limit, Consumer<AbstractEvent> consumer);
+    }
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private final Thread loader;
+    private volatile boolean closed = false;
+    private boolean finished = false;
+
+    public EventStream(PageLoader pageLoader, long afterSequenceId, int pageSize, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.loader = new Thread(() -> load(pageLoader, afterSequenceId, pageSize), "event-stream");
+        this.loader.setDaemon(true);
+        this.loader.start();
+    }
+
+    /**
+     * 返回下一个事件，没有更多事件时返回null，读取失败时抛出异常
+     */
+    public AbstractEvent next() {
+        if (this.finished) {
+            return null;
+        }
+        Object item;
+        try {
+            item = this.queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (item == END) {
+            this.finished = true;
+            return null;
+        }
+        if (item instanceof Exception e) {
+            this.finished = true;
+            throw new RuntimeException("Load events failed.", e);
+        }
+        return (AbstractEvent) item;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.loader.interrupt();
+    }
+
+    private void load(PageLoader pageLoader, long afterSequenceId, int pageSize) {
+        long[] last = { afterSequenceId };
+        try {
+            for (;;) {
+                int n = pageLoader.load(last[0], pageSize, event -> {
+                    put(event);
+                    last[0] = event.sequenceId;
+                });
+                if (n < pageSize) {
+                    break;
+                }
+            }
+            put(END);
+        } catch (StreamClosedException e) {
+            // 处理线程已关闭流
+        } catch (Exception e) {
+            if (!this.closed) {
+                logger.warn("load events after {} failed.", last[0]);
+                try {
+                    put(e);
+                } catch (StreamClosedException ignore) {
+                }
+            }
+        }
+    }
+
+    private void put(Object item) {
+        try {
+            while (!this.queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (this.closed) {
+                    throw new StreamClosedException();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new StreamClosedException();
+        }
+    }
+
+    static class StreamClosedException extends RuntimeException {
+    }
+}
@@ -1,9 +1,13 @@
 package com.itranswarp.exchange.store;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -11,6 +15,7 @@ import com.itranswarp.exchange.db.DbTemplate;
 import com.itranswarp.exchange.message.event.AbstractEvent;
 import com.itranswarp.exchange.messaging.MessageTypes;
 import com.itranswarp.exchange.model.support.EntitySupport;
+import com.itranswarp.exchange.model.trade.BalanceEntity;
 import com.itranswarp.exchange.model.trade.EventEntity;
 import com.itranswarp.exchange.support.LoggerSupport;
 
@@ -25,14 +30,59 @@ public class StoreService extends LoggerSupport {
     @Autowired
     DbTemplate dbTemplate;
 
-    public List<AbstractEvent> loadEventsFromDb(long lastEventId) {
-        List<EventEntity> events = this.dbTemplate.from(EventEntity.class).where("sequenceId > ?", lastEventId)
-                .orderBy("sequenceId").limit(100000).list();
-        return events.stream().map(event -> (AbstractEvent) messageTypes.deserialize(event.data))
-                .collect(Collectors.toList());
+    static final int PAGE_SIZE = 1000;
+    static final int STREAM_CAPACITY = 4096;
+
+    /**
+     * 以流的方式读取sequenceId > lastEventId的全部事件，由后台线程按sequenceId分页查询并反序列化
+     */
+    public EventStream streamEventsFromDb(long lastEventId) {
+        return new EventStream(this::loadEvents, lastEventId, PAGE_SIZE, STREAM_CAPACITY);
+    }
+
+    /**
+     * 按sequenceId分页读取sequenceId > afterSequenceId的事件（逐行读取，不缓存整页的EventEntity）
+     */
+    public int loadEvents(long afterSequenceId, int limit, Consumer<AbstractEvent> consumer) {
+        String sql = "SELECT data FROM " + this.dbTemplate.getTable(EventEntity.class)
+                + " WHERE sequenceId > ? ORDER BY sequenceId LIMIT ?";
+        int[] count = { 0 };
+        this.dbTemplate.getJdbcTemplate().query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(limit);
+            ps.setLong(1, afterSequenceId);
+            ps.setInt(2, limit);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            consumer.accept((AbstractEvent) this.messageTypes.deserialize(rs.getString(1)));
+            count[0]++;
+        });
+        return count[0];
     }
 
     public void insertIgnore(List<? extends EntitySupport> list) {
         dbTemplate.insertIgnore(list);
     }
+
+    /**
+     * 在一个事务中按userId和asset批量插入或更新余额，每批最多PAGE_SIZE行
+     */
+    public void upsertBalances(List<BalanceEntity> balances) {
+        String sql = "INSERT INTO " + this.dbTemplate.getTable(BalanceEntity.class)
+                + " (userId, asset, available, frozen, sequenceId, updatedAt) VALUES (?, ?, ?, ?, ?, ?)"
+                // 只用更新的检查点覆盖（重试或重放较旧的检查点时不回退），sequenceId最后更新:
+                + " ON DUPLICATE KEY UPDATE available = IF(VALUES(sequenceId) >= sequenceId, VALUES(available), available),"
+                + " frozen = IF(VALUES(sequenceId) >= sequenceId, VALUES(frozen), frozen),"
+                + " updatedAt = IF(VALUES(sequenceId) >= sequenceId, VALUES(updatedAt), updatedAt),"
+                + " sequenceId = GREATEST(sequenceId, VALUES(sequenceId))";
+        for (int start = 0; start < balances.size(); start += PAGE_SIZE) {
+            List<Object[]> args = new ArrayList<>(PAGE_SIZE);
+            for (BalanceEntity balance : balances.subList(start, Math.min(balances.size(), start + PAGE_SIZE))) {
+                args.add(new Object[] { balance.userId, balance.asset.name(), balance.available, balance.frozen,
+                        balance.sequenceId, balance.updatedAt });
+            }
+            this.dbTemplate.getJdbcTemplate().batchUpdate(sql, args);
+        }
+    }
 }
@@ -1,9 +1,7 @@
 package com.itranswarp.exchange.web.api;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -30,24 +28,14 @@ public class InternalTradingEngineApiController extends LoggerSupport {
 
     @GetMapping("/{userId}/assets")
     public Map<AssetEnum, Asset> getAssets(@PathVariable("userId") Long userId) {
+        // 按用户版本号读取的余额副本，不阻塞定序线程:
         return assetService.getAssets(userId);
     }
 
     @GetMapping("/{userId}/orders")
     public List<OrderEntity> getOrders(@PathVariable("userId") Long userId) {
-        ConcurrentMap<Long, OrderEntity> orders = orderService.getUserOrders(userId);
-        if (orders == null || orders.isEmpty()) {
-            return List.of();
-        }
-        List<OrderEntity> list = new ArrayList<>(orders.size());
-        for (OrderEntity order : orders.values()) {
-            OrderEntity copy = null;
-            while (copy == null) {
-                copy = order.copy();
-            }
-            list.add(copy);
-        }
-        return list;
+        // OrderService返回的是按用户挂单链表版本号校验过的快照，每个订单按槽位版本号读取:
+        return orderService.getUserOrders(userId);
     }
 
     @GetMapping("/{userId}/orders/{orderId}")
@@ -56,6 +44,6 @@ public class InternalTradingEngineApiController extends LoggerSupport {
         if (order == null || order.userId.longValue() != userId.longValue()) {
             return null;
         }
-        return order.copy();
+        return order;
     }
 }
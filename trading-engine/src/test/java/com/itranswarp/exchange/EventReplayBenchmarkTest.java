@@ -0,0 +1,86 @@
+package com.itranswarp.exchange;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.messaging.MessageTypes;
+import com.itranswarp.exchange.model.trade.EventEntity;
+
+public class EventReplayBenchmarkTest {
+
+    static final Long[] USERS = { 11111L, 22222L, 33333L };
+
+    @Test
+    void replayExportedEvents(@TempDir Path dir) throws IOException {
+        List<AbstractEvent> events = randomEvents();
+        Path file = dir.resolve("events.jsonl");
+        EventReplayBenchmark.writeFile(file, toEntities(events));
+
+        var benchmark = new EventReplayBenchmark();
+        benchmark.parseArgs(new String[] { "--batch", "7", file.toString() });
+        List<AbstractEvent> loaded = EventReplayBenchmark.toEvents(benchmark.loadFromFile());
+        assertEquals(events.size(), loaded.size());
+        var result = benchmark.replay(loaded);
+        assertEquals(events.size(), result.events());
+        assertTrue(result.outputs() > 0);
+        assertTrue(result.percentile(50) <= result.percentile(99.99));
+
+        // 与直接处理事件的结果一致:
+        var engine = new EventReplayBenchmark().createTradingEngine();
+        engine.processMessages(events);
+        engine.validate();
+        assertEquals(engine.orderService.size(), result.activeOrders());
+    }
+
+    @Test
+    void rejectLostEvents() {
+        List<EventEntity> entities = toEntities(randomEvents());
+        entities.remove(10);
+        assertThrows(IllegalArgumentException.class, () -> EventReplayBenchmark.toEvents(entities));
+    }
+
+    List<AbstractEvent> randomEvents() {
+        var factory = new TradingEngineServiceTest();
+        var r = new Random(123456789);
+        List<AbstractEvent> events = new ArrayList<>();
+        for (Long user : USERS) {
+            events.add(factory.depositEvent(user, AssetEnum.USD, BigDecimal.valueOf(1000000)));
+            events.add(factory.depositEvent(user, AssetEnum.BTC, BigDecimal.valueOf(100)));
+        }
+        for (int i = 0; i < 200; i++) {
+            Long user = USERS[r.nextInt(USERS.length)];
+            Direction direction = r.nextBoolean() ? Direction.BUY : Direction.SELL;
+            events.add(factory.orderRequestEvent(user, direction, BigDecimal.valueOf(2000 + r.nextInt(100)),
+                    BigDecimal.valueOf(1 + r.nextInt(5))));
+        }
+        events.add(factory.orderCancelAllEvent(USERS[0], null));
+        return events;
+    }
+
+    List<EventEntity> toEntities(List<AbstractEvent> events) {
+        var messageTypes = new MessageTypes();
+        messageTypes.init();
+        List<EventEntity> entities = new ArrayList<>();
+        for (AbstractEvent event : events) {
+            var entity = new EventEntity();
+            entity.sequenceId = event.sequenceId;
+            entity.previousId = event.previousId;
+            entity.data = messageTypes.serialize(event);
+            entity.createdAt = event.createdAt;
+            entities.add(entity);
+        }
+        return entities;
+    }
+}
@@ -1,25 +1,70 @@
 package com.itranswarp.exchange;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
 
+import ch.qos.logback.classic.Level;
+
+import com.itranswarp.exchange.assets.Asset;
 import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.assets.Transfer;
 import com.itranswarp.exchange.clearing.ClearingService;
 import com.itranswarp.exchange.enums.AssetEnum;
 import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
 import com.itranswarp.exchange.enums.UserType;
-import com.itranswarp.exchange.match.MatchEngine;
+import com.itranswarp.exchange.invariant.InvariantChecker;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.match.MarketScale;
+import com.itranswarp.exchange.match.MatchEngineRegistry;
+import com.itranswarp.exchange.match.OrderBook;
+import com.itranswarp.exchange.message.NotificationMessage;
 import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.message.event.BatchTransferEvent;
+import com.itranswarp.exchange.message.event.OrderCancelAllEvent;
 import com.itranswarp.exchange.message.event.OrderCancelEvent;
 import com.itranswarp.exchange.message.event.OrderRequestEvent;
 import com.itranswarp.exchange.message.event.TransferEvent;
+import com.itranswarp.exchange.model.support.EntitySupport;
+import com.itranswarp.exchange.model.trade.BalanceEntity;
+import com.itranswarp.exchange.model.trade.MatchDetailEntity;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderArena;
 import com.itranswarp.exchange.order.OrderService;
+import com.itranswarp.exchange.redis.RedisCache;
+import com.itranswarp.exchange.redis.RedisConfiguration;
+import com.itranswarp.exchange.redis.RedisService;
+import com.itranswarp.exchange.snapshot.SnapshotService;
+import com.itranswarp.exchange.store.StoreService;
+import com.itranswarp.exchange.util.JsonUtil;
 
 public class TradingEngineServiceTest {
 
@@ -94,7 +139,573 @@ public class TradingEngineServiceTest {
             engine.validate();
         }
 
-        assertEquals("35216.4", engine.matchEngine.marketPrice.stripTrailingZeros().toPlainString());
+        assertEquals("35216.4", engine.matchEngines.get(SymbolEnum.BTC_USD).marketPrice.stripTrailingZeros().toPlainString());
+    }
+
+    @Test
+    public void testNonRestingOrders() {
+        var engine = createTradingEngine();
+        engine.processEvent(depositEvent(USER_A, AssetEnum.USD, bd("10000")));
+        engine.processEvent(depositEvent(USER_B, AssetEnum.BTC, bd("3")));
+        engine.processEvent(orderRequestEvent(USER_B, Direction.SELL, bd("2000"), bd("1")));
+        engine.processEvent(orderRequestEvent(USER_B, Direction.SELL, bd("2100"), bd("1")));
+
+        // IOC买单部分成交，剩余冻结全部退回，不产生活动订单:
+        var ioc = orderRequestEvent(USER_A, Direction.BUY, bd("2050"), bd("1.5"));
+        ioc.type = OrderType.IOC;
+        engine.processEvent(ioc);
+        engine.validate();
+        assertEquals(1, engine.orderService.getActiveOrders().size());
+        assertEquals(0, engine.assetService.getAsset(USER_A, AssetEnum.USD).getFrozen().signum());
+        assertEquals(0, bd("8000").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+
+        // FOK数量不足，全部取消:
+        var fok = orderRequestEvent(USER_A, Direction.BUY, bd("2100"), bd("1.5"));
+        fok.type = OrderType.FOK;
+        engine.processEvent(fok);
+        engine.validate();
+        assertEquals(1, engine.orderService.getActiveOrders().size());
+        assertEquals(0, bd("8000").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+
+        // 市价卖单不限价格:
+        engine.processEvent(orderRequestEvent(USER_A, Direction.BUY, bd("1900"), bd("2")));
+        var market = orderRequestEvent(USER_B, Direction.SELL, BigDecimal.ZERO, bd("0.5"));
+        market.type = OrderType.MARKET;
+        engine.processEvent(market);
+        engine.validate();
+        assertEquals(0, bd("2950").compareTo(engine.assetService.getAsset(USER_B, AssetEnum.USD).getAvailable()));
+    }
+
+    @Test
+    public void testCancelAllOrders() {
+        var engine = createTradingEngine();
+        engine.processEvent(depositEvent(USER_A, AssetEnum.USD, bd("100000")));
+        engine.processEvent(depositEvent(USER_A, AssetEnum.ETH, bd("10")));
+        engine.processEvent(depositEvent(USER_B, AssetEnum.BTC, bd("10")));
+        engine.processEvent(orderRequestEvent(USER_A, Direction.BUY, bd("2000"), bd("1")));
+        engine.processEvent(orderRequestEvent(USER_A, Direction.BUY, bd("2010"), bd("2")));
+        var eth = orderRequestEvent(USER_A, Direction.SELL, bd("1600"), bd("3"));
+        eth.symbol = SymbolEnum.ETH_USD;
+        engine.processEvent(eth);
+        engine.processEvent(orderRequestEvent(USER_B, Direction.SELL, bd("2100"), bd("1")));
+        // 部分成交后剩余0.5:
+        engine.processEvent(orderRequestEvent(USER_B, Direction.SELL, bd("2010"), bd("1.5")));
+        engine.validate();
+        assertEquals(4, engine.orderService.size());
+
+        // 只撤销BTC_USD的挂单:
+        engine.processEvent(orderCancelAllEvent(USER_A, SymbolEnum.BTC_USD));
+        engine.validate();
+        assertEquals(2, engine.orderService.size());
+        assertEquals(1, engine.orderService.getUserOrders(USER_A).size());
+        assertEquals(0, engine.matchEngines.get(SymbolEnum.BTC_USD).buyBook.size());
+        assertEquals(0, engine.assetService.getAsset(USER_A, AssetEnum.USD).getFrozen().signum());
+        assertEquals(0, bd("96985").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+
+        // 撤销全部挂单:
+        engine.processEvent(orderCancelAllEvent(USER_A, null));
+        engine.validate();
+        assertEquals(1, engine.orderService.size());
+        assertEquals(0, engine.orderService.getUserOrders(USER_A).size());
+        assertEquals(0, bd("10").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.ETH).getAvailable()));
+
+        // 没有挂单时不影响其他用户:
+        engine.processEvent(orderCancelAllEvent(USER_A, null));
+        engine.validate();
+        assertEquals(1, engine.orderService.getUserOrders(USER_B).size());
+    }
+
+    @Test
+    public void testParallelMatching() {
+        // 同一组事件分别串行和并行处理，结果必须一致:
+        var serial = createTradingEngine(false);
+        var parallel = createTradingEngine(true);
+        var r = new Random(20220222);
+        List<AbstractEvent> events = new ArrayList<>();
+        for (Long user : USERS) {
+            events.add(depositEvent(user, AssetEnum.USD, random(r, 100_000, 200_000)));
+            events.add(depositEvent(user, AssetEnum.BTC, random(r, 10, 20)));
+            events.add(depositEvent(user, AssetEnum.ETH, random(r, 100, 200)));
+        }
+        List<OrderRequestEvent> orders = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Long user = USERS[r.nextInt(USERS.length)];
+            int op = r.nextInt(20);
+            if (op < 16 || orders.isEmpty()) {
+                SymbolEnum symbol = SymbolEnum.values()[r.nextInt(SymbolEnum.values().length)];
+                Direction direction = r.nextBoolean() ? Direction.BUY : Direction.SELL;
+                BigDecimal price = symbol == SymbolEnum.BTC_USD ? random(r, 20000, 21000) : random(r, 1500, 1600);
+                OrderRequestEvent event = orderRequestEvent(user, direction, price, random(r, 1, 5));
+                event.symbol = symbol;
+                event.type = r.nextInt(4) == 0 ? (r.nextBoolean() ? OrderType.IOC : OrderType.FOK) : OrderType.LIMIT;
+                events.add(event);
+                orders.add(event);
+            } else if (op < 18) {
+                OrderRequestEvent ref = orders.get(r.nextInt(orders.size()));
+                events.add(orderCancelEvent(ref.userId, ref.sequenceId * 10000 + 202202));
+            } else if (op < 19) {
+                SymbolEnum symbol = r.nextBoolean() ? null : SymbolEnum.values()[r.nextInt(SymbolEnum.values().length)];
+                events.add(orderCancelAllEvent(user, symbol));
+            } else {
+                AssetEnum asset = AssetEnum.values()[r.nextInt(AssetEnum.values().length)];
+                events.add(transferEvent(user, USERS[r.nextInt(USERS.length)], asset, random(r, 1, 100)));
+            }
+        }
+        // 按随机大小分批处理:
+        for (int start = 0; start < events.size();) {
+            int end = Math.min(events.size(), start + 1 + r.nextInt(50));
+            serial.processMessages(events.subList(start, end));
+            parallel.processMessages(events.subList(start, end));
+            start = end;
+        }
+        serial.validate();
+        parallel.validate();
+        assertSameState(serial, parallel);
+        parallel.matchEngines.shutdown();
+    }
+
+    @Test
+    public void testSnapshotRecovery(@TempDir Path dir) throws Exception {
+        var r = new Random(20221016);
+        List<AbstractEvent> events = new ArrayList<>();
+        for (Long user : USERS) {
+            events.add(depositEvent(user, AssetEnum.USD, random(r, 100_000, 200_000)));
+            events.add(depositEvent(user, AssetEnum.BTC, random(r, 10, 20)));
+            events.add(depositEvent(user, AssetEnum.ETH, random(r, 100, 200)));
+        }
+        for (int i = 0; i < 2000; i++) {
+            Long user = USERS[r.nextInt(USERS.length)];
+            if (r.nextInt(20) == 0) {
+                events.add(orderCancelAllEvent(user, null));
+            } else {
+                SymbolEnum symbol = SymbolEnum.values()[r.nextInt(SymbolEnum.values().length)];
+                Direction direction = r.nextBoolean() ? Direction.BUY : Direction.SELL;
+                BigDecimal price = symbol == SymbolEnum.BTC_USD ? random(r, 20000, 21000) : random(r, 1500, 1600);
+                OrderRequestEvent event = orderRequestEvent(user, direction, price, random(r, 1, 5));
+                event.symbol = symbol;
+                events.add(event);
+            }
+        }
+        // 处理事件期间每300个事件写一次快照:
+        var engine = createTradingEngine();
+        engine.snapshotService = new SnapshotService(dir.toString(), 300, Duration.ofHours(1));
+        for (int start = 0; start < events.size();) {
+            int end = Math.min(events.size(), start + 1 + r.nextInt(50));
+            engine.processMessages(events.subList(start, end));
+            start = end;
+        }
+        engine.snapshotService.shutdown();
+        List<Path> files = engine.snapshotService.listSnapshots();
+        assertEquals(3, files.size());
+        // 损坏最新的快照，恢复时应跳过:
+        Files.write(files.get(0), new byte[] { 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        // 从快照恢复并重放之后的事件:
+        var recovered = createTradingEngine();
+        recovered.snapshotService = new SnapshotService(dir.toString(), 300, Duration.ofHours(1));
+        recovered.storeService = new StoreService() {
+            @Override
+            public int loadEvents(long afterSequenceId, int limit, Consumer<AbstractEvent> consumer) {
+                List<AbstractEvent> page = events.stream().filter(e -> e.sequenceId > afterSequenceId).limit(limit)
+                        .toList();
+                page.forEach(consumer);
+                return page.size();
+            }
+        };
+        recovered.recover();
+        recovered.validate();
+        assertSameState(engine, recovered);
+        for (SymbolEnum symbol : SymbolEnum.values()) {
+            assertEquals(JsonUtil.writeJson(engine.matchEngines.get(symbol).getOrderBook()),
+                    JsonUtil.writeJson(recovered.matchEngines.get(symbol).getOrderBook()));
+        }
+        for (Long user : USERS) {
+            assertEquals(engine.orderService.getUserOrders(user).stream().map(o -> o.id).toList(),
+                    recovered.orderService.getUserOrders(user).stream().map(o -> o.id).toList());
+        }
+    }
+
+    @Test
+    public void testGapRecovery() {
+        List<AbstractEvent> events = new ArrayList<>();
+        for (Long user : USERS) {
+            events.add(depositEvent(user, AssetEnum.USD, BigDecimal.valueOf(1000000)));
+            events.add(depositEvent(user, AssetEnum.BTC, BigDecimal.valueOf(1000)));
+            events.add(depositEvent(user, AssetEnum.ETH, BigDecimal.valueOf(1000)));
+        }
+        var r = new Random(20221017);
+        for (int i = 0; i < 5000; i++) {
+            Direction direction = r.nextBoolean() ? Direction.BUY : Direction.SELL;
+            events.add(orderRequestEvent(USERS[r.nextInt(USERS.length)], direction, random(r, 2000, 2100),
+                    random(r, 1, 5)));
+        }
+        var expected = createTradingEngine();
+        expected.processMessages(events);
+
+        // 只收到前10个和最后一个事件，其余从数据库分页补齐:
+        var engine = createTradingEngine();
+        engine.storeService = new StoreService() {
+            @Override
+            public int loadEvents(long afterSequenceId, int limit, Consumer<AbstractEvent> consumer) {
+                List<AbstractEvent> page = events.stream().filter(e -> e.sequenceId > afterSequenceId).limit(limit)
+                        .toList();
+                page.forEach(consumer);
+                return page.size();
+            }
+        };
+        engine.processMessages(events.subList(0, 10));
+        engine.processMessages(events.subList(events.size() - 1, events.size()));
+        assertFalse(engine.fatalError);
+        engine.validate();
+        assertSameState(expected, engine);
+    }
+
+    @Test
+    public void testDbWritesRetriedIndependently() throws InterruptedException {
+        var engine = createTradingEngine();
+        List<Object> written = new ArrayList<>();
+        int[] matchFailures = { 2 };
+        engine.storeService = new StoreService() {
+            @Override
+            public void insertIgnore(List<? extends EntitySupport> list) {
+                // 成交明细前两次写入失败:
+                if (list.get(0) instanceof MatchDetailEntity && matchFailures[0]-- > 0) {
+                    throw new IllegalStateException("database unavailable");
+                }
+                written.addAll(list);
+            }
+
+            @Override
+            public void upsertBalances(List<BalanceEntity> balances) {
+                written.addAll(balances);
+            }
+        };
+        var output = new EngineOutput();
+        var match = new MatchDetailEntity();
+        var order = new OrderEntity();
+        var balance = new BalanceEntity();
+        output.matchDetails.add(match);
+        output.orders.add(order);
+        output.balances.add(balance);
+        engine.onDbOutput(output, 0, true);
+        // 订单和余额不受成交明细写入失败影响，成交明细重试成功后才返回:
+        assertEquals(List.of(order, balance, match), written);
+        assertEquals(-1, matchFailures[0]);
+    }
+
+    @Test
+    public void testRedisPublishRetried() throws InterruptedException {
+        var engine = createTradingEngine();
+        List<String> published = new ArrayList<>();
+        int[] failures = { 2 };
+        var config = new RedisConfiguration();
+        config.setHost("localhost");
+        config.setPassword("");
+        engine.redisService = new RedisService(config) {
+            @Override
+            public void publishAll(String topic, List<String> messages) {
+                // 前两次推送失败:
+                if (failures[0]-- > 0) {
+                    throw new RuntimeException("redis unavailable");
+                }
+                published.addAll(messages);
+            }
+        };
+        try {
+            engine.publishRedis(RedisCache.Topic.NOTIFICATION, List.of("a", "b"));
+            assertEquals(List.of("a", "b"), published);
+            assertEquals(-1, failures[0]);
+            // 停止输出线程时不再重试:
+            failures[0] = Integer.MAX_VALUE;
+            engine.stopping = true;
+            assertThrows(IllegalStateException.class,
+                    () -> engine.publishRedis(RedisCache.Topic.NOTIFICATION, List.of("c")));
+        } finally {
+            engine.redisService.shutdown();
+        }
+    }
+
+    @Test
+    public void testPanicInOutputThreadShutsDown() throws InterruptedException {
+        var engine = createTradingEngine();
+        engine.outputBufferSize = 16;
+        // 模拟关闭钩子：退出时停止并等待全部输出线程:
+        var stopped = new CountDownLatch(1);
+        engine.exit = () -> {
+            engine.stopOutputProcessors();
+            stopped.countDown();
+        };
+        List<Long> handled = new ArrayList<>();
+        engine.startOutputProcessor("test-ok", (output, sequence, endOfBatch) -> handled.add(sequence));
+        var failing = engine.startOutputProcessor("test-failing", (output, sequence, endOfBatch) -> {
+            throw new IllegalStateException("output failed");
+        });
+        engine.processMessages(List.of(depositEvent(USER_A, AssetEnum.USD, bd("100"))));
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertTrue(engine.fatalError);
+        assertTrue(failing.isFailed());
+        assertEquals(List.of(0L), handled);
+    }
+
+    @Test
+    public void testNoAllocationPerFill() {
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // 按生产环境的INFO级别测量（测试默认为DEBUG，debug日志只在开启时分配）:
+        var logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.itranswarp.exchange");
+        Level level = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        try {
+            assertNoAllocationPerFill(threadBean);
+        } finally {
+            logger.setLevel(level);
+        }
+    }
+
+    void assertNoAllocationPerFill(com.sun.management.ThreadMXBean threadBean) {
+        var engine = createTradingEngine();
+        // 输出槽位较少，预热时每个槽位的成交记录池都被扩容:
+        engine.outputBufferSize = 16;
+        engine.processEvent(depositEvent(USER_A, AssetEnum.USD, bd("100000000")));
+        engine.processEvent(depositEvent(USER_B, AssetEnum.BTC, bd("1000000")));
+        // 预热对象池和JIT:
+        for (int i = 0; i < 100; i++) {
+            sweep(engine, threadBean, 200);
+        }
+        // 吃掉2K个maker与吃掉K个maker的分配差值即K次成交的分配:
+        long k = 100;
+        long minPerFill = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long small = sweep(engine, threadBean, (int) k);
+            long large = sweep(engine, threadBean, (int) (2 * k));
+            minPerFill = Math.min(minPerFill, (large - small) / k);
+        }
+        assertFalse(engine.fatalError);
+        engine.validate();
+        // 每次成交分配的字节数不足一个对象:
+        assertTrue(minPerFill < 16, "allocated " + minPerFill + " bytes per fill.");
+    }
+
+    /**
+     * 挂makers个同价卖单后用一个买单全部吃掉，返回处理买单时定序线程分配的字节数
+     */
+    long sweep(TradingEngineService engine, com.sun.management.ThreadMXBean threadBean, int makers) {
+        for (int i = 0; i < makers; i++) {
+            engine.processEvent(orderRequestEvent(USER_B, Direction.SELL, bd("100"), bd("1")));
+        }
+        OrderRequestEvent taker = orderRequestEvent(USER_A, Direction.BUY, bd("100"), BigDecimal.valueOf(makers));
+        long start = threadBean.getCurrentThreadAllocatedBytes();
+        engine.processEvent(taker);
+        return threadBean.getCurrentThreadAllocatedBytes() - start;
+    }
+
+    @Test
+    public void testInvariantCheck() {
+        var engine = createTradingEngine();
+        engine.invariantCheck = true;
+        var r = new Random(20221018);
+        List<AbstractEvent> events = new ArrayList<>();
+        for (Long user : USERS) {
+            events.add(depositEvent(user, AssetEnum.USD, random(r, 100_000, 200_000)));
+            events.add(depositEvent(user, AssetEnum.BTC, random(r, 10, 20)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            Long user = USERS[r.nextInt(USERS.length)];
+            if (r.nextInt(50) == 0) {
+                events.add(orderCancelAllEvent(user, null));
+            } else {
+                Direction direction = r.nextBoolean() ? Direction.BUY : Direction.SELL;
+                events.add(orderRequestEvent(user, direction, random(r, 20000, 20100), random(r, 1, 3)));
+            }
+        }
+        // 每批次结束时增量校验通过:
+        for (int start = 0; start < events.size();) {
+            int end = Math.min(events.size(), start + 1 + r.nextInt(20));
+            engine.processMessages(events.subList(start, end));
+            start = end;
+        }
+        assertFalse(engine.fatalError);
+
+        // 冻结资产与订单不一致时增量校验只检查被修改的用户即可发现:
+        var checker = new InvariantChecker(engine.assetService, engine.orderService, engine.matchEngines);
+        checker.start();
+        checker.checkTouched(List.of());
+        engine.assetService.tryTransfer(Transfer.AVAILABLE_TO_FROZEN, USER_A, USER_A, AssetEnum.USD, BigDecimal.ONE,
+                true);
+        assertThrows(IllegalStateException.class, () -> checker.checkTouched(List.of()));
+        assertThrows(IllegalStateException.class, () -> checker.validateAll());
+        checker.stop();
+    }
+
+    @Test
+    public void testBalanceCheckpoint() {
+        var engine = createTradingEngine();
+        engine.balanceCheckpointInterval = Duration.ZERO;
+        // 模拟balances表，按检查点顺序插入或更新:
+        Map<String, BalanceEntity> table = new HashMap<>();
+        List<Integer> sizes = new ArrayList<>();
+        engine.startOutputProcessor("test-balances", (output, sequence, endOfBatch) -> {
+            if (!output.balances.isEmpty()) {
+                sizes.add(output.balances.size());
+                output.balances.forEach(b -> table.put(b.userId + ":" + b.asset, b));
+            }
+        });
+        var r = new Random(20221019);
+        List<AbstractEvent> events = new ArrayList<>();
+        for (Long user : USERS) {
+            events.add(depositEvent(user, AssetEnum.USD, random(r, 100_000, 200_000)));
+            events.add(depositEvent(user, AssetEnum.BTC, random(r, 10, 20)));
+        }
+        engine.processMessages(events);
+        engine.processMessages(List.of(orderRequestEvent(USER_A, Direction.BUY, bd("20000"), bd("1"))));
+        engine.processMessages(List.of(orderRequestEvent(USER_C, Direction.SELL, bd("20000"), bd("0.5"))));
+        engine.stopOutputProcessors();
+        // 首个检查点包含全部资产（含系统负债账户），之后只包含变化的资产:
+        assertEquals(List.of(USERS.length * 2 + 2, 1, 4), sizes);
+        for (Long user : USERS) {
+            for (AssetEnum assetId : List.of(AssetEnum.USD, AssetEnum.BTC)) {
+                Asset asset = engine.assetService.getAsset(user, assetId);
+                BalanceEntity balance = table.get(user + ":" + assetId);
+                assertEquals(0, asset.getAvailable().compareTo(balance.available));
+                assertEquals(0, asset.getFrozen().compareTo(balance.frozen));
+            }
+        }
+        assertEquals(events.size() + 2, table.get(USER_C + ":" + AssetEnum.BTC).sequenceId);
+    }
+
+    @Test
+    public void testStandbyReplaysAfterPromotion() {
+        // 主引擎和备用引擎处理相同的事件，主引擎的输出线程在某个批次中间停止（模拟宕机）:
+        var primary = createTradingEngine();
+        var standby = createTradingEngine();
+        standby.standby = true;
+        standby.standbyOutputs = new StandbyOutputs(1024);
+        Set<String> expected = new HashSet<>();
+        Set<String> published = new HashSet<>();
+        int[] outputs = { 0 };
+        primary.startOutputProcessor("test-all", (output, sequence, endOfBatch) -> record(output, expected));
+        primary.startOutputProcessor("test-primary", primary.primaryOnly((output, sequence, endOfBatch) -> {
+            if (++outputs[0] <= 37) {
+                record(output, published);
+            }
+        }));
+        standby.startOutputProcessor("test-standby",
+                standby.primaryOnly((output, sequence, endOfBatch) -> record(output, published)));
+        var r = new Random(20221017);
+        List<AbstractEvent> events = new ArrayList<>();
+        for (Long user : USERS) {
+            events.add(depositEvent(user, AssetEnum.USD, random(r, 100_000, 200_000)));
+            events.add(depositEvent(user, AssetEnum.BTC, random(r, 10, 20)));
+        }
+        for (int i = 0; i < 100; i++) {
+            Direction direction = r.nextBoolean() ? Direction.BUY : Direction.SELL;
+            var event = orderRequestEvent(USERS[r.nextInt(USERS.length)], direction, random(r, 20000, 20100),
+                    random(r, 1, 3));
+            event.refId = "ref-" + event.sequenceId;
+            events.add(event);
+        }
+        // 每批10个事件，接管前处理全部事件，接管后再处理一批:
+        for (int start = 0; start < events.size(); start += 10) {
+            var batch = events.subList(start, Math.min(events.size(), start + 10));
+            primary.processMessages(batch);
+            standby.processMessages(batch);
+        }
+        assertTrue(standby.standbyOutputs.size() >= events.size());
+        standby.promote();
+        List<AbstractEvent> more = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            var event = orderRequestEvent(USER_A, Direction.BUY, bd("20100"), bd("1"));
+            event.refId = "ref-" + event.sequenceId;
+            more.add(event);
+        }
+        primary.processMessages(more);
+        standby.processMessages(more);
+        primary.stopOutputProcessors();
+        standby.stopOutputProcessors();
+        // 原主引擎未推送的输出全部由接管的引擎补上，副本已释放:
+        assertTrue(expected.stream().anyMatch(s -> s.startsWith("f:")));
+        assertEquals(expected, published);
+        assertEquals(0, standby.standbyOutputs.size());
+    }
+
+    void record(EngineOutput output, Set<String> target) {
+        output.apiResults.forEach(msg -> target.add("r:" + msg.refId));
+        for (int i = 0; i < output.fillCount(); i++) {
+            var fill = output.fill(i);
+            target.add("f:" + fill.sequenceId + ":" + fill.maker.id + ":" + fill.quantityUnits);
+        }
+    }
+
+    @Test
+    public void testBatchTransfer() {
+        var engine = createTradingEngine();
+        engine.processEvent(depositEvent(USER_A, AssetEnum.USD, bd("1000")));
+        engine.processEvent(depositEvent(USER_B, AssetEnum.BTC, bd("2")));
+        // 交换资产，全部成功:
+        engine.processEvent(batchTransferEvent(transferLeg(USER_A, USER_B, AssetEnum.USD, bd("600")),
+                transferLeg(USER_B, USER_A, AssetEnum.BTC, bd("1.5"))));
+        assertEquals(0, bd("400").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+        assertEquals(0, bd("1.5").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.BTC).getAvailable()));
+        // 第二笔余额不足，整批失败:
+        engine.processEvent(batchTransferEvent(transferLeg(USER_A, USER_B, AssetEnum.USD, bd("400")),
+                transferLeg(USER_B, USER_A, AssetEnum.BTC, bd("0.6"))));
+        assertEquals(0, bd("400").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+        assertEquals(0, bd("600").compareTo(engine.assetService.getAsset(USER_B, AssetEnum.USD).getAvailable()));
+        // 金额为负数时整批失败:
+        engine.processEvent(batchTransferEvent(transferLeg(USER_A, USER_B, AssetEnum.USD, bd("100")),
+                transferLeg(USER_B, USER_A, AssetEnum.USD, bd("-1"))));
+        assertEquals(0, bd("400").compareTo(engine.assetService.getAsset(USER_A, AssetEnum.USD).getAvailable()));
+        assertFalse(engine.fatalError);
+        engine.validate();
+    }
+
+    @Test
+    public void testMergeNotifications() {
+        OrderEntity order1 = new OrderEntity();
+        order1.id = 1L;
+        order1.status = OrderStatus.PARTIAL_FILLED;
+        OrderEntity order2 = new OrderEntity();
+        order2.id = 2L;
+        order2.status = OrderStatus.FULLY_FILLED;
+        OrderEntity order1Canceled = order1.copy();
+        order1Canceled.status = OrderStatus.PARTIAL_CANCELLED;
+        var merged = TradingEngineService.mergeNotifications(List.of(notification("order_matched", order1),
+                notification("order_matched", order2), notification("orders_canceled", List.of(order1Canceled))));
+        assertEquals("orders_updated", merged.type);
+        assertEquals(USER_A, merged.userId);
+        // 每个订单只保留最新状态，按首次出现的顺序:
+        assertEquals(List.of(order1Canceled, order2), merged.data);
+        assertSame(order1Canceled, ((List<?>) merged.data).get(0));
+    }
+
+    NotificationMessage notification(String type, Object data) {
+        var msg = new NotificationMessage();
+        msg.type = type;
+        msg.userId = USER_A;
+        msg.data = data;
+        return msg;
+    }
+
+    void assertSameState(TradingEngineService expectedEngine, TradingEngineService actualEngine) {
+        for (Long user : USERS) {
+            for (AssetEnum assetId : AssetEnum.values()) {
+                Asset expected = expectedEngine.assetService.getAsset(user, assetId);
+                Asset actual = actualEngine.assetService.getAsset(user, assetId);
+                assertEquals(0, expected.getAvailable().compareTo(actual.getAvailable()));
+                assertEquals(0, expected.getFrozen().compareTo(actual.getFrozen()));
+            }
+        }
+        assertEquals(expectedEngine.orderService.getActiveOrders().keySet(),
+                actualEngine.orderService.getActiveOrders().keySet());
+        for (var order : expectedEngine.orderService.getActiveOrders().values()) {
+            var actual = actualEngine.orderService.getOrder(order.id);
+            assertNotNull(actual);
+            assertEquals(order.unfilledUnits, actual.unfilledUnits);
+            assertEquals(order.status, actual.status);
+        }
+        for (SymbolEnum symbol : SymbolEnum.values()) {
+            assertEquals(expectedEngine.matchEngines.get(symbol).marketPriceUnits,
+                    actualEngine.matchEngines.get(symbol).marketPriceUnits);
+        }
     }
 
     BigDecimal random(Random random, int low, int heigh) {
@@ -104,14 +715,20 @@ public class TradingEngineServiceTest {
     }
 
     TradingEngineService createTradingEngine() {
-        var matchEngine = new MatchEngine();
+        return createTradingEngine(false);
+    }
+
+    TradingEngineService createTradingEngine(boolean parallel) {
+        var arena = new OrderArena();
+        var matchEngines = new MatchEngineRegistry(arena, MarketScale.DEFAULT, OrderBook.DEFAULT_DEPTH, true,
+                parallel);
         var assetService = new AssetService();
-        var orderService = new OrderService(assetService);
+        var orderService = new OrderService(assetService, arena);
         var clearingService = new ClearingService(assetService, orderService);
         var engine = new TradingEngineService();
         engine.assetService = assetService;
         engine.orderService = orderService;
-        engine.matchEngine = matchEngine;
+        engine.matchEngines = matchEngines;
         engine.clearingService = clearingService;
         return engine;
     }
@@ -132,6 +749,13 @@ public class TradingEngineServiceTest {
         return event;
     }
 
+    OrderCancelAllEvent orderCancelAllEvent(Long userId, SymbolEnum symbol) {
+        var event = createEvent(OrderCancelAllEvent.class);
+        event.userId = userId;
+        event.symbol = symbol;
+        return event;
+    }
+
     TransferEvent depositEvent(Long userId, AssetEnum asset, BigDecimal amount) {
         var event = createEvent(TransferEvent.class);
         event.fromUserId = UserType.DEBT.getInternalUserId();
@@ -142,6 +766,32 @@ public class TradingEngineServiceTest {
         return event;
     }
 
+    TransferEvent transferEvent(Long fromUserId, Long toUserId, AssetEnum asset, BigDecimal amount) {
+        var event = createEvent(TransferEvent.class);
+        event.fromUserId = fromUserId;
+        event.toUserId = toUserId;
+        event.amount = amount;
+        event.asset = asset;
+        event.sufficient = true;
+        return event;
+    }
+
+    BatchTransferEvent batchTransferEvent(BatchTransferEvent.Leg... legs) {
+        var event = createEvent(BatchTransferEvent.class);
+        event.legs = List.of(legs);
+        return event;
+    }
+
+    BatchTransferEvent.Leg transferLeg(Long fromUserId, Long toUserId, AssetEnum asset, BigDecimal amount) {
+        var leg = new BatchTransferEvent.Leg();
+        leg.fromUserId = fromUserId;
+        leg.toUserId = toUserId;
+        leg.asset = asset;
+        leg.amount = amount;
+        leg.sufficient = true;
+        return leg;
+    }
+
     private long currentSequenceId = 0;
 
     <T extends AbstractEvent> T createEvent(Class<T> clazz) {
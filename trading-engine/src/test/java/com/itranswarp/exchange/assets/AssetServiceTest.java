@@ -3,6 +3,7 @@ package com.itranswarp.exchange.assets;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -35,42 +36,48 @@ public class AssetServiceTest {
         // A -> B ok:
         service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_A, USER_B, AssetEnum.USD, new BigDecimal("12000"),
                 true);
-        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).available);
-        assertBDEquals(12000 + 45600, service.getAsset(USER_B, AssetEnum.USD).available);
+        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+        assertBDEquals(12000 + 45600, service.getAsset(USER_B, AssetEnum.USD).getAvailable());
+
+        assertEquals(6, service.changedAssetCount());
+        service.drainChangedAssets((userId, assetId, asset) -> {
+        });
 
         // A -> B failed:
         assertFalse(service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_A, USER_B, AssetEnum.USD,
                 new BigDecimal("301"), true));
+        // 失败的转账不记为已变化:
+        assertEquals(0, service.changedAssetCount());
 
-        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).available);
-        assertBDEquals(12000 + 45600, service.getAsset(USER_B, AssetEnum.USD).available);
+        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+        assertBDEquals(12000 + 45600, service.getAsset(USER_B, AssetEnum.USD).getAvailable());
     }
 
     @Test
     void tryFreeze() {
         // freeze 12000 ok:
         service.tryFreeze(USER_A, AssetEnum.USD, new BigDecimal("12000"));
-        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).available);
-        assertBDEquals(12000, service.getAsset(USER_A, AssetEnum.USD).frozen);
+        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+        assertBDEquals(12000, service.getAsset(USER_A, AssetEnum.USD).getFrozen());
 
         // freeze 301 failed:
         assertFalse(service.tryFreeze(USER_A, AssetEnum.USD, new BigDecimal("301")));
 
-        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).available);
-        assertBDEquals(12000, service.getAsset(USER_A, AssetEnum.USD).frozen);
+        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+        assertBDEquals(12000, service.getAsset(USER_A, AssetEnum.USD).getFrozen());
     }
 
     @Test
     void unfreeze() {
         // freeze 12000 ok:
         service.tryFreeze(USER_A, AssetEnum.USD, new BigDecimal("12000"));
-        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).available);
-        assertBDEquals(12000, service.getAsset(USER_A, AssetEnum.USD).frozen);
+        assertBDEquals(300, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+        assertBDEquals(12000, service.getAsset(USER_A, AssetEnum.USD).getFrozen());
 
         // unfreeze 9000 ok:
         service.unfreeze(USER_A, AssetEnum.USD, new BigDecimal("9000"));
-        assertBDEquals(9300, service.getAsset(USER_A, AssetEnum.USD).available);
-        assertBDEquals(3000, service.getAsset(USER_A, AssetEnum.USD).frozen);
+        assertBDEquals(9300, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+        assertBDEquals(3000, service.getAsset(USER_A, AssetEnum.USD).getFrozen());
 
         // unfreeze 3001 failed:
         assertThrows(RuntimeException.class, () -> {
@@ -82,13 +89,13 @@ public class AssetServiceTest {
     void transfer() {
         // A USD -> A frozen:
         service.transfer(Transfer.AVAILABLE_TO_FROZEN, USER_A, USER_A, AssetEnum.USD, new BigDecimal("9000"));
-        assertBDEquals(3300, service.getAsset(USER_A, AssetEnum.USD).available);
-        assertBDEquals(9000, service.getAsset(USER_A, AssetEnum.USD).frozen);
+        assertBDEquals(3300, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+        assertBDEquals(9000, service.getAsset(USER_A, AssetEnum.USD).getFrozen());
 
         // A frozen -> C available:
         service.transfer(Transfer.FROZEN_TO_AVAILABLE, USER_A, USER_C, AssetEnum.USD, new BigDecimal("8000"));
-        assertBDEquals(1000, service.getAsset(USER_A, AssetEnum.USD).frozen);
-        assertBDEquals(8000, service.getAsset(USER_C, AssetEnum.USD).available);
+        assertBDEquals(1000, service.getAsset(USER_A, AssetEnum.USD).getFrozen());
+        assertBDEquals(8000, service.getAsset(USER_C, AssetEnum.USD).getAvailable());
 
         // A frozen -> B available failed:
         assertThrows(RuntimeException.class, () -> {
@@ -96,6 +103,64 @@ public class AssetServiceTest {
         });
     }
 
+    @Test
+    void unitsRoundDownAndOverflow() {
+        // 超出余额精度的部分向零舍去:
+        assertTrue(service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, USER_A, USER_B, AssetEnum.BTC,
+                new BigDecimal("0.123456789"), true));
+        assertBDEquals("11.87654322", service.getAsset(USER_A, AssetEnum.BTC).getAvailable());
+        assertBDEquals("0.12345678", service.getAsset(USER_B, AssetEnum.BTC).getAvailable());
+        assertThrows(ArithmeticException.class,
+                () -> service.restoreAsset(USER_C, AssetEnum.BTC, new BigDecimal("0.123456789"), BigDecimal.ZERO));
+
+        // 金额超出long范围时失败，余额不变:
+        assertFalse(service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, DEBT, USER_A, AssetEnum.USD,
+                new BigDecimal("100000000000"), false));
+        // 余额溢出时失败，双方余额都不变:
+        final Long issuer = 5000L;
+        assertTrue(service.tryTransferUnits(Transfer.AVAILABLE_TO_AVAILABLE, issuer, USER_C, AssetEnum.USD,
+                Long.MAX_VALUE - 1, false));
+        assertFalse(service.tryTransferUnits(Transfer.AVAILABLE_TO_AVAILABLE, issuer, USER_C, AssetEnum.USD, 2, false));
+        assertEquals(Long.MAX_VALUE - 1, service.getAsset(USER_C, AssetEnum.USD).getAvailableUnits());
+        assertEquals(1 - Long.MAX_VALUE, service.getAsset(issuer, AssetEnum.USD).getAvailableUnits());
+        assertTrue(service.tryTransferUnits(Transfer.AVAILABLE_TO_AVAILABLE, USER_C, issuer, AssetEnum.USD,
+                Long.MAX_VALUE - 1, true));
+    }
+
+    @Test
+    void tryTransfers() {
+        long unit = Asset.toUnits(BigDecimal.ONE);
+        // 全部成功:
+        assertTrue(service.tryTransfers(List.of(new TransferLeg(USER_A, USER_B, AssetEnum.USD, 300 * unit, true),
+                new TransferLeg(USER_B, USER_C, AssetEnum.USD, 900 * unit, true))));
+        assertBDEquals(12000, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+        assertBDEquals(45000, service.getAsset(USER_B, AssetEnum.USD).getAvailable());
+        assertBDEquals(900, service.getAsset(USER_C, AssetEnum.USD).getAvailable());
+
+        service.drainChangedAssets((userId, assetId, asset) -> {
+        });
+
+        // 最后一笔余额不足（同批转入不计入），不执行任何转账，也不创建资产:
+        assertFalse(service.tryTransfers(List.of(new TransferLeg(USER_A, USER_C, AssetEnum.BTC, 2 * unit, true),
+                new TransferLeg(USER_C, USER_B, AssetEnum.BTC, 30 * unit, true),
+                new TransferLeg(USER_B, USER_A, AssetEnum.BTC, 20 * unit, true))));
+        assertBDEquals(12, service.getAsset(USER_A, AssetEnum.BTC).getAvailable());
+        assertNull(service.getAsset(USER_B, AssetEnum.BTC));
+        assertBDEquals(34, service.getAsset(USER_C, AssetEnum.BTC).getAvailable());
+        assertEquals(0, service.changedAssetCount());
+
+        // 同一用户的多笔转出分别足够但合计超出余额:
+        assertFalse(service.tryTransfers(List.of(new TransferLeg(USER_A, USER_B, AssetEnum.USD, 7000 * unit, true),
+                new TransferLeg(USER_A, USER_C, AssetEnum.USD, 6000 * unit, true))));
+        assertBDEquals(12000, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+        assertEquals(0, service.changedAssetCount());
+
+        // 负数金额不执行任何转账:
+        assertFalse(service.tryTransfers(List.of(new TransferLeg(USER_A, USER_B, AssetEnum.USD, unit, true),
+                new TransferLeg(USER_B, USER_A, AssetEnum.USD, -unit, true))));
+        assertBDEquals(12000, service.getAsset(USER_A, AssetEnum.USD).getAvailable());
+    }
+
     /**
      * A: USD=12300, BTC=12
      * 
@@ -116,21 +181,21 @@ public class AssetServiceTest {
         service.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, DEBT, USER_C, AssetEnum.BTC, BigDecimal.valueOf(34),
                 false);
 
-        assertBDEquals(-57900, service.getAsset(DEBT, AssetEnum.USD).available);
-        assertBDEquals(-46, service.getAsset(DEBT, AssetEnum.BTC).available);
+        assertBDEquals(-57900, service.getAsset(DEBT, AssetEnum.USD).getAvailable());
+        assertBDEquals(-46, service.getAsset(DEBT, AssetEnum.BTC).getAvailable());
     }
 
     void verify() {
         BigDecimal totalUSD = BigDecimal.ZERO;
         BigDecimal totalBTC = BigDecimal.ZERO;
-        for (Long userId : service.userAssets.keySet()) {
+        for (Long userId : service.getUserAssets().keySet()) {
             var assetUSD = service.getAsset(userId, AssetEnum.USD);
             if (assetUSD != null) {
-                totalUSD = totalUSD.add(assetUSD.available).add(assetUSD.frozen);
+                totalUSD = totalUSD.add(assetUSD.getTotal());
             }
             var assetBTC = service.getAsset(userId, AssetEnum.BTC);
             if (assetBTC != null) {
-                totalBTC = totalBTC.add(assetBTC.available).add(assetBTC.frozen);
+                totalBTC = totalBTC.add(assetBTC.getTotal());
             }
         }
         assertBDEquals(0, totalUSD);
@@ -0,0 +1,105 @@
+package com.itranswarp.exchange.assets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.itranswarp.exchange.enums.AssetEnum;
+
+public class UserAssetStoreTest {
+
+    @Test
+    void getOrCreateAndLookup() {
+        var store = new UserAssetStore();
+        assertEquals(-1, store.indexOf(1L));
+        assertNull(store.get(1L, AssetEnum.USD));
+        // 相邻及冲突的userId，扩容多次:
+        for (long i = 0; i < 10000; i++) {
+            long userId = i % 2 == 0 ? i : -i * 1024;
+            Asset asset = store.getOrCreate(userId, AssetEnum.values()[(int) (i % UserAssetStore.ASSETS)]);
+            asset.available = i;
+        }
+        assertEquals(10000, store.size());
+        for (long i = 0; i < 10000; i++) {
+            long userId = i % 2 == 0 ? i : -i * 1024;
+            int user = store.indexOf(userId);
+            assertEquals(i, user);
+            assertEquals(userId, store.userId(user));
+            AssetEnum assetId = AssetEnum.values()[(int) (i % UserAssetStore.ASSETS)];
+            assertEquals(i, store.get(userId, assetId).available);
+            Map<AssetEnum, Asset> assets = new EnumMap<>(AssetEnum.class);
+            store.forEachAsset(user, assets::put);
+            assertEquals(Map.of(assetId, store.get(user, assetId)), assets);
+        }
+        assertEquals(-1, store.indexOf(1L));
+        // 已存在的资产不重复创建:
+        AssetEnum assetId = AssetEnum.values()[2 % UserAssetStore.ASSETS];
+        assertNotNull(store.get(2L, assetId));
+        assertSame(store.get(2L, assetId), store.getOrCreate(2L, assetId));
+        assertEquals(10000, store.size());
+        assertThrows(IllegalArgumentException.class, () -> store.getOrCreate(Long.MIN_VALUE, AssetEnum.USD));
+    }
+
+    @Test
+    void drainChanged() {
+        var store = new UserAssetStore();
+        // 只创建不标记:
+        store.getOrCreate(3L, AssetEnum.USD);
+        assertEquals(0, store.changedCount());
+        change(store, 1L, AssetEnum.USD);
+        change(store, 2L, AssetEnum.BTC);
+        change(store, 1L, AssetEnum.USD);
+        assertEquals(2, store.changedCount());
+        List<String> changed = new ArrayList<>();
+        store.drainChanged((userId, assetId, asset) -> changed.add(userId + ":" + assetId));
+        assertEquals(List.of("1:USD", "2:BTC"), changed);
+        assertEquals(0, store.changedCount());
+        // 扩容后仍能记录新槽位:
+        for (long userId = 100; userId < 1100; userId++) {
+            change(store, userId, AssetEnum.ETH);
+        }
+        assertEquals(1000, store.changedCount());
+        store.drainChanged((userId, assetId, asset) -> {
+        });
+        // 全部标记:
+        store.markAllChanged();
+        assertEquals(1003, store.changedCount());
+    }
+
+    void change(UserAssetStore store, long userId, AssetEnum assetId) {
+        int user = store.getOrCreateUser(userId);
+        store.getOrCreate(user, assetId);
+        store.markChanged(user, user, assetId);
+    }
+
+    @Test
+    void readWhileWriting() throws InterruptedException {
+        var store = new UserAssetStore();
+        var error = new AtomicReference<String>();
+        Thread reader = new Thread(() -> {
+            for (int round = 0; round < 200 && error.get() == null; round++) {
+                int size = store.size();
+                // 已发布的用户必须都能查到:
+                for (int user = 0; user < size; user++) {
+                    long userId = store.userId(user);
+                    if (userId != user + 1000 || store.indexOf(userId) != user) {
+                        error.set("user " + user + " not found");
+                        break;
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (long userId = 1000; userId < 101000; userId++) {
+            store.getOrCreate(userId, AssetEnum.USD);
+        }
+        reader.join();
+        assertNull(error.get());
+    }
+}
@@ -0,0 +1,143 @@
+package com.itranswarp.exchange.journal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.message.event.TransferEvent;
+import com.itranswarp.exchange.messaging.MessageTypes;
+
+public class EventJournalTest {
+
+    static final MessageTypes MESSAGE_TYPES = new MessageTypes();
+
+    static {
+        MESSAGE_TYPES.init();
+    }
+
+    @Test
+    void appendAndRead(@TempDir Path dir) throws IOException {
+        var journal = openJournal(dir, 100);
+        for (long i = 1; i <= 1000; i++) {
+            journal.append(event(i - 1, i));
+        }
+        // 重复事件忽略:
+        journal.append(event(9, 10));
+        assertEquals(1000, journal.getLastSequenceId());
+        assertTrue(listSegments(dir).size() > 1);
+
+        List<AbstractEvent> events = journal.read(0, 100000);
+        assertEquals(1000, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i + 1, events.get(i).sequenceId);
+            assertEquals(BigDecimal.valueOf(i + 1), ((TransferEvent) events.get(i)).amount);
+        }
+        // 跨段读取:
+        events = journal.read(123, 500);
+        assertEquals(500, events.size());
+        assertEquals(124, events.get(0).sequenceId);
+        assertEquals(623, events.get(499).sequenceId);
+        assertTrue(journal.read(1000, 100).isEmpty());
+        journal.close();
+
+        // 重新打开后索引一致:
+        journal = openJournal(dir, 100);
+        assertEquals(1000, journal.getLastSequenceId());
+        assertEquals(877, journal.read(123, 100000).size());
+        journal.append(event(1000, 1001));
+        assertEquals(1001, journal.read(1000, 10).get(0).sequenceId);
+        journal.close();
+    }
+
+    @Test
+    void dropOldSegments(@TempDir Path dir) throws IOException {
+        var journal = openJournal(dir, 3);
+        for (long i = 1; i <= 1000; i++) {
+            journal.append(event(i - 1, i));
+        }
+        assertEquals(3, listSegments(dir).size());
+        // 最旧的事件已删除，须从数据库读取:
+        assertTrue(journal.read(0, 100).isEmpty());
+        assertEquals(1, journal.read(999, 100).size());
+        journal.close();
+    }
+
+    @Test
+    void gapStartsNewSegment(@TempDir Path dir) throws IOException {
+        var journal = openJournal(dir, 100);
+        for (long i = 1; i <= 10; i++) {
+            journal.append(event(i - 1, i));
+        }
+        journal.append(event(20, 21));
+        journal.append(event(21, 22));
+        // 不连续的范围不返回:
+        assertEquals(10, journal.read(0, 100).size());
+        assertTrue(journal.read(10, 100).isEmpty());
+        assertTrue(journal.read(15, 100).isEmpty());
+        assertEquals(2, journal.read(20, 100).size());
+        journal.close();
+    }
+
+    @Test
+    void truncateCorruptedTail(@TempDir Path dir) throws IOException {
+        var journal = openJournal(dir, 100);
+        for (long i = 1; i <= 20; i++) {
+            journal.append(event(i - 1, i));
+        }
+        journal.close();
+        // 破坏最后一条记录的数据:
+        Path file = listSegments(dir).get(0);
+        int offset = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(journal.segmentSize);
+            channel.read(buffer, 0);
+            for (int i = 0; i < 19; i++) {
+                offset += EventJournal.HEADER + buffer.getInt(offset) + EventJournal.TRAILER;
+            }
+            channel.write(ByteBuffer.wrap(new byte[] { '?' }), offset + EventJournal.HEADER + 2);
+        }
+        journal = openJournal(dir, 100);
+        assertEquals(19, journal.getLastSequenceId());
+        journal.append(event(19, 20));
+        assertEquals(20, journal.read(0, 100).size());
+        journal.close();
+    }
+
+    EventJournal openJournal(Path dir, int maxSegments) throws IOException {
+        var journal = new EventJournal(dir.toString(), 16 * 1024, maxSegments);
+        journal.messageTypes = MESSAGE_TYPES;
+        journal.open();
+        return journal;
+    }
+
+    List<Path> listSegments(Path dir) throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.sorted().toList();
+        }
+    }
+
+    TransferEvent event(long previousId, long sequenceId) {
+        var event = new TransferEvent();
+        event.previousId = previousId;
+        event.sequenceId = sequenceId;
+        event.createdAt = 1645568542000L + sequenceId;
+        event.fromUserId = 11111L;
+        event.toUserId = 22222L;
+        event.asset = AssetEnum.USD;
+        event.amount = BigDecimal.valueOf(sequenceId);
+        event.sufficient = true;
+        return event;
+    }
+}
@@ -11,7 +11,9 @@ import org.junit.jupiter.api.Test;
 
 import com.itranswarp.exchange.enums.Direction;
 import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
 import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderRecord;
 
 public class MatchEngineTest {
 
@@ -42,27 +44,115 @@ public class MatchEngineTest {
             matches.addAll(mr.matchDetails);
         }
         assertArrayEquals(new MatchDetailRecord[] { //
-                new MatchDetailRecord(bd("12305.39"), bd("0.11"), orders.get(2), orders.get(1)), //
-                new MatchDetailRecord(bd("12305.39"), bd("0.22"), orders.get(3), orders.get(1)), //
-                new MatchDetailRecord(bd("12300.21"), bd("0.11"), orders.get(3), orders.get(0)), //
-                new MatchDetailRecord(bd("12390.00"), bd("0.15"), orders.get(7), orders.get(6)), //
-                new MatchDetailRecord(bd("12400.00"), bd("0.10"), orders.get(7), orders.get(4)), //
-                new MatchDetailRecord(bd("12400.00"), bd("0.20"), orders.get(7), orders.get(5)), //
+                new MatchDetailRecord(1230539, 11, orders.get(2), maker(orders.get(1))), //
+                new MatchDetailRecord(1230539, 22, orders.get(3), maker(orders.get(1))), //
+                new MatchDetailRecord(1230021, 11, orders.get(3), maker(orders.get(0))), //
+                new MatchDetailRecord(1239000, 15, orders.get(7), maker(orders.get(6))), //
+                new MatchDetailRecord(1240000, 10, orders.get(7), maker(orders.get(4))), //
+                new MatchDetailRecord(1240000, 20, orders.get(7), maker(orders.get(5))), //
         }, matches.toArray(MatchDetailRecord[]::new));
         assertTrue(bd("12400.00").compareTo(engine.marketPrice) == 0);
+        assertEquals(1240000, engine.marketPriceUnits);
+    }
+
+    @Test
+    void processOrdersWithReusedResult() {
+        this.engine = new MatchEngine(MarketScale.DEFAULT, 50, true);
+        OrderEntity maker1 = createOrder(Direction.SELL, "12305.39", "0.11");
+        OrderEntity maker2 = createOrder(Direction.SELL, "12306.00", "0.20");
+        OrderEntity taker1 = createOrder(Direction.BUY, "12400.00", "0.25");
+        OrderEntity taker2 = createOrder(Direction.SELL, "12300.00", "0.10");
+        assertTrue(engine.processOrder(maker1.sequenceId, maker1).isEmpty());
+        MatchResult mr1 = engine.processOrder(maker2.sequenceId, maker2);
+        assertTrue(mr1.isEmpty());
+        MatchResult mr2 = engine.processOrder(taker1.sequenceId, taker1);
+        assertSame(mr1, mr2);
+        assertSame(taker1, mr2.takerOrder);
+        assertEquals(2, mr2.size());
+        assertEquals(new MatchDetailRecord(1230539, 11, taker1, maker(maker1)), mr2.get(0));
+        assertEquals(new MatchDetailRecord(1230600, 14, taker1, maker(maker2)), mr2.get(1));
+        MatchDetailRecord reused = mr2.get(0);
+        // 下一次撮合复用同一个MatchDetailRecord:
+        MatchResult mr3 = engine.processOrder(taker2.sequenceId, taker2);
+        assertEquals(0, mr3.size());
+        OrderEntity taker3 = createOrder(Direction.BUY, "12306.00", "0.01");
+        MatchResult mr4 = engine.processOrder(taker3.sequenceId, taker3);
+        assertEquals(1, mr4.size());
+        assertSame(reused, mr4.get(0));
+        assertEquals(new MatchDetailRecord(1230000, 1, taker3, maker(taker2)), mr4.get(0));
+    }
+
+    @Test
+    void processNonRestingOrders() {
+        OrderEntity maker1 = createOrder(Direction.SELL, "100.00", "1.00");
+        OrderEntity maker2 = createOrder(Direction.SELL, "101.00", "1.00");
+        engine.processOrder(maker1.sequenceId, maker1);
+        engine.processOrder(maker2.sequenceId, maker2);
+
+        // FOK: 100.50以内只有1.00，不撮合直接取消:
+        OrderEntity fok1 = createOrder(OrderType.FOK, Direction.BUY, "100.50", "1.50");
+        assertTrue(engine.processOrder(fok1.sequenceId, fok1).isEmpty());
+        assertEquals(OrderStatus.FULLY_CANCELLED, fok1.status);
+        assertEquals(2, engine.sellBook.size());
+
+        // IOC: 成交1.00，剩余0.50取消且不进入买盘:
+        OrderEntity ioc = createOrder(OrderType.IOC, Direction.BUY, "100.50", "1.50");
+        MatchResult mr = engine.processOrder(ioc.sequenceId, ioc);
+        assertEquals(List.of(new MatchDetailRecord(10000, 100, ioc, maker(maker1))), mr.matchDetails);
+        assertEquals(OrderStatus.PARTIAL_CANCELLED, ioc.status);
+        assertEquals(50, ioc.unfilledUnits);
+        assertFalse(engine.buyBook.exist(ioc));
+        assertEquals(0, engine.buyBook.size());
+
+        // FOK: 数量足够时全部成交:
+        OrderEntity fok2 = createOrder(OrderType.FOK, Direction.BUY, "101.00", "0.80");
+        mr = engine.processOrder(fok2.sequenceId, fok2);
+        assertEquals(List.of(new MatchDetailRecord(10100, 80, fok2, maker(maker2))), mr.matchDetails);
+        assertEquals(OrderStatus.FULLY_FILLED, fok2.status);
+
+        // 市价卖单不限价格，剩余部分取消:
+        OrderEntity maker3 = createOrder(Direction.BUY, "99.00", "0.30");
+        engine.processOrder(maker3.sequenceId, maker3);
+        OrderEntity market = createOrder(OrderType.MARKET, Direction.SELL, "0", "0.50");
+        mr = engine.processOrder(market.sequenceId, market);
+        assertEquals(List.of(new MatchDetailRecord(9900, 30, market, maker(maker3))), mr.matchDetails);
+        assertEquals(OrderStatus.PARTIAL_CANCELLED, market.status);
+        assertEquals(0, engine.buyBook.size());
+        assertEquals(1, engine.sellBook.size());
+    }
+
+    /**
+     * 按订单id比较的maker快照
+     */
+    OrderRecord maker(OrderEntity order) {
+        OrderRecord record = new OrderRecord();
+        record.id = order.id;
+        return record;
     }
 
     OrderEntity createOrder(Direction direction, String price, String quantity) {
+        return createOrder(OrderType.LIMIT, direction, price, quantity);
+    }
+
+    OrderEntity createOrder(OrderType type, Direction direction, String price, String quantity) {
         this.sequenceId++;
         var order = new OrderEntity();
         order.id = this.sequenceId << 4;
         order.sequenceId = this.sequenceId;
+        order.symbol = engine.symbol;
+        order.type = type;
         order.direction = direction;
         order.price = bd(price);
+        order.priceUnits = engine.scale.toPriceUnits(order.price);
         order.quantity = order.unfilledQuantity = bd(quantity);
+        order.quantityUnits = order.unfilledUnits = engine.scale.toQuantityUnits(order.quantity);
         order.status = OrderStatus.PENDING;
         order.userId = USER_A;
         order.createdAt = order.updatedAt = 1234567890000L + this.sequenceId;
+        if (type.rest) {
+            // 限价单挂单前需分配槽位（由OrderService完成）:
+            engine.arena.allocate(order, engine.scale);
+        }
         return order;
     }
 
@@ -0,0 +1,200 @@
+package com.itranswarp.exchange.match;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.itranswarp.exchange.bean.OrderBookItemBean;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+import com.itranswarp.exchange.order.OrderArena;
+
+public class OrderBookTest {
+
+    long sequenceId = 0;
+    OrderBook book;
+
+    @BeforeEach
+    void init() {
+        this.book = new OrderBook(Direction.BUY);
+    }
+
+    @Test
+    void addAndRemove() {
+        OrderEntity o1 = createOrder("100.01", "1.5");
+        OrderEntity o2 = createOrder("100.02", "0.5");
+        OrderEntity o3 = createOrder("100.01", "2.0");
+        assertTrue(book.add(o1));
+        assertTrue(book.add(o2));
+        assertTrue(book.add(o3));
+        assertFalse(book.add(o3));
+        assertEquals(3, book.size());
+        assertEquals(2, book.levels.size());
+        // 价格高在前:
+        assertEquals(o2.handle, book.getFirst());
+        // 同价位时间早在前:
+        assertEquals(List.of(o2, o1, o3), book.getOrders());
+
+        assertTrue(book.remove(o2.handle));
+        assertFalse(book.remove(o2.handle));
+        assertFalse(book.exist(o2));
+        assertTrue(book.exist(o1));
+        assertEquals(o1.handle, book.getFirst());
+        assertEquals(1, book.levels.size());
+        assertEquals(350, book.getBestLevel().getTotalQuantity());
+
+        // 部分成交:
+        book.reduce(o1.handle, 50);
+        book.arena.update(o1.handle, 100, OrderStatus.PARTIAL_FILLED, o1.createdAt);
+        assertEquals(300, book.getBestLevel().getTotalQuantity());
+
+        assertTrue(book.remove(o1.handle));
+        assertEquals(o3.handle, book.getFirst());
+        assertTrue(book.remove(o3.handle));
+        assertEquals(OrderArena.NULL, book.getFirst());
+        assertNull(book.getBestLevel());
+        assertEquals(0, book.size());
+    }
+
+    @Test
+    void getOrderBook() {
+        book.add(createOrder("100.01", "1.5"));
+        book.add(createOrder("100.03", "0.5"));
+        book.add(createOrder("100.01", "2.0"));
+        book.add(createOrder("100.02", "0.3"));
+        List<OrderBookItemBean> items = book.getOrderBook(2);
+        assertEquals(2, items.size());
+        assertEquals(0, bd("100.03").compareTo(items.get(0).price));
+        assertEquals(0, bd("0.5").compareTo(items.get(0).quantity));
+        assertEquals(0, bd("100.02").compareTo(items.get(1).price));
+        assertEquals(0, bd("0.3").compareTo(items.get(1).quantity));
+        items = book.getOrderBook(10);
+        assertEquals(3, items.size());
+        assertEquals(0, bd("3.5").compareTo(items.get(2).quantity));
+    }
+
+    @Test
+    void depthViewMatchesOrderBook() {
+        for (Direction direction : Direction.values()) {
+            this.book = new OrderBook(direction, MarketScale.DEFAULT, 5);
+            var r = new Random(20220222);
+            List<OrderEntity> orders = new ArrayList<>();
+            List<OrderBookItemBean> lastDepth = book.getDepth();
+            for (int i = 0; i < 2000; i++) {
+                int op = r.nextInt(10);
+                if (op < 5 || orders.isEmpty()) {
+                    OrderEntity order = createOrder("100." + r.nextInt(20), "1." + r.nextInt(10));
+                    book.add(order);
+                    orders.add(order);
+                } else if (op < 8) {
+                    book.remove(orders.remove(r.nextInt(orders.size())).handle);
+                } else if (book.arena.unfilledUnits(orders.get(orders.size() - 1).handle) > 1) {
+                    int handle = orders.get(orders.size() - 1).handle;
+                    long unfilled = book.arena.unfilledUnits(handle);
+                    long filled = 1 + r.nextInt((int) unfilled - 1);
+                    book.reduce(handle, filled);
+                    book.arena.update(handle, unfilled - filled, OrderStatus.PARTIAL_FILLED, 0);
+                }
+                boolean changed = book.depth.isChanged();
+                List<OrderBookItemBean> depth = book.getDepth();
+                if (!changed) {
+                    assertSame(lastDepth, depth);
+                }
+                List<OrderBookItemBean> expected = book.getOrderBook(5);
+                assertEquals(expected.size(), depth.size());
+                for (int n = 0; n < depth.size(); n++) {
+                    assertEquals(0, expected.get(n).price.compareTo(depth.get(n).price));
+                    assertEquals(0, expected.get(n).quantity.compareTo(depth.get(n).quantity));
+                }
+                lastDepth = depth;
+            }
+        }
+    }
+
+    @Test
+    void depthChangesReplayToDepth() {
+        for (Direction direction : Direction.values()) {
+            this.book = new OrderBook(direction, MarketScale.DEFAULT, 5);
+            var r = new Random(20220301);
+            List<OrderEntity> orders = new ArrayList<>();
+            // 模拟客户端：从全量开始按增量更新:
+            Comparator<BigDecimal> sort = direction == Direction.BUY ? Comparator.reverseOrder()
+                    : Comparator.naturalOrder();
+            TreeMap<BigDecimal, BigDecimal> mirror = new TreeMap<>(sort);
+            int overflows = 0;
+            for (int i = 0; i < 2000; i++) {
+                int op = r.nextInt(10);
+                if (op < 5 || orders.isEmpty()) {
+                    OrderEntity order = createOrder("100." + r.nextInt(20), "1." + r.nextInt(10));
+                    book.add(order);
+                    orders.add(order);
+                } else {
+                    book.remove(orders.remove(r.nextInt(orders.size())).handle);
+                }
+                // 每次取增量之间累积不同数量的变化，每200次操作中有一段累积50次:
+                if (i % 200 < 150 ? r.nextInt(3) != 0 : i % 200 != 199) {
+                    continue;
+                }
+                List<OrderBookItemBean> changes = book.depth.drainChanges();
+                if (changes == null) {
+                    overflows++;
+                    mirror.clear();
+                    changes = book.getDepth();
+                }
+                for (OrderBookItemBean item : changes) {
+                    if (item.quantity.signum() == 0) {
+                        mirror.remove(item.price);
+                    } else {
+                        mirror.put(item.price, item.quantity);
+                    }
+                }
+                List<OrderBookItemBean> expected = book.getOrderBook(5);
+                assertEquals(expected.size(), mirror.size());
+                int n = 0;
+                for (var entry : mirror.entrySet()) {
+                    assertEquals(0, expected.get(n).price.compareTo(entry.getKey()));
+                    assertEquals(0, expected.get(n).quantity.compareTo(entry.getValue()));
+                    n++;
+                }
+            }
+            assertTrue(overflows > 0);
+            // 取增量后清除变化记录:
+            book.depth.drainChanges();
+            assertTrue(book.depth.drainChanges().isEmpty());
+        }
+    }
+
+    OrderEntity createOrder(String price, String quantity) {
+        this.sequenceId++;
+        var order = new OrderEntity();
+        order.id = this.sequenceId << 4;
+        order.sequenceId = this.sequenceId;
+        order.symbol = SymbolEnum.BTC_USD;
+        order.type = OrderType.LIMIT;
+        order.direction = book.direction;
+        order.price = bd(price);
+        order.priceUnits = book.scale.toPriceUnits(order.price);
+        order.quantity = order.unfilledQuantity = bd(quantity);
+        order.quantityUnits = order.unfilledUnits = book.scale.toQuantityUnits(order.quantity);
+        order.status = OrderStatus.PENDING;
+        order.userId = 12345L;
+        order.createdAt = order.updatedAt = 1234567890000L + this.sequenceId;
+        book.arena.allocate(order, book.scale);
+        return order;
+    }
+
+    BigDecimal bd(String s) {
+        return new BigDecimal(s);
+    }
+}
@@ -0,0 +1,58 @@
+package com.itranswarp.exchange.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class EngineMetricsTest {
+
+    @Test
+    void percentilesOfLastInterval() {
+        var registry = new SimpleMeterRegistry();
+        var metrics = new EngineMetrics(Duration.ofHours(1));
+        metrics.registry = registry;
+        metrics.init();
+        try {
+            // 1..1000微秒:
+            for (int i = 1; i <= 1000; i++) {
+                metrics.createOrder.record(i * 1000L);
+            }
+            metrics.batchSize.record(500);
+            // 切换周期之前没有数据:
+            assertEquals(0, percentile(registry, "exchange.engine.event.percentile", "0.99"));
+            metrics.rotate();
+            assertEquals(0.000990, percentile(registry, "exchange.engine.event.percentile", "0.99"), 0.000002);
+            assertEquals(0.000500, percentile(registry, "exchange.engine.event.percentile", "0.5"), 0.000002);
+            assertEquals(0.001, registry.get("exchange.engine.event.max").tag("type", "create").gauge().value(),
+                    0.000002);
+            assertEquals(1000, registry.get("exchange.engine.event.count").tag("type", "create").functionCounter()
+                    .count());
+            assertEquals(500, registry.get("exchange.engine.batch.size.percentile").tag("phi", "0.5").gauge()
+                    .value(), 1);
+            // 下一个周期没有新数据:
+            metrics.rotate();
+            assertEquals(0, percentile(registry, "exchange.engine.event.percentile", "0.99"));
+            assertEquals(1000, registry.get("exchange.engine.event.count").tag("type", "create").functionCounter()
+                    .count());
+        } finally {
+            metrics.shutdown();
+        }
+    }
+
+    @Test
+    void gaugeWithoutRegistryIsIgnored() {
+        var metrics = new EngineMetrics(Duration.ofSeconds(1));
+        metrics.init();
+        metrics.gauge("exchange.engine.output.backlog", "processor", "test", () -> 1);
+        metrics.transfer.recordSince(System.nanoTime());
+        metrics.shutdown();
+    }
+
+    double percentile(SimpleMeterRegistry registry, String name, String phi) {
+        return registry.get(name).tag("type", "create").tag("phi", phi).gauge().value();
+    }
+}
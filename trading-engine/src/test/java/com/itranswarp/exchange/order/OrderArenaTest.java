@@ -0,0 +1,105 @@
+package com.itranswarp.exchange.order;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderStatus;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.match.MarketScale;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+public class OrderArenaTest {
+
+    long sequenceId = 0;
+
+    @Test
+    void allocateAndLoad() {
+        for (boolean direct : new boolean[] { false, true }) {
+            OrderArena arena = new OrderArena(direct);
+            OrderEntity order = createOrder(Direction.SELL, "2207.33", "1.5");
+            int handle = arena.allocate(order, MarketScale.DEFAULT);
+            assertEquals(handle, order.handle);
+            assertEquals(1, arena.size());
+            assertEquals(order.id.longValue(), arena.id(handle));
+            assertEquals(220733, arena.priceUnits(handle));
+            assertEquals(150, arena.unfilledUnits(handle));
+
+            arena.update(handle, 50, OrderStatus.PARTIAL_FILLED, order.createdAt + 1);
+            OrderEntity loaded = new OrderEntity();
+            assertTrue(arena.load(handle, loaded));
+            assertEquals(order, loaded);
+            assertEquals(order.userId, loaded.userId);
+            assertEquals(SymbolEnum.ETH_USD, loaded.symbol);
+            assertEquals(OrderType.LIMIT, loaded.type);
+            assertEquals(Direction.SELL, loaded.direction);
+            assertEquals(OrderStatus.PARTIAL_FILLED, loaded.status);
+            assertEquals(0, bd("2207.33").compareTo(loaded.price));
+            assertEquals(0, bd("1.5").compareTo(loaded.quantity));
+            assertEquals(0, bd("0.5").compareTo(loaded.unfilledQuantity));
+            assertEquals(50, loaded.unfilledUnits);
+            assertEquals(order.createdAt + 1, loaded.updatedAt);
+
+            arena.free(handle);
+            assertEquals(0, arena.size());
+            assertFalse(arena.isAllocated(handle));
+            assertFalse(arena.load(handle, loaded));
+            assertThrows(IllegalArgumentException.class, () -> arena.free(handle));
+        }
+    }
+
+    @Test
+    void reuseFreedSlots() {
+        OrderArena arena = new OrderArena();
+        int h1 = arena.allocate(createOrder(Direction.BUY, "100", "1"), MarketScale.DEFAULT);
+        int h2 = arena.allocate(createOrder(Direction.BUY, "101", "1"), MarketScale.DEFAULT);
+        arena.free(h1);
+        // 回收前不复用:
+        int h3 = arena.allocate(createOrder(Direction.BUY, "102", "1"), MarketScale.DEFAULT);
+        assertNotEquals(h1, h3);
+        arena.reclaim();
+        int h4 = arena.allocate(createOrder(Direction.BUY, "103", "1"), MarketScale.DEFAULT);
+        assertEquals(h1, h4);
+        assertEquals(10300, arena.priceUnits(h4));
+        assertEquals(3, arena.size());
+        assertTrue(arena.isAllocated(h2));
+    }
+
+    @Test
+    void growChunks() {
+        OrderArena arena = new OrderArena();
+        int count = OrderArena.CHUNK_SLOTS * 2 + 1;
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, arena.allocate(createOrder(Direction.BUY, "100", "1"), MarketScale.DEFAULT));
+        }
+        assertEquals(count, arena.size());
+        assertEquals(OrderArena.CHUNK_SLOTS * 3, arena.capacity());
+        assertEquals(this.sequenceId << 4, arena.id(count - 1));
+    }
+
+    OrderEntity createOrder(Direction direction, String price, String quantity) {
+        this.sequenceId++;
+        var order = new OrderEntity();
+        order.id = this.sequenceId << 4;
+        order.sequenceId = this.sequenceId;
+        order.symbol = SymbolEnum.ETH_USD;
+        order.type = OrderType.LIMIT;
+        order.direction = direction;
+        order.price = bd(price);
+        order.priceUnits = MarketScale.DEFAULT.toPriceUnits(order.price);
+        order.quantity = order.unfilledQuantity = bd(quantity);
+        order.quantityUnits = order.unfilledUnits = MarketScale.DEFAULT.toQuantityUnits(order.quantity);
+        order.status = OrderStatus.PENDING;
+        order.userId = 12345L;
+        order.createdAt = order.updatedAt = 1234567890000L + this.sequenceId;
+        return order;
+    }
+
+    BigDecimal bd(String s) {
+        return new BigDecimal(s);
+    }
+}
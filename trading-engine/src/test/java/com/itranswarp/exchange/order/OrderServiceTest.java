@@ -0,0 +1,70 @@
+package com.itranswarp.exchange.order;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.itranswarp.exchange.assets.AssetService;
+import com.itranswarp.exchange.assets.Transfer;
+import com.itranswarp.exchange.enums.AssetEnum;
+import com.itranswarp.exchange.enums.Direction;
+import com.itranswarp.exchange.enums.OrderType;
+import com.itranswarp.exchange.enums.SymbolEnum;
+import com.itranswarp.exchange.match.MarketScale;
+import com.itranswarp.exchange.model.trade.OrderEntity;
+
+public class OrderServiceTest {
+
+    static final Long USER = 1000L;
+
+    @Test
+    void getUserOrdersWhileWriting() throws InterruptedException {
+        var assetService = new AssetService();
+        assetService.tryTransfer(Transfer.AVAILABLE_TO_AVAILABLE, 1L, USER, AssetEnum.USD, new BigDecimal("1000000"),
+                false);
+        var orderService = new OrderService(assetService, new OrderArena());
+        // 常驻挂单:
+        OrderEntity resting = createOrder(orderService, 1L);
+        var done = new AtomicBoolean();
+        var error = new AtomicReference<String>();
+        Thread reader = new Thread(() -> {
+            while (!done.get() && error.get() == null) {
+                // 始终读到常驻挂单，最多再加一个正在反复创建和删除的挂单:
+                List<OrderEntity> orders = orderService.getUserOrders(USER);
+                long count = orders.stream().filter(o -> o.id.equals(resting.id)).count();
+                if (count != 1 || orders.size() > 2 || orders.stream().map(o -> o.id).distinct().count() != orders
+                        .size()) {
+                    error.set("inconsistent orders: " + orders.stream().map(o -> o.id).toList());
+                }
+                // 资产副本的冻结与可用之和不变:
+                var usd = assetService.getAssets(USER).get(AssetEnum.USD);
+                if (usd.getTotal().compareTo(new BigDecimal("1000000")) != 0) {
+                    error.set("inconsistent asset: " + usd);
+                }
+            }
+        });
+        reader.start();
+        for (long id = 2; id < 50000 && error.get() == null; id++) {
+            OrderEntity order = createOrder(orderService, id);
+            orderService.removeOrder(order.id);
+            assetService.unfreeze(USER, AssetEnum.USD, order.price.multiply(order.quantity));
+            orderService.reclaim();
+        }
+        done.set(true);
+        reader.join();
+        assertNull(error.get());
+        assertEquals(List.of(resting.id), orderService.getUserOrders(USER).stream().map(o -> o.id).toList());
+    }
+
+    OrderEntity createOrder(OrderService orderService, long id) {
+        OrderEntity order = orderService.createOrder(id, id, id, USER, SymbolEnum.BTC_USD, OrderType.LIMIT,
+                Direction.BUY, new BigDecimal("100"), new BigDecimal("1"), MarketScale.DEFAULT);
+        assertNotNull(order);
+        return order;
+    }
+}
@@ -0,0 +1,58 @@
+package com.itranswarp.exchange.standby;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class EngineLeaseTest {
+
+    @Test
+    void standbyTakesOverAfterRelease(@TempDir Path dir) throws Exception {
+        String file = dir.resolve("engine.lock").toString();
+        var primary = new EngineLease(file, Duration.ofMillis(20), dir.resolve("primary").toString(), "");
+        var standby = new EngineLease(file, Duration.ofMillis(20), dir.resolve("standby").toString(), "");
+        assertTrue(primary.tryAcquire());
+        assertTrue(primary.tryAcquire());
+        assertFalse(standby.tryAcquire());
+        standby.checkDataDirs();
+
+        var promoted = new CountDownLatch(1);
+        standby.awaitAcquire(promoted::countDown);
+        assertFalse(promoted.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(standby.isHeld());
+
+        // 主引擎退出后备用引擎接管:
+        primary.release();
+        assertTrue(promoted.await(5, TimeUnit.SECONDS));
+        assertTrue(standby.isHeld());
+        assertFalse(primary.tryAcquire());
+        standby.release();
+        primary.release();
+    }
+
+    @Test
+    void standbyRejectsSharedDirs(@TempDir Path dir) throws Exception {
+        String file = dir.resolve("engine.lock").toString();
+        String snapshots = dir.resolve("snapshots").toString();
+        var primary = new EngineLease(file, Duration.ofMillis(20), snapshots, dir.resolve("journal").toString());
+        var standby = new EngineLease(file, Duration.ofMillis(20), snapshots, dir.resolve("journal2").toString());
+        assertTrue(primary.tryAcquire());
+        assertFalse(standby.tryAcquire());
+        assertThrows(IllegalStateException.class, standby::checkDataDirs);
+        // 嵌套的目录同样视为共用:
+        var nested = new EngineLease(file, Duration.ofMillis(20), dir.resolve("snapshots/standby").toString(), "");
+        assertThrows(IllegalStateException.class, nested::checkDataDirs);
+        primary.release();
+    }
+
+    @Test
+    void disabledWithoutLockFile() {
+        assertFalse(new EngineLease("", Duration.ofSeconds(1), "", "").isEnabled());
+    }
+}
@@ -0,0 +1,77 @@
+package com.itranswarp.exchange.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.itranswarp.exchange.message.event.AbstractEvent;
+import com.itranswarp.exchange.message.event.TransferEvent;
+
+public class EventStreamTest {
+
+    @Test
+    void streamPages() {
+        AtomicInteger pages = new AtomicInteger();
+        EventStream.PageLoader loader = (after, limit, consumer) -> {
+            pages.incrementAndGet();
+            int n = 0;
+            for (long id = after + 1; id <= 10000 && n < limit; id++, n++) {
+                consumer.accept(event(id));
+            }
+            return n;
+        };
+        try (var stream = new EventStream(loader, 0, 300, 16)) {
+            long expected = 1;
+            for (AbstractEvent event; (event = stream.next()) != null; expected++) {
+                assertEquals(expected, event.sequenceId);
+                assertEquals(expected - 1, event.previousId);
+            }
+            assertEquals(10001, expected);
+            assertNull(stream.next());
+        }
+        assertEquals(34, pages.get());
+    }
+
+    @Test
+    void propagateError() {
+        EventStream.PageLoader loader = (after, limit, consumer) -> {
+            consumer.accept(event(after + 1));
+            throw new IllegalStateException("db down");
+        };
+        try (var stream = new EventStream(loader, 0, 100, 16)) {
+            assertEquals(1, stream.next().sequenceId);
+            assertThrows(RuntimeException.class, stream::next);
+            assertNull(stream.next());
+        }
+    }
+
+    @Test
+    void closeEarly() throws InterruptedException {
+        AtomicInteger loaded = new AtomicInteger();
+        EventStream.PageLoader loader = (after, limit, consumer) -> {
+            for (int i = 0; i < limit; i++) {
+                consumer.accept(event(after + i + 1));
+                loaded.incrementAndGet();
+            }
+            return limit;
+        };
+        var stream = new EventStream(loader, 0, 100, 16);
+        assertEquals(1, stream.next().sequenceId);
+        stream.close();
+        Thread.sleep(300);
+        int n = loaded.get();
+        // 队列已满，关闭后不再读取:
+        assertTrue(n <= 18);
+        Thread.sleep(200);
+        assertEquals(n, loaded.get());
+    }
+
+    TransferEvent event(long sequenceId) {
+        var event = new TransferEvent();
+        event.sequenceId = sequenceId;
+        event.previousId = sequenceId - 1;
+        return event;
+    }
+}